@@ -0,0 +1,134 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.Species;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each of the builders used by WriteSBML on its own. Each benchmark
+ * applies one builder to every participant or reaction of the pathway, so the
+ * score is the number of pathways processed per second.
+ *
+ * Each operation starts with fresh SBML elements so the builders do the same
+ * work every time.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuilderBenchmark {
+
+    @Param({"DEEP_COMPLEXES", "LARGE_ENTITY_SETS", "LONG_EVENT_LIST"})
+    public PathwayFixtures.Shape shape;
+
+    private Pathway pathway;
+    private List<PhysicalEntity> participants;
+    private SBOTermLookup sbo;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        pathway = PathwayFixtures.createPathway(shape);
+        participants = PathwayFixtures.getParticipants(pathway);
+        sbo = new SBOTermLookup();
+    }
+
+    @Benchmark
+    public void speciesAnnotations(Blackhole bh) {
+        Model model = createModel();
+        for (PhysicalEntity pe : participants) {
+            Species s = createSpecies(model, pe);
+            CVTermBuilder cvterms = new CVTermBuilder(s);
+            cvterms.createSpeciesAnnotations(pe);
+        }
+        bh.consume(model);
+    }
+
+    @Benchmark
+    public void reactionAnnotations(Blackhole bh) {
+        Model model = createModel();
+        for (Event e : pathway.getHasEvent()) {
+            Reaction rn = createReaction(model, e);
+            CVTermBuilder cvterms = new CVTermBuilder(rn);
+            cvterms.createReactionAnnotations((ReactionLikeEvent) e);
+        }
+        bh.consume(model);
+    }
+
+    @Benchmark
+    public void speciesNotes(Blackhole bh) {
+        Model model = createModel();
+        for (PhysicalEntity pe : participants) {
+            Species s = createSpecies(model, pe);
+            NotesBuilder notes = new NotesBuilder(s);
+            notes.createSpeciesNotes(pe);
+            notes.addNotes();
+        }
+        bh.consume(model);
+    }
+
+    @Benchmark
+    public void reactionNotes(Blackhole bh) {
+        Model model = createModel();
+        for (Event e : pathway.getHasEvent()) {
+            Reaction rn = createReaction(model, e);
+            NotesBuilder notes = new NotesBuilder(rn);
+            notes.addPathwayNotes(e);
+        }
+        bh.consume(model);
+    }
+
+    @Benchmark
+    public void modelHistory(Blackhole bh) {
+        Model model = createModel();
+        ModelHistoryBuilder history = new ModelHistoryBuilder(model);
+        history.createHistory(pathway);
+        bh.consume(model);
+    }
+
+    @Benchmark
+    public void sboTerms(Blackhole bh) {
+        Model model = createModel();
+        for (PhysicalEntity pe : participants) {
+            Species s = createSpecies(model, pe);
+            sbo.setTerm(s, pe);
+        }
+        bh.consume(model);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private Model createModel() {
+        SBMLDocument doc = new SBMLDocument(3, 1);
+        Model model = doc.createModel("pathway_" + pathway.getDbId());
+        model.setMetaId("metaid_0");
+        return model;
+    }
+
+    private static Species createSpecies(Model model, PhysicalEntity pe) {
+        Species s = model.createSpecies("species_" + pe.getDbId());
+        s.setMetaId("metaid_s" + pe.getDbId());
+        return s;
+    }
+
+    private static Reaction createReaction(Model model, Event e) {
+        Reaction rn = model.createReaction("reaction_" + e.getDbId());
+        rn.setMetaId("metaid_r" + e.getDbId());
+        return rn;
+    }
+}
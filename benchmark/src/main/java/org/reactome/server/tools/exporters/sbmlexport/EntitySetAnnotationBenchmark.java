@@ -0,0 +1,56 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.reactome.server.graph.domain.model.EntitySet;
+import org.reactome.server.graph.domain.model.PhysicalEntity;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.Species;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures annotating the sets of a pathway of LARGE_ENTITY_SETS, where every
+ * member adds a resource, so the cost is dominated by resolving identifiers.org
+ * URIs and removing duplicate resources.
+ *
+ * The score is the time to annotate every set of the pathway once.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntitySetAnnotationBenchmark {
+
+    private List<PhysicalEntity> sets;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sets = new ArrayList<PhysicalEntity>();
+        for (PhysicalEntity pe : PathwayFixtures.getParticipants(PathwayFixtures.createPathway(PathwayFixtures.Shape.LARGE_ENTITY_SETS))) {
+            if (pe instanceof EntitySet) {
+                sets.add(pe);
+            }
+        }
+    }
+
+    @Benchmark
+    public void setAnnotations(Blackhole bh) {
+        SBMLDocument doc = new SBMLDocument(3, 1);
+        Model model = doc.createModel("pathway_1");
+        for (PhysicalEntity pe : sets) {
+            Species s = model.createSpecies("species_" + pe.getDbId());
+            s.setMetaId("metaid_s" + pe.getDbId());
+            CVTermBuilder cvterms = new CVTermBuilder(s);
+            cvterms.createSpeciesAnnotations(pe);
+        }
+        bh.consume(model);
+    }
+}
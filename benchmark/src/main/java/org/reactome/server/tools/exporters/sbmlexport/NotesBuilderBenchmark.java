@@ -0,0 +1,50 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.openjdk.jmh.annotations.*;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.xml.XMLNode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of creating the notes for a species by parsing a String,
+ * as all notes were created originally, with the cost of building the XMLNode
+ * directly.
+ *
+ * The score is the time to create one species and append its notes.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class NotesBuilderBenchmark {
+
+    private static final String text = "Derived from a Reactome Complex." + System.getProperty("line.separator") +
+            "Here is Reactomes nested structure for this complex: (P09496, Q00610, P53680, O95782)";
+
+    private int count = 0;
+
+    @Benchmark
+    public Species parsedNotes() {
+        return createSpecies(XHTMLNodeBuilder.parseParagraph("notes", text));
+    }
+
+    @Benchmark
+    public Species builtNotes() {
+        return createSpecies(XHTMLNodeBuilder.createParagraph("notes", text));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private Species createSpecies(XMLNode node) {
+        Species s = new Species("species_" + (count++), 3, 1);
+        s.appendNotes(node);
+        return s;
+    }
+}
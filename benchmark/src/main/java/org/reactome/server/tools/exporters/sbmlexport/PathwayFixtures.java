@@ -0,0 +1,285 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.reactome.server.graph.domain.model.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds Reactome pathways in memory for the benchmarks so that no graph
+ * database is needed. Every relationship the exporters read is set on the
+ * objects so nothing is left to be fetched.
+ *
+ * The same arguments always produce the same pathway.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class PathwayFixtures {
+
+    /**
+     * The shapes of pathway that are built.
+     */
+    enum Shape {
+        /** a few reactions whose participants are complexes nested many levels deep */
+        DEEP_COMPLEXES(20, 12),
+        /** a few reactions whose participants are sets with many members */
+        LARGE_ENTITY_SETS(20, 400),
+        /** many reactions sharing a pool of simple participants */
+        LONG_EVENT_LIST(2000, 50);
+
+        final int numReactions;
+        final int size;
+
+        Shape(int numReactions, int size) {
+            this.numReactions = numReactions;
+            this.size = size;
+        }
+    }
+
+    private long nextDbId = 1000000L;
+
+    private final Compartment cytosol;
+    private final Compartment nucleus;
+    private final List<Person> people = new ArrayList<Person>();
+
+    private PathwayFixtures() {
+        cytosol = createCompartment("cytosol", "0005829");
+        nucleus = createCompartment("nucleoplasm", "0005654");
+        for (int i = 0; i < 5; i++) {
+            people.add(createPerson("Surname" + i, "Firstname" + i));
+        }
+    }
+
+    /**
+     * Create a pathway of the given shape.
+     *
+     * @param shape     Shape of the pathway
+     *
+     * @return Pathway with all its events and participants set
+     */
+    static Pathway createPathway(Shape shape) {
+        return new PathwayFixtures().buildPathway(shape);
+    }
+
+    /**
+     * Get every distinct participant of the reactions in the pathway.
+     *
+     * @param pathway   Pathway created by this class
+     *
+     * @return List of PhysicalEntity in the order they are first used
+     */
+    static List<PhysicalEntity> getParticipants(Pathway pathway) {
+        LongHashSet seen = new LongHashSet();
+        List<PhysicalEntity> participants = new ArrayList<PhysicalEntity>();
+        for (Event e : pathway.getHasEvent()) {
+            ReactionLikeEvent rle = (ReactionLikeEvent) e;
+            addParticipants(participants, seen, rle.getInput());
+            addParticipants(participants, seen, rle.getOutput());
+            for (CatalystActivity cat : rle.getCatalystActivity()) {
+                addParticipants(participants, seen, Collections.singletonList(cat.getPhysicalEntity()));
+            }
+        }
+        return participants;
+    }
+
+    private static void addParticipants(List<PhysicalEntity> participants, LongHashSet seen, List<PhysicalEntity> entities) {
+        for (PhysicalEntity pe : entities) {
+            if (seen.add(pe.getDbId())) {
+                participants.add(pe);
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private Pathway buildPathway(Shape shape) {
+        Pathway pathway = new Pathway();
+        setEventFields(pathway, "Benchmark pathway " + shape.name());
+
+        List<PhysicalEntity> pool = new ArrayList<PhysicalEntity>();
+        if (shape == Shape.LONG_EVENT_LIST) {
+            for (int i = 0; i < shape.size; i++) {
+                pool.add(i % 2 == 0 ? createSimpleEntity() : createProtein());
+            }
+        }
+
+        List<Event> events = new ArrayList<Event>();
+        for (int i = 0; i < shape.numReactions; i++) {
+            List<PhysicalEntity> inputs = new ArrayList<PhysicalEntity>();
+            List<PhysicalEntity> outputs = new ArrayList<PhysicalEntity>();
+            PhysicalEntity catalyst;
+            switch (shape) {
+                case DEEP_COMPLEXES:
+                    inputs.add(createComplex(shape.size));
+                    inputs.add(createSimpleEntity());
+                    outputs.add(createComplex(shape.size));
+                    catalyst = createComplex(shape.size / 2);
+                    break;
+                case LARGE_ENTITY_SETS:
+                    inputs.add(createSet(new DefinedSet(), shape.size));
+                    outputs.add(createSet(new CandidateSet(), shape.size));
+                    catalyst = createSet(new DefinedSet(), shape.size / 4);
+                    break;
+                default:
+                    inputs.add(pool.get(i % pool.size()));
+                    inputs.add(pool.get((i + 1) % pool.size()));
+                    outputs.add(pool.get((i + 7) % pool.size()));
+                    catalyst = pool.get((i + 11) % pool.size());
+                    break;
+            }
+            events.add(createReaction(i, inputs, outputs, catalyst));
+        }
+        pathway.setHasEvent(events);
+        return pathway;
+    }
+
+    private Reaction createReaction(int index, List<PhysicalEntity> inputs, List<PhysicalEntity> outputs,
+                                    PhysicalEntity catalyst) {
+        Reaction rn = new Reaction();
+        setEventFields(rn, "Benchmark reaction " + index);
+        rn.setInput(inputs);
+        rn.setOutput(outputs);
+
+        GO_MolecularFunction activity = new GO_MolecularFunction();
+        setDatabaseObjectFields(activity, "kinase activity " + index);
+        activity.setAccession(String.format("%07d", 4672 + index));
+        activity.setEcNumber("2.7.11." + (index % 30));
+        CatalystActivity cat = new CatalystActivity();
+        setDatabaseObjectFields(cat, "catalyst activity " + index);
+        cat.setPhysicalEntity(catalyst);
+        cat.setActivity(activity);
+        rn.setCatalystActivity(Collections.singletonList(cat));
+        return rn;
+    }
+
+    private Complex createComplex(int depth) {
+        Complex complex = new Complex();
+        setPhysicalEntityFields(complex, "complex");
+        List<PhysicalEntity> components = new ArrayList<PhysicalEntity>();
+        components.add(createProtein());
+        components.add(createSimpleEntity());
+        if (depth > 1) {
+            components.add(createComplex(depth - 1));
+        }
+        else {
+            components.add(createProtein());
+        }
+        complex.setHasComponent(components);
+        return complex;
+    }
+
+    private EntitySet createSet(EntitySet set, int numMembers) {
+        setPhysicalEntityFields(set, "set");
+        List<PhysicalEntity> members = new ArrayList<PhysicalEntity>();
+        for (int i = 0; i < numMembers; i++) {
+            members.add(i % 3 == 0 ? createSimpleEntity() : createProtein());
+        }
+        set.setHasMember(members);
+        return set;
+    }
+
+    private SimpleEntity createSimpleEntity() {
+        SimpleEntity se = new SimpleEntity();
+        setPhysicalEntityFields(se, "compound");
+        ReferenceMolecule ref = new ReferenceMolecule();
+        setDatabaseObjectFields(ref, "ChEBI:" + se.getDbId());
+        ref.setIdentifier(Long.toString(se.getDbId() % 100000));
+        ref.setDatabaseName("ChEBI");
+        se.setReferenceEntity(ref);
+
+        DatabaseIdentifier kegg = new DatabaseIdentifier();
+        setDatabaseObjectFields(kegg, "COMPOUND:C" + se.getDbId());
+        kegg.setDatabaseName("COMPOUND");
+        kegg.setIdentifier(String.format("C%05d", se.getDbId() % 100000));
+        se.setCrossReference(Collections.singletonList(kegg));
+        return se;
+    }
+
+    private EntityWithAccessionedSequence createProtein() {
+        EntityWithAccessionedSequence ewas = new EntityWithAccessionedSequence();
+        setPhysicalEntityFields(ewas, "protein");
+        ReferenceGeneProduct ref = new ReferenceGeneProduct();
+        setDatabaseObjectFields(ref, "UniProt:P" + ewas.getDbId());
+        ref.setIdentifier(String.format("P%05d", ewas.getDbId() % 100000));
+        ref.setDatabaseName("UniProt");
+        ewas.setReferenceEntity(ref);
+        return ewas;
+    }
+
+    private Compartment createCompartment(String name, String accession) {
+        Compartment comp = new Compartment();
+        setDatabaseObjectFields(comp, name);
+        comp.setAccession(accession);
+        comp.setDatabaseName("GO");
+        return comp;
+    }
+
+    private Person createPerson(String surname, String firstname) {
+        Person person = new Person();
+        setDatabaseObjectFields(person, surname + ", " + firstname);
+        person.setSurname(surname);
+        person.setFirstname(firstname);
+        person.setInitial(firstname.substring(0, 1));
+        person.setEMailAddress(firstname.toLowerCase() + "@example.org");
+        Affiliation affiliation = new Affiliation();
+        setDatabaseObjectFields(affiliation, "Institute of " + surname);
+        affiliation.setName(Collections.singletonList("Institute of " + surname));
+        person.setAffiliation(Collections.singletonList(affiliation));
+        return person;
+    }
+
+    private InstanceEdit createInstanceEdit(int index) {
+        InstanceEdit edit = new InstanceEdit();
+        setDatabaseObjectFields(edit, "edit " + index);
+        edit.setDateTime(String.format("20%02d-%02d-%02d 10:%02d:00.0", 5 + index % 10, 1 + index % 12,
+                1 + index % 28, index % 60));
+        List<Person> authors = new ArrayList<Person>();
+        authors.add(people.get(index % people.size()));
+        authors.add(people.get((index + 2) % people.size()));
+        edit.setAuthor(authors);
+        return edit;
+    }
+
+    private void setEventFields(Event event, String name) {
+        setDatabaseObjectFields(event, name);
+        int index = (int) (event.getDbId() % 97);
+        event.setCreated(createInstanceEdit(index));
+        event.setModified(createInstanceEdit(index + 1));
+        event.setAuthored(Collections.singletonList(createInstanceEdit(index + 2)));
+        event.setRevised(Collections.singletonList(createInstanceEdit(index + 3)));
+
+        Summation summation = new Summation();
+        setDatabaseObjectFields(summation, "summation of " + name);
+        summation.setText("<p>The <b>" + name + "</b> converts its inputs to its outputs &amp; is " +
+                "catalysed by a kinase.</p>\n<br>It has been described in several papers.");
+        event.setSummation(Collections.singletonList(summation));
+
+        LiteratureReference lit = new LiteratureReference();
+        setDatabaseObjectFields(lit, "paper about " + name);
+        lit.setPubMedIdentifier((int) (event.getDbId() % 10000000));
+        lit.setJournal("J Biol Chem");
+        lit.setYear(2000 + index % 17);
+        event.setLiteratureReference(Collections.<Publication>singletonList(lit));
+
+        GO_BiologicalProcess process = new GO_BiologicalProcess();
+        setDatabaseObjectFields(process, "process of " + name);
+        process.setAccession(String.format("%07d", 8150 + index));
+        event.setGoBiologicalProcess(process);
+    }
+
+    private void setPhysicalEntityFields(PhysicalEntity pe, String name) {
+        setDatabaseObjectFields(pe, name);
+        pe.setDisplayName(name + " " + pe.getDbId() + " [" + (pe.getDbId() % 2 == 0 ? "cytosol" : "nucleoplasm") + "]");
+        pe.setCompartment(Collections.singletonList(pe.getDbId() % 2 == 0 ? cytosol : nucleus));
+    }
+
+    private void setDatabaseObjectFields(DatabaseObject obj, String name) {
+        long dbId = nextDbId++;
+        obj.setDbId(dbId);
+        obj.setStId("R-HSA-" + dbId);
+        obj.setDisplayName(name);
+    }
+}
@@ -0,0 +1,90 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.openjdk.jmh.annotations.*;
+import org.reactome.server.graph.domain.model.Pathway;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures writing a whole pathway: WriteSBML building the model in memory,
+ * WriteSBML building the model and writing it to a file, and the
+ * StreamingSBMLWriter writing the same file. The score is the number of
+ * pathways written per second.
+ *
+ * The run-wide caches are optional so that a run with every annotation
+ * already cached can be compared with one without caching.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WriteSBMLBenchmark {
+
+    @Param({"DEEP_COMPLEXES", "LARGE_ENTITY_SETS", "LONG_EVENT_LIST"})
+    public PathwayFixtures.Shape shape;
+
+    @Param({"false", "true"})
+    public boolean useCaches;
+
+    private Pathway pathway;
+    private ExportCaches caches;
+    private String filename;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        pathway = PathwayFixtures.createPathway(shape);
+        File file = File.createTempFile("benchmark_" + shape.name(), ".xml");
+        file.deleteOnExit();
+        filename = file.getPath();
+    }
+
+    @Setup(Level.Iteration)
+    public void clearCaches() {
+        // each iteration starts from empty caches which then fill during warm up
+        caches = useCaches ? new ExportCaches() : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        new File(filename).delete();
+    }
+
+    @Benchmark
+    public WriteSBML createModel() {
+        WriteSBML sbml = createWriter();
+        sbml.createModel();
+        return sbml;
+    }
+
+    @Benchmark
+    public WriteSBML createModelAndWrite() {
+        WriteSBML sbml = createWriter();
+        sbml.createModel();
+        sbml.toFile(filename);
+        return sbml;
+    }
+
+    @Benchmark
+    public StreamingSBMLWriter streamToFile() {
+        StreamingSBMLWriter stream = new StreamingSBMLWriter(pathway, 59);
+        stream.setInTestModeFlag(true);
+        stream.setExportCaches(caches);
+        stream.toFile(filename);
+        return stream;
+    }
+
+    private WriteSBML createWriter() {
+        WriteSBML sbml = new WriteSBML(pathway, 59);
+        // test mode leaves out the provenance annotation which reads the clock
+        sbml.setInTestModeFlag(true);
+        sbml.setExportCaches(caches);
+        return sbml;
+    }
+}
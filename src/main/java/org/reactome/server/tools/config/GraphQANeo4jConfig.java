@@ -26,23 +26,62 @@ public class GraphQANeo4jConfig extends Neo4jConfig {
 
     private static final Logger logger = LoggerFactory.getLogger("importLogger");
 
+    // system properties choosing the driver; both are optional
+    public static final String DRIVER_PROPERTY = "neo4j.driver";
+    public static final String POOL_SIZE_PROPERTY = "neo4j.pool.size";
+
+    public static final String HTTP = "http";
+    public static final String BOLT = "bolt";
+    public static final String DEFAULT_BOLT_PORT = "7687";
+
+    private static final String HTTP_DRIVER = "org.neo4j.ogm.drivers.http.driver.HttpDriver";
+    private static final String BOLT_DRIVER = "org.neo4j.ogm.drivers.bolt.driver.BoltDriver";
+
     private SessionFactory sessionFactory;
-    private Session session;
+    // a neo4j Session is not thread safe so each worker thread gets its own
+    private static final ThreadLocal<Session> sessions = new ThreadLocal<Session>();
 
+    /**
+     * Create the configuration of the neo4j driver. The HTTP driver is used
+     * unless the neo4j.driver property is "bolt". The Bolt driver keeps a pool
+     * of connections whose size is given by the neo4j.pool.size property;
+     * this should be at least the number of threads exporting at once.
+     *
+     * @return Configuration
+     */
     @Bean
     public Configuration getConfiguration() {
+        String driver = System.getProperty(DRIVER_PROPERTY, HTTP);
+        String address = System.getProperty("neo4j.host").concat(":").concat(System.getProperty("neo4j.port"));
         Configuration config = new Configuration();
-        config.driverConfiguration()
-                .setDriverClassName("org.neo4j.ogm.drivers.http.driver.HttpDriver")
-                .setURI("http://".concat(System.getProperty("neo4j.host")).concat(":").concat(System.getProperty("neo4j.port")))
-                .setCredentials(System.getProperty("neo4j.user"), System.getProperty("neo4j.password"));
+        if (driver.equals(BOLT)) {
+            config.driverConfiguration()
+                    .setDriverClassName(BOLT_DRIVER)
+                    .setURI("bolt://".concat(address))
+                    .setCredentials(System.getProperty("neo4j.user"), System.getProperty("neo4j.password"));
+            String poolSize = System.getProperty(POOL_SIZE_PROPERTY);
+            if (poolSize != null) {
+                config.driverConfiguration().setConnectionPoolSize(Integer.valueOf(poolSize));
+            }
+            logger.info("Using the neo4j Bolt driver at " + address + " with a pool of " +
+                    (poolSize == null ? "the default number of" : poolSize) + " connections");
+        }
+        else if (driver.equals(HTTP)) {
+            config.driverConfiguration()
+                    .setDriverClassName(HTTP_DRIVER)
+                    .setURI("http://".concat(address))
+                    .setCredentials(System.getProperty("neo4j.user"), System.getProperty("neo4j.password"));
+        }
+        else {
+            throw new IllegalArgumentException(driver + " is not a supported neo4j driver; expected " + HTTP + " or " + BOLT);
+        }
         return config;
     }
 
 
     @Override
     @Bean
-    public SessionFactory getSessionFactory() {
+    public synchronized SessionFactory getSessionFactory() {
         if (sessionFactory == null) {
             logger.info("Creating a Neo4j SessionFactory");
             sessionFactory = new SessionFactory(getConfiguration(), "org.reactome.server.graph.domain" );
@@ -54,12 +93,27 @@ public class GraphQANeo4jConfig extends Neo4jConfig {
     @Bean
     @Scope(value = "prototype", proxyMode = ScopedProxyMode.TARGET_CLASS)
     public Session getSession() throws Exception {
+        Session session = sessions.get();
         if (session == null){
-            logger.info("Opening neo4j Session");
+            logger.info("Opening neo4j Session for thread " + Thread.currentThread().getName());
             session = super.getSession();
+            sessions.set(session);
         }
 
         return session;
     }
 
+    /**
+     * Drop the Session of the current thread. Everything it has loaded is
+     * cleared from it so those objects can be collected once the thread no
+     * longer uses them, and the next use by the thread opens a new Session.
+     * A Session holds no connection between requests so nothing else needs closing.
+     */
+    public static void releaseSession() {
+        Session session = sessions.get();
+        if (session != null) {
+            session.clear();
+            sessions.remove();
+        }
+    }
 }
@@ -0,0 +1,76 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+
+import java.util.List;
+
+/**
+ * Where the exporters get the Reactome objects they write.
+ *
+ * The launcher only talks to the data through this interface so that the
+ * pathways can come from the graph database or from somewhere else, e.g.
+ * the SyntheticDataSource used for load testing without a database.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public interface ExportDataSource {
+
+    /**
+     * Get the version of the Reactome data.
+     *
+     * @return int the ReactomeDB version number
+     */
+    int getDBVersion();
+
+    /**
+     * Get every species that has pathways.
+     *
+     * @return List of Species
+     */
+    List<Species> getSpecies();
+
+    /**
+     * Find the species with the given dbId.
+     *
+     * @param dbId  Long dbId of the Species
+     *
+     * @return the Species or null if there is no such species
+     */
+    Species findSpecies(Long dbId);
+
+    /**
+     * Get the dbIds of all pathways of the species, including the pathways
+     * that are part of other pathways.
+     *
+     * @param species   Species to list
+     *
+     * @return List of Long dbIds of the pathways
+     */
+    List<Long> getPathwayIds(Species species);
+
+    /**
+     * Load the pathway with the given dbId.
+     *
+     * @param dbId  Long dbId of the Pathway
+     *
+     * @return the Pathway or null if there is no such pathway
+     */
+    Pathway loadPathway(Long dbId);
+
+    /**
+     * Find the event with the given dbId.
+     *
+     * @param dbId  Long dbId of the Event
+     *
+     * @return the Event or null if there is no such event
+     */
+    Event findEvent(Long dbId);
+
+    /**
+     * Drop everything the current thread has loaded so that it can be collected.
+     * Objects the thread loaded earlier are not returned by later loads.
+     */
+    void releaseSession();
+}
@@ -0,0 +1,166 @@
+package org.reactome.server.tools.datasource;
+
+import org.neo4j.ogm.session.Session;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.service.GeneralService;
+import org.reactome.server.graph.service.SchemaService;
+import org.reactome.server.graph.service.SpeciesService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.reactome.server.tools.config.GraphQANeo4jConfig;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the Reactome objects from the graph database using the graph-core services.
+ * ReactomeGraphCore must have been initialised before this is constructed.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class GraphCoreDataSource implements ExportDataSource {
+
+    private final GeneralService generalService;
+    private final DatabaseObjectService databaseObjectService;
+    private final SpeciesService speciesService;
+    private final SchemaService schemaService;
+
+    private final PathwaySubgraphLoader subgraphLoader;
+
+    private final SpeciesBulkLoader speciesLoader;
+
+    // the species being exported when loading species wide
+    private SpeciesStore currentStore = null;
+
+    /**
+     * Construct a data source using the services of ReactomeGraphCore.
+     *
+     * @param prefetch  boolean whether to load the whole subgraph of a
+     *                  pathway in a few queries when it is loaded
+     */
+    public GraphCoreDataSource(boolean prefetch) {
+        this(prefetch, false);
+    }
+
+    /**
+     * Construct a data source using the services of ReactomeGraphCore.
+     *
+     * @param prefetch      boolean whether to load the whole subgraph of a
+     *                      pathway in a few queries when it is loaded
+     * @param speciesWide   boolean whether to load all the pathways of a species
+     *                      at once when its pathways are listed; see SpeciesBulkLoader.
+     *                      The pathways must then be exported by a single thread
+     */
+    public GraphCoreDataSource(boolean prefetch, boolean speciesWide) {
+        generalService = ReactomeGraphCore.getService(GeneralService.class);
+        databaseObjectService = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        speciesService = ReactomeGraphCore.getService(SpeciesService.class);
+        schemaService = ReactomeGraphCore.getService(SchemaService.class);
+        if (prefetch) {
+            subgraphLoader = new PathwaySubgraphLoader(ReactomeGraphCore.getService(Session.class));
+        }
+        else {
+            subgraphLoader = null;
+        }
+        if (speciesWide) {
+            speciesLoader = new SpeciesBulkLoader(ReactomeGraphCore.getService(Session.class));
+        }
+        else {
+            speciesLoader = null;
+        }
+    }
+
+    @Override
+    public int getDBVersion() {
+        return generalService.getDBVersion();
+    }
+
+    @Override
+    public List<Species> getSpecies() {
+        return speciesService.getSpecies();
+    }
+
+    @Override
+    public Species findSpecies(Long dbId) {
+        return (Species) databaseObjectService.findByIdNoRelations(dbId);
+    }
+
+    /**
+     * Get the dbIds of all pathways of the species. If species wide loading is
+     * enabled all the pathways of the species are loaded into memory now, in
+     * place of those of the species before, and are then served from there by
+     * loadPathway.
+     *
+     * @param species   Species to list
+     *
+     * @return List of Long dbIds of the pathways
+     */
+    @Override
+    public List<Long> getPathwayIds(Species species) {
+        if (speciesLoader != null) {
+            if (currentStore == null || !currentStore.getSpeciesId().equals(species.getDbId())) {
+                // drop the last species before loading the next
+                currentStore = null;
+                currentStore = speciesLoader.load(species.getDbId());
+            }
+            return currentStore.getPathwayIds();
+        }
+        List<Long> ids = new ArrayList<Long>();
+        for (Pathway path : schemaService.getByClass(Pathway.class, species)) {
+            ids.add(path.getDbId());
+        }
+        return ids;
+    }
+
+    /**
+     * Load the Pathway with the given dbId. A pathway of a species loaded
+     * species wide is taken from memory. Otherwise if prefetching is enabled
+     * the subgraph needed by the exporters is loaded at the same time.
+     *
+     * @param dbId Long dbId of the ReactomeDB Pathway
+     *
+     * @return the Pathway
+     */
+    @Override
+    public Pathway loadPathway(Long dbId) {
+        Pathway stored = findStored(dbId);
+        if (stored != null) {
+            return stored;
+        }
+        if (subgraphLoader != null) {
+            Pathway pathway = subgraphLoader.load(dbId);
+            if (pathway != null) {
+                return pathway;
+            }
+        }
+        return (Pathway) databaseObjectService.findByIdNoRelations(dbId);
+    }
+
+    @Override
+    public Event findEvent(Long dbId) {
+        return (Event) databaseObjectService.findByIdNoRelations(dbId);
+    }
+
+    /**
+     * Drop the graph session of the current thread; see GraphQANeo4jConfig.
+     */
+    @Override
+    public void releaseSession() {
+        GraphQANeo4jConfig.releaseSession();
+    }
+
+    /**
+     * Get the objects loaded for the species whose pathways were listed last.
+     *
+     * @return SpeciesStore or null if the pathways are not loaded species wide
+     */
+    public SpeciesStore getSpeciesStore() {
+        return currentStore;
+    }
+
+    private Pathway findStored(Long dbId) {
+        return (currentStore == null) ? null : currentStore.getPathway(dbId);
+    }
+}
@@ -0,0 +1,467 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.tools.launcher.OutputFiles;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of which events each Pathway contains, directly and through its
+ * descendants, built from the hasEvent graph.
+ *
+ * Every event is given a dense ordinal in the order it is first met, so the
+ * contents of a pathway are a BitSet over the ordinals. Because the ordinals are
+ * handed out walking down the hierarchy the events below a pathway have nearby
+ * ordinals, and each BitSet is written as only the words between its first and
+ * last set bit. Questions such as whether a pathway contains an event or which
+ * pathways contain all of a list of events are then answered with a few word
+ * operations rather than a walk. WriteSBML uses the index to find the pathway
+ * a list of events belongs to; the contents of the pathways it exports are
+ * still taken from the pathways themselves.
+ *
+ * The pathways above an event at any depth are worked out from the direct
+ * parents when first needed, so the pathways containing all of a list of
+ * events, and the lowest of them, are found by intersecting those sets however
+ * long the list.
+ *
+ * The index only knows that a pathway contains an event once that pathway has
+ * been added, so the pathways found above an event may be only some of them.
+ * A species is marked complete once every one of its pathways has been added;
+ * only then are the parents and ancestors of its events all known.
+ *
+ * The index can be written next to the output and read back by a later run.
+ * Adding and querying are synchronized so one index can be shared by the
+ * threads of a run.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PathwayContainmentIndex {
+
+    public static final String FILENAME = "pathway-index.bin";
+
+    // "RPCI" followed by the version of the layout
+    private static final int MAGIC = 0x52504349;
+    private static final int VERSION = 3;
+
+    private final int dbVersion;
+
+    // dbIds of the species whose pathways have all been added
+    private final Set<Long> completeSpecies = new HashSet<Long>();
+
+    // ordinal -> dbId of the event
+    private final List<Long> eventIds = new ArrayList<Long>();
+    private final Map<Long, Integer> ordinals = new HashMap<Long, Integer>();
+
+    // ordinal of an event -> ordinals of the pathways it is a direct child of
+    private final List<BitSet> parents = new ArrayList<BitSet>();
+
+    // dbId of a pathway -> ordinals of its direct children and of every event below it
+    private final Map<Long, BitSet> children = new HashMap<Long, BitSet>();
+    private final Map<Long, BitSet> closures = new HashMap<Long, BitSet>();
+
+    // ordinal of a pathway -> ordinals of the pathways above it at any depth;
+    // filled in as they are asked for and forgotten when a pathway is added
+    private final Map<Integer, BitSet> ancestors = new HashMap<Integer, BitSet>();
+
+    /**
+     * Construct an empty index.
+     *
+     * @param dbVersion int version of the Reactome data indexed
+     */
+    public PathwayContainmentIndex(int dbVersion) {
+        this.dbVersion = dbVersion;
+    }
+
+    /**
+     * Add a pathway and every pathway below it that is not already indexed.
+     *
+     * @param pathway   Pathway from ReactomeDB with its events loaded
+     */
+    public synchronized void add(Pathway pathway) {
+        if (pathway != null && pathway.getDbId() != null) {
+            int before = closures.size();
+            addPathway(pathway);
+            if (closures.size() != before) {
+                ancestors.clear();
+            }
+        }
+    }
+
+    /**
+     * Record that every pathway of the species has been added, so the
+     * parents of its events are all known.
+     *
+     * @param speciesId Long dbId of the Species
+     */
+    public synchronized void setSpeciesComplete(Long speciesId) {
+        completeSpecies.add(speciesId);
+    }
+
+    /**
+     * Determine whether every pathway of the species has been added.
+     *
+     * @param speciesId Long dbId of the Species
+     *
+     * @return true if the species is complete
+     */
+    public synchronized boolean isSpeciesComplete(Long speciesId) {
+        return completeSpecies.contains(speciesId);
+    }
+
+    /**
+     * Determine whether the contents of the pathway are known.
+     *
+     * @param pathwayId Long dbId of the Pathway
+     *
+     * @return true if the pathway has been indexed
+     */
+    public synchronized boolean isIndexed(Long pathwayId) {
+        return closures.containsKey(pathwayId);
+    }
+
+    /**
+     * Determine whether an event is in the pathway or any of its descendants.
+     *
+     * @param pathwayId Long dbId of the Pathway
+     * @param eventId   Long dbId of the Event
+     *
+     * @return true if the pathway contains the event
+     */
+    public synchronized boolean contains(Long pathwayId, Long eventId) {
+        BitSet closure = closures.get(pathwayId);
+        Integer ordinal = ordinals.get(eventId);
+        return closure != null && ordinal != null && closure.get(ordinal);
+    }
+
+    /**
+     * Get the pathways that each of the events is a direct child of. These are
+     * only all of them if the species of the events are complete.
+     *
+     * @param eventIds  Collection of Long dbIds of the Events
+     *
+     * @return List of Long dbIds of the Pathways or null if any of the events
+     *         is not indexed
+     */
+    public synchronized List<Long> getParentCandidates(Collection<Long> eventIds) {
+        BitSet candidates = null;
+        for (Long eventId : eventIds) {
+            Integer ordinal = ordinals.get(eventId);
+            if (ordinal == null) {
+                return null;
+            }
+            if (candidates == null) {
+                candidates = (BitSet) parents.get(ordinal).clone();
+            }
+            else {
+                candidates.and(parents.get(ordinal));
+            }
+        }
+        return candidates == null ? new ArrayList<Long>() : toIds(candidates);
+    }
+
+    /**
+     * Get the pathways that contain all of the events, directly or through
+     * their descendants.
+     *
+     * @param eventIds  Collection of Long dbIds of the Events
+     *
+     * @return List of Long dbIds of the Pathways or null if any of the events
+     *         is not indexed
+     */
+    public synchronized List<Long> getCommonAncestors(Collection<Long> eventIds) {
+        BitSet common = commonAncestors(eventIds);
+        return common == null ? null : toIds(common);
+    }
+
+    /**
+     * Get the lowest pathways that contain all of the events: those common
+     * ancestors that are not above another common ancestor. There is more than
+     * one only where the hierarchy branches and joins again; the nearest, that
+     * with the fewest events below it, comes first.
+     *
+     * @param eventIds  Collection of Long dbIds of the Events
+     *
+     * @return List of Long dbIds of the Pathways, nearest first, or null if any
+     *         of the events is not indexed
+     */
+    public synchronized List<Long> getLowestCommonAncestors(Collection<Long> eventIds) {
+        BitSet common = commonAncestors(eventIds);
+        if (common == null) {
+            return null;
+        }
+        BitSet lowest = (BitSet) common.clone();
+        for (int i = common.nextSetBit(0); i >= 0; i = common.nextSetBit(i + 1)) {
+            lowest.andNot(getAncestors(i));
+        }
+        List<Long> ids = toIds(lowest);
+        final Map<Long, Integer> sizes = new HashMap<Long, Integer>();
+        for (Long dbId : ids) {
+            sizes.put(dbId, closures.get(dbId).cardinality());
+        }
+        Collections.sort(ids, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                return sizes.get(a).compareTo(sizes.get(b));
+            }
+        });
+        return ids;
+    }
+
+    public int getDbVersion() {
+        return dbVersion;
+    }
+
+    public synchronized int getNumPathways() {
+        return closures.size();
+    }
+
+    public synchronized int getNumEvents() {
+        return eventIds.size();
+    }
+
+    /**
+     * Write the index to a file. The file is written through OutputFiles
+     * so a reader never sees part of it.
+     *
+     * @param file  File to write
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void write(File file) throws IOException {
+        File tmp = OutputFiles.temporaryFile(file);
+        boolean written = false;
+        try {
+            writeTo(tmp);
+            written = true;
+        }
+        finally {
+            if (!written) {
+                OutputFiles.discard(tmp);
+            }
+        }
+        OutputFiles.move(tmp, file);
+    }
+
+    private void writeTo(File tmp) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp.toPath())));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(dbVersion);
+            out.writeInt(completeSpecies.size());
+            for (Long speciesId : completeSpecies) {
+                out.writeLong(speciesId);
+            }
+            out.writeInt(eventIds.size());
+            for (Long dbId : eventIds) {
+                out.writeLong(dbId);
+            }
+            out.writeInt(closures.size());
+            for (Map.Entry<Long, BitSet> entry : closures.entrySet()) {
+                out.writeLong(entry.getKey());
+                writeBits(out, children.get(entry.getKey()));
+                writeBits(out, entry.getValue());
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Read an index written by write().
+     *
+     * @param file  File to read
+     *
+     * @return PathwayContainmentIndex read
+     *
+     * @throws IOException if the file cannot be read or is not an index
+     */
+    public static PathwayContainmentIndex read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())));
+        try {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a pathway index");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is version " + version + " of the pathway index; expected " + VERSION);
+            }
+            PathwayContainmentIndex index = new PathwayContainmentIndex(in.readInt());
+            int numSpecies = in.readInt();
+            for (int i = 0; i < numSpecies; i++) {
+                index.completeSpecies.add(in.readLong());
+            }
+            int numEvents = in.readInt();
+            for (int i = 0; i < numEvents; i++) {
+                index.getOrdinal(in.readLong());
+            }
+            int numPathways = in.readInt();
+            for (int i = 0; i < numPathways; i++) {
+                Long dbId = in.readLong();
+                BitSet direct = readBits(in);
+                index.children.put(dbId, direct);
+                index.closures.put(dbId, readBits(in));
+                index.addParents(index.getOrdinal(dbId), direct);
+            }
+            return index;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "Pathway index of version " + dbVersion + ": " + closures.size() + " pathways, " + eventIds.size() + " events, " +
+                completeSpecies.size() + " complete species";
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private BitSet addPathway(Pathway pathway) {
+        BitSet closure = closures.get(pathway.getDbId());
+        if (closure != null) {
+            return closure;
+        }
+        int ordinal = getOrdinal(pathway.getDbId());
+        BitSet direct = new BitSet();
+        closure = new BitSet();
+        if (pathway.getHasEvent() != null) {
+            for (Event event : pathway.getHasEvent()) {
+                if (event.getDbId() == null) {
+                    continue;
+                }
+                int child = getOrdinal(event.getDbId());
+                direct.set(child);
+                closure.set(child);
+                if (event instanceof Pathway) {
+                    closure.or(addPathway((Pathway) (event)));
+                }
+            }
+        }
+        children.put(pathway.getDbId(), direct);
+        closures.put(pathway.getDbId(), closure);
+        addParents(ordinal, direct);
+        return closure;
+    }
+
+    /**
+     * Intersect the ancestors of the events. Events with the same direct
+     * parents have the same ancestors, so each set of parents is only
+     * looked at once however many events share it.
+     *
+     * @return BitSet of pathway ordinals or null if an event is not indexed
+     */
+    private BitSet commonAncestors(Collection<Long> eventIds) {
+        Set<BitSet> seen = new HashSet<BitSet>();
+        BitSet common = null;
+        for (Long eventId : eventIds) {
+            Integer ordinal = ordinals.get(eventId);
+            if (ordinal == null) {
+                return null;
+            }
+            BitSet direct = parents.get(ordinal);
+            if ((common != null && common.isEmpty()) || !seen.add(direct)) {
+                continue;
+            }
+            BitSet above = (BitSet) direct.clone();
+            for (int i = direct.nextSetBit(0); i >= 0; i = direct.nextSetBit(i + 1)) {
+                above.or(getAncestors(i));
+            }
+            if (common == null) {
+                common = above;
+            }
+            else {
+                common.and(above);
+            }
+        }
+        return common == null ? new BitSet() : common;
+    }
+
+    private BitSet getAncestors(int pathwayOrdinal) {
+        BitSet above = ancestors.get(pathwayOrdinal);
+        if (above == null) {
+            above = new BitSet();
+            // stored before walking up so a cycle in the data cannot recurse for ever
+            ancestors.put(pathwayOrdinal, above);
+            BitSet direct = parents.get(pathwayOrdinal);
+            above.or(direct);
+            for (int i = direct.nextSetBit(0); i >= 0; i = direct.nextSetBit(i + 1)) {
+                above.or(getAncestors(i));
+            }
+        }
+        return above;
+    }
+
+    private void addParents(int pathwayOrdinal, BitSet direct) {
+        for (int i = direct.nextSetBit(0); i >= 0; i = direct.nextSetBit(i + 1)) {
+            parents.get(i).set(pathwayOrdinal);
+        }
+    }
+
+    private int getOrdinal(Long dbId) {
+        Integer ordinal = ordinals.get(dbId);
+        if (ordinal == null) {
+            ordinal = eventIds.size();
+            ordinals.put(dbId, ordinal);
+            eventIds.add(dbId);
+            parents.add(new BitSet());
+        }
+        return ordinal;
+    }
+
+    private List<Long> toIds(BitSet bits) {
+        List<Long> ids = new ArrayList<Long>(bits.cardinality());
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            ids.add(eventIds.get(i));
+        }
+        return ids;
+    }
+
+    /**
+     * Write only the words between the first and last set bit; the events
+     * of a pathway have nearby ordinals so this is usually a few words.
+     */
+    private static void writeBits(DataOutputStream out, BitSet bits) throws IOException {
+        long[] words = bits.toLongArray();
+        int first = 0;
+        while (first < words.length && words[first] == 0) {
+            first++;
+        }
+        out.writeInt(first);
+        out.writeInt(words.length - first);
+        for (int i = first; i < words.length; i++) {
+            out.writeLong(words[i]);
+        }
+    }
+
+    private static BitSet readBits(DataInputStream in) throws IOException {
+        int first = in.readInt();
+        int length = in.readInt();
+        long[] words = new long[first + length];
+        for (int i = first; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return BitSet.valueOf(words);
+    }
+}
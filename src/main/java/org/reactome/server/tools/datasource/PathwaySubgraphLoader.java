@@ -0,0 +1,125 @@
+package org.reactome.server.tools.datasource;
+
+import org.neo4j.ogm.session.Session;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Loads everything the exporters need for a Pathway in a fixed number of queries.
+ *
+ * Walking a Pathway through the domain getters lazily loads each relationship
+ * with its own round trip to the database. This class instead runs a few
+ * parameterised Cypher queries that return the whole subgraph as paths. The
+ * neo4j session maps every node and relationship in the responses onto the same
+ * domain objects, so by the time the Pathway is returned its events, participants,
+ * compartments, publications, summations and InstanceEdits are already in memory.
+ *
+ * Relationships that do not exist in the database (e.g. an Event with no summation)
+ * are not represented in the responses and will still be looked up lazily.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PathwaySubgraphLoader {
+
+    private static final String PATHWAY =
+            "MATCH (p:Pathway{dbId:{dbId}}) RETURN p";
+
+    private static final String EVENT_HIERARCHY =
+            "MATCH path=(:Pathway{dbId:{dbId}})-[:hasEvent*]->(:Event) " +
+            "RETURN path";
+
+    private static final String EVENT_ANNOTATIONS =
+            "MATCH (:Pathway{dbId:{dbId}})-[:hasEvent*0..]->(e:Event) " +
+            "WITH DISTINCT e " +
+            "MATCH path=(e)-[:summation|literatureReference|goBiologicalProcess|compartment]->() " +
+            "RETURN path";
+
+    private static final String EVENT_HISTORY =
+            "MATCH (:Pathway{dbId:{dbId}})-[:hasEvent*0..]->(e:Event) " +
+            "WITH DISTINCT e " +
+            "MATCH path=(e)-[:created|modified|authored|revised]-(:InstanceEdit)-[:author]-(:Person) " +
+            "RETURN path";
+
+    private static final String PERSON_AFFILIATIONS =
+            "MATCH (:Pathway{dbId:{dbId}})-[:hasEvent*0..]->(:Event)-[:created|modified|authored|revised]-(:InstanceEdit)-[:author]-(p:Person) " +
+            "WITH DISTINCT p " +
+            "MATCH path=(p)-[:affiliation]->(:Affiliation) " +
+            "RETURN path";
+
+    private static final String REACTION_PARTICIPANTS =
+            "MATCH (:Pathway{dbId:{dbId}})-[:hasEvent*]->(rle:ReactionLikeEvent) " +
+            "WITH DISTINCT rle " +
+            "MATCH path=(rle)-[:input|output|catalystActivity|positivelyRegulatedBy|negativelyRegulatedBy]->()" +
+            "-[:physicalEntity|activity|regulator*0..1]->() " +
+            "RETURN path";
+
+    private static final String ENTITY_DETAILS =
+            "MATCH (:Pathway{dbId:{dbId}})-[:hasEvent*]->(:ReactionLikeEvent)" +
+            "-[:input|output|catalystActivity|positivelyRegulatedBy|negativelyRegulatedBy|physicalEntity|regulator*1..2]->(pe:PhysicalEntity) " +
+            "WITH DISTINCT pe " +
+            "MATCH (pe)-[:hasComponent|hasMember|hasCandidate|repeatedUnit*0..]->(x:PhysicalEntity) " +
+            "WITH DISTINCT x " +
+            "MATCH path=(x)-[:compartment|referenceEntity|crossReference|inferredTo|hasModifiedResidue|" +
+            "hasComponent|hasMember|hasCandidate|repeatedUnit]->()-[:psiMod*0..1]->() " +
+            "RETURN path";
+
+    // inferredFrom is the incoming side of inferredTo
+    private static final String ENTITY_INFERRED_FROM =
+            "MATCH (:Pathway{dbId:{dbId}})-[:hasEvent*]->(:ReactionLikeEvent)" +
+            "-[:input|output|catalystActivity|positivelyRegulatedBy|negativelyRegulatedBy|physicalEntity|regulator*1..2]->(pe:PhysicalEntity) " +
+            "WITH DISTINCT pe " +
+            "MATCH path=(pe)<-[:inferredTo]-(:PhysicalEntity) " +
+            "RETURN path";
+
+    private static final String[] SUBGRAPH_QUERIES = {
+            EVENT_HIERARCHY, EVENT_ANNOTATIONS, EVENT_HISTORY, PERSON_AFFILIATIONS,
+            REACTION_PARTICIPANTS, ENTITY_DETAILS, ENTITY_INFERRED_FROM
+    };
+
+    private final Session session;
+
+    /**
+     * Construct a loader using the given neo4j session. The session passed
+     * by ReactomeGraphCore is specific to the calling thread.
+     *
+     * @param session   neo4j Session
+     */
+    public PathwaySubgraphLoader(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Load the Pathway with the given dbId together with the subgraph
+     * used when exporting it.
+     *
+     * @param dbId  Long dbId of the Pathway
+     *
+     * @return the Pathway or null if there is no Pathway with this dbId
+     */
+    public Pathway load(Long dbId) {
+        Map<String, Object> params = Collections.<String, Object>singletonMap("dbId", dbId);
+        Pathway pathway = session.queryForObject(Pathway.class, PATHWAY, params);
+        if (pathway == null) {
+            return null;
+        }
+        for (String query : SUBGRAPH_QUERIES) {
+            // the results are mapped into the session; the returned objects
+            // are the same instances reachable from the pathway
+            session.query(DatabaseObject.class, query, params);
+        }
+        return pathway;
+    }
+
+    /**
+     * Get the number of database round trips made by load(). This does not
+     * depend on the size of the Pathway.
+     *
+     * @return number of queries per pathway
+     */
+    public static int getNumQueries() {
+        return SUBGRAPH_QUERIES.length + 1;
+    }
+}
@@ -0,0 +1,398 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reads the Reactome objects from a snapshot file written by the SnapshotWriter.
+ *
+ * The file is memory mapped and nothing is decoded when it is opened apart from
+ * the class table and the list of species. Loading a pathway looks up each object
+ * it reaches in the dbId index and creates the graph-core domain object from its
+ * record, so only the objects of that pathway are ever in memory. As with the
+ * graph database each load creates its own instances.
+ *
+ * Several threads may load pathways at the same time.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SnapshotDataSource implements ExportDataSource {
+
+    private final int dbVersion;
+    private final int numObjects;
+
+    private final MappedByteBuffer[] segments;
+    private final LongBuffer indexIds;
+    private final LongBuffer indexOffsets;
+
+    private final List<ClassEntry> classes = new ArrayList<ClassEntry>();
+    private final Map<Long, long[]> speciesPathways = new LinkedHashMap<Long, long[]>();
+    private final List<Species> species = new ArrayList<Species>();
+
+    /**
+     * A class in the class table with the fields of the properties written for it.
+     */
+    private static class ClassEntry {
+        final Class<?> type;
+        final byte[] kinds;
+        final boolean[] deep;
+        final Field[] fields;
+
+        ClassEntry(Class<?> type, int numProperties) {
+            this.type = type;
+            this.kinds = new byte[numProperties];
+            this.deep = new boolean[numProperties];
+            this.fields = new Field[numProperties];
+        }
+    }
+
+    /**
+     * Open the snapshot file.
+     *
+     * @param file  File written by the SnapshotWriter
+     *
+     * @throws IOException if the file cannot be read or is not a snapshot
+     */
+    public SnapshotDataSource(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() < SnapshotFormat.HEADER_SIZE) {
+                throw new IOException(file.getPath() + " is not a snapshot file");
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SnapshotFormat.HEADER_SIZE);
+            if (header.getInt() != SnapshotFormat.MAGIC) {
+                throw new IOException(file.getPath() + " is not a snapshot file");
+            }
+            int version = header.getInt();
+            if (version != SnapshotFormat.VERSION) {
+                throw new IOException(file.getPath() + " is a version " + version + " snapshot; expected version " +
+                        SnapshotFormat.VERSION);
+            }
+            dbVersion = header.getInt();
+            numObjects = header.getInt();
+            long classTableOffset = header.getLong();
+            long speciesOffset = header.getLong();
+            long indexOffset = header.getLong();
+            long length = header.getLong();
+            if (length != channel.size()) {
+                throw new IOException(file.getPath() + " is incomplete");
+            }
+
+            // the records, mapped in segments since a single mapping is limited to 2GB
+            int numSegments = (int) ((classTableOffset + SnapshotFormat.SEGMENT_SIZE - 1) >>> SnapshotFormat.SEGMENT_BITS);
+            segments = new MappedByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                long start = (long) i << SnapshotFormat.SEGMENT_BITS;
+                long size = Math.min(SnapshotFormat.SEGMENT_SIZE, classTableOffset - start);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            }
+
+            readClassTable(channel.map(FileChannel.MapMode.READ_ONLY, classTableOffset, speciesOffset - classTableOffset));
+            readSpecies(channel.map(FileChannel.MapMode.READ_ONLY, speciesOffset, indexOffset - speciesOffset));
+
+            if (length - indexOffset != 16L * numObjects) {
+                throw new IOException(file.getPath() + " has an index of the wrong size");
+            }
+            if (16L * numObjects > Integer.MAX_VALUE) {
+                throw new IOException(file.getPath() + " has too many objects to index");
+            }
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, length - indexOffset);
+            indexIds = index.asLongBuffer();
+            indexIds.limit(numObjects);
+            index.position(8 * numObjects);
+            indexOffsets = index.slice().asLongBuffer();
+        }
+        finally {
+            // the mappings remain valid once the file is closed
+            raf.close();
+        }
+
+        for (Long dbId : speciesPathways.keySet()) {
+            Species s = (Species) new Loader().get(dbId, true);
+            if (s != null) {
+                species.add(s);
+            }
+        }
+        System.out.println("Opened snapshot of " + numObjects + " objects for Reactome version " + dbVersion);
+    }
+
+    @Override
+    public int getDBVersion() {
+        return dbVersion;
+    }
+
+    @Override
+    public List<Species> getSpecies() {
+        return new ArrayList<Species>(species);
+    }
+
+    @Override
+    public Species findSpecies(Long dbId) {
+        for (Species s : species) {
+            if (s.getDbId().equals(dbId)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<Long> getPathwayIds(Species species) {
+        List<Long> ids = new ArrayList<Long>();
+        long[] pathways = species == null ? null : speciesPathways.get(species.getDbId());
+        if (pathways != null) {
+            for (long dbId : pathways) {
+                ids.add(dbId);
+            }
+        }
+        return ids;
+    }
+
+    @Override
+    public Pathway loadPathway(Long dbId) {
+        DatabaseObject obj = new Loader().get(dbId, true);
+        return obj instanceof Pathway ? (Pathway) obj : null;
+    }
+
+    @Override
+    public Event findEvent(Long dbId) {
+        DatabaseObject obj = new Loader().get(dbId, true);
+        return obj instanceof Event ? (Event) obj : null;
+    }
+
+    @Override
+    public void releaseSession() {
+        // each load reads its own objects from the snapshot so no thread holds any
+    }
+
+    public int getNumObjects() {
+        return numObjects;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to read the sections
+
+    private void readClassTable(ByteBuffer buf) throws IOException {
+        int numClasses = buf.getInt();
+        for (int i = 0; i < numClasses; i++) {
+            String name = getName(buf);
+            Class<?> type;
+            try {
+                type = Class.forName(name);
+            }
+            catch (ClassNotFoundException e) {
+                throw new IOException("The snapshot contains " + name + " which is not a known class");
+            }
+            int numProperties = buf.getInt();
+            ClassEntry entry = new ClassEntry(type, numProperties);
+            for (int p = 0; p < numProperties; p++) {
+                // a field missing from this version of graph-core is skipped when read
+                entry.fields[p] = SnapshotFormat.findField(type, getName(buf));
+                entry.kinds[p] = buf.get();
+                entry.deep[p] = buf.get() != 0;
+            }
+            classes.add(entry);
+        }
+    }
+
+    private void readSpecies(ByteBuffer buf) {
+        int numSpecies = buf.getInt();
+        for (int i = 0; i < numSpecies; i++) {
+            long dbId = buf.getLong();
+            long[] pathways = new long[buf.getInt()];
+            for (int p = 0; p < pathways.length; p++) {
+                pathways[p] = buf.getLong();
+            }
+            speciesPathways.put(dbId, pathways);
+        }
+    }
+
+    private static String getName(ByteBuffer buf) {
+        byte[] bytes = new byte[buf.getShort()];
+        buf.get(bytes);
+        return new String(bytes, SnapshotFormat.UTF8);
+    }
+
+    /**
+     * Find the offset of the record of the object with the given dbId.
+     *
+     * @return long offset or -1 if the object is not in the snapshot
+     */
+    private long findOffset(long dbId) {
+        int low = 0;
+        int high = numObjects - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = indexIds.get(mid);
+            if (value < dbId) {
+                low = mid + 1;
+            }
+            else if (value > dbId) {
+                high = mid - 1;
+            }
+            else {
+                return indexOffsets.get(mid);
+            }
+        }
+        return -1;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates the objects for one load. Each object is created once per load so that
+     * a pathway refers to a single instance of each participant.
+     */
+    private class Loader {
+
+        private final Map<Long, DatabaseObject> objects = new HashMap<Long, DatabaseObject>();
+        // the objects whose relationships have been read
+        private final Set<Long> complete = new HashSet<Long>();
+
+        /**
+         * Get the object with the given dbId.
+         *
+         * @param dbId  Long dbId of the object
+         * @param deep  boolean whether the relationships of the object are needed
+         *
+         * @return the DatabaseObject or null if it is not in the snapshot
+         */
+        DatabaseObject get(Long dbId, boolean deep) {
+            if (dbId == null) {
+                return null;
+            }
+            DatabaseObject obj = objects.get(dbId);
+            if (obj != null && (!deep || complete.contains(dbId))) {
+                return obj;
+            }
+            long offset = findOffset(dbId);
+            if (offset < 0) {
+                return null;
+            }
+            // each thread reads through its own view of the shared mapping
+            ByteBuffer buf = segments[(int) (offset >>> SnapshotFormat.SEGMENT_BITS)].duplicate();
+            buf.position((int) (offset & (SnapshotFormat.SEGMENT_SIZE - 1)));
+
+            boolean full = buf.get() == SnapshotFormat.FULL && deep;
+            ClassEntry entry = classes.get((int) SnapshotFormat.getVarLong(buf));
+            if (obj == null) {
+                obj = create(entry.type);
+                objects.put(dbId, obj);
+            }
+            if (full) {
+                // before reading the relationships, which may lead back to this object
+                complete.add(dbId);
+            }
+            read(buf, entry, obj, full);
+            return obj;
+        }
+
+        private void read(ByteBuffer buf, ClassEntry entry, DatabaseObject obj, boolean full) {
+            long present = SnapshotFormat.getVarLong(buf);
+            for (long n = 0; n < present; n++) {
+                int p = (int) SnapshotFormat.getVarLong(buf);
+                Object value = readValue(buf, entry.kinds[p], entry.deep[p], full);
+                Field field = entry.fields[p];
+                if (field != null && (full || (entry.kinds[p] != SnapshotFormat.REF && entry.kinds[p] != SnapshotFormat.REF_LIST))) {
+                    set(field, obj, value);
+                }
+            }
+        }
+
+        private Object readValue(ByteBuffer buf, byte kind, boolean deep, boolean full) {
+            switch (kind) {
+                case SnapshotFormat.STRING:
+                    return getString(buf);
+                case SnapshotFormat.INTEGER:
+                    return buf.getInt();
+                case SnapshotFormat.LONG:
+                    return buf.getLong();
+                case SnapshotFormat.BOOLEAN:
+                    return buf.get() != 0;
+                case SnapshotFormat.DOUBLE:
+                    return buf.getDouble();
+                case SnapshotFormat.FLOAT:
+                    return buf.getFloat();
+                case SnapshotFormat.STRING_LIST:
+                    int numStrings = (int) SnapshotFormat.getVarLong(buf);
+                    List<String> strings = new ArrayList<String>(numStrings);
+                    for (int i = 0; i < numStrings; i++) {
+                        strings.add(getString(buf));
+                    }
+                    return strings;
+                case SnapshotFormat.REF:
+                    long target = SnapshotFormat.getVarLong(buf);
+                    return full && target != 0 ? get(target, deep) : null;
+                case SnapshotFormat.REF_LIST:
+                    int numRefs = (int) SnapshotFormat.getVarLong(buf);
+                    List<DatabaseObject> refs = new ArrayList<DatabaseObject>(numRefs);
+                    for (int i = 0; i < numRefs; i++) {
+                        long ref = SnapshotFormat.getVarLong(buf);
+                        if (full) {
+                            DatabaseObject obj = get(ref, deep);
+                            if (obj != null) {
+                                refs.add(obj);
+                            }
+                        }
+                    }
+                    return refs;
+                default:
+                    throw new IllegalStateException("Unknown kind of property " + kind + " in snapshot");
+            }
+        }
+
+        private String getString(ByteBuffer buf) {
+            byte[] bytes = new byte[(int) SnapshotFormat.getVarLong(buf)];
+            buf.get(bytes);
+            return new String(bytes, SnapshotFormat.UTF8);
+        }
+
+        private DatabaseObject create(Class<?> type) {
+            try {
+                return (DatabaseObject) type.newInstance();
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Cannot create " + type.getName(), e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void set(Field field, DatabaseObject obj, Object value) {
+            if (value instanceof List && Set.class.isAssignableFrom(field.getType())) {
+                value = new LinkedHashSet<Object>((Collection<Object>) value);
+            }
+            if (value != null && !field.getType().isPrimitive() && !field.getType().isInstance(value)) {
+                // e.g. a relationship whose target was not written as the expected class
+                return;
+            }
+            try {
+                field.set(obj, value);
+            }
+            catch (IllegalAccessException e) {
+                throw new IllegalStateException("Cannot set " + field.getName() + " of " + obj.getClass().getSimpleName(), e);
+            }
+        }
+    }
+}
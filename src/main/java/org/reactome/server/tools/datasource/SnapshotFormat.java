@@ -0,0 +1,285 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The layout of a snapshot file and the properties of the domain classes stored in it.
+ *
+ * A snapshot file is made up of
+ *  - a header of HEADER_SIZE bytes: magic, format version, dbVersion, number of
+ *    objects and the offsets of the sections that follow the records
+ *  - one record per object; no record crosses a SEGMENT_SIZE boundary so that
+ *    the records can be memory mapped in segments
+ *  - the class table: for each class the names and kinds of its properties
+ *  - the species section: each species with the dbIds of its pathways
+ *  - the index: the dbIds of all objects in ascending order followed by the
+ *    offsets of their records
+ *
+ * A record is a flag (SHELL or FULL), the index of its class in the class table,
+ * the number of properties present and then each property as its index and value.
+ * A FULL record includes the relationships used by the exporters; a SHELL record
+ * only has the simple properties and is written for objects that are only reached
+ * as the parent, species or inference of another object.
+ *
+ * The properties stored are found by reflection on the fields of the domain classes
+ * so that a snapshot holds everything graph-core loads for a node without listing it
+ * here. Relationships are only followed if they are named in DEEP or SHALLOW.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x52534E50; // "RSNP"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    static final int SEGMENT_BITS = 30;
+    static final long SEGMENT_SIZE = 1L << SEGMENT_BITS;
+
+    static final byte SHELL = 0;
+    static final byte FULL = 1;
+
+    // kinds of property
+    static final byte STRING = 1;
+    static final byte INTEGER = 2;
+    static final byte LONG = 3;
+    static final byte BOOLEAN = 4;
+    static final byte DOUBLE = 5;
+    static final byte FLOAT = 6;
+    static final byte STRING_LIST = 7;
+    static final byte REF = 8;
+    static final byte REF_LIST = 9;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    // relationships whose targets are stored with their own relationships;
+    // these are the relationships loaded by the PathwaySubgraphLoader
+    private static final Set<String> DEEP = new HashSet<String>(Arrays.asList(
+            "hasEvent", "literatureReference", "summation", "goBiologicalProcess", "compartment", "species",
+            "created", "modified", "authored", "edited", "revised", "reviewed", "author", "affiliation",
+            "input", "output", "catalystActivity", "positivelyRegulatedBy", "negativelyRegulatedBy",
+            "physicalEntity", "activity", "regulator", "hasComponent", "hasMember", "hasCandidate",
+            "repeatedUnit", "referenceEntity", "crossReference", "hasModifiedResidue", "psiMod"));
+
+    // relationships whose targets are only identified by the exporters
+    private static final Set<String> SHALLOW = new HashSet<String>(Arrays.asList(
+            "eventOf", "inferredTo", "inferredFrom"));
+
+    // the neo4j node id has no meaning outside the database
+    private static final Set<String> EXCLUDED = Collections.singleton("id");
+
+    private static final ClassValue<List<Property>> PROPERTIES = new ClassValue<List<Property>>() {
+        @Override
+        protected List<Property> computeValue(Class<?> type) {
+            return findProperties(type);
+        }
+    };
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * A field of a domain class that is stored in the snapshot.
+     */
+    static class Property {
+        final String name;
+        final byte kind;
+        final boolean deep;
+        final Field field;
+        private final Method getter;
+
+        Property(String name, byte kind, boolean deep, Field field) {
+            this.name = name;
+            this.kind = kind;
+            this.deep = deep;
+            this.field = field;
+            this.getter = findGetter(field);
+        }
+
+        boolean isRelationship() {
+            return kind == REF || kind == REF_LIST;
+        }
+
+        /**
+         * Get the value of the property. Relationships are read through the getter
+         * so that graph-core loads any that are not already in memory.
+         */
+        Object get(Object obj) {
+            try {
+                if (getter != null && isRelationship()) {
+                    return getter.invoke(obj);
+                }
+                return field.get(obj);
+            }
+            catch (Exception e) {
+                throw new IllegalStateException("Cannot read " + name + " of " + obj.getClass().getSimpleName(), e);
+            }
+        }
+    }
+
+    /**
+     * Get the properties of a domain class that are stored in a snapshot.
+     *
+     * @param type  Class of DatabaseObject
+     *
+     * @return List of Property in a fixed order
+     */
+    static List<Property> getProperties(Class<?> type) {
+        return PROPERTIES.get(type);
+    }
+
+    /**
+     * Find the field with the given name in the class or its superclasses.
+     *
+     * @param type  Class to search
+     * @param name  String name of the field
+     *
+     * @return the accessible Field or null if there is no such field
+     */
+    static Field findField(Class<?> type, String name) {
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            try {
+                Field field = c.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            }
+            catch (NoSuchFieldException e) {
+                // look in the superclass
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Determine how the given field would be stored.
+     *
+     * @param field Field of a domain class
+     *
+     * @return the kind of property or 0 if the field is not stored
+     */
+    static byte getKind(Field field) {
+        Class<?> type = field.getType();
+        if (type == String.class) {
+            return STRING;
+        }
+        if (type == Integer.class || type == int.class) {
+            return INTEGER;
+        }
+        if (type == Long.class || type == long.class) {
+            return LONG;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return BOOLEAN;
+        }
+        if (type == Double.class || type == double.class) {
+            return DOUBLE;
+        }
+        if (type == Float.class || type == float.class) {
+            return FLOAT;
+        }
+        if (DatabaseObject.class.isAssignableFrom(type)) {
+            return REF;
+        }
+        if (Collection.class.isAssignableFrom(type) && field.getGenericType() instanceof ParameterizedType) {
+            Type element = ((ParameterizedType) field.getGenericType()).getActualTypeArguments()[0];
+            if (element == String.class) {
+                return STRING_LIST;
+            }
+            if (element instanceof Class && DatabaseObject.class.isAssignableFrom((Class<?>) element)) {
+                return REF_LIST;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Write an unsigned variable length long, seven bits to a byte.
+     */
+    static void putVarLong(ByteBuffer buf, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buf.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buf.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buf) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private static List<Property> findProperties(Class<?> type) {
+        // superclass fields first so that every class lists dbId and displayName first
+        List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(0, c);
+        }
+        List<Property> properties = new ArrayList<Property>();
+        for (Class<?> c : hierarchy) {
+            Field[] fields = c.getDeclaredFields();
+            // the order getDeclaredFields returns is not specified
+            Arrays.sort(fields, new Comparator<Field>() {
+                @Override
+                public int compare(Field a, Field b) {
+                    return a.getName().compareTo(b.getName());
+                }
+            });
+            for (Field field : fields) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                        || EXCLUDED.contains(field.getName())) {
+                    continue;
+                }
+                byte kind = getKind(field);
+                if (kind == 0) {
+                    continue;
+                }
+                boolean deep = DEEP.contains(field.getName());
+                if ((kind == REF || kind == REF_LIST) && !deep && !SHALLOW.contains(field.getName())) {
+                    continue;
+                }
+                field.setAccessible(true);
+                properties.add(new Property(field.getName(), kind, deep, field));
+            }
+        }
+        return Collections.unmodifiableList(properties);
+    }
+
+    private static Method findGetter(Field field) {
+        String name = field.getName();
+        String getter = "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        try {
+            return field.getDeclaringClass().getMethod(getter);
+        }
+        catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+import org.reactome.server.tools.launcher.OutputFiles;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes every object the exporters need from a data source into a snapshot file
+ * that the SnapshotDataSource can export from without a database.
+ *
+ * Each pathway of each species is loaded from the data source and everything
+ * reachable from it through the relationships used by the exporters is written
+ * once. The file is written under a temporary name and moved into place when it
+ * is complete. See SnapshotFormat for the layout.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SnapshotWriter {
+
+    private final File file;
+
+    private DataOutputStream out;
+    private long position;
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+    // offset of the record written for each dbId; negative for a SHELL record
+    private final Map<Long, Long> offsets = new HashMap<Long, Long>();
+    private final Map<Class<?>, Integer> classIndex = new HashMap<Class<?>, Integer>();
+    private final List<Class<?>> classes = new ArrayList<Class<?>>();
+
+    private int numPathways = 0;
+
+    /**
+     * @param file  File to write the snapshot to
+     */
+    public SnapshotWriter(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Write the snapshot of all pathways of all species in the data source.
+     *
+     * @param source    ExportDataSource to read
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void write(ExportDataSource source) throws IOException {
+        File tmp = OutputFiles.temporaryFile(file);
+        boolean written = false;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16));
+        position = 0;
+        try {
+            out.write(new byte[SnapshotFormat.HEADER_SIZE]);
+            position = SnapshotFormat.HEADER_SIZE;
+
+            Map<Long, List<Long>> speciesPathways = new LinkedHashMap<Long, List<Long>>();
+            for (Species species : source.getSpecies()) {
+                List<Long> ids = new ArrayList<Long>();
+                writeClosure(species);
+                for (Long dbId : source.getPathwayIds(species)) {
+                    Pathway pathway = source.loadPathway(dbId);
+                    if (pathway == null) {
+                        System.err.println(dbId + " is not the identifier of a valid Pathway object");
+                        continue;
+                    }
+                    writeClosure(pathway);
+                    ids.add(dbId);
+                    numPathways++;
+                    if (numPathways % 1000 == 0) {
+                        System.out.println("Written " + numPathways + " pathways (" + offsets.size() + " objects)");
+                    }
+                }
+                speciesPathways.put(species.getDbId(), ids);
+            }
+
+            long classTableOffset = position;
+            writeClassTable();
+            long speciesOffset = position;
+            writeSpecies(speciesPathways);
+            long indexOffset = position;
+            writeIndex();
+            out.close();
+            out = null;
+
+            writeHeader(tmp, source.getDBVersion(), classTableOffset, speciesOffset, indexOffset);
+            written = true;
+        }
+        finally {
+            if (out != null) {
+                out.close();
+            }
+            if (!written) {
+                OutputFiles.discard(tmp);
+            }
+        }
+        OutputFiles.move(tmp, file);
+        System.out.println("Written " + numPathways + " pathways (" + offsets.size() + " objects, " +
+                file.length() + " bytes) to " + file.getPath());
+    }
+
+    public int getNumObjects() {
+        return offsets.size();
+    }
+
+    public int getNumPathways() {
+        return numPathways;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to write the records
+
+    /**
+     * Write the object and everything reachable from it that has not been written
+     * already. An explicit stack is used since the graph can be deep.
+     */
+    private void writeClosure(DatabaseObject root) throws IOException {
+        Deque<DatabaseObject> stack = new ArrayDeque<DatabaseObject>();
+        Deque<Boolean> deep = new ArrayDeque<Boolean>();
+        stack.push(root);
+        deep.push(Boolean.TRUE);
+        List<DatabaseObject> targets = new ArrayList<DatabaseObject>();
+        List<Boolean> targetsDeep = new ArrayList<Boolean>();
+        while (!stack.isEmpty()) {
+            DatabaseObject obj = stack.pop();
+            boolean full = deep.pop();
+            Long written = offsets.get(obj.getDbId());
+            if (written != null && (written >= 0 || !full)) {
+                continue;
+            }
+            targets.clear();
+            targetsDeep.clear();
+            writeRecord(obj, full, targets, targetsDeep);
+            for (int i = targets.size() - 1; i >= 0; i--) {
+                stack.push(targets.get(i));
+                deep.push(targetsDeep.get(i));
+            }
+        }
+    }
+
+    private void writeRecord(DatabaseObject obj, boolean full, List<DatabaseObject> targets, List<Boolean> targetsDeep)
+            throws IOException {
+        while (true) {
+            try {
+                buffer.clear();
+                targets.clear();
+                targetsDeep.clear();
+                encode(obj, full, targets, targetsDeep);
+                break;
+            }
+            catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+        int length = buffer.position();
+        if (length > SnapshotFormat.SEGMENT_SIZE) {
+            throw new IOException("The record of " + obj.getDbId() + " is too large for a snapshot");
+        }
+        // never let a record cross into the next mapped segment
+        long remaining = SnapshotFormat.SEGMENT_SIZE - (position & (SnapshotFormat.SEGMENT_SIZE - 1));
+        if (length > remaining) {
+            out.write(new byte[(int) remaining]);
+            position += remaining;
+        }
+        offsets.put(obj.getDbId(), full ? position : -position);
+        out.write(buffer.array(), 0, length);
+        position += length;
+    }
+
+    private void encode(DatabaseObject obj, boolean full, List<DatabaseObject> targets, List<Boolean> targetsDeep) {
+        List<SnapshotFormat.Property> properties = SnapshotFormat.getProperties(obj.getClass());
+        buffer.put(full ? SnapshotFormat.FULL : SnapshotFormat.SHELL);
+        SnapshotFormat.putVarLong(buffer, getClassIndex(obj.getClass()));
+
+        Object[] values = new Object[properties.size()];
+        int present = 0;
+        for (int i = 0; i < properties.size(); i++) {
+            SnapshotFormat.Property property = properties.get(i);
+            if (property.isRelationship() && !full) {
+                continue;
+            }
+            values[i] = property.get(obj);
+            if (values[i] != null) {
+                present++;
+            }
+        }
+        SnapshotFormat.putVarLong(buffer, present);
+        for (int i = 0; i < properties.size(); i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            SnapshotFormat.Property property = properties.get(i);
+            SnapshotFormat.putVarLong(buffer, i);
+            switch (property.kind) {
+                case SnapshotFormat.STRING:
+                    putString((String) values[i]);
+                    break;
+                case SnapshotFormat.INTEGER:
+                    buffer.putInt((Integer) values[i]);
+                    break;
+                case SnapshotFormat.LONG:
+                    buffer.putLong((Long) values[i]);
+                    break;
+                case SnapshotFormat.BOOLEAN:
+                    buffer.put((byte) ((Boolean) values[i] ? 1 : 0));
+                    break;
+                case SnapshotFormat.DOUBLE:
+                    buffer.putDouble((Double) values[i]);
+                    break;
+                case SnapshotFormat.FLOAT:
+                    buffer.putFloat((Float) values[i]);
+                    break;
+                case SnapshotFormat.STRING_LIST:
+                    Collection<?> strings = (Collection<?>) values[i];
+                    SnapshotFormat.putVarLong(buffer, countNonNull(strings));
+                    for (Object s : strings) {
+                        if (s != null) {
+                            putString((String) s);
+                        }
+                    }
+                    break;
+                case SnapshotFormat.REF:
+                    putRef((DatabaseObject) values[i], property.deep, targets, targetsDeep);
+                    break;
+                case SnapshotFormat.REF_LIST:
+                    Collection<?> refs = (Collection<?>) values[i];
+                    SnapshotFormat.putVarLong(buffer, countRefs(refs));
+                    for (Object ref : refs) {
+                        if (ref != null && ((DatabaseObject) ref).getDbId() != null) {
+                            putRef((DatabaseObject) ref, property.deep, targets, targetsDeep);
+                        }
+                    }
+                    break;
+            }
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(SnapshotFormat.UTF8);
+        SnapshotFormat.putVarLong(buffer, bytes.length);
+        buffer.put(bytes);
+    }
+
+    private void putRef(DatabaseObject target, boolean deep, List<DatabaseObject> targets, List<Boolean> targetsDeep) {
+        // a single valued relationship to an object without a dbId is written as dbId 0
+        Long dbId = target.getDbId();
+        SnapshotFormat.putVarLong(buffer, dbId == null ? 0 : dbId);
+        if (dbId != null) {
+            targets.add(target);
+            targetsDeep.add(deep);
+        }
+    }
+
+    private int getClassIndex(Class<?> type) {
+        Integer index = classIndex.get(type);
+        if (index == null) {
+            index = classes.size();
+            classes.add(type);
+            classIndex.put(type, index);
+        }
+        return index;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to write the sections after the records
+
+    private void writeClassTable() throws IOException {
+        out.writeInt(classes.size());
+        position += 4;
+        for (Class<?> type : classes) {
+            position += writeName(type.getName());
+            List<SnapshotFormat.Property> properties = SnapshotFormat.getProperties(type);
+            out.writeInt(properties.size());
+            position += 4;
+            for (SnapshotFormat.Property property : properties) {
+                position += writeName(property.name);
+                out.writeByte(property.kind);
+                out.writeBoolean(property.deep);
+                position += 2;
+            }
+        }
+    }
+
+    private void writeSpecies(Map<Long, List<Long>> speciesPathways) throws IOException {
+        out.writeInt(speciesPathways.size());
+        position += 4;
+        for (Map.Entry<Long, List<Long>> entry : speciesPathways.entrySet()) {
+            out.writeLong(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            position += 12;
+            for (Long dbId : entry.getValue()) {
+                out.writeLong(dbId);
+                position += 8;
+            }
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        long[] dbIds = new long[offsets.size()];
+        int i = 0;
+        for (Long dbId : offsets.keySet()) {
+            dbIds[i++] = dbId;
+        }
+        Arrays.sort(dbIds);
+        for (long dbId : dbIds) {
+            out.writeLong(dbId);
+        }
+        for (long dbId : dbIds) {
+            out.writeLong(Math.abs(offsets.get(dbId)));
+        }
+        position += 16L * dbIds.length;
+    }
+
+    private int writeName(String name) throws IOException {
+        byte[] bytes = name.getBytes(SnapshotFormat.UTF8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+        return 2 + bytes.length;
+    }
+
+    private void writeHeader(File tmp, int dbVersion, long classTableOffset, long speciesOffset, long indexOffset)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            raf.writeInt(SnapshotFormat.MAGIC);
+            raf.writeInt(SnapshotFormat.VERSION);
+            raf.writeInt(dbVersion);
+            raf.writeInt(offsets.size());
+            raf.writeLong(classTableOffset);
+            raf.writeLong(speciesOffset);
+            raf.writeLong(indexOffset);
+            raf.writeLong(position);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static int countNonNull(Collection<?> values) {
+        int n = 0;
+        for (Object value : values) {
+            if (value != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    private static int countRefs(Collection<?> values) {
+        int n = 0;
+        for (Object value : values) {
+            if (value != null && ((DatabaseObject) value).getDbId() != null) {
+                n++;
+            }
+        }
+        return n;
+    }
+}
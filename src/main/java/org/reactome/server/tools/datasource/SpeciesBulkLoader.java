@@ -0,0 +1,140 @@
+package org.reactome.server.tools.datasource;
+
+import org.neo4j.ogm.session.Session;
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Loads everything the exporters need for all the Pathways of a species in a
+ * fixed number of queries.
+ *
+ * This does for a whole species what the PathwaySubgraphLoader does for one
+ * Pathway. The PathwaySubgraphLoader loads each pathway separately, so a reaction
+ * or entity that appears in many pathways is loaded once for each of them.
+ * Here the queries start from every Pathway of the species and each event,
+ * participant and compartment is returned once. All the pathways then share
+ * the same objects, and the run caches see the same objects each time.
+ *
+ * Every event in the hasEvent closure of a pathway is a direct child of some
+ * pathway of the species, so the queries only follow a single hasEvent step.
+ * Relationships that are not in the responses are still looked up lazily.
+ *
+ * The objects are mapped into the one session given to the loader and any
+ * relationship missing from the responses is loaded lazily into it, so the
+ * pathways of a species must be exported by a single thread. The session is
+ * cleared before each species is loaded so that the objects of the species
+ * before can be collected; they must not be used once the next is loaded.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SpeciesBulkLoader {
+
+    private static final String PATHWAYS =
+            "MATCH (p:Pathway)-[:species]->(:Species{dbId:{dbId}}) RETURN p";
+
+    // each pathway of the species with its direct children
+    private static final String EVENT_HIERARCHY =
+            "MATCH (:Species{dbId:{dbId}})<-[:species]-(p:Pathway) " +
+            "MATCH path=(p)-[:hasEvent]->(:Event) " +
+            "RETURN path";
+
+    private static final String SPECIES_EVENTS =
+            "MATCH (:Species{dbId:{dbId}})<-[:species]-(p:Pathway) " +
+            "MATCH (p)-[:hasEvent*0..1]->(e:Event) " +
+            "WITH DISTINCT e ";
+
+    private static final String EVENT_ANNOTATIONS = SPECIES_EVENTS +
+            "MATCH path=(e)-[:summation|literatureReference|goBiologicalProcess|compartment]->() " +
+            "RETURN path";
+
+    private static final String EVENT_HISTORY = SPECIES_EVENTS +
+            "MATCH path=(e)-[:created|modified|authored|revised]-(:InstanceEdit)-[:author]-(:Person) " +
+            "RETURN path";
+
+    private static final String PERSON_AFFILIATIONS = SPECIES_EVENTS +
+            "MATCH (e)-[:created|modified|authored|revised]-(:InstanceEdit)-[:author]-(p:Person) " +
+            "WITH DISTINCT p " +
+            "MATCH path=(p)-[:affiliation]->(:Affiliation) " +
+            "RETURN path";
+
+    private static final String SPECIES_REACTIONS =
+            "MATCH (:Species{dbId:{dbId}})<-[:species]-(:Pathway)-[:hasEvent]->(rle:ReactionLikeEvent) " +
+            "WITH DISTINCT rle ";
+
+    private static final String REACTION_PARTICIPANTS = SPECIES_REACTIONS +
+            "MATCH path=(rle)-[:input|output|catalystActivity|positivelyRegulatedBy|negativelyRegulatedBy]->()" +
+            "-[:physicalEntity|activity|regulator*0..1]->() " +
+            "RETURN path";
+
+    private static final String SPECIES_ENTITIES = SPECIES_REACTIONS +
+            "MATCH (rle)-[:input|output|catalystActivity|positivelyRegulatedBy|negativelyRegulatedBy|physicalEntity|regulator*1..2]->(pe:PhysicalEntity) " +
+            "WITH DISTINCT pe ";
+
+    private static final String ENTITY_DETAILS = SPECIES_ENTITIES +
+            "MATCH (pe)-[:hasComponent|hasMember|hasCandidate|repeatedUnit*0..]->(x:PhysicalEntity) " +
+            "WITH DISTINCT x " +
+            "MATCH path=(x)-[:compartment|referenceEntity|crossReference|inferredTo|hasModifiedResidue|" +
+            "hasComponent|hasMember|hasCandidate|repeatedUnit]->()-[:psiMod*0..1]->() " +
+            "RETURN path";
+
+    // inferredFrom is the incoming side of inferredTo
+    private static final String ENTITY_INFERRED_FROM = SPECIES_ENTITIES +
+            "MATCH path=(pe)<-[:inferredTo]-(:PhysicalEntity) " +
+            "RETURN path";
+
+    private static final String[] BULK_QUERIES = {
+            EVENT_HIERARCHY, EVENT_ANNOTATIONS, EVENT_HISTORY, PERSON_AFFILIATIONS,
+            REACTION_PARTICIPANTS, ENTITY_DETAILS, ENTITY_INFERRED_FROM
+    };
+
+    private final Session session;
+
+    /**
+     * Construct a loader using the given neo4j session.
+     *
+     * @param session   neo4j Session
+     */
+    public SpeciesBulkLoader(Session session) {
+        this.session = session;
+    }
+
+    /**
+     * Load every Pathway of the species together with the subgraph used when
+     * exporting them. Every object loaded before is dropped from the session.
+     *
+     * @param speciesId Long dbId of the Species
+     *
+     * @return SpeciesStore of the objects loaded
+     */
+    public SpeciesStore load(Long speciesId) {
+        long start = System.nanoTime();
+        session.clear();
+        SpeciesStore store = new SpeciesStore(speciesId);
+        Map<String, Object> params = Collections.<String, Object>singletonMap("dbId", speciesId);
+        for (Pathway pathway : session.query(Pathway.class, PATHWAYS, params)) {
+            store.add(pathway);
+        }
+        for (String query : BULK_QUERIES) {
+            // the results are mapped into the session so every object is
+            // the same instance as the one reachable from the pathways
+            for (DatabaseObject obj : session.query(DatabaseObject.class, query, params)) {
+                store.add(obj);
+            }
+        }
+        store.setLoadNanos(System.nanoTime() - start);
+        return store;
+    }
+
+    /**
+     * Get the number of database round trips made by load(). This does not
+     * depend on the number of pathways of the species.
+     *
+     * @return number of queries per species
+     */
+    public static int getNumQueries() {
+        return BULK_QUERIES.length + 1;
+    }
+}
@@ -0,0 +1,90 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.DatabaseObject;
+import org.reactome.server.graph.domain.model.Pathway;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Pathways of one species held in memory and indexed by dbId.
+ *
+ * The reactions, entities and compartments loaded with them are not indexed.
+ * They are held by the session they were loaded into and the exporters reach
+ * them through the pathways, as they do when a pathway is loaded on its own.
+ *
+ * The store is filled by the SpeciesBulkLoader before it is shared. Once filled
+ * it is only read, so it can be used by several threads without locking as
+ * long as it is handed to them through a volatile field or a queue.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SpeciesStore {
+
+    private final Long speciesId;
+
+    // in the order they were loaded so pathways are exported in a stable order
+    private final Map<Long, Pathway> pathways = new LinkedHashMap<Long, Pathway>();
+
+    private long loadNanos = 0;
+
+    /**
+     * Construct an empty store.
+     *
+     * @param speciesId Long dbId of the Species
+     */
+    public SpeciesStore(Long speciesId) {
+        this.speciesId = speciesId;
+    }
+
+    /**
+     * Index an object loaded for the species if it is a Pathway. Objects of
+     * other classes are reachable from the pathways and are not kept here.
+     *
+     * @param obj   DatabaseObject loaded for the species
+     */
+    void add(DatabaseObject obj) {
+        if (obj instanceof Pathway && obj.getDbId() != null) {
+            pathways.put(obj.getDbId(), (Pathway) obj);
+        }
+    }
+
+    void setLoadNanos(long nanos) {
+        loadNanos = nanos;
+    }
+
+    public Long getSpeciesId() {
+        return speciesId;
+    }
+
+    /**
+     * Get the dbIds of the pathways of the species.
+     *
+     * @return List of Long dbIds in the order they were loaded
+     */
+    public List<Long> getPathwayIds() {
+        return new ArrayList<Long>(pathways.keySet());
+    }
+
+    /**
+     * Look up a pathway of the species.
+     *
+     * @param dbId  Long dbId of the Pathway
+     *
+     * @return the Pathway or null if it was not loaded with the species
+     */
+    public Pathway getPathway(Long dbId) {
+        return pathways.get(dbId);
+    }
+
+    public int getNumPathways() {
+        return pathways.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Species %d: loaded %d pathways in %.1fs", speciesId, pathways.size(), loadNanos / 1e9);
+    }
+}
@@ -0,0 +1,77 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A data source of generated pathways for load testing the exporters without
+ * a database. There is a single species whose pathways contain the requested
+ * number of reactions; see SyntheticGraphGenerator.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SyntheticDataSource implements ExportDataSource {
+
+    // the generated data does not come from a Reactome release
+    private static final int DB_VERSION = 0;
+
+    private final SyntheticGraphGenerator generator;
+
+    /**
+     * Construct a data source for a species with the given number of reactions.
+     *
+     * @param seed          long seed for the random numbers
+     * @param numReactions  int total number of reactions
+     */
+    public SyntheticDataSource(long seed, int numReactions) {
+        generator = new SyntheticGraphGenerator(seed, numReactions);
+        System.out.println("Generated " + generator.getNumPathways() + " synthetic pathways with " +
+                generator.getNumReactions() + " reactions (seed " + seed + ")");
+    }
+
+    @Override
+    public int getDBVersion() {
+        return DB_VERSION;
+    }
+
+    @Override
+    public List<Species> getSpecies() {
+        return Collections.singletonList(generator.getSpecies());
+    }
+
+    @Override
+    public Species findSpecies(Long dbId) {
+        if (generator.getSpecies().getDbId().equals(dbId)) {
+            return generator.getSpecies();
+        }
+        return null;
+    }
+
+    @Override
+    public List<Long> getPathwayIds(Species species) {
+        if (species == null || !generator.getSpecies().getDbId().equals(species.getDbId())) {
+            return new ArrayList<Long>();
+        }
+        return generator.getPathwayIds();
+    }
+
+    @Override
+    public Pathway loadPathway(Long dbId) {
+        return generator.loadPathway(dbId);
+    }
+
+    @Override
+    public Event findEvent(Long dbId) {
+        return generator.findEvent(dbId);
+    }
+
+    @Override
+    public void releaseSession() {
+        // the generated pathways are shared by every thread and never released
+    }
+}
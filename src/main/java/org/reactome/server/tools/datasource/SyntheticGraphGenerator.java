@@ -0,0 +1,840 @@
+package org.reactome.server.tools.datasource;
+
+import org.reactome.server.graph.domain.model.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates Reactome shaped pathways for load testing the exporters without a database.
+ *
+ * The generator is seeded so the same seed and size always produce the same objects.
+ * Only the shape of the pathway hierarchy is held in memory; the objects of a pathway
+ * are created each time it is loaded, from random numbers seeded by the dbId of each
+ * object. A species of a million reactions therefore costs little more memory than
+ * the largest pathway in it, and a participant shared by many reactions is the same
+ * (but not the same instance) wherever it appears.
+ *
+ * The numbers drawn are intended to look like the Reactome data:
+ *  - top level pathways are up to eight levels deep, most are two or three
+ *  - a pathway has a few sub-pathways; the pathways at the bottom have around ten reactions
+ *  - reactions have one or two inputs and outputs, often a catalyst and sometimes regulation
+ *  - a few small molecules (think ATP and water) take part in a large number of reactions
+ *  - complexes are nested up to four deep and sets have anything from two to eighty members
+ *  - events have literature references, a summation and several InstanceEdits
+ *
+ * All dbIds are well above those used by Reactome.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SyntheticGraphGenerator {
+
+    // each kind of object has its own range of dbIds
+    private static final long BASE_DBID = 900000000000L;
+    private static final long STRIDE = 1000000000L;
+    private static final int KIND_SHARED = 0;
+    private static final int KIND_PATHWAY = 1;
+    private static final int KIND_REACTION = 2;
+    private static final int KIND_ENTITY = 3;
+    private static final int KIND_REFERENCE = 4;
+    private static final int KIND_XREF = 5;
+    private static final int KIND_RESIDUE = 6;
+    private static final int KIND_PATHWAY_DETAIL = 7;
+    private static final int KIND_REACTION_DETAIL = 8;
+
+    // the objects belonging to an event use a block of dbIds
+    private static final int DETAIL_SLOTS = 32;
+    private static final int SLOT_CREATED = 0;
+    private static final int SLOT_MODIFIED = 1;
+    private static final int SLOT_AUTHORED = 2;
+    private static final int SLOT_REVISED = 4;
+    private static final int SLOT_REVIEWED = 6;
+    private static final int SLOT_SUMMATION = 7;
+    private static final int SLOT_LITERATURE = 8;
+    private static final int SLOT_CATALYST = 16;
+    private static final int SLOT_REGULATION = 17;
+
+    // ranges of dbIds within KIND_SHARED
+    private static final int SHARED_COMPARTMENT = 100;
+    private static final int SHARED_PERSON = 1000;
+    private static final int SHARED_AFFILIATION = 2000;
+    private static final int SHARED_MOLECULAR_FUNCTION = 3000;
+    private static final int SHARED_BIOLOGICAL_PROCESS = 5000;
+    private static final int SHARED_PSIMOD = 7000;
+
+    public static final int MAX_REACTIONS = (int) (STRIDE / DETAIL_SLOTS) - 1;
+
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_CHILDREN = 12;
+    private static final int MAX_REACTIONS_PER_PATHWAY = 150;
+    private static final int MAX_COMPONENTS = 8;
+    private static final int MAX_MEMBERS = 80;
+    private static final int MAX_TRIES = 8;
+
+    private static final int NUM_PEOPLE = 200;
+    private static final int NUM_AFFILIATIONS = 40;
+    private static final int NUM_MOLECULAR_FUNCTIONS = 500;
+    private static final int NUM_BIOLOGICAL_PROCESSES = 500;
+    private static final int NUM_PSIMODS = 20;
+
+    private static final String[][] COMPARTMENTS = {
+            {"cytosol", "0005829"}, {"nucleoplasm", "0005654"}, {"plasma membrane", "0005886"},
+            {"extracellular region", "0005576"}, {"mitochondrial matrix", "0005759"},
+            {"endoplasmic reticulum lumen", "0005788"}, {"Golgi membrane", "0000139"},
+            {"lysosomal lumen", "0043202"}, {"endosome membrane", "0010008"},
+            {"nuclear envelope", "0005635"}, {"peroxisomal matrix", "0005782"},
+            {"mitochondrial inner membrane", "0005743"}
+    };
+
+    private static final String[] SMALL_MOLECULES = {
+            "ATP", "ADP", "H2O", "Pi", "H+", "NAD+", "NADH", "CoA-SH", "NADP+", "NADPH",
+            "GTP", "GDP", "O2", "CO2", "PPi", "AMP", "FAD", "FADH2", "Na+", "K+"
+    };
+
+    private static final String[] SURNAMES = {
+            "Smith", "Jones", "Garcia", "Muller", "Rossi", "Tanaka", "Kowalski", "Dubois", "Silva", "Novak",
+            "Jensen", "Murphy", "Kim", "Ivanova", "Haddad", "Okafor", "Larsen", "Costa", "Yilmaz", "Chen"
+    };
+
+    private static final String[] FIRSTNAMES = {
+            "Anna", "Ben", "Carla", "David", "Elena", "Farid", "Grace", "Hiro", "Ines", "Jonas"
+    };
+
+    private static final String[] PROCESSES = {
+            "Signaling by", "Metabolism of", "Regulation of", "Transport of", "Degradation of",
+            "Biosynthesis of", "Activation of", "Processing of"
+    };
+
+    private static final String[] WORDS = {
+            "the", "protein", "complex", "binds", "to", "and", "is", "phosphorylated", "by", "kinase",
+            "in", "response", "cytosol", "which", "leads", "activation", "of", "downstream", "signaling",
+            "receptor", "ligand", "translocates", "nucleus", "where", "it", "regulates", "transcription",
+            "target", "genes", "this", "reaction", "requires", "ATP", "hydrolysis", "membrane", "transport"
+    };
+
+    private final long seed;
+    private final int numReactions;
+    private final int numEntities;
+    private final int numCurrencyMolecules;
+
+    private final Species species;
+    private final List<PathwayNode> pathways = new ArrayList<PathwayNode>();
+    private final List<PathwayNode> topLevelPathways = new ArrayList<PathwayNode>();
+    private final int[] reactionPathway;
+    private int reactionsAllocated = 0;
+
+    // objects that many events and entities refer to are created once and shared
+    private final List<Compartment> compartments = new ArrayList<Compartment>();
+    private final List<Person> people = new ArrayList<Person>();
+    private final List<GO_MolecularFunction> molecularFunctions = new ArrayList<GO_MolecularFunction>();
+    private final List<GO_BiologicalProcess> biologicalProcesses = new ArrayList<GO_BiologicalProcess>();
+    private final List<PsiMod> psiMods = new ArrayList<PsiMod>();
+
+    private enum EntityType {
+        SIMPLE_ENTITY, PROTEIN, COMPLEX, DEFINED_SET, CANDIDATE_SET, POLYMER, OTHER_ENTITY
+    }
+
+    /**
+     * The position of a pathway in the hierarchy and the reactions it contains.
+     */
+    private static class PathwayNode {
+        final int index;
+        final int parent;
+        final List<PathwayNode> children = new ArrayList<PathwayNode>();
+        int firstReaction;
+        int numReactions;
+
+        PathwayNode(int index, int parent) {
+            this.index = index;
+            this.parent = parent;
+        }
+    }
+
+    /**
+     * Construct a generator for a species with the given number of reactions.
+     *
+     * @param seed          long seed for the random numbers
+     * @param numReactions  int total number of reactions in all the pathways
+     */
+    public SyntheticGraphGenerator(long seed, int numReactions) {
+        if (numReactions < 1 || numReactions > MAX_REACTIONS) {
+            throw new IllegalArgumentException("The number of reactions must be between 1 and " + MAX_REACTIONS);
+        }
+        this.seed = seed;
+        this.numReactions = numReactions;
+        this.numEntities = Math.max(100, numReactions * 2);
+        this.numCurrencyMolecules = Math.min(SMALL_MOLECULES.length, numEntities / 50);
+
+        species = new Species();
+        setDatabaseObjectFields(species, dbId(KIND_SHARED, 0), "Synthetic species");
+        species.setAbbreviation("SYN");
+        species.setTaxId("0");
+
+        createSharedObjects();
+
+        Random rnd = random(KIND_PATHWAY, -1);
+        while (reactionsAllocated < numReactions) {
+            int maxDepth = 1 + Math.min(geometric(rnd, 1.5), MAX_DEPTH - 1);
+            topLevelPathways.add(createNode(rnd, -1, 1, maxDepth));
+        }
+        reactionPathway = new int[numReactions];
+        for (PathwayNode node : pathways) {
+            for (int i = 0; i < node.numReactions; i++) {
+                reactionPathway[node.firstReaction + i] = node.index;
+            }
+        }
+    }
+
+    /**
+     * Get the Species all the generated pathways belong to.
+     *
+     * @return Species
+     */
+    public Species getSpecies() {
+        return species;
+    }
+
+    /**
+     * Get the dbIds of every generated pathway, top level pathways and their
+     * sub-pathways, in the order they were generated.
+     *
+     * @return List of Long dbIds
+     */
+    public List<Long> getPathwayIds() {
+        List<Long> ids = new ArrayList<Long>(pathways.size());
+        for (PathwayNode node : pathways) {
+            ids.add(dbId(KIND_PATHWAY, node.index));
+        }
+        return ids;
+    }
+
+    /**
+     * Get the dbIds of the top level pathways.
+     *
+     * @return List of Long dbIds
+     */
+    public List<Long> getTopLevelPathwayIds() {
+        List<Long> ids = new ArrayList<Long>(topLevelPathways.size());
+        for (PathwayNode node : topLevelPathways) {
+            ids.add(dbId(KIND_PATHWAY, node.index));
+        }
+        return ids;
+    }
+
+    public int getNumReactions() {
+        return numReactions;
+    }
+
+    public int getNumPathways() {
+        return pathways.size();
+    }
+
+    /**
+     * Create the pathway with the given dbId together with all its events and participants.
+     *
+     * @param dbId  Long dbId of a generated pathway
+     *
+     * @return the Pathway or null if the dbId is not that of a generated pathway
+     */
+    public Pathway loadPathway(Long dbId) {
+        PathwayNode node = getPathwayNode(dbId);
+        if (node == null) {
+            return null;
+        }
+        Pathway pathway = new Loader().createPathway(node);
+        if (node.parent >= 0) {
+            pathway.setEventOf(Collections.<Event>singletonList(new Loader().createPathwayShell(pathways.get(node.parent))));
+        }
+        return pathway;
+    }
+
+    /**
+     * Create the event with the given dbId. A reaction knows the pathway it is part of
+     * but that pathway does not list its events.
+     *
+     * @param dbId  Long dbId of a generated pathway or reaction
+     *
+     * @return the Event or null if the dbId is not that of a generated event
+     */
+    public Event findEvent(Long dbId) {
+        if (getPathwayNode(dbId) != null) {
+            return loadPathway(dbId);
+        }
+        long index = dbId - dbId(KIND_REACTION, 0);
+        if (index < 0 || index >= numReactions) {
+            return null;
+        }
+        Loader loader = new Loader();
+        ReactionLikeEvent rle = loader.createReaction((int) index);
+        rle.setEventOf(Collections.<Event>singletonList(loader.createPathwayShell(pathways.get(reactionPathway[(int) index]))));
+        return rle;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to generate the hierarchy
+
+    private PathwayNode createNode(Random rnd, int parent, int depth, int maxDepth) {
+        PathwayNode node = new PathwayNode(pathways.size(), parent);
+        pathways.add(node);
+        int reactions;
+        if (depth < maxDepth) {
+            // pathways higher up the hierarchy have a few reactions of their own
+            reactions = rnd.nextDouble() < 0.3 ? 1 + rnd.nextInt(3) : 0;
+        }
+        else {
+            reactions = 1 + Math.min((int) Math.exp(2.0 + 0.8 * rnd.nextGaussian()), MAX_REACTIONS_PER_PATHWAY - 1);
+        }
+        node.firstReaction = reactionsAllocated;
+        node.numReactions = Math.min(reactions, numReactions - reactionsAllocated);
+        reactionsAllocated += node.numReactions;
+        if (depth < maxDepth) {
+            int numChildren = 1 + Math.min(geometric(rnd, 2.5), MAX_CHILDREN - 1);
+            for (int i = 0; i < numChildren && reactionsAllocated < numReactions; i++) {
+                node.children.add(createNode(rnd, node.index, depth + 1, maxDepth));
+            }
+        }
+        return node;
+    }
+
+    private PathwayNode getPathwayNode(Long dbId) {
+        if (dbId == null) {
+            return null;
+        }
+        long index = dbId - dbId(KIND_PATHWAY, 0);
+        if (index < 0 || index >= pathways.size()) {
+            return null;
+        }
+        return pathways.get((int) index);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to determine the type of an entity without creating it
+
+    private EntityType getEntityType(int k) {
+        if (k < numCurrencyMolecules) {
+            return EntityType.SIMPLE_ENTITY;
+        }
+        double t = random(KIND_ENTITY, k).nextDouble();
+        if (t < 0.35) return EntityType.PROTEIN;
+        if (t < 0.55) return EntityType.SIMPLE_ENTITY;
+        if (t < 0.80) return EntityType.COMPLEX;
+        if (t < 0.90) return EntityType.DEFINED_SET;
+        if (t < 0.95) return EntityType.CANDIDATE_SET;
+        if (t < 0.97) return EntityType.POLYMER;
+        return EntityType.OTHER_ENTITY;
+    }
+
+    private int getComplexDepth(int k) {
+        Random rnd = random(KIND_ENTITY, k);
+        rnd.nextDouble();
+        double d = rnd.nextDouble();
+        if (d < 0.55) return 1;
+        if (d < 0.85) return 2;
+        if (d < 0.96) return 3;
+        return 4;
+    }
+
+    private boolean isLeaf(int k) {
+        EntityType type = getEntityType(k);
+        return type == EntityType.SIMPLE_ENTITY || type == EntityType.PROTEIN;
+    }
+
+    /**
+     * Pick a protein or small molecule with a smaller index than the given one.
+     * Referring only to smaller indices means an entity can never contain itself.
+     */
+    private int pickLeaf(Random rnd, int below) {
+        for (int i = 0; i < MAX_TRIES; i++) {
+            int k = rnd.nextInt(below);
+            if (isLeaf(k)) {
+                return k;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Pick a complex with a smaller index than the given one that is nested
+     * less deeply than maxDepth, or a protein or small molecule if none is found.
+     */
+    private int pickComplex(Random rnd, int below, int maxDepth) {
+        for (int i = 0; i < MAX_TRIES; i++) {
+            int k = rnd.nextInt(below);
+            if (getEntityType(k) == EntityType.COMPLEX && getComplexDepth(k) < maxDepth) {
+                return k;
+            }
+        }
+        return pickLeaf(rnd, below);
+    }
+
+    /**
+     * Pick a participant for a reaction. Entities with small indices are picked far
+     * more often, so the few small molecules at the start take part in many reactions.
+     */
+    private int pickParticipant(Random rnd) {
+        return (int) (numEntities * Math.pow(rnd.nextDouble(), 2.5));
+    }
+
+    /**
+     * Pick a catalyst, which is a protein or a complex where possible.
+     */
+    private int pickCatalyst(Random rnd) {
+        int k = 0;
+        for (int i = 0; i < MAX_TRIES; i++) {
+            k = numCurrencyMolecules + rnd.nextInt(numEntities - numCurrencyMolecules);
+            EntityType type = getEntityType(k);
+            if (type == EntityType.PROTEIN || type == EntityType.COMPLEX) {
+                return k;
+            }
+        }
+        return k;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Creates the objects for one load. Each entity is created once per load so that
+     * a pathway refers to a single instance of each participant, as it would when
+     * read from the database.
+     */
+    private class Loader {
+
+        private final Map<Integer, PhysicalEntity> entities = new HashMap<Integer, PhysicalEntity>();
+
+        Pathway createPathway(PathwayNode node) {
+            Pathway pathway = createPathwayShell(node);
+            List<Event> events = new ArrayList<Event>();
+            for (int i = 0; i < node.numReactions; i++) {
+                ReactionLikeEvent rle = createReaction(node.firstReaction + i);
+                rle.setEventOf(Collections.<Event>singletonList(pathway));
+                events.add(rle);
+            }
+            for (PathwayNode child : node.children) {
+                Pathway sub = createPathway(child);
+                sub.setEventOf(Collections.<Event>singletonList(pathway));
+                events.add(sub);
+            }
+            pathway.setHasEvent(events);
+            return pathway;
+        }
+
+        /**
+         * Create the pathway with its annotations but without its events.
+         */
+        Pathway createPathwayShell(PathwayNode node) {
+            Pathway pathway = node.parent < 0 ? new TopLevelPathway() : new Pathway();
+            Random rnd = random(KIND_PATHWAY_DETAIL, node.index);
+            String name = PROCESSES[rnd.nextInt(PROCESSES.length)] + " " + randomWord(rnd) + " " + (node.index + 1);
+            setDatabaseObjectFields(pathway, dbId(KIND_PATHWAY, node.index), name);
+            setEventFields(pathway, rnd, dbId(KIND_PATHWAY_DETAIL, (long) node.index * DETAIL_SLOTS));
+            return pathway;
+        }
+
+        ReactionLikeEvent createReaction(int index) {
+            Random rnd = random(KIND_REACTION, index);
+            long detail = dbId(KIND_REACTION_DETAIL, (long) index * DETAIL_SLOTS);
+            double t = rnd.nextDouble();
+            ReactionLikeEvent rle;
+            if (t < 0.85) {
+                rle = new Reaction();
+            }
+            else if (t < 0.93) {
+                rle = new BlackBoxEvent();
+            }
+            else if (t < 0.97) {
+                rle = new Polymerisation();
+            }
+            else {
+                rle = new Depolymerisation();
+            }
+
+            List<PhysicalEntity> inputs = createParticipants(rnd);
+            List<PhysicalEntity> outputs = createParticipants(rnd);
+            rle.setInput(inputs);
+            rle.setOutput(outputs);
+            String name = inputs.get(0).getDisplayName() + " " + randomWord(rnd) + " " + outputs.get(0).getDisplayName();
+            setDatabaseObjectFields(rle, dbId(KIND_REACTION, index), name);
+            rle.setCompartment(Collections.singletonList(inputs.get(0).getCompartment().get(0)));
+
+            if (rnd.nextDouble() < 0.55) {
+                CatalystActivity cat = new CatalystActivity();
+                PhysicalEntity catalyst = getEntity(pickCatalyst(rnd));
+                GO_MolecularFunction activity = molecularFunctions.get(rnd.nextInt(molecularFunctions.size()));
+                setDatabaseObjectFields(cat, detail + SLOT_CATALYST,
+                        activity.getDisplayName() + " of " + catalyst.getDisplayName());
+                cat.setPhysicalEntity(catalyst);
+                cat.setActivity(activity);
+                rle.setCatalystActivity(Collections.singletonList(cat));
+            }
+            if (rnd.nextDouble() < 0.12) {
+                PositiveRegulation reg = new PositiveRegulation();
+                PhysicalEntity regulator = getEntity(pickParticipant(rnd));
+                setDatabaseObjectFields(reg, detail + SLOT_REGULATION, "Positive regulation by " + regulator.getDisplayName());
+                reg.setRegulator(regulator);
+                reg.setExplanation(regulator.getDisplayName() + " increases the rate of " + name);
+                rle.setPositivelyRegulatedBy(Collections.singletonList(reg));
+            }
+            if (rnd.nextDouble() < 0.10) {
+                NegativeRegulation reg = new NegativeRegulation();
+                PhysicalEntity regulator = getEntity(pickParticipant(rnd));
+                setDatabaseObjectFields(reg, detail + SLOT_REGULATION + 1, "Negative regulation by " + regulator.getDisplayName());
+                reg.setRegulator(regulator);
+                reg.setExplanation(regulator.getDisplayName() + " decreases the rate of " + name);
+                rle.setNegativelyRegulatedBy(Collections.singletonList(reg));
+            }
+            setEventFields(rle, rnd, detail);
+            return rle;
+        }
+
+        private List<PhysicalEntity> createParticipants(Random rnd) {
+            int num = 1 + Math.min(geometric(rnd, 0.8), 5);
+            List<PhysicalEntity> participants = new ArrayList<PhysicalEntity>(num);
+            for (int i = 0; i < num; i++) {
+                PhysicalEntity pe = getEntity(pickParticipant(rnd));
+                if (!participants.contains(pe)) {
+                    participants.add(pe);
+                }
+            }
+            return participants;
+        }
+
+        PhysicalEntity getEntity(int k) {
+            PhysicalEntity pe = entities.get(k);
+            if (pe == null) {
+                pe = createEntity(k);
+                entities.put(k, pe);
+            }
+            return pe;
+        }
+
+        private PhysicalEntity createEntity(int k) {
+            EntityType type = getEntityType(k);
+            Random rnd = random(KIND_ENTITY, k);
+            // the first two numbers decided the type and depth
+            rnd.nextDouble();
+            rnd.nextDouble();
+
+            PhysicalEntity pe;
+            String name;
+            switch (type) {
+                case SIMPLE_ENTITY:
+                    pe = createSimpleEntity(rnd, k);
+                    name = k < numCurrencyMolecules ? SMALL_MOLECULES[k] : "Compound-" + k;
+                    break;
+                case PROTEIN:
+                    pe = createProtein(rnd, k);
+                    name = "GENE" + k;
+                    break;
+                case COMPLEX:
+                    pe = createComplex(rnd, k, getComplexDepth(k));
+                    name = "Complex-" + k;
+                    break;
+                case DEFINED_SET:
+                    pe = createSet(new DefinedSet(), rnd, k);
+                    name = "Set-" + k;
+                    break;
+                case CANDIDATE_SET:
+                    CandidateSet set = (CandidateSet) createSet(new CandidateSet(), rnd, k);
+                    List<PhysicalEntity> candidates = new ArrayList<PhysicalEntity>();
+                    candidates.add(getEntity(pickLeaf(rnd, k)));
+                    set.setHasCandidate(candidates);
+                    pe = set;
+                    name = "CandidateSet-" + k;
+                    break;
+                case POLYMER:
+                    Polymer polymer = new Polymer();
+                    polymer.setRepeatedUnit(Collections.singletonList(getEntity(pickLeaf(rnd, k))));
+                    pe = polymer;
+                    name = "Polymer-" + k;
+                    break;
+                default:
+                    pe = new OtherEntity();
+                    name = "Other-" + k;
+                    break;
+            }
+            Compartment comp = pickCompartment(rnd);
+            setDatabaseObjectFields(pe, dbId(KIND_ENTITY, k), name + " [" + comp.getDisplayName() + "]");
+            pe.setCompartment(Collections.singletonList(comp));
+            return pe;
+        }
+
+        private SimpleEntity createSimpleEntity(Random rnd, int k) {
+            SimpleEntity se = new SimpleEntity();
+            ReferenceMolecule ref = new ReferenceMolecule();
+            String chebi = Integer.toString(15000 + (k * 7) % 200000);
+            setDatabaseObjectFields(ref, dbId(KIND_REFERENCE, k), "ChEBI:" + chebi);
+            ref.setIdentifier(chebi);
+            ref.setDatabaseName("ChEBI");
+            se.setReferenceEntity(ref);
+            if (rnd.nextDouble() < 0.6) {
+                DatabaseIdentifier kegg = new DatabaseIdentifier();
+                String id = String.format("C%05d", 1 + k % 99999);
+                setDatabaseObjectFields(kegg, dbId(KIND_XREF, k), "COMPOUND:" + id);
+                kegg.setDatabaseName("COMPOUND");
+                kegg.setIdentifier(id);
+                se.setCrossReference(Collections.singletonList(kegg));
+            }
+            return se;
+        }
+
+        private EntityWithAccessionedSequence createProtein(Random rnd, int k) {
+            EntityWithAccessionedSequence ewas = new EntityWithAccessionedSequence();
+            ReferenceGeneProduct ref = new ReferenceGeneProduct();
+            String accession = String.format("%c%05d", "OPQ".charAt(k % 3), k % 100000);
+            setDatabaseObjectFields(ref, dbId(KIND_REFERENCE, k), "UniProt:" + accession);
+            ref.setIdentifier(accession);
+            ref.setDatabaseName("UniProt");
+            ewas.setReferenceEntity(ref);
+            if (rnd.nextDouble() < 0.15) {
+                ModifiedResidue residue = new ModifiedResidue();
+                PsiMod psi = psiMods.get(rnd.nextInt(psiMods.size()));
+                int coordinate = 1 + rnd.nextInt(1000);
+                setDatabaseObjectFields(residue, dbId(KIND_RESIDUE, k), psi.getDisplayName() + " at " + coordinate);
+                residue.setPsiMod(psi);
+                residue.setCoordinate(coordinate);
+                ewas.setHasModifiedResidue(Collections.<AbstractModifiedResidue>singletonList(residue));
+            }
+            return ewas;
+        }
+
+        private Complex createComplex(Random rnd, int k, int depth) {
+            Complex complex = new Complex();
+            int num = 2 + Math.min(geometric(rnd, 1.2), MAX_COMPONENTS - 2);
+            List<PhysicalEntity> components = new ArrayList<PhysicalEntity>(num);
+            for (int i = 0; i < num; i++) {
+                int component = depth > 1 && rnd.nextDouble() < 0.35 ? pickComplex(rnd, k, depth) : pickLeaf(rnd, k);
+                components.add(getEntity(component));
+            }
+            complex.setHasComponent(components);
+            return complex;
+        }
+
+        private EntitySet createSet(EntitySet set, Random rnd, int k) {
+            int num = 2 + Math.min((int) Math.exp(1.0 + 0.9 * rnd.nextGaussian()), MAX_MEMBERS - 2);
+            List<PhysicalEntity> members = new ArrayList<PhysicalEntity>(num);
+            for (int i = 0; i < num; i++) {
+                int member = rnd.nextDouble() < 0.2 ? pickComplex(rnd, k, 2) : pickLeaf(rnd, k);
+                PhysicalEntity pe = getEntity(member);
+                if (!members.contains(pe)) {
+                    members.add(pe);
+                }
+            }
+            set.setHasMember(members);
+            return set;
+        }
+
+        private void setEventFields(Event event, Random rnd, long detail) {
+            event.setSpecies(Collections.singletonList(species));
+            event.setCreated(createInstanceEdit(rnd, detail + SLOT_CREATED));
+            event.setModified(createInstanceEdit(rnd, detail + SLOT_MODIFIED));
+            event.setAuthored(createInstanceEdits(rnd, detail + SLOT_AUTHORED, 1 + rnd.nextInt(2)));
+            event.setRevised(createInstanceEdits(rnd, detail + SLOT_REVISED, rnd.nextInt(3)));
+            if (rnd.nextDouble() < 0.3) {
+                event.setReviewed(createInstanceEdits(rnd, detail + SLOT_REVIEWED, 1));
+            }
+
+            Summation summation = new Summation();
+            setDatabaseObjectFields(summation, detail + SLOT_SUMMATION, "Summation of " + event.getDisplayName());
+            summation.setText(createText(rnd));
+            event.setSummation(Collections.singletonList(summation));
+
+            int numPublications = Math.min(geometric(rnd, 1.5), SLOT_CATALYST - SLOT_LITERATURE);
+            List<Publication> publications = new ArrayList<Publication>(numPublications);
+            for (int i = 0; i < numPublications; i++) {
+                LiteratureReference lit = new LiteratureReference();
+                setDatabaseObjectFields(lit, detail + SLOT_LITERATURE + i, createSentence(rnd));
+                lit.setPubMedIdentifier(1 + rnd.nextInt(30000000));
+                lit.setJournal("J Synth Biol");
+                lit.setYear(1980 + rnd.nextInt(38));
+                publications.add(lit);
+            }
+            event.setLiteratureReference(publications);
+
+            if (rnd.nextDouble() < 0.5) {
+                event.setGoBiologicalProcess(biologicalProcesses.get(rnd.nextInt(biologicalProcesses.size())));
+            }
+        }
+
+        private List<InstanceEdit> createInstanceEdits(Random rnd, long firstDbId, int num) {
+            List<InstanceEdit> edits = new ArrayList<InstanceEdit>(num);
+            for (int i = 0; i < num; i++) {
+                edits.add(createInstanceEdit(rnd, firstDbId + i));
+            }
+            return edits;
+        }
+
+        private InstanceEdit createInstanceEdit(Random rnd, long dbId) {
+            InstanceEdit edit = new InstanceEdit();
+            List<Person> authors = new ArrayList<Person>();
+            authors.add(people.get(rnd.nextInt(people.size())));
+            if (rnd.nextDouble() < 0.3) {
+                Person second = people.get(rnd.nextInt(people.size()));
+                if (!authors.contains(second)) {
+                    authors.add(second);
+                }
+            }
+            String date = String.format("%04d-%02d-%02d %02d:%02d:%02d", 2003 + rnd.nextInt(15), 1 + rnd.nextInt(12),
+                    1 + rnd.nextInt(28), rnd.nextInt(24), rnd.nextInt(60), rnd.nextInt(60));
+            setDatabaseObjectFields(edit, dbId, authors.get(0).getDisplayName() + ", " + date.substring(0, 10));
+            edit.setDateTime(date);
+            edit.setAuthor(authors);
+            return edit;
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to create the objects shared by everything
+
+    private void createSharedObjects() {
+        for (int i = 0; i < COMPARTMENTS.length; i++) {
+            Compartment comp = new Compartment();
+            setDatabaseObjectFields(comp, dbId(KIND_SHARED, SHARED_COMPARTMENT + i), COMPARTMENTS[i][0]);
+            comp.setAccession(COMPARTMENTS[i][1]);
+            comp.setDatabaseName("GO");
+            compartments.add(comp);
+        }
+
+        Random rnd = random(KIND_SHARED, -1);
+        List<Affiliation> affiliations = new ArrayList<Affiliation>();
+        for (int i = 0; i < NUM_AFFILIATIONS; i++) {
+            Affiliation a = new Affiliation();
+            String name = "Institute of " + capitalise(randomWord(rnd)) + " " + (i + 1);
+            setDatabaseObjectFields(a, dbId(KIND_SHARED, SHARED_AFFILIATION + i), name);
+            a.setName(Collections.singletonList(name));
+            affiliations.add(a);
+        }
+        for (int i = 0; i < NUM_PEOPLE; i++) {
+            Person p = new Person();
+            String surname = SURNAMES[i % SURNAMES.length] + (i / SURNAMES.length == 0 ? "" : "-" + (i / SURNAMES.length));
+            String firstname = FIRSTNAMES[rnd.nextInt(FIRSTNAMES.length)];
+            setDatabaseObjectFields(p, dbId(KIND_SHARED, SHARED_PERSON + i), surname + ", " + firstname.charAt(0));
+            p.setSurname(surname);
+            p.setFirstname(firstname);
+            p.setInitial(firstname.substring(0, 1));
+            if (rnd.nextDouble() < 0.7) {
+                p.setEMailAddress(firstname.toLowerCase() + "." + surname.toLowerCase() + "@example.org");
+            }
+            if (rnd.nextDouble() < 0.8) {
+                p.setAffiliation(Collections.singletonList(affiliations.get(rnd.nextInt(affiliations.size()))));
+            }
+            people.add(p);
+        }
+        for (int i = 0; i < NUM_MOLECULAR_FUNCTIONS; i++) {
+            GO_MolecularFunction mf = new GO_MolecularFunction();
+            setDatabaseObjectFields(mf, dbId(KIND_SHARED, SHARED_MOLECULAR_FUNCTION + i), randomWord(rnd) + " activity");
+            mf.setAccession(String.format("%07d", 3824 + i));
+            mf.setDatabaseName("GO");
+            if (rnd.nextDouble() < 0.4) {
+                mf.setEcNumber((1 + rnd.nextInt(6)) + "." + (1 + rnd.nextInt(20)) + "." + (1 + rnd.nextInt(20)) + "." + (1 + rnd.nextInt(200)));
+            }
+            molecularFunctions.add(mf);
+        }
+        for (int i = 0; i < NUM_BIOLOGICAL_PROCESSES; i++) {
+            GO_BiologicalProcess bp = new GO_BiologicalProcess();
+            setDatabaseObjectFields(bp, dbId(KIND_SHARED, SHARED_BIOLOGICAL_PROCESS + i), randomWord(rnd) + " process");
+            bp.setAccession(String.format("%07d", 6000 + i));
+            bp.setDatabaseName("GO");
+            biologicalProcesses.add(bp);
+        }
+        for (int i = 0; i < NUM_PSIMODS; i++) {
+            PsiMod psi = new PsiMod();
+            String id = String.format("%05d", 46 + i);
+            setDatabaseObjectFields(psi, dbId(KIND_SHARED, SHARED_PSIMOD + i), "MOD:" + id);
+            psi.setIdentifier(id);
+            psi.setDatabaseName("MOD");
+            psiMods.add(psi);
+        }
+    }
+
+    /**
+     * Most entities are in the cytosol, nucleoplasm, plasma membrane or extracellular region.
+     */
+    private Compartment pickCompartment(Random rnd) {
+        double t = rnd.nextDouble();
+        if (t < 0.40) return compartments.get(0);
+        if (t < 0.55) return compartments.get(1);
+        if (t < 0.70) return compartments.get(2);
+        if (t < 0.80) return compartments.get(3);
+        return compartments.get(4 + rnd.nextInt(compartments.size() - 4));
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private static String createText(Random rnd) {
+        int numSentences = 1 + Math.min(geometric(rnd, 2.0), 9);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < numSentences; i++) {
+            if (i > 0) {
+                // curators text often contains markup which the exporters remove
+                text.append(rnd.nextDouble() < 0.2 ? "<br>" : " ");
+            }
+            text.append(createSentence(rnd));
+        }
+        return text.toString();
+    }
+
+    private static String createSentence(Random rnd) {
+        int numWords = 5 + rnd.nextInt(15);
+        StringBuilder sentence = new StringBuilder(capitalise(randomWord(rnd)));
+        for (int i = 1; i < numWords; i++) {
+            sentence.append(' ');
+            if (rnd.nextDouble() < 0.03) {
+                sentence.append("<i>").append(randomWord(rnd)).append("</i>");
+            }
+            else {
+                sentence.append(randomWord(rnd));
+            }
+        }
+        return sentence.append('.').toString();
+    }
+
+    private static String randomWord(Random rnd) {
+        return WORDS[rnd.nextInt(WORDS.length)];
+    }
+
+    private static String capitalise(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    /**
+     * Draw from a geometric distribution with the given mean.
+     */
+    private static int geometric(Random rnd, double mean) {
+        double p = mean / (1.0 + mean);
+        int n = 0;
+        while (rnd.nextDouble() < p) {
+            n++;
+        }
+        return n;
+    }
+
+    private static long dbId(int kind, long index) {
+        return BASE_DBID + kind * STRIDE + index;
+    }
+
+    private static void setDatabaseObjectFields(DatabaseObject obj, long dbId, String name) {
+        obj.setDbId(dbId);
+        obj.setStId("R-SYN-" + dbId);
+        obj.setDisplayName(name);
+    }
+
+    /**
+     * Get the random numbers for one object. The seed mixes the generator
+     * seed with the kind and index of the object (splitmix64).
+     */
+    private Random random(int kind, long index) {
+        long z = seed + (kind * STRIDE + index + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
+    }
+}
@@ -9,11 +9,23 @@ import org.reactome.server.graph.domain.model.Event;
 
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import org.biopax.paxtools.model.*;
 
 /**
+ * Creates a BioPAX Level 3 model from a Reactome Pathway.
+ *
+ * Each instance owns its model, id counter and database version so
+ * separate instances share no state. An instance is not itself thread-safe;
+ * use one instance per thread when exporting concurrently.
+ *
  * @author Sarah Keating <skeating@ebi.ac.uk>
  */
 public class WriteBioPAX3 {
@@ -24,7 +36,7 @@ public class WriteBioPAX3 {
      */
     private final short sbmlLevel = 3;
     private final short sbmlVersion = 1;
-    private static long metaid_count = 0;
+    private long metaid_count = 0;
 
     private final Pathway thisPathway;
     private final List<Event> thisListEvents;
@@ -35,7 +47,7 @@ public class WriteBioPAX3 {
     private final List <String> loggedReactions;
     private final List <String> loggedSpeciesReferences;
 
-    private static Integer dbVersion = 0;
+    private Integer dbVersion = 0;
 
     private boolean addAnnotations = true;
     private boolean inTestMode = false;
@@ -45,6 +57,17 @@ public class WriteBioPAX3 {
     private BioPAXFactory bioPAXFactory = BioPAXLevel.L3.getDefaultFactory();
     private Model thisModel;
 
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // creating a SimpleIOHandler builds its property editors by reflection so
+    // each thread keeps one; an instance cannot be shared between threads
+    private static final ThreadLocal<SimpleIOHandler> ioHandler = new ThreadLocal<SimpleIOHandler>() {
+        @Override
+        protected SimpleIOHandler initialValue() {
+            return new SimpleIOHandler(BioPAXLevel.L3);
+        }
+    };
+
     /**
      * Construct an instance of the WriteBioPAX3
      */
@@ -57,8 +80,6 @@ public class WriteBioPAX3 {
         loggedCompartments = new ArrayList<String>();
         loggedReactions = new ArrayList<String>();
         loggedSpeciesReferences = new ArrayList<String>();
-        // reset metaid count
-        metaid_count= 0;
 
 
     }
@@ -78,8 +99,6 @@ public class WriteBioPAX3 {
         loggedCompartments = new ArrayList<String>();
         loggedReactions = new ArrayList<String>();
         loggedSpeciesReferences = new ArrayList<String>();
-        // reset metaid count
-        metaid_count= 0;
     }
 
     /**
@@ -99,8 +118,6 @@ public class WriteBioPAX3 {
         loggedCompartments = new ArrayList<String>();
         loggedReactions = new ArrayList<String>();
         loggedSpeciesReferences = new ArrayList<String>();
-        // reset metaid count
-        metaid_count= 0;
     }
 
 //    /**
@@ -215,42 +232,73 @@ public class WriteBioPAX3 {
      * Write the Biopax Model to std output.
      */
     public void toStdOut()    {
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        SimpleIOHandler out = new SimpleIOHandler();
-        out.convertToOWL(thisModel, os);
-        String output;
         try {
-            output = new String(os.toByteArray(), "UTF-8");
+            toOutputStream(new ShieldedOutputStream(System.out));
         }
         catch (Exception e) {
-            output = "failed to write";
+            System.out.print("failed to write");
         }
-        System.out.print(output);
     }
 
     /**
      * Write the BioPAX Model to a file.
      *
      * @param output File to use.
+     *
+     * @return true if the file was written, false otherwise
      */
-    public void toFile(File output)    {
+    public boolean toFile(File output)    {
+        return toFile(output, false);
+    }
 
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
-        SimpleIOHandler out = new SimpleIOHandler();
-        out.convertToOWL(thisModel, os);
+    /**
+     * Write the BioPAX Model to a file, optionally copying the output to
+     * std output as it is written. The model is only serialised once.
+     *
+     * @param output File to use.
+     * @param tee    boolean whether to also write the output to std output
+     *
+     * @return true if the file was written, false otherwise
+     */
+    public boolean toFile(File output, boolean tee)    {
+        OutputStream os = null;
+        boolean written = true;
         try {
-            if (!output.exists()) {
-                output.createNewFile();
+            FileChannel channel = FileChannel.open(output.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            os = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            if (tee) {
+                os = new TeeOutputStream(os, new ShieldedOutputStream(System.out));
             }
-            FileOutputStream fop = new FileOutputStream(output);
-            fop.write(os.toByteArray());
-            fop.flush();
-            fop.close();
+            toOutputStream(os);
         }
         catch (Exception e)
         {
             System.out.println("failed to write " + output.getName());
+            written = false;
+        }
+        finally {
+            if (os != null) {
+                try {
+                    os.close();
+                }
+                catch (IOException e) {
+                    System.out.println("failed to close " + output.getName());
+                    written = false;
+                }
+            }
         }
+        return written;
+    }
+
+    /**
+     * Write the BioPAX Model to the given stream. The BioPAX writer closes
+     * the stream when it has finished.
+     *
+     * @param os OutputStream to write to
+     */
+    public void toOutputStream(OutputStream os)    {
+        ioHandler.get().convertToOWL(thisModel, os);
     }
 
     /**
@@ -260,11 +308,10 @@ public class WriteBioPAX3 {
      */
     public String toString()    {
         ByteArrayOutputStream os = new ByteArrayOutputStream();
-        SimpleIOHandler out = new SimpleIOHandler();
-        out.convertToOWL(thisModel, os);
         String output;
         try {
-            output = new String(os.toByteArray(), "UTF-8");
+            toOutputStream(os);
+            output = os.toString("UTF-8");
         }
         catch (Exception e) {
             output = "failed to write";
@@ -311,54 +358,36 @@ public class WriteBioPAX3 {
             parentPathway = null;
             return;
         }
-        List<Long> listDBid = new ArrayList<Long>();
-        List<Long> firstDBid = new ArrayList<Long>();
-
-        Event e1 = thisListEvents.get(0);
-        List<Event> child_list = e1.getEventOf();
-        if (child_list == null) {
-            parentPathway = null;
-            return;
-        }
-        // list of possible parent pathways
-        for (Event e : child_list) {
-            if (e instanceof Pathway) {
-                listDBid.add(e.getDbId());
-                firstDBid.add(e.getDbId());
-            }
-        }
-
-        // // TODO: 09/11/2016 must be a better way to do this
-        int x = 0;
-        while (x < thisListEvents.size()-1){
-            x++;
-            Event e_loop = thisListEvents.get(x);
-            List<Event> loe_loop = e_loop.getEventOf();
-            if (loe_loop == null) {
+        // intersect the pathways each event is a direct child of; stop as soon as none is left
+        Set<Long> candidates = null;
+        for (Event e : thisListEvents) {
+            List<Event> eventOf = e.getEventOf();
+            if (eventOf == null) {
                 parentPathway = null;
                 return;
             }
-            else {
-                List<Long> thisDbId = new ArrayList<Long>();
-                for (Event ee : loe_loop) {
-                    if (ee instanceof Pathway) {
-                        thisDbId.add(ee.getDbId());
-                    }
-                }
-                for (Long p: firstDBid) {
-                    if (!thisDbId.contains(p)) {
-                        listDBid.remove(p);
-                    }
+            Set<Long> ids = new HashSet<Long>();
+            for (Event parent : eventOf) {
+                if (parent instanceof Pathway) {
+                    ids.add(parent.getDbId());
                 }
             }
+            if (candidates == null) {
+                candidates = new LinkedHashSet<Long>(ids);
+            }
+            else {
+                candidates.retainAll(ids);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
         }
 
-        if (listDBid.size() != 1) {
-            parentPathway = null;
-        }
-        else {
-            for (Event e : child_list) {
-                if (e.getDbId().equals(listDBid.get(0))) {
+        parentPathway = null;
+        if (candidates.size() == 1) {
+            Long parentId = candidates.iterator().next();
+            for (Event e : thisListEvents.get(0).getEventOf()) {
+                if (e instanceof Pathway && e.getDbId().equals(parentId)) {
                     parentPathway = (Pathway)(e);
                 }
             }
@@ -642,4 +671,69 @@ public class WriteBioPAX3 {
         metaid_count++;
         return ret;
     }
+
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // streams used when writing
+
+    /**
+     * Writes everything to two streams. Closing it closes both.
+     */
+    private static class TeeOutputStream extends OutputStream {
+        private final OutputStream first;
+        private final OutputStream second;
+
+        TeeOutputStream(OutputStream first, OutputStream second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            first.write(b);
+            second.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            first.write(b, off, len);
+            second.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            first.flush();
+            second.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                first.close();
+            }
+            finally {
+                second.close();
+            }
+        }
+    }
+
+    /**
+     * Stops the BioPAX writer closing std output; close only flushes.
+     */
+    private static class ShieldedOutputStream extends FilterOutputStream {
+
+        ShieldedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.flush();
+        }
+    }
 }
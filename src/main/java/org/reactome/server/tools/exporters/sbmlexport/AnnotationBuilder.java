@@ -17,12 +17,18 @@ import static org.sbml.jsbml.JSBML.getJSBMLDottedVersion;
  */
 class AnnotationBuilder {
     private SBase sbase = null;
-    private Map<CVTerm.Qualifier,List<String>> resources = new LinkedHashMap<CVTerm.Qualifier,List<String>>();
+    private Map<CVTerm.Qualifier,Set<String>> resources = new LinkedHashMap<CVTerm.Qualifier,Set<String>>();
+    private ExportCaches caches = null;
 
     AnnotationBuilder(SBase sbase) {
         this.sbase = sbase;
     }
 
+    AnnotationBuilder(SBase sbase, ExportCaches caches) {
+        this.sbase = sbase;
+        this.caches = caches;
+    }
+
     /**
      *  creates the appropriate url from arguments and adds it to the map of qualifiers
      *
@@ -48,6 +54,42 @@ class AnnotationBuilder {
         }
     }
 
+    /**
+     * Replaces the map of qualifiers with the one cached for the dbId
+     * if there is one.
+     *
+     * @param dbId  Long dbId of the ReactomeDB object being annotated
+     *
+     * @return true if the resources were found in the cache, false otherwise
+     */
+    boolean loadCachedResources(Long dbId) {
+        if (caches == null) {
+            return false;
+        }
+        Map<CVTerm.Qualifier, Set<String>> cached = caches.getAnnotations().get(dbId);
+        if (cached == null) {
+            return false;
+        }
+        resources = cached;
+        return true;
+    }
+
+    /**
+     * Stores the map of qualifiers in the cache for the dbId.
+     *
+     * @param dbId  Long dbId of the ReactomeDB object being annotated
+     */
+    void cacheResources(Long dbId) {
+        if (caches == null) {
+            return;
+        }
+        Map<CVTerm.Qualifier, Set<String>> copy = new LinkedHashMap<CVTerm.Qualifier, Set<String>>();
+        for (Map.Entry<CVTerm.Qualifier, Set<String>> entry : resources.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableSet(new LinkedHashSet<String>(entry.getValue())));
+        }
+        caches.getAnnotations().put(dbId, Collections.unmodifiableMap(copy));
+    }
+
     /**
      *  Adds information about the reactomeDB version and jsbml version
      *
@@ -56,20 +98,13 @@ class AnnotationBuilder {
     void addProvenanceAnnotation(Integer version){
         Date date = new Date();
         DateFormat dateFormat = new SimpleDateFormat();
-        String jsbml = "<annotation>" + "<p xmlns=\"http://www.w3.org/1999/xhtml\">" +
-                "SBML generated from Reactome ";
+        String jsbml = "SBML generated from Reactome ";
         if (version != 0) {
             jsbml += "version " + version + " ";
         }
         jsbml += "on " + dateFormat.format(date)  + " using JSBML version " +
-                    getJSBMLDottedVersion() + ". </p></annotation>";
-        XMLNode node;
-        try {
-            node = XMLNode.convertStringToXMLNode(jsbml);
-        }
-        catch(Exception e) {
-            node = null;
-        }
+                    getJSBMLDottedVersion() + ". ";
+        XMLNode node = XHTMLNodeBuilder.createParagraph("annotation", jsbml);
 
         if (node != null) {
             sbase.appendAnnotation(node);
@@ -94,29 +129,7 @@ class AnnotationBuilder {
      * @return             String representation of the appropriate URL
      */
     private String getSpecificTerm(String dbname, String accessionNo){
-        String lowerDB = dbname.toLowerCase();
-        String upperDB = dbname.toUpperCase();
-        Boolean shortVersion = false;
-        if (lowerDB.equals("uniprot") || lowerDB.equals("pubmed") || (lowerDB.equals("ec-code"))) {
-            shortVersion = true;
-        }
-        else if (lowerDB.equals("embl")){
-            shortVersion = true;
-            lowerDB = "ena.embl";
-        }
-        else if (lowerDB.equals("kegg")){
-            shortVersion = true;
-            lowerDB += ".compound";
-        }
-        else if (lowerDB.equals("mod")){
-            lowerDB = "psimod";
-        }
-        String resource = "http://identifiers.org/" + lowerDB + "/" + upperDB +
-                ":" + accessionNo;
-        if (shortVersion) {
-            resource = "http://identifiers.org/" + lowerDB + "/" + accessionNo;
-        }
-        return resource;
+        return IdentifierResolver.getRegistry().resolve(dbname, accessionNo);
     }
 
     /**
@@ -126,13 +139,12 @@ class AnnotationBuilder {
      * @param resource   The appropriate identifiers.org URL
      */
     private void addResources(CVTerm.Qualifier qualifier, String resource) {
-        List<String> l = resources.get(qualifier);
+        Set<String> l = resources.get(qualifier);
         if (l == null){
-            resources.put(qualifier, l = new ArrayList<String>());
-        }
-        if (!l.contains(resource)) {
-            l.add(resource);
+            resources.put(qualifier, l = new LinkedHashSet<String>());
         }
+        // keeps the order the resources were first added in
+        l.add(resource);
     }
 
 }
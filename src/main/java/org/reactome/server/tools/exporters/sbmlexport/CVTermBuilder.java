@@ -18,6 +18,18 @@ class CVTermBuilder extends AnnotationBuilder {
         super(sbase);
     }
 
+    /**
+     * Construct a builder that reuses the resources already resolved for
+     * a species, compartment or reaction earlier in the run.
+     *
+     * @param sbase     SBML SBase object to annotate
+     * @param caches    ExportCaches for the run; may be null
+     */
+    CVTermBuilder(SBase sbase, ExportCaches caches) {
+
+        super(sbase, caches);
+    }
+
     /**
      * Adds the resources for a model. This uses BQB_IS to link to the Reactome entry
      * and BQB_IS_DESCRIBED_BY to link to any relevant publications.
@@ -44,10 +56,13 @@ class CVTermBuilder extends AnnotationBuilder {
      * @param event   Event instance from ReactomeDB
      */
     void createReactionAnnotations(org.reactome.server.graph.domain.model.ReactionLikeEvent event) {
-        addResource("reactome", CVTerm.Qualifier.BQB_IS, event.getStId());
-        addGOTerm(event);
-        addECNumber(event);
-        addPublications(event.getLiteratureReference());
+        if (!loadCachedResources(event.getDbId())) {
+            addResource("reactome", CVTerm.Qualifier.BQB_IS, event.getStId());
+            addGOTerm(event);
+            addECNumber(event);
+            addPublications(event.getLiteratureReference());
+            cacheResources(event.getDbId());
+        }
         createCVTerms();
     }
 
@@ -58,8 +73,11 @@ class CVTermBuilder extends AnnotationBuilder {
      * @param pe  PhysicalEntity from ReactomeDB
      */
     void createSpeciesAnnotations(PhysicalEntity pe){
-        addResource("reactome", CVTerm.Qualifier.BQB_IS, pe.getStId());
-        createPhysicalEntityAnnotations(pe, CVTerm.Qualifier.BQB_IS, true);
+        if (!loadCachedResources(pe.getDbId())) {
+            addResource("reactome", CVTerm.Qualifier.BQB_IS, pe.getStId());
+            createPhysicalEntityAnnotations(pe, CVTerm.Qualifier.BQB_IS, true);
+            cacheResources(pe.getDbId());
+        }
         createCVTerms();
     }
 
@@ -69,7 +87,10 @@ class CVTermBuilder extends AnnotationBuilder {
      * @param comp  Compartment from ReactomeDB
      */
     void createCompartmentAnnotations(org.reactome.server.graph.domain.model.Compartment comp){
-        addResource("go", CVTerm.Qualifier.BQB_IS, comp.getAccession());
+        if (!loadCachedResources(comp.getDbId())) {
+            addResource("go", CVTerm.Qualifier.BQB_IS, comp.getAccession());
+            cacheResources(comp.getDbId());
+        }
         createCVTerms();
     }
 
@@ -125,77 +146,79 @@ class CVTermBuilder extends AnnotationBuilder {
      * @param qualifier     The MIRIAM qualifier for the reference
      */
     private void createPhysicalEntityAnnotations(PhysicalEntity pe, CVTerm.Qualifier qualifier, boolean recurse){
-        if (pe instanceof SimpleEntity){
-            SimpleEntity se = (SimpleEntity)(pe);
-            if (se.getReferenceEntity() != null) {
-                addResource("chebi", qualifier, (se.getReferenceEntity().getIdentifier()));
-            }
-            String ref = getKeggReference(se.getCrossReference());
-            if (ref.length() > 0){
-                addResource("kegg", qualifier, ref);
-            }
-        }
-        else if (pe instanceof EntityWithAccessionedSequence){
-            ReferenceEntity ref = ((EntityWithAccessionedSequence)(pe)).getReferenceEntity();
-            if (ref != null) {
-                addResource(ref.getDatabaseName(), qualifier, ref.getIdentifier());
-            }
-            if (recurse) {
-                List<PhysicalEntity> inferences = pe.getInferredTo();
-                if (inferences != null) {
-                    for (PhysicalEntity inf : inferences) {
-                        addResource("reactome", CVTerm.Qualifier.BQB_IS_HOMOLOG_TO, inf.getStId());
-                        // could add nested annotation but decided not to at present
-                    }
+        switch (PhysicalEntityType.of(pe)) {
+            case SIMPLE_ENTITY:
+                SimpleEntity se = (SimpleEntity)(pe);
+                if (se.getReferenceEntity() != null) {
+                    addResource("chebi", qualifier, (se.getReferenceEntity().getIdentifier()));
                 }
-                inferences = pe.getInferredFrom();
-                if (inferences != null) {
-                    for (PhysicalEntity inf : inferences) {
-                        addResource("reactome", CVTerm.Qualifier.BQB_IS_HOMOLOG_TO, inf.getStId());
-                        // could add nested annotation but decided not to at present
-                    }
+                String kegg = getKeggReference(se.getCrossReference());
+                if (kegg.length() > 0){
+                    addResource("kegg", qualifier, kegg);
                 }
-                List<AbstractModifiedResidue> mods = ((EntityWithAccessionedSequence) pe).getHasModifiedResidue();
-                if (mods != null) {
-                    for (AbstractModifiedResidue inf : mods) {
-                        if ((inf instanceof TranslationalModification) && ((TranslationalModification)(inf)).getPsiMod() != null){
-                            PsiMod psi = ((TranslationalModification)(inf)).getPsiMod();
-                            addResource(psi.getDatabaseName(), CVTerm.Qualifier.BQB_HAS_VERSION, psi.getIdentifier());
+                break;
+            case ENTITY_WITH_ACCESSIONED_SEQUENCE:
+                ReferenceEntity ref = ((EntityWithAccessionedSequence)(pe)).getReferenceEntity();
+                if (ref != null) {
+                    addResource(ref.getDatabaseName(), qualifier, ref.getIdentifier());
+                }
+                if (recurse) {
+                    List<PhysicalEntity> inferences = pe.getInferredTo();
+                    if (inferences != null) {
+                        for (PhysicalEntity inf : inferences) {
+                            addResource("reactome", CVTerm.Qualifier.BQB_IS_HOMOLOG_TO, inf.getStId());
+                            // could add nested annotation but decided not to at present
+                        }
+                    }
+                    inferences = pe.getInferredFrom();
+                    if (inferences != null) {
+                        for (PhysicalEntity inf : inferences) {
+                            addResource("reactome", CVTerm.Qualifier.BQB_IS_HOMOLOG_TO, inf.getStId());
+                            // could add nested annotation but decided not to at present
+                        }
+                    }
+                    List<AbstractModifiedResidue> mods = ((EntityWithAccessionedSequence) pe).getHasModifiedResidue();
+                    if (mods != null) {
+                        for (AbstractModifiedResidue inf : mods) {
+                            if ((inf instanceof TranslationalModification) && ((TranslationalModification)(inf)).getPsiMod() != null){
+                                PsiMod psi = ((TranslationalModification)(inf)).getPsiMod();
+                                addResource(psi.getDatabaseName(), CVTerm.Qualifier.BQB_HAS_VERSION, psi.getIdentifier());
+                            }
                         }
                     }
                 }
-            }
-        }
-        else if (pe instanceof Complex){
-            if (((Complex)(pe)).getHasComponent() != null) {
-                for (PhysicalEntity component : ((Complex) (pe)).getHasComponent()) {
-                    createPhysicalEntityAnnotations(component, CVTerm.Qualifier.BQB_HAS_PART, false);
-                }
-            }
-        }
-        else if (pe instanceof EntitySet){
-            if (((EntitySet)(pe)).getHasMember() != null) {
-                for (PhysicalEntity member : ((EntitySet) (pe)).getHasMember()) {
-                    createPhysicalEntityAnnotations(member, CVTerm.Qualifier.BQB_HAS_PART, false);
+                break;
+            case COMPLEX:
+                if (((Complex)(pe)).getHasComponent() != null) {
+                    for (PhysicalEntity component : ((Complex) (pe)).getHasComponent()) {
+                        createPhysicalEntityAnnotations(component, CVTerm.Qualifier.BQB_HAS_PART, false);
+                    }
                 }
-            }
-        }
-        else if (pe instanceof Polymer){
-            if (((Polymer) pe).getRepeatedUnit() != null) {
-                for (PhysicalEntity component : ((Polymer) (pe)).getRepeatedUnit()) {
-                    createPhysicalEntityAnnotations(component, CVTerm.Qualifier.BQB_HAS_PART, false);
+                break;
+            case CANDIDATE_SET:
+            case DEFINED_SET:
+            case OPEN_SET:
+            case ENTITY_SET:
+                if (((EntitySet)(pe)).getHasMember() != null) {
+                    for (PhysicalEntity member : ((EntitySet) (pe)).getHasMember()) {
+                        createPhysicalEntityAnnotations(member, CVTerm.Qualifier.BQB_HAS_PART, false);
+                    }
                 }
-            }
-        }
-        else {
-            // a GenomeEncodedEntity adds no additional annotation
-            if (!(pe instanceof GenomeEncodedEntity)){
-                // the only thing left should be an OtherEntity which
-                // also adds no further annotation
-                if (!(pe instanceof OtherEntity)) {
-                    System.err.println("Encountered unrecognised physical entity");
+                break;
+            case POLYMER:
+                if (((Polymer) pe).getRepeatedUnit() != null) {
+                    for (PhysicalEntity component : ((Polymer) (pe)).getRepeatedUnit()) {
+                        createPhysicalEntityAnnotations(component, CVTerm.Qualifier.BQB_HAS_PART, false);
+                    }
                 }
-            }
+                break;
+            case GENOME_ENCODED_ENTITY:
+            case OTHER_ENTITY:
+                // these add no additional annotation
+                break;
+            case UNKNOWN:
+                // reported when the type was looked up
+                break;
         }
     }
 
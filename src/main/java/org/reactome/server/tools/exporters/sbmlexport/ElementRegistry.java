@@ -0,0 +1,153 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Records which Reactome objects have already been written to an SBML model
+ * so that each is only added once.
+ *
+ * Elements are keyed on the ReactomeDB dbId (and for species references the role
+ * and the dbIds of the event and participant) so no SBML id String needs to be
+ * built just to check whether an element is already present.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class ElementRegistry {
+
+    public enum Kind {
+        REACTION, SPECIES, COMPARTMENT, SPECIES_REFERENCE
+    }
+
+    private final LongHashSet reactions = new LongHashSet();
+    private final LongHashSet species = new LongHashSet();
+    private final LongHashSet compartments = new LongHashSet();
+    // for each role the participants already referenced by each event
+    private final Map<Long, LongHashSet>[] speciesReferences;
+
+    private final long[] hits = new long[Kind.values().length];
+    private final long[] misses = new long[Kind.values().length];
+
+    @SuppressWarnings("unchecked")
+    ElementRegistry() {
+        speciesReferences = new Map[ParticipantRole.values().length];
+        for (int i = 0; i < speciesReferences.length; i++) {
+            speciesReferences[i] = new HashMap<Long, LongHashSet>();
+        }
+    }
+
+    /**
+     * Register a reaction.
+     *
+     * @param dbId  Long dbId of the ReactionLikeEvent
+     *
+     * @return true if this is the first time the reaction has been seen
+     */
+    boolean addReaction(long dbId) {
+        return record(Kind.REACTION, reactions.add(dbId));
+    }
+
+    /**
+     * Register a species.
+     *
+     * @param dbId  Long dbId of the PhysicalEntity
+     *
+     * @return true if this is the first time the species has been seen
+     */
+    boolean addSpecies(long dbId) {
+        return record(Kind.SPECIES, species.add(dbId));
+    }
+
+    /**
+     * Register a compartment.
+     *
+     * @param dbId  Long dbId of the Compartment
+     *
+     * @return true if this is the first time the compartment has been seen
+     */
+    boolean addCompartment(long dbId) {
+        return record(Kind.COMPARTMENT, compartments.add(dbId));
+    }
+
+    /**
+     * Register a species reference.
+     *
+     * @param role      ParticipantRole of the participant
+     * @param eventId   Long dbId of the ReactionLikeEvent
+     * @param peId      Long dbId of the participating PhysicalEntity
+     *
+     * @return true if this is the first time the species reference has been seen
+     */
+    boolean addSpeciesReference(ParticipantRole role, long eventId, long peId) {
+        Map<Long, LongHashSet> byEvent = speciesReferences[role.ordinal()];
+        LongHashSet participants = byEvent.get(eventId);
+        if (participants == null) {
+            participants = new LongHashSet();
+            byEvent.put(eventId, participants);
+        }
+        return record(Kind.SPECIES_REFERENCE, participants.add(peId));
+    }
+
+    /**
+     * Get the number of times an element of this kind was requested again
+     * after it had already been added.
+     *
+     * @param kind  Kind of element
+     *
+     * @return number of duplicates avoided
+     */
+    public long getHits(Kind kind) {
+        return hits[kind.ordinal()];
+    }
+
+    /**
+     * Get the number of distinct elements of this kind that were added.
+     *
+     * @param kind  Kind of element
+     *
+     * @return number of elements added
+     */
+    public long getMisses(Kind kind) {
+        return misses[kind.ordinal()];
+    }
+
+    public long getTotalHits() {
+        long total = 0;
+        for (long h : hits) {
+            total += h;
+        }
+        return total;
+    }
+
+    public long getTotalMisses() {
+        long total = 0;
+        for (long m : misses) {
+            total += m;
+        }
+        return total;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Kind kind : Kind.values()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(kind.name().toLowerCase()).append(": ")
+                    .append(getMisses(kind)).append(" added/")
+                    .append(getHits(kind)).append(" duplicates");
+        }
+        return sb.toString();
+    }
+
+    private boolean record(Kind kind, boolean added) {
+        if (added) {
+            misses[kind.ordinal()]++;
+        }
+        else {
+            hits[kind.ordinal()]++;
+        }
+        return added;
+    }
+}
@@ -0,0 +1,94 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.sbml.jsbml.CVTerm;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The caches shared by every document written during one export run.
+ *
+ * Many PhysicalEntities, Compartments and ReactionLikeEvents appear in a large
+ * number of pathways. Create one instance at the start of a run and pass it to
+ * each WriteSBML so that work done for an object in one pathway is reused when it
+ * appears in the next. The caches are safe to share between threads.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class ExportCaches {
+
+    public static final int DEFAULT_MAX_ENTRIES = 200000;
+
+    // the subpathway closures keep whole pathways in memory so hold far fewer of them
+    public static final int MAX_SUBPATHWAYS = 1000;
+
+    private final RunCache<Map<CVTerm.Qualifier, Set<String>>> annotations;
+    private final RunCache<String> summations;
+    private final RunCache<InstanceEditSummary> instanceEdits;
+    private final SubpathwayCache subpathways;
+
+    /**
+     * Construct caches with the default size.
+     */
+    public ExportCaches() {
+        this(DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Construct caches each holding at most the given number of entries,
+     * except the subpathway cache which holds at most MAX_SUBPATHWAYS.
+     *
+     * @param maxEntries    int maximum number of entries in each cache
+     */
+    public ExportCaches(int maxEntries) {
+        annotations = new RunCache<Map<CVTerm.Qualifier, Set<String>>>("annotation", maxEntries);
+        summations = new RunCache<String>("summation", maxEntries);
+        instanceEdits = new RunCache<InstanceEditSummary>("instance edit", maxEntries);
+        subpathways = new SubpathwayCache(Math.min(maxEntries, MAX_SUBPATHWAYS));
+    }
+
+    /**
+     * Get the cache of the MIRIAM qualifiers and identifiers.org URIs
+     * resolved for a species, compartment or reaction.
+     *
+     * @return RunCache keyed on dbId
+     */
+    public RunCache<Map<CVTerm.Qualifier, Set<String>>> getAnnotations() {
+        return annotations;
+    }
+
+    /**
+     * Get the cache of Summation text with any tags removed.
+     *
+     * @return RunCache keyed on the dbId of the Summation
+     */
+    public RunCache<String> getSummations() {
+        return summations;
+    }
+
+    /**
+     * Get the cache of InstanceEdit dates and creators used in model histories.
+     *
+     * @return RunCache keyed on the dbId of the InstanceEdit
+     */
+    RunCache<InstanceEditSummary> getInstanceEdits() {
+        return instanceEdits;
+    }
+
+    /**
+     * Get the cache of the reactions reached from each pathway, which also
+     * counts the traversal saved for each species.
+     *
+     * @return SubpathwayCache keyed on the dbId of the Pathway
+     */
+    public SubpathwayCache getSubpathways() {
+        return subpathways;
+    }
+
+    @Override
+    public String toString() {
+        String separator = System.getProperty("line.separator");
+        return annotations.toString() + separator + summations.toString() + separator + instanceEdits.toString() +
+                separator + subpathways.toString();
+    }
+}
@@ -0,0 +1,154 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Resolves a Reactome database name and accession to an identifiers.org URI.
+ *
+ * The namespace and form of URI used for each database are read once from the
+ * identifiers-org.tsv resource. The prefix of the URI for each database name is
+ * worked out the first time the name is seen and after that an annotation only
+ * costs a lookup and a concatenation.
+ *
+ * The registry is safe to share between threads.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class IdentifierResolver {
+
+    static final String RESOURCE = "/identifiers-org.tsv";
+
+    private static final String BASE_URI = "http://identifiers.org/";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final IdentifierResolver registry = load();
+
+    /**
+     * How a database is written in a URI
+     */
+    private static class Entry {
+        private final String namespace;
+        private final boolean shortForm;
+
+        private Entry(String namespace, boolean shortForm) {
+            this.namespace = namespace;
+            this.shortForm = shortForm;
+        }
+    }
+
+    // keyed on the lower case database name
+    private final Map<String, Entry> entries;
+
+    // keyed on the database name exactly as it was passed
+    private final Map<String, String> prefixes = new ConcurrentHashMap<String, String>();
+
+    /**
+     * Construct a resolver from a table of database names.
+     *
+     * @param reader    Reader of lines: name, namespace and form separated by tabs
+     *
+     * @throws IOException if the table cannot be read
+     */
+    IdentifierResolver(Reader reader) throws IOException {
+        entries = read(reader);
+    }
+
+    /**
+     * Get the registry loaded from the identifiers-org.tsv resource.
+     *
+     * @return IdentifierResolver shared by all builders
+     */
+    static IdentifierResolver getRegistry() {
+        return registry;
+    }
+
+    /**
+     * Creates the identifiers.org URI for the accession.
+     *
+     * @param dbname        String name of the database being used
+     * @param accessionNo   the number used by the database
+     *
+     * @return String URI
+     */
+    String resolve(String dbname, String accessionNo) {
+        return getPrefix(dbname) + accessionNo;
+    }
+
+    /**
+     * Get the part of the URI that comes before the accession.
+     *
+     * @param dbname    String name of the database being used
+     *
+     * @return String prefix of the URI
+     */
+    String getPrefix(String dbname) {
+        String prefix = prefixes.get(dbname);
+        if (prefix == null) {
+            prefix = createPrefix(dbname);
+            prefixes.put(dbname, prefix);
+        }
+        return prefix;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private String createPrefix(String dbname) {
+        String lowerDB = dbname.toLowerCase();
+        Entry entry = entries.get(lowerDB);
+        if (entry == null) {
+            entry = new Entry(lowerDB, false);
+        }
+        if (entry.shortForm) {
+            return BASE_URI + entry.namespace + "/";
+        }
+        return BASE_URI + entry.namespace + "/" + dbname.toUpperCase() + ":";
+    }
+
+    private static IdentifierResolver load() {
+        InputStream in = IdentifierResolver.class.getResourceAsStream(RESOURCE);
+        try {
+            if (in == null) {
+                System.err.println("Could not find " + RESOURCE + "; database names will be used as identifiers.org namespaces");
+                return new IdentifierResolver(new StringReader(""));
+            }
+            try {
+                return new IdentifierResolver(new InputStreamReader(in, UTF8));
+            }
+            finally {
+                in.close();
+            }
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Could not read " + RESOURCE, e);
+        }
+    }
+
+    private static Map<String, Entry> read(Reader reader) throws IOException {
+        Map<String, Entry> entries = new HashMap<String, Entry>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\t");
+            if (fields.length != 3 || !(fields[2].equals("short") || fields[2].equals("long"))) {
+                throw new IOException("Bad line in identifiers.org table: " + line);
+            }
+            entries.put(fields[0].toLowerCase(), new Entry(fields[1], fields[2].equals("short")));
+        }
+        return entries;
+    }
+}
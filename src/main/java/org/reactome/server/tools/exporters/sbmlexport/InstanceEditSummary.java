@@ -0,0 +1,58 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.sbml.jsbml.Creator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * The parts of a ReactomeDB InstanceEdit used in a model history: the parsed
+ * date and a Creator for each author.
+ *
+ * A summary is shared through the run cache so the Creators held here are
+ * never added to a History; copies are made with getCreatorCopy.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class InstanceEditSummary {
+
+    private final Date date;
+    private final List<String> surnames;
+    private final List<Creator> creators;
+
+    /**
+     * @param date      Date of the edit or null if it could not be parsed
+     * @param surnames  List of the surname of each author; used to avoid repeating a creator
+     * @param creators  List of Creator for each author in the same order
+     */
+    InstanceEditSummary(Date date, List<String> surnames, List<Creator> creators) {
+        this.date = (date == null) ? null : new Date(date.getTime());
+        this.surnames = Collections.unmodifiableList(new ArrayList<String>(surnames));
+        this.creators = Collections.unmodifiableList(new ArrayList<Creator>(creators));
+    }
+
+    Date getDate() {
+        return (date == null) ? null : new Date(date.getTime());
+    }
+
+    int getNumAuthors() {
+        return surnames.size();
+    }
+
+    String getSurname(int i) {
+        return surnames.get(i);
+    }
+
+    /**
+     * Get a copy of the Creator for an author that can be added to a History.
+     *
+     * @param i     int index of the author
+     *
+     * @return a new Creator
+     */
+    Creator getCreatorCopy(int i) {
+        return creators.get(i).clone();
+    }
+}
@@ -0,0 +1,123 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import java.util.Arrays;
+
+/**
+ * A minimal open addressing hash set of primitive long values.
+ * This avoids boxing every key and building a String just to test membership.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class LongHashSet {
+
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] table;
+    private int size = 0;
+    private boolean containsEmptyKey = false;
+    private int resizeThreshold;
+
+    LongHashSet() {
+        this(64);
+    }
+
+    /**
+     * Construct a set able to hold the expected number of values without resizing.
+     *
+     * @param expected  int number of values expected
+     */
+    LongHashSet(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expected / LOAD_FACTOR)) - 1) << 1;
+        table = new long[capacity];
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * Adds the value to the set.
+     *
+     * @param value long value to add
+     *
+     * @return true if the value was not already present, false otherwise
+     */
+    boolean add(long value) {
+        if (value == EMPTY) {
+            if (containsEmptyKey) {
+                return false;
+            }
+            containsEmptyKey = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        table[index] = value;
+        size++;
+        if (size > resizeThreshold) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the value is in the set.
+     *
+     * @param value long value to look for
+     *
+     * @return true if present, false otherwise
+     */
+    boolean contains(long value) {
+        if (value == EMPTY) {
+            return containsEmptyKey;
+        }
+        int mask = table.length - 1;
+        int index = hash(value) & mask;
+        while (table[index] != EMPTY) {
+            if (table[index] == value) {
+                return true;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(table, EMPTY);
+        containsEmptyKey = false;
+        size = 0;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = table;
+        table = new long[newCapacity];
+        resizeThreshold = (int) (newCapacity * LOAD_FACTOR);
+        int mask = newCapacity - 1;
+        for (long value : old) {
+            if (value != EMPTY) {
+                int index = hash(value) & mask;
+                while (table[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                table[index] = value;
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of the value so that sequential dbIds do not cluster.
+     */
+    private static int hash(long value) {
+        long h = value * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
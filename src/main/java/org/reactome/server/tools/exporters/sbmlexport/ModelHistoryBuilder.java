@@ -16,9 +16,12 @@ import org.sbml.jsbml.SBase;
 
 class ModelHistoryBuilder extends AnnotationBuilder {
     private History thisHistory = null;
-    private Map<String, Person> authors = new HashMap<String, Person>();
+    private Set<String> authors = new HashSet<String>();
     private Date earliestCreatedDate = null;
-    private List<java.util.Date> modified = new ArrayList<java.util.Date>();
+    private SortedSet<Date> modified = new TreeSet<Date>();
+
+    private final DateFormat format = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss", Locale.ENGLISH);
+    private ExportCaches caches = null;
 
 
     ModelHistoryBuilder(SBase sbase) {
@@ -27,6 +30,18 @@ class ModelHistoryBuilder extends AnnotationBuilder {
 
     }
 
+    /**
+     * Construct a builder that reuses the InstanceEdits already
+     * read earlier in the run.
+     *
+     * @param sbase     SBML SBase object to add the history to
+     * @param caches    ExportCaches for the run; may be null
+     */
+    ModelHistoryBuilder(SBase sbase, ExportCaches caches) {
+        this(sbase);
+        this.caches = caches;
+    }
+
     /**
      * Creates an SBML History object from the pathway. It recurses through
      * all Events contained in the Pathway.
@@ -42,7 +57,6 @@ class ModelHistoryBuilder extends AnnotationBuilder {
         }
 
         thisHistory.setCreatedDate(earliestCreatedDate);
-        Collections.sort(modified);
         for (Date d: modified){
             thisHistory.setModifiedDate(d);
         }
@@ -55,7 +69,6 @@ class ModelHistoryBuilder extends AnnotationBuilder {
         }
 
         thisHistory.setCreatedDate(earliestCreatedDate);
-        Collections.sort(modified);
         for (Date d: modified){
             thisHistory.setModifiedDate(d);
         }
@@ -109,21 +122,18 @@ class ModelHistoryBuilder extends AnnotationBuilder {
         if (edit == null) {
             return;
         }
-        addCreators(edit.getAuthor());
-        Date thisdate = formatDate(edit.getDateTime());
+        InstanceEditSummary summary = getSummary(edit);
+        addCreators(summary);
+        Date thisdate = summary.getDate();
         if (earliestCreatedDate == null) {
             earliestCreatedDate = thisdate;
         }
         else if (thisdate.compareTo(earliestCreatedDate) < 0){
-            if (!modified.contains(earliestCreatedDate)) {
-                modified.add(earliestCreatedDate);
-            }
+            modified.add(earliestCreatedDate);
             earliestCreatedDate = thisdate;
         }
         else {
-            if (!modified.contains(thisdate)) {
-                modified.add(thisdate);
-            }
+            modified.add(thisdate);
         }
 
     }
@@ -138,9 +148,10 @@ class ModelHistoryBuilder extends AnnotationBuilder {
         if (edit == null) {
             return;
         }
-        addCreators(edit.getAuthor());
-        Date thisdate = formatDate(edit.getDateTime());
-        if (!modified.contains(thisdate)) {
+        InstanceEditSummary summary = getSummary(edit);
+        addCreators(summary);
+        Date thisdate = summary.getDate();
+        if (thisdate != null) {
             modified.add(thisdate);
         }
     }
@@ -149,17 +160,45 @@ class ModelHistoryBuilder extends AnnotationBuilder {
      * Adds any person listed to the creators of the model ensuring
      * no repetitions.
      *
-     * @param editors  List<Person> from the InstanceEdit (from ReactomeDB)
+     * @param summary  InstanceEditSummary of the InstanceEdit (from ReactomeDB)
      */
-    private void addCreators(List<Person> editors){
-        if (editors != null && editors.size() > 0) {
-            for (Person p : editors) {
-                if (!authors.containsKey(p.getSurname())) {
-                    thisHistory.addCreator(createCreator(p));
-                    authors.put(p.getSurname(), p);
+    private void addCreators(InstanceEditSummary summary){
+        for (int i = 0; i < summary.getNumAuthors(); i++) {
+            if (authors.add(summary.getSurname(i))) {
+                thisHistory.addCreator(summary.getCreatorCopy(i));
+            }
+        }
+    }
+
+    /**
+     * Gets the date and creators of an InstanceEdit, from the run cache
+     * if it has been seen before.
+     *
+     * @param edit  InstanceEdit from ReactomeDB
+     *
+     * @return InstanceEditSummary for the edit
+     */
+    private InstanceEditSummary getSummary(InstanceEdit edit) {
+        InstanceEditSummary summary = null;
+        if (caches != null && edit.getDbId() != null) {
+            summary = caches.getInstanceEdits().get(edit.getDbId());
+        }
+        if (summary == null) {
+            List<String> surnames = new ArrayList<String>();
+            List<Creator> creators = new ArrayList<Creator>();
+            List<Person> editors = edit.getAuthor();
+            if (editors != null) {
+                for (Person p : editors) {
+                    surnames.add(p.getSurname());
+                    creators.add(createCreator(p));
                 }
             }
+            summary = new InstanceEditSummary(formatDate(edit.getDateTime()), surnames, creators);
+            if (caches != null && edit.getDbId() != null) {
+                caches.getInstanceEdits().put(edit.getDbId(), summary);
+            }
         }
+        return summary;
     }
 
     /**
@@ -171,7 +210,6 @@ class ModelHistoryBuilder extends AnnotationBuilder {
      *                  cannot be parsed.
      */
     private Date formatDate(String datetime){
-        DateFormat format = new SimpleDateFormat("yyyy-MM-dd hh:mm:ss", Locale.ENGLISH);
         Date date;
         try {
             date = format.parse(datetime);
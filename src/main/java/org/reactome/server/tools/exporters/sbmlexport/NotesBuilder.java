@@ -11,15 +11,28 @@ import java.util.List;
  * @author Sarah Keating <skeating@ebi.ac.uk>
  */
 class NotesBuilder {
+    private static final String lineSeparator = System.getProperty("line.separator");
+
     private SBase sbase = null;
-    private String openNotes = "<notes><p xmlns=\"http://www.w3.org/1999/xhtml\">";
-    private String closeNotes = "</p></notes>";
-    private String contents = "";
+    private final StringBuilder contents = new StringBuilder();
+    private ExportCaches caches = null;
 
     NotesBuilder(SBase sbase) {
         this.sbase = sbase;
     }
 
+    /**
+     * Construct a builder that reuses the Summation text already
+     * sanitized earlier in the run.
+     *
+     * @param sbase     SBML SBase object to add notes to
+     * @param caches    ExportCaches for the run; may be null
+     */
+    NotesBuilder(SBase sbase, ExportCaches caches) {
+        this.sbase = sbase;
+        this.caches = caches;
+    }
+
     /**
      * Puts the notes opening and closing tags
      * along with <p> </p> and the xhtml namespace
@@ -27,16 +40,7 @@ class NotesBuilder {
      * and appends the <notes> to the SBML SBase object
      */
     void addNotes(){
-        String notes = openNotes + contents + closeNotes;
-        XMLNode node;
-        try {
-            node = XMLNode.convertStringToXMLNode(notes);
-        }
-        catch(Exception e) {
-            System.out.println(e.getMessage());
-            System.out.println(notes);
-            node = null;
-        }
+        XMLNode node = XHTMLNodeBuilder.createParagraph("notes", contents.toString());
 
         if (node != null) {
             sbase.appendNotes(node);
@@ -49,14 +53,20 @@ class NotesBuilder {
      * @param notes     String to append
      */
     private void appendNotes(String notes) {
-        notes = removeTags(notes);
-        if (contents.length() == 0) {
-            contents += notes;
-        }
-        else {
-            contents += System.getProperty("line.separator");
-            contents += notes;
+        appendSanitizedNotes(removeTags(notes));
+    }
+
+    /**
+     * Append the given string, which has already had any tags removed,
+     * to the string contents of this instance.
+     *
+     * @param notes     String to append
+     */
+    private void appendSanitizedNotes(String notes) {
+        if (contents.length() > 0) {
+            contents.append(lineSeparator);
         }
+        contents.append(notes);
     }
 
     /**
@@ -86,50 +96,42 @@ class NotesBuilder {
      * @param pe    PhysicalEntity from ReactomeDB
      */
     void createSpeciesNotes(PhysicalEntity pe){
-        if (pe instanceof SimpleEntity){
-            appendDerivedFromStatement("SimpleEntity");
-            appendNotes("This is a small compound.");
-        }
-        else if (pe instanceof EntityWithAccessionedSequence){
-            appendDerivedFromStatement("EntityWithAccessionedSequence");
-            appendNotes("This is a protein.");
-        }
-        else if (pe instanceof Complex){
-            appendDerivedFromStatement("Complex");
-            String structure = extractComplexStructure((Complex)(pe));
-            if (structure == null || structure.length() == 0) {
-                appendNotes("Reactome uses a nested structure for complexes, which cannot be fully represented " +
-                        "in SBML Level " + sbase.getLevel() + " Version " + sbase.getVersion() + " core.");
-            }
-            else {
-                appendNotes("Here is Reactomes nested structure for this complex: " + structure);
-            }
-        }
-        else if (pe instanceof CandidateSet){
-            appendDerivedFromStatement("CandidateSet");
-            appendNotes("A list of entities, one or more of which might perform the given function.");
-        }
-        else if (pe instanceof DefinedSet){
-            appendDerivedFromStatement("DefinedSet");
-            appendNotes("This is a list of alternative entities, any of which can perform the given function.");
-        }
-        else if (pe instanceof OpenSet){
-            appendDerivedFromStatement("OpenSet");
-            appendNotes("A set of examples characterizing a very large but not explicitly enumerated set, e.g. mRNAs.");
-        }
-        else if (pe instanceof OtherEntity){
-            appendDerivedFromStatement("OtherEntity");
-        }
-        else if (pe instanceof GenomeEncodedEntity){
-            appendDerivedFromStatement("GenomeEncodedEntity");
+        PhysicalEntityType type = PhysicalEntityType.of(pe);
+        if (type == PhysicalEntityType.UNKNOWN) {
+            // reported when the type was looked up
+            return;
         }
-        else if (pe instanceof Polymer){
-            appendDerivedFromStatement("Polymer");
+        appendDerivedFromStatement(type.getReactomeName());
+        switch (type) {
+            case SIMPLE_ENTITY:
+                appendNotes("This is a small compound.");
+                break;
+            case ENTITY_WITH_ACCESSIONED_SEQUENCE:
+                appendNotes("This is a protein.");
+                break;
+            case COMPLEX:
+                String structure = extractComplexStructure((Complex)(pe));
+                if (structure == null || structure.length() == 0) {
+                    appendNotes("Reactome uses a nested structure for complexes, which cannot be fully represented " +
+                            "in SBML Level " + sbase.getLevel() + " Version " + sbase.getVersion() + " core.");
+                }
+                else {
+                    appendNotes("Here is Reactomes nested structure for this complex: " + structure);
+                }
+                break;
+            case CANDIDATE_SET:
+                appendNotes("A list of entities, one or more of which might perform the given function.");
+                break;
+            case DEFINED_SET:
+                appendNotes("This is a list of alternative entities, any of which can perform the given function.");
+                break;
+            case OPEN_SET:
+                appendNotes("A set of examples characterizing a very large but not explicitly enumerated set, e.g. mRNAs.");
+                break;
+            default:
+                // the other types only record what they were derived from
+                break;
         }
-        else {
-            System.err.println("NotesBuilder.createSpeciesNotes: WARNING - encountered a non existent PhysicalEntity type!");
-       }
-
     }
 
     /**
@@ -146,12 +148,32 @@ class NotesBuilder {
         boolean appended = false;
         if (summations != null) {
             for (Summation s : summations) {
-                appendNotes(s.getText());
+                appendSanitizedNotes(getSummationText(s));
                 appended = true;
             }
         }
         return appended;
     }
+
+    /**
+     * Get the text of the Summation with any tags removed. The same Summations
+     * appear in many pathways so the result is kept in the run cache if there is one.
+     *
+     * @param summation     Summation from ReactomeDB
+     *
+     * @return String text with any tags removed
+     */
+    private String getSummationText(Summation summation) {
+        if (caches == null || summation.getDbId() == null) {
+            return removeTags(summation.getText());
+        }
+        String text = caches.getSummations().get(summation.getDbId());
+        if (text == null) {
+            text = removeTags(summation.getText());
+            caches.getSummations().put(summation.getDbId(), text);
+        }
+        return text;
+    }
     /**
      * create string describing the complex structure within Reactome
      *
@@ -160,7 +182,6 @@ class NotesBuilder {
      * @return          String representing the complex structure
      */
     private String extractComplexStructure(Complex complex){
-        String structure = null;
         List<String> ids = new ArrayList<String>();
         if (complex.getHasComponent() != null){
             for (PhysicalEntity component: complex.getHasComponent() ){
@@ -169,20 +190,18 @@ class NotesBuilder {
                 }
             }
         }
-        int num = ids.size();
-        int count = 0;
-        if (num > 0) {
-            structure = "(";
-            for (String id : ids){
-                structure += id;
-                count++;
-                if (count < num){
-                    structure += ", ";
-                }
+        if (ids.size() == 0) {
+            return null;
+        }
+        StringBuilder structure = new StringBuilder("(");
+        for (int i = 0; i < ids.size(); i++){
+            if (i > 0){
+                structure.append(", ");
             }
-            structure += ")";
+            structure.append(ids.get(i));
         }
-        return structure;
+        structure.append(")");
+        return structure.toString();
     }
 
     /**
@@ -195,7 +214,7 @@ class NotesBuilder {
      */
     private boolean getListOfComponentIds(List<String> ids, PhysicalEntity pe){
         boolean complete = true;
-        if (pe instanceof Complex){
+        if (PhysicalEntityType.of(pe) == PhysicalEntityType.COMPLEX){
             if (((Complex)pe).getHasComponent() != null) {
                 for (PhysicalEntity component : ((Complex) pe).getHasComponent()) {
                     if(!getListOfComponentIds(ids, component)) {
@@ -224,26 +243,28 @@ class NotesBuilder {
     private boolean getComponentId(List<String> ids, PhysicalEntity pe) {
         // TODO old code only used references to these two types why ?
         boolean complete = true;
-        if (pe instanceof SimpleEntity){
-            ReferenceMolecule ref = ((SimpleEntity)pe).getReferenceEntity();
-            if (ref == null) {
-                complete = false;
-            }
-            else {
-                ids.add(ref.getIdentifier());
-            }
-        }
-        else if (pe instanceof EntityWithAccessionedSequence){
-            ReferenceSequence ref = ((EntityWithAccessionedSequence)pe).getReferenceEntity();
-            if (ref == null) {
+        switch (PhysicalEntityType.of(pe)) {
+            case SIMPLE_ENTITY:
+                ReferenceMolecule molecule = ((SimpleEntity)pe).getReferenceEntity();
+                if (molecule == null) {
+                    complete = false;
+                }
+                else {
+                    ids.add(molecule.getIdentifier());
+                }
+                break;
+            case ENTITY_WITH_ACCESSIONED_SEQUENCE:
+                ReferenceSequence sequence = ((EntityWithAccessionedSequence)pe).getReferenceEntity();
+                if (sequence == null) {
+                    complete = false;
+                }
+                else {
+                    ids.add(sequence.getIdentifier());
+                }
+                break;
+            default:
                 complete = false;
-            }
-            else {
-                ids.add(ref.getIdentifier());
-            }
-        }
-        else {
-            complete = false;
+                break;
         }
         return complete;
     }
@@ -267,15 +288,7 @@ class NotesBuilder {
     private String removeTags(String notes) {
         // if we have an xhtml tags in the text it messes up parsing
         // copied from old reactome code
-        notes = notes.replaceAll("\\p{Cntrl}+", " ");
-        // // TODO: 22/10/2016 why does this cause a problem 
-//        notes = notes.replaceAll("\\cm+", "B");
-        notes = notes.replaceAll("</*[a-zA-Z][^>]*>", " ");
-        notes = notes.replaceAll("<>", " interconverts to ");
-        notes = notes.replaceAll("<", " ");
-        notes = notes.replaceAll("\n+", "  ");
-        notes = notes.replaceAll("&+", "  ");
-        return notes;
+        return NotesSanitizer.sanitize(notes);
     }
 
 }
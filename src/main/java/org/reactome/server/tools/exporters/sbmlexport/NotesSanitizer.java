@@ -0,0 +1,130 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+/**
+ * Removes the markup from Reactome text so that it can be written as the
+ * character content of SBML notes.
+ *
+ * This gives exactly the same result as applying, in order,
+ *
+ *   replaceAll("\\p{Cntrl}+", " ")
+ *   replaceAll("</*[a-zA-Z][^>]*>", " ")
+ *   replaceAll("<>", " interconverts to ")
+ *   replaceAll("<", " ")
+ *   replaceAll("\n+", "  ")
+ *   replaceAll("&+", "  ")
+ *
+ * but makes a single pass over the text without compiling any patterns.
+ * The newline step never changes anything as newlines are control characters
+ * and have already been replaced by the first step.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class NotesSanitizer {
+
+    private NotesSanitizer() {
+    }
+
+    /**
+     * Remove any html tags and control characters from the text.
+     *
+     * @param text  String to be adjusted.
+     *
+     * @return      String with any <></> removed.
+     */
+    static String sanitize(String text) {
+        int len = text.length();
+        if (isClean(text)) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(len + 16);
+        // position of the next '>' at or after the current position;
+        // len if there is none
+        int nextClose = -1;
+        int i = 0;
+        while (i < len) {
+            char c = text.charAt(i);
+            if (isControl(c)) {
+                sb.append(' ');
+                i++;
+                while (i < len && isControl(text.charAt(i))) {
+                    i++;
+                }
+            }
+            else if (c == '<') {
+                if (nextClose < i) {
+                    nextClose = text.indexOf('>', i);
+                    if (nextClose < 0) {
+                        nextClose = len;
+                    }
+                }
+                int tagEnd = matchTag(text, i, nextClose);
+                if (tagEnd > 0) {
+                    sb.append(' ');
+                    i = tagEnd + 1;
+                }
+                else if (i + 1 < len && text.charAt(i + 1) == '>') {
+                    sb.append(" interconverts to ");
+                    i += 2;
+                }
+                else {
+                    sb.append(' ');
+                    i++;
+                }
+            }
+            else if (c == '&') {
+                sb.append("  ");
+                i++;
+                while (i < len && text.charAt(i) == '&') {
+                    i++;
+                }
+            }
+            else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Match the pattern </*[a-zA-Z][^>]*> starting at the '<' at position start.
+     *
+     * @param text      String being sanitized
+     * @param start     int position of '<'
+     * @param nextClose int position of the first '>' after start or the length of the text
+     *
+     * @return the position of the closing '>' or -1 if there is no tag here
+     */
+    private static int matchTag(String text, int start, int nextClose) {
+        if (nextClose >= text.length()) {
+            return -1;
+        }
+        int i = start + 1;
+        while (i < nextClose && text.charAt(i) == '/') {
+            i++;
+        }
+        if (i < nextClose && isAsciiLetter(text.charAt(i))) {
+            return nextClose;
+        }
+        return -1;
+    }
+
+    private static boolean isClean(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '<' || c == '&' || isControl(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isControl(char c) {
+        // the characters matched by \p{Cntrl}
+        return c < 0x20 || c == 0x7F;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
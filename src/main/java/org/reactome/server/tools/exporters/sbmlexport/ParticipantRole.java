@@ -0,0 +1,57 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+/**
+ * The roles a PhysicalEntity can take in a ReactionLikeEvent, each written
+ * as an SBML species reference.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+enum ParticipantRole {
+
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000010 reactant
+    REACTANT("input", 10),
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000011 product
+    PRODUCT("output", 11),
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000013 catalyst
+    CATALYST("catalyst", 13),
+    //// TODO: 09/11/2016 check this is appropriate
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000461 essential activator
+    POSITIVE_REGULATOR("positiveregulator", 461),
+    //// TODO: 09/11/2016 check this is appropriate
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000020 inhibitor
+    NEGATIVE_REGULATOR("negativeregulator", 20);
+
+    private final String idPart;
+    private final int sboTerm;
+
+    ParticipantRole(String idPart, int sboTerm) {
+        this.idPart = idPart;
+        this.sboTerm = sboTerm;
+    }
+
+    /**
+     * Determine whether the participant is an SBML modifier rather than a
+     * reactant or product.
+     *
+     * @return true if the species reference is a ModifierSpeciesReference
+     */
+    boolean isModifier() {
+        return this != REACTANT && this != PRODUCT;
+    }
+
+    /**
+     * Get the id of the SBML species reference for a participant in this role.
+     *
+     * @param eventId   Long dbId of the ReactionLikeEvent
+     * @param peId      Long dbId of the participating PhysicalEntity
+     *
+     * @return String id of the species reference
+     */
+    String getSpeciesReferenceId(Long eventId, Long peId) {
+        return (isModifier() ? "modifierspeciesreference_" : "speciesreference_") + eventId + "_" + idPart + "_" + peId;
+    }
+
+    int getSBOTerm() {
+        return sboTerm;
+    }
+}
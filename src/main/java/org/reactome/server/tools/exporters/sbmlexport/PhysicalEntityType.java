@@ -0,0 +1,100 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.reactome.server.graph.domain.model.*;
+
+/**
+ * The types of ReactomeDB PhysicalEntity that the SBML builders distinguish,
+ * with the SBO term used for the SBML species of each.
+ *
+ * The type of an entity is looked up once per class and remembered, so the
+ * builders switch on the type rather than each running its own chain of
+ * instanceof tests. A class that is not listed takes the type of its nearest
+ * listed superclass. PhysicalEntityTypeTest checks that every PhysicalEntity
+ * class of the Reactome data model has a type, so only a class from outside the
+ * model can have none; it is reported once as UNKNOWN rather than for every
+ * entity of that class.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+enum PhysicalEntityType {
+
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000247 simple chemical
+    SIMPLE_ENTITY(SimpleEntity.class, 247),
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000297 protein complex
+    ENTITY_WITH_ACCESSIONED_SEQUENCE(EntityWithAccessionedSequence.class, 297),
+    GENOME_ENCODED_ENTITY(GenomeEncodedEntity.class, 297),
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000253 non-covalent complex
+    COMPLEX(Complex.class, 253),
+    // the sbo term is not set for a set
+    CANDIDATE_SET(CandidateSet.class, -1),
+    DEFINED_SET(DefinedSet.class, -1),
+    OPEN_SET(OpenSet.class, -1),
+    ENTITY_SET(EntitySet.class, -1),
+    // http://www.ebi.ac.uk/sbo/main/SBO:0000240 material entity
+    POLYMER(Polymer.class, 240),
+    OTHER_ENTITY(OtherEntity.class, 240),
+    UNKNOWN(null, -1);
+
+    private static final ClassValue<PhysicalEntityType> types = new ClassValue<PhysicalEntityType>() {
+        @Override
+        protected PhysicalEntityType computeValue(Class<?> type) {
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (PhysicalEntityType t : values()) {
+                    if (t.entityClass == c) {
+                        return t;
+                    }
+                }
+            }
+            System.err.println("Encountered unknown PhysicalEntity type " + type.getName());
+            return UNKNOWN;
+        }
+    };
+
+    private final Class<? extends PhysicalEntity> entityClass;
+    private final int sboTerm;
+
+    PhysicalEntityType(Class<? extends PhysicalEntity> entityClass, int sboTerm) {
+        this.entityClass = entityClass;
+        this.sboTerm = sboTerm;
+    }
+
+    /**
+     * Get the type of a PhysicalEntity.
+     *
+     * @param pe    PhysicalEntity from ReactomeDB
+     *
+     * @return PhysicalEntityType
+     */
+    static PhysicalEntityType of(PhysicalEntity pe) {
+        return of(pe.getClass());
+    }
+
+    /**
+     * Get the type of a class of PhysicalEntity.
+     *
+     * @param type  Class of PhysicalEntity
+     *
+     * @return PhysicalEntityType
+     */
+    static PhysicalEntityType of(Class<? extends PhysicalEntity> type) {
+        return types.get(type);
+    }
+
+    /**
+     * Get the SBO term for an SBML species of this type.
+     *
+     * @return int sbo term or -1 if none
+     */
+    int getSBOTerm() {
+        return sboTerm;
+    }
+
+    /**
+     * Get the name of the type in the Reactome data model.
+     *
+     * @return String name of the class or null for UNKNOWN
+     */
+    String getReactomeName() {
+        return entityClass == null ? null : entityClass.getSimpleName();
+    }
+}
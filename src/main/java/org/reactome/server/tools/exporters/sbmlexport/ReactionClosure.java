@@ -0,0 +1,116 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.ReactionLikeEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The ReactionLikeEvents reached from a Pathway through its child Pathways,
+ * in the order a depth first walk of the hierarchy first meets them.
+ *
+ * Adding the reactions of the closure in order adds the same reactions, species
+ * and compartments in the same order as walking the hierarchy, so a document
+ * built from it is unchanged. The species and compartments follow from the
+ * reactions and their annotations come from the annotation cache.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class ReactionClosure {
+
+    private final Pathway pathway;
+    private final List<ReactionLikeEvent> reactions;
+    private final long numEvents;
+
+    private ReactionClosure(Pathway pathway, List<ReactionLikeEvent> reactions, long numEvents) {
+        this.pathway = pathway;
+        this.reactions = Collections.unmodifiableList(reactions);
+        this.numEvents = numEvents;
+    }
+
+    /**
+     * Get the closure of the pathway. The closure of the pathway and of each
+     * child pathway is taken from the cache if it was built from the same object
+     * and added to it if not.
+     *
+     * @param pathway   Pathway from ReactomeDB
+     * @param cache     SubpathwayCache for the run or null
+     * @param work      SubpathwayCache.Work to count the events visited and reused into
+     *
+     * @return ReactionClosure of the pathway
+     */
+    static ReactionClosure of(Pathway pathway, SubpathwayCache cache, SubpathwayCache.Work work) {
+        ReactionClosure closure = (cache == null) ? null : cache.get(pathway);
+        if (closure != null) {
+            work.reused += closure.numEvents;
+            return closure;
+        }
+        List<ReactionLikeEvent> reactions = new ArrayList<ReactionLikeEvent>();
+        Set<Long> seen = new HashSet<Long>();
+        long numEvents = 0;
+        if (pathway.getHasEvent() != null) {
+            for (Event event : pathway.getHasEvent()) {
+                numEvents++;
+                work.visited++;
+                if (event instanceof ReactionLikeEvent) {
+                    add(reactions, seen, (ReactionLikeEvent) (event));
+                }
+                else if (event instanceof Pathway) {
+                    ReactionClosure child = of((Pathway) (event), cache, work);
+                    numEvents += child.numEvents;
+                    for (ReactionLikeEvent rle : child.reactions) {
+                        add(reactions, seen, rle);
+                    }
+                }
+            }
+        }
+        closure = new ReactionClosure(pathway, reactions, numEvents);
+        if (cache != null) {
+            cache.put(pathway, closure);
+        }
+        return closure;
+    }
+
+    /**
+     * Check whether the closure was built by walking the given object. Another
+     * load of the same pathway, perhaps through the session of another thread,
+     * is a different object.
+     *
+     * @param pathway   Pathway from ReactomeDB
+     *
+     * @return true if the closure was built from this object, false otherwise
+     */
+    boolean isOf(Pathway pathway) {
+        return this.pathway == pathway;
+    }
+
+    /**
+     * Get the reactions in the order they are added to a document.
+     *
+     * @return unmodifiable List of ReactionLikeEvent
+     */
+    List<ReactionLikeEvent> getReactions() {
+        return reactions;
+    }
+
+    /**
+     * Get the number of events a walk of the hierarchy below the pathway visits.
+     *
+     * @return long number of events
+     */
+    long getNumEvents() {
+        return numEvents;
+    }
+
+    private static void add(List<ReactionLikeEvent> reactions, Set<Long> seen, ReactionLikeEvent rle) {
+        // an event without a dbId is left for the ElementRegistry to judge
+        if (rle.getDbId() == null || seen.add(rle.getDbId())) {
+            reactions.add(rle);
+        }
+    }
+}
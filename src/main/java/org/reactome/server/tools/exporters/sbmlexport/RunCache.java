@@ -0,0 +1,125 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded cache of values keyed on ReactomeDB dbId that lasts for
+ * an export run and is shared by every pathway exported in that run.
+ *
+ * When the cache is full the least recently used entry is evicted. The cache
+ * counts hits and misses so the benefit can be reported at the end of a run.
+ * All access is synchronized so one cache can be shared by worker threads;
+ * values stored must not be modified after they are added.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class RunCache<V> {
+
+    private final String name;
+    private final int maxEntries;
+    private final LinkedHashMap<Long, V> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Construct a cache holding at most the given number of entries.
+     *
+     * @param name          String name used when reporting
+     * @param maxEntries    int maximum number of entries
+     */
+    public RunCache(String name, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("cache " + name + " must hold at least one entry");
+        }
+        this.name = name;
+        this.maxEntries = maxEntries;
+        // access order so that iteration starts at the least recently used entry
+        this.entries = new LinkedHashMap<Long, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, V> eldest) {
+                if (size() > RunCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Look up the value for a dbId.
+     *
+     * @param dbId  Long dbId of the ReactomeDB object
+     *
+     * @return the value or null if it is not in the cache
+     */
+    public synchronized V get(Long dbId) {
+        V value = entries.get(dbId);
+        if (value == null) {
+            misses++;
+        }
+        else {
+            hits++;
+        }
+        return value;
+    }
+
+    /**
+     * Add the value for a dbId.
+     *
+     * @param dbId  Long dbId of the ReactomeDB object
+     * @param value value to store; this must not be changed afterwards
+     */
+    public synchronized void put(Long dbId, V value) {
+        if (dbId != null && value != null) {
+            entries.put(dbId, value);
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the proportion of lookups that found a value.
+     *
+     * @return hit rate between 0 and 1; 0 if there have been no lookups
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return (lookups == 0) ? 0.0 : ((double) hits) / lookups;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%s cache: %d hits, %d misses (%.1f%% hit rate), %d entries, %d evicted",
+                name, hits, misses, 100.0 * getHitRate(), entries.size(), evictions);
+    }
+}
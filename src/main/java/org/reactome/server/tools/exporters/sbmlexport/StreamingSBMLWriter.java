@@ -0,0 +1,787 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.metrics.ExportStage;
+import org.reactome.server.tools.metrics.PathwayMetrics;
+import org.sbml.jsbml.*;
+import org.sbml.jsbml.Compartment;
+import org.sbml.jsbml.Reaction;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.xml.XMLNode;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Writes the SBML for a Reactome Pathway straight to an OutputStream.
+ *
+ * WriteSBML builds the whole SBMLDocument before it is serialised, so the memory
+ * needed grows with the size of the pathway. This class writes each compartment,
+ * species and reaction as soon as it is reached and then discards it. Only the
+ * ElementRegistry used to skip duplicates is held for the whole document.
+ *
+ * SBML requires all compartments to be listed before the species and the species
+ * before the reactions, so the pathway is walked once for each list. Every walk
+ * visits the elements in the same order as WriteSBML and allocates the metaids in
+ * the same order. Each element is populated by the same CVTermBuilder, NotesBuilder
+ * and SBOTermLookup as WriteSBML uses.
+ *
+ * The output is not byte for byte that of WriteSBML: the attribute order,
+ * indentation and line wrapping are not those of the TidySBMLWriter. Only the
+ * document read back by JSBML is the same, and that is what StreamingSBMLWriterTest
+ * checks. The WriteSBML tests that compare the output with expected strings are
+ * not run against this writer.
+ *
+ * Building and writing are interleaved, so when metrics are recorded the time
+ * outside the builders is all counted as serialization.
+ *
+ * An instance is not thread-safe; use one instance per thread.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class StreamingSBMLWriter {
+
+    private static final String SBML_NS = "http://www.sbml.org/sbml/level3/version1/core";
+    private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+    private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+    private static final String DCTERMS_NS = "http://purl.org/dc/terms/";
+    private static final String VCARD_NS = "http://www.w3.org/2001/vcard-rdf/3.0#";
+    private static final String BQBIOL_NS = "http://biomodels.net/biology-qualifiers/";
+    private static final String BQMODEL_NS = "http://biomodels.net/model-qualifiers/";
+
+    private enum Pass {
+        COMPARTMENTS, SPECIES, REACTIONS
+    }
+
+    private final short sbmlLevel = 3;
+    private final short sbmlVersion = 1;
+
+    private final Pathway thisPathway;
+    private final Integer dbVersion;
+
+    private final SBOTermLookup sbo = new SBOTermLookup();
+    private final DateFormat w3cdtf;
+
+    private ExportCaches caches = null;
+
+    private PathwayMetrics metrics = null;
+
+    private boolean addAnnotations = true;
+    private boolean inTestMode = false;
+
+    // state of the current pass
+    private XMLStreamWriter writer;
+    private Pass pass;
+    private ElementRegistry registry;
+    private long metaid_count;
+    private boolean listOpen;
+    private String openReferenceList;
+
+    /**
+     * Construct an instance of the StreamingSBMLWriter for the specified
+     * Pathway.
+     *
+     * @param pathway Pathway from ReactomeDB
+     * @param version Integer - version number of the database
+     */
+    public StreamingSBMLWriter(Pathway pathway, Integer version) {
+        thisPathway = pathway;
+        dbVersion = version;
+        w3cdtf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        w3cdtf.setTimeZone(TimeZone.getTimeZone("UTC"));
+    }
+
+    /**
+     * Set the addAnnotation flag.
+     * This allows testing with and without annotations
+     *
+     * @param flag  Boolean indicating whether to write out annotations
+     */
+    public void setAnnotationFlag(Boolean flag) {
+        addAnnotations = flag;
+    }
+
+    /**
+     * Set the inTestMode flag.
+     * This allows testing with/without certain things
+     *
+     * @param flag  Boolean indicating whether tests are running
+     */
+    void setInTestModeFlag(Boolean flag) {
+        inTestMode = flag;
+    }
+
+    /**
+     * Set the caches shared by all the documents written in this run.
+     * Annotations already resolved for a species, compartment or reaction
+     * in an earlier pathway are then reused.
+     *
+     * @param caches  ExportCaches for the run or null for no caching
+     */
+    public void setExportCaches(ExportCaches caches) {
+        this.caches = caches;
+    }
+
+    /**
+     * Set where the time spent writing the document is recorded.
+     *
+     * @param metrics  PathwayMetrics for this pathway or null for no timing
+     */
+    public void setMetrics(PathwayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public String getModelId() {
+        return "pathway_" + thisPathway.getDbId();
+    }
+
+    /**
+     * Get the registry of elements written by the last call to write(). This
+     * reports how many duplicate references were skipped.
+     *
+     * @return ElementRegistry for the last document written or null
+     */
+    public ElementRegistry getElementRegistry() {
+        return registry;
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // functions to output the document
+
+    /**
+     * Write the SBML document to a file.
+     *
+     * @param filename  String representing the filename to use.
+     *
+     * @return true if the file was written, false otherwise
+     */
+    public boolean toFile(String filename) {
+        OutputStream out = null;
+        boolean written = true;
+        try {
+            out = new BufferedOutputStream(new FileOutputStream(filename), 1 << 16);
+            write(out);
+        }
+        catch (Exception e) {
+            System.out.println("failed to write " + filename);
+            written = false;
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    System.out.println("failed to close " + filename);
+                    written = false;
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Write the SBML document to the given stream. The stream is not closed.
+     *
+     * @param out   OutputStream to write to
+     *
+     * @throws XMLStreamException if the document cannot be written
+     */
+    public void write(OutputStream out) throws XMLStreamException {
+        long start = startTimer();
+        long builderStart = metrics == null ? 0 : metrics.getBuilderNanos();
+        writer = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+        try {
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.writeStartElement("sbml");
+            writer.writeDefaultNamespace(SBML_NS);
+            writer.writeAttribute("level", Short.toString(sbmlLevel));
+            writer.writeAttribute("version", Short.toString(sbmlVersion));
+            if (addAnnotations && !inTestMode) {
+                writeProvenanceAnnotation();
+            }
+            if (thisPathway != null) {
+                writeModel();
+            }
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        }
+        finally {
+            writer.close();
+            writer = null;
+            if (metrics != null) {
+                // the builders record their own time
+                long builders = metrics.getBuilderNanos() - builderStart;
+                metrics.addTime(ExportStage.SERIALIZATION, System.nanoTime() - start - builders);
+            }
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    /**
+     * Write the model element and its contents.
+     */
+    private void writeModel() throws XMLStreamException {
+        Model model = new Model(getModelId(), sbmlLevel, sbmlVersion);
+        model.setName(thisPathway.getDisplayName());
+        model.setMetaId("metaid_0");
+
+        writer.writeStartElement("model");
+        writer.writeAttribute("metaid", model.getMetaId());
+        writer.writeAttribute("id", model.getId());
+        writer.writeAttribute("name", model.getName());
+        if (addAnnotations) {
+            long start = startTimer();
+            CVTermBuilder cvterms = new CVTermBuilder(model);
+            cvterms.createModelAnnotations(thisPathway);
+            start = stopTimer(ExportStage.ANNOTATIONS, start);
+            ModelHistoryBuilder history = new ModelHistoryBuilder(model, caches);
+            history.createHistory(thisPathway);
+            start = stopTimer(ExportStage.HISTORY, start);
+            NotesBuilder notes = new NotesBuilder(model, caches);
+            notes.addPathwayNotes(thisPathway);
+            stopTimer(ExportStage.NOTES, start);
+            writeNotesAndAnnotation(model);
+        }
+
+        // the hierarchy is walked once and each pass visits the closure
+        SubpathwayCache.Work work = new SubpathwayCache.Work();
+        SubpathwayCache cache = (caches == null) ? null : caches.getSubpathways();
+        ReactionClosure closure = ReactionClosure.of(thisPathway, cache, work);
+        if (cache != null) {
+            cache.record(thisPathway, work);
+        }
+
+        writePass(Pass.COMPARTMENTS, closure);
+        writePass(Pass.SPECIES, closure);
+        writePass(Pass.REACTIONS, closure);
+
+        writer.writeEndElement();
+    }
+
+    /**
+     * Walk the pathway writing the elements that belong to the list for
+     * this pass. The list element is only written if it has content.
+     *
+     * @param thisPass  Pass being made
+     * @param closure   ReactionClosure of the pathway
+     */
+    private void writePass(Pass thisPass, ReactionClosure closure) throws XMLStreamException {
+        pass = thisPass;
+        registry = new ElementRegistry();
+        // metaid_0 belongs to the model
+        metaid_count = 1;
+        listOpen = false;
+
+        for (ReactionLikeEvent rle : closure.getReactions()) {
+            addReaction(rle);
+        }
+
+        if (listOpen) {
+            writer.writeEndElement();
+            listOpen = false;
+        }
+    }
+
+    /**
+     * Open the ListOf element for the current pass if this is the first
+     * element written to it.
+     */
+    private void openList() throws XMLStreamException {
+        if (!listOpen) {
+            switch (pass) {
+                case COMPARTMENTS:
+                    writer.writeStartElement("listOfCompartments");
+                    break;
+                case SPECIES:
+                    writer.writeStartElement("listOfSpecies");
+                    break;
+                case REACTIONS:
+                    writer.writeStartElement("listOfReactions");
+                    break;
+            }
+            listOpen = true;
+        }
+    }
+
+    /**
+     * Visit the given Reactome Reaction and its participants. The reaction is only
+     * written in the REACTIONS pass.
+     *
+     * @param event  Reaction from ReactomeDB
+     */
+    private void addReaction(ReactionLikeEvent event) throws XMLStreamException {
+        if (!registry.addReaction(event.getDbId())) {
+            return;
+        }
+        String metaid = nextMetaid();
+        boolean write = (pass == Pass.REACTIONS);
+        if (write) {
+            Reaction rn = new Reaction("reaction_" + event.getDbId(), sbmlLevel, sbmlVersion);
+            rn.setMetaId(metaid);
+            rn.setName(event.getDisplayName());
+
+            openList();
+            writer.writeStartElement("reaction");
+            writer.writeAttribute("metaid", metaid);
+            writer.writeAttribute("id", rn.getId());
+            writer.writeAttribute("name", rn.getName());
+            writer.writeAttribute("reversible", "false");
+            writer.writeAttribute("fast", "false");
+            if (addAnnotations) {
+                long start = startTimer();
+                CVTermBuilder cvterms = new CVTermBuilder(rn, caches);
+                cvterms.createReactionAnnotations(event);
+                start = stopTimer(ExportStage.ANNOTATIONS, start);
+                NotesBuilder notes = new NotesBuilder(rn, caches);
+                notes.addPathwayNotes(event);
+                stopTimer(ExportStage.NOTES, start);
+                writeNotesAndAnnotation(rn);
+            }
+            openReferenceList = null;
+        }
+
+        if (event.getInput() != null) {
+            for (PhysicalEntity pe : event.getInput()) {
+                addParticipant(ParticipantRole.REACTANT, pe, event.getDbId(), null);
+            }
+        }
+        if (event.getOutput() != null) {
+            for (PhysicalEntity pe : event.getOutput()) {
+                addParticipant(ParticipantRole.PRODUCT, pe, event.getDbId(), null);
+            }
+        }
+        if (event.getCatalystActivity() != null) {
+            for (CatalystActivity cat : event.getCatalystActivity()) {
+                if (cat.getPhysicalEntity() != null) {
+                    addParticipant(ParticipantRole.CATALYST, cat.getPhysicalEntity(), event.getDbId(), null);
+                }
+            }
+        }
+        if (event.getPositivelyRegulatedBy() != null) {
+            for (PositiveRegulation reg : event.getPositivelyRegulatedBy()) {
+                DatabaseObject pe = reg.getRegulator();
+                if (pe instanceof PhysicalEntity) {
+                    addParticipant(ParticipantRole.POSITIVE_REGULATOR, (PhysicalEntity) (pe), event.getDbId(), reg);
+                }
+            }
+        }
+        if (event.getNegativelyRegulatedBy() != null) {
+            for (NegativeRegulation reg : event.getNegativelyRegulatedBy()) {
+                DatabaseObject pe = reg.getRegulator();
+                if (pe instanceof PhysicalEntity) {
+                    addParticipant(ParticipantRole.NEGATIVE_REGULATOR, (PhysicalEntity) (pe), event.getDbId(), reg);
+                }
+            }
+        }
+
+        if (write) {
+            if (openReferenceList != null) {
+                writer.writeEndElement();
+                openReferenceList = null;
+            }
+            writer.writeEndElement();
+        }
+    }
+
+    /**
+     * Visit a participant of a Reaction. The species reference is only written
+     * in the REACTIONS pass. The participants are visited in the order reactants,
+     * products, modifiers so each ListOf element is opened at most once.
+     *
+     * @param role      ParticipantRole of the participant
+     * @param pe        PhysicalEntity from ReactomeDB - the participant being added
+     * @param event_no  Long number respresenting the ReactomeDB id of the Reactome Event being processed.
+     * @param reg       Regulation from ReactomeDB or null
+     */
+    private void addParticipant(ParticipantRole role, PhysicalEntity pe, Long event_no, Regulation reg) throws XMLStreamException {
+        addSpecies(pe);
+        if (!registry.addSpeciesReference(role, event_no, pe.getDbId())) {
+            return;
+        }
+        if (pass != Pass.REACTIONS) {
+            return;
+        }
+        String speciesId = "species_" + pe.getDbId();
+        SimpleSpeciesReference sr;
+        String element;
+        String listName;
+        switch (role) {
+            case REACTANT:
+                sr = new SpeciesReference(sbmlLevel, sbmlVersion);
+                element = "speciesReference";
+                listName = "listOfReactants";
+                break;
+            case PRODUCT:
+                sr = new SpeciesReference(sbmlLevel, sbmlVersion);
+                element = "speciesReference";
+                listName = "listOfProducts";
+                break;
+            default:
+                sr = new ModifierSpeciesReference(sbmlLevel, sbmlVersion);
+                element = "modifierSpeciesReference";
+                listName = "listOfModifiers";
+                break;
+        }
+        sr.setId(role.getSpeciesReferenceId(event_no, pe.getDbId()));
+        sbo.setTerm(role, sr);
+        if (addAnnotations && reg != null) {
+            long start = startTimer();
+            NotesBuilder notes = new NotesBuilder(sr, caches);
+            notes.createSpeciesReferenceNotes(reg);
+            notes.addNotes();
+            stopTimer(ExportStage.NOTES, start);
+        }
+
+        if (!listName.equals(openReferenceList)) {
+            if (openReferenceList != null) {
+                writer.writeEndElement();
+            }
+            writer.writeStartElement(listName);
+            openReferenceList = listName;
+        }
+        writer.writeStartElement(element);
+        writer.writeAttribute("id", sr.getId());
+        writer.writeAttribute("species", speciesId);
+        writeSBOTerm(sr);
+        if (sr instanceof SpeciesReference) {
+            writer.writeAttribute("constant", "true");
+        }
+        writeNotesAndAnnotation(sr);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Visit a species. The species is only written in the SPECIES pass.
+     *
+     * @param pe    PhysicalEntity from ReactomeDB
+     */
+    private void addSpecies(PhysicalEntity pe) throws XMLStreamException {
+        // TODO: what if there is more than one compartment listed
+        org.reactome.server.graph.domain.model.Compartment comp = pe.getCompartment().get(0);
+
+        if (registry.addSpecies(pe.getDbId())) {
+            String metaid = nextMetaid();
+            if (pass == Pass.SPECIES) {
+                Species s = new Species("species_" + pe.getDbId(), sbmlLevel, sbmlVersion);
+                s.setMetaId(metaid);
+                s.setName(pe.getDisplayName());
+                sbo.setTerm(s, pe);
+
+                openList();
+                writer.writeStartElement("species");
+                writer.writeAttribute("metaid", metaid);
+                writer.writeAttribute("id", s.getId());
+                writer.writeAttribute("name", s.getName());
+                writer.writeAttribute("compartment", "compartment_" + comp.getDbId());
+                writer.writeAttribute("hasOnlySubstanceUnits", "false");
+                writer.writeAttribute("boundaryCondition", "false");
+                writer.writeAttribute("constant", "false");
+                writeSBOTerm(s);
+                if (addAnnotations) {
+                    long start = startTimer();
+                    CVTermBuilder cvterms = new CVTermBuilder(s, caches);
+                    cvterms.createSpeciesAnnotations(pe);
+                    start = stopTimer(ExportStage.ANNOTATIONS, start);
+                    NotesBuilder notes = new NotesBuilder(s, caches);
+                    notes.createSpeciesNotes(pe);
+                    notes.addNotes();
+                    stopTimer(ExportStage.NOTES, start);
+                    writeNotesAndAnnotation(s);
+                }
+                writer.writeEndElement();
+            }
+        }
+
+        addCompartment(comp);
+    }
+
+    /**
+     * Visit a compartment. The compartment is only written in the COMPARTMENTS pass.
+     *
+     * @param comp  Compartment from ReactomeDB
+     */
+    private void addCompartment(org.reactome.server.graph.domain.model.Compartment comp) throws XMLStreamException {
+        if (registry.addCompartment(comp.getDbId())) {
+            String metaid = nextMetaid();
+            if (pass == Pass.COMPARTMENTS) {
+                Compartment c = new Compartment("compartment_" + comp.getDbId(), sbmlLevel, sbmlVersion);
+                c.setMetaId(metaid);
+                c.setName(comp.getDisplayName());
+                sbo.setTerm(c, comp);
+
+                openList();
+                writer.writeStartElement("compartment");
+                writer.writeAttribute("metaid", metaid);
+                writer.writeAttribute("id", c.getId());
+                writer.writeAttribute("name", c.getName());
+                writer.writeAttribute("constant", "true");
+                writeSBOTerm(c);
+                if (addAnnotations) {
+                    long start = startTimer();
+                    CVTermBuilder cvterms = new CVTermBuilder(c, caches);
+                    cvterms.createCompartmentAnnotations(comp);
+                    stopTimer(ExportStage.ANNOTATIONS, start);
+                    writeNotesAndAnnotation(c);
+                }
+                writer.writeEndElement();
+            }
+        }
+    }
+
+    /**
+     * Get the next metaid. This must be called for every element that
+     * WriteSBML would give a metaid, whether or not it is written in this pass.
+     *
+     * @return String metaid
+     */
+    private String nextMetaid() {
+        String metaid = "metaid_" + metaid_count;
+        metaid_count++;
+        return metaid;
+    }
+
+    /**
+     * Get the time at which a timed stage starts. The clock is only
+     * read when metrics are being recorded.
+     *
+     * @return long nanoTime or 0 if there are no metrics
+     */
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record the time since start against the given stage.
+     *
+     * @param stage  ExportStage being timed
+     * @param start  long value returned by startTimer
+     *
+     * @return long the current time so that a following stage can be timed from it
+     */
+    private long stopTimer(ExportStage stage, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.addTime(stage, now - start);
+        return now;
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // functions that serialise the content created by the builders
+
+    private void writeSBOTerm(SBase sbase) throws XMLStreamException {
+        if (sbase.isSetSBOTerm()) {
+            writer.writeAttribute("sboTerm", sbase.getSBOTermID());
+        }
+    }
+
+    /**
+     * Write the notes and the RDF annotation (CVTerms and History)
+     * that the builders have added to the SBase object.
+     *
+     * @param sbase SBML SBase object populated by the builders
+     */
+    private void writeNotesAndAnnotation(SBase sbase) throws XMLStreamException {
+        if (sbase.isSetNotes()) {
+            writeWrapped("notes", sbase.getNotes());
+        }
+        boolean hasHistory = sbase.isSetHistory();
+        List<CVTerm> terms = sbase.getCVTerms();
+        boolean hasTerms = (terms != null && terms.size() > 0);
+        if (!hasHistory && !hasTerms) {
+            return;
+        }
+        writer.writeStartElement("annotation");
+        writer.writeStartElement("rdf", "RDF", RDF_NS);
+        writer.writeNamespace("rdf", RDF_NS);
+        if (hasHistory) {
+            writer.writeNamespace("dc", DC_NS);
+            writer.writeNamespace("dcterms", DCTERMS_NS);
+            writer.writeNamespace("vCard", VCARD_NS);
+        }
+        if (hasTerms) {
+            writer.writeNamespace("bqbiol", BQBIOL_NS);
+            writer.writeNamespace("bqmodel", BQMODEL_NS);
+        }
+        writer.writeStartElement("rdf", "Description", RDF_NS);
+        writer.writeAttribute("rdf", RDF_NS, "about", "#" + sbase.getMetaId());
+        if (hasHistory) {
+            writeHistory(sbase.getHistory());
+        }
+        if (hasTerms) {
+            for (CVTerm term : terms) {
+                writeCVTerm(term);
+            }
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private void writeHistory(History history) throws XMLStreamException {
+        List<Creator> creators = history.getListOfCreators();
+        if (creators != null && creators.size() > 0) {
+            writer.writeStartElement("dc", "creator", DC_NS);
+            writer.writeStartElement("rdf", "Bag", RDF_NS);
+            for (Creator creator : creators) {
+                writer.writeStartElement("rdf", "li", RDF_NS);
+                writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+                writer.writeStartElement("vCard", "N", VCARD_NS);
+                writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+                writeTextElement("vCard", "Family", VCARD_NS, creator.getFamilyName());
+                writeTextElement("vCard", "Given", VCARD_NS, creator.getGivenName());
+                writer.writeEndElement();
+                if (creator.isSetEmail()) {
+                    writeTextElement("vCard", "EMAIL", VCARD_NS, creator.getEmail());
+                }
+                if (creator.isSetOrganisation()) {
+                    writer.writeStartElement("vCard", "ORG", VCARD_NS);
+                    writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+                    writeTextElement("vCard", "Orgname", VCARD_NS, creator.getOrganisation());
+                    writer.writeEndElement();
+                }
+                writer.writeEndElement();
+            }
+            writer.writeEndElement();
+            writer.writeEndElement();
+        }
+        if (history.isSetCreatedDate()) {
+            writeDate("created", history.getCreatedDate());
+        }
+        for (int i = 0; i < history.getNumModifiedDates(); i++) {
+            writeDate("modified", history.getModifiedDate(i));
+        }
+    }
+
+    private void writeDate(String name, Date date) throws XMLStreamException {
+        writer.writeStartElement("dcterms", name, DCTERMS_NS);
+        writer.writeAttribute("rdf", RDF_NS, "parseType", "Resource");
+        writeTextElement("dcterms", "W3CDTF", DCTERMS_NS, w3cdtf.format(date));
+        writer.writeEndElement();
+    }
+
+    private void writeCVTerm(CVTerm term) throws XMLStreamException {
+        List<String> resources = term.getResources();
+        if (resources == null || resources.size() == 0) {
+            return;
+        }
+        CVTerm.Qualifier qualifier = term.getQualifier();
+        if (qualifier.isBiologicalQualifier()) {
+            writer.writeStartElement("bqbiol", qualifier.getElementNameEquivalent(), BQBIOL_NS);
+        }
+        else {
+            writer.writeStartElement("bqmodel", qualifier.getElementNameEquivalent(), BQMODEL_NS);
+        }
+        writer.writeStartElement("rdf", "Bag", RDF_NS);
+        for (String resource : resources) {
+            writer.writeEmptyElement("rdf", "li", RDF_NS);
+            writer.writeAttribute("rdf", RDF_NS, "resource", resource);
+        }
+        writer.writeEndElement();
+        writer.writeEndElement();
+    }
+
+    private void writeTextElement(String prefix, String name, String uri, String text) throws XMLStreamException {
+        writer.writeStartElement(prefix, name, uri);
+        writer.writeCharacters(text == null ? "" : text);
+        writer.writeEndElement();
+    }
+
+    /**
+     * Write the document level annotation recording the database
+     * and JSBML versions.
+     */
+    private void writeProvenanceAnnotation() throws XMLStreamException {
+        long start = startTimer();
+        SBMLDocument doc = new SBMLDocument(sbmlLevel, sbmlVersion);
+        AnnotationBuilder annot = new AnnotationBuilder(doc);
+        annot.addProvenanceAnnotation(dbVersion);
+        stopTimer(ExportStage.ANNOTATIONS, start);
+        if (doc.isSetAnnotation()) {
+            writeWrapped("annotation", doc.getAnnotation().getNonRDFannotation());
+        }
+    }
+
+    /**
+     * Write the XMLNode inside an element of the given name. If the node
+     * is itself that element only its children are written.
+     *
+     * @param name  String name of the wrapping element e.g. notes
+     * @param node  XMLNode to write
+     */
+    private void writeWrapped(String name, XMLNode node) throws XMLStreamException {
+        if (node == null) {
+            return;
+        }
+        writer.writeStartElement(name);
+        if (node.isElement() && name.equals(node.getName())) {
+            for (int i = 0; i < node.getChildCount(); i++) {
+                writeNode(node.getChildAt(i));
+            }
+        }
+        else {
+            writeNode(node);
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * Write an XMLNode and its children.
+     *
+     * @param node  XMLNode to write
+     */
+    private void writeNode(XMLNode node) throws XMLStreamException {
+        if (node.isText()) {
+            writer.writeCharacters(node.getCharacters());
+            return;
+        }
+        if (!node.isElement()) {
+            return;
+        }
+        String prefix = (node.getPrefix() == null) ? "" : node.getPrefix();
+        String uri = (node.getURI() == null) ? "" : node.getURI();
+        writer.writeStartElement(prefix, node.getName(), uri);
+        for (int i = 0; i < node.getNamespacesLength(); i++) {
+            String nsPrefix = node.getNamespacePrefix(i);
+            if (nsPrefix == null || nsPrefix.length() == 0) {
+                writer.writeDefaultNamespace(node.getNamespaceURI(i));
+            }
+            else {
+                writer.writeNamespace(nsPrefix, node.getNamespaceURI(i));
+            }
+        }
+        for (int i = 0; i < node.getAttributesLength(); i++) {
+            String attrPrefix = node.getAttrPrefix(i);
+            if (attrPrefix == null || attrPrefix.length() == 0) {
+                writer.writeAttribute(node.getAttrName(i), node.getAttrValue(i));
+            }
+            else {
+                writer.writeAttribute(attrPrefix, node.getAttrURI(i), node.getAttrName(i), node.getAttrValue(i));
+            }
+        }
+        for (int i = 0; i < node.getChildCount(); i++) {
+            writeNode(node.getChildAt(i));
+        }
+        writer.writeEndElement();
+    }
+}
@@ -0,0 +1,214 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.reactome.server.graph.domain.model.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The reactions, species and compartments in the hierarchical model of a Pathway
+ * once its submodels are flattened, with where each of them is defined.
+ *
+ * The model of a pathway defines the reactions of the pathway itself with their
+ * species and compartments. It also defines every reaction, species and compartment
+ * that it shares with one of its submodels, or that two of its submodels share,
+ * and replaces the copies in the submodels with a comp:ReplacedElement. Everything
+ * else comes from the one submodel that has it. Flattening the model then gives each
+ * element once, as in the flat export of the pathway.
+ *
+ * The species of a reaction are those WriteSBML.addReaction adds: the inputs,
+ * outputs, catalysts and the regulators that are PhysicalEntities. The compartment
+ * of a species is the first compartment of the PhysicalEntity, as in WriteSBML.addSpecies.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class SubmodelElements {
+
+    private static final List<String> HERE = Collections.emptyList();
+
+    private final List<Pathway> children = new ArrayList<Pathway>();
+
+    // SBML id of each element -> object from ReactomeDB, in the order they are met
+    private final Map<String, DatabaseObject> defined = new LinkedHashMap<String, DatabaseObject>();
+    private final Map<String, DatabaseObject> elements = new LinkedHashMap<String, DatabaseObject>();
+
+    // SBML id -> ids of the submodels the element is in, outermost first; empty if defined here
+    private final Map<String, List<String>> paths = new HashMap<String, List<String>>();
+
+    private SubmodelElements() {
+    }
+
+    /**
+     * Work out the elements of the model of the pathway and of each pathway below it.
+     *
+     * @param pathway   Pathway from ReactomeDB
+     * @param done      Map of the pathways already worked out by dbId; filled in
+     *
+     * @return SubmodelElements of the pathway
+     */
+    static SubmodelElements of(Pathway pathway, Map<Long, SubmodelElements> done) {
+        SubmodelElements found = done.get(pathway.getDbId());
+        if (found != null) {
+            return found;
+        }
+        SubmodelElements se = new SubmodelElements();
+        // stored before walking down so a cycle in the data cannot recurse for ever
+        done.put(pathway.getDbId(), se);
+        Set<Long> childIds = new LinkedHashSet<Long>();
+        if (pathway.getHasEvent() != null) {
+            for (Event event : pathway.getHasEvent()) {
+                if (event instanceof ReactionLikeEvent) {
+                    se.defineReaction((ReactionLikeEvent) event);
+                }
+                else if (event instanceof Pathway && childIds.add(event.getDbId())) {
+                    se.children.add((Pathway) event);
+                }
+            }
+        }
+        List<SubmodelElements> below = new ArrayList<SubmodelElements>();
+        for (Pathway child : se.children) {
+            below.add(of(child, done));
+        }
+        // species follow from reactions and compartments from species,
+        // so each kind is settled before the next is looked at
+        for (String prefix : new String[]{"reaction_", "species_", "compartment_"}) {
+            Map<String, Integer> count = new HashMap<String, Integer>();
+            for (SubmodelElements child : below) {
+                for (Map.Entry<String, DatabaseObject> e : child.elements.entrySet()) {
+                    if (e.getKey().startsWith(prefix)) {
+                        Integer n = count.get(e.getKey());
+                        count.put(e.getKey(), n == null ? 1 : n + 1);
+                        if (n != null || se.defined.containsKey(e.getKey())) {
+                            se.defineElement(e.getValue());
+                        }
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, DatabaseObject> e : se.defined.entrySet()) {
+            se.elements.put(e.getKey(), e.getValue());
+            se.paths.put(e.getKey(), HERE);
+        }
+        for (int i = 0; i < below.size(); i++) {
+            String submodel = getSubmodelId(se.children.get(i));
+            SubmodelElements child = below.get(i);
+            for (Map.Entry<String, DatabaseObject> e : child.elements.entrySet()) {
+                if (!se.elements.containsKey(e.getKey())) {
+                    List<String> path = new ArrayList<String>();
+                    path.add(submodel);
+                    path.addAll(child.paths.get(e.getKey()));
+                    se.elements.put(e.getKey(), e.getValue());
+                    se.paths.put(e.getKey(), path);
+                }
+            }
+        }
+        return se;
+    }
+
+    static String getSubmodelId(Pathway child) {
+        return "submodel_" + child.getDbId();
+    }
+
+    /**
+     * Get the distinct child pathways in the order they are listed.
+     *
+     * @return List of child Pathways
+     */
+    List<Pathway> getChildren() {
+        return children;
+    }
+
+    /**
+     * Get the elements the model of the pathway defines itself.
+     *
+     * @return Map of SBML id to the ReactomeDB object
+     */
+    Map<String, DatabaseObject> getDefined() {
+        return defined;
+    }
+
+    /**
+     * Get where an element is in the model once flattened.
+     *
+     * @param id    String SBML id of the element
+     *
+     * @return List of the ids of the submodels it is in, outermost first, empty
+     *         if the model defines it or null if it is not in the model
+     */
+    List<String> getPath(String id) {
+        return paths.get(id);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private void defineElement(DatabaseObject obj) {
+        if (obj instanceof ReactionLikeEvent) {
+            defineReaction((ReactionLikeEvent) obj);
+        }
+        else if (obj instanceof PhysicalEntity) {
+            defineSpecies((PhysicalEntity) obj);
+        }
+        else if (obj instanceof Compartment) {
+            define("compartment_" + obj.getDbId(), obj);
+        }
+    }
+
+    private void defineReaction(ReactionLikeEvent rle) {
+        if (!define("reaction_" + rle.getDbId(), rle)) {
+            return;
+        }
+        defineSpecies(rle.getInput());
+        defineSpecies(rle.getOutput());
+        if (rle.getCatalystActivity() != null) {
+            for (CatalystActivity cat : rle.getCatalystActivity()) {
+                defineSpecies(cat.getPhysicalEntity());
+            }
+        }
+        if (rle.getPositivelyRegulatedBy() != null) {
+            for (PositiveRegulation reg : rle.getPositivelyRegulatedBy()) {
+                if (reg.getRegulator() instanceof PhysicalEntity) {
+                    defineSpecies((PhysicalEntity) reg.getRegulator());
+                }
+            }
+        }
+        if (rle.getNegativelyRegulatedBy() != null) {
+            for (NegativeRegulation reg : rle.getNegativelyRegulatedBy()) {
+                if (reg.getRegulator() instanceof PhysicalEntity) {
+                    defineSpecies((PhysicalEntity) reg.getRegulator());
+                }
+            }
+        }
+    }
+
+    private void defineSpecies(List<PhysicalEntity> entities) {
+        if (entities != null) {
+            for (PhysicalEntity pe : entities) {
+                defineSpecies(pe);
+            }
+        }
+    }
+
+    private void defineSpecies(PhysicalEntity pe) {
+        if (pe != null && define("species_" + pe.getDbId(), pe) &&
+                pe.getCompartment() != null && !pe.getCompartment().isEmpty()) {
+            Compartment comp = pe.getCompartment().get(0);
+            define("compartment_" + comp.getDbId(), comp);
+        }
+    }
+
+    private boolean define(String id, DatabaseObject obj) {
+        if (defined.containsKey(id)) {
+            return false;
+        }
+        defined.put(id, obj);
+        return true;
+    }
+}
@@ -0,0 +1,162 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The reaction closure of each Pathway met during an export run.
+ *
+ * A subpathway appears in its own document and again in the document of every
+ * pathway above it. Once its closure is known the documents of its ancestors are
+ * assembled from it rather than walking the subpathway again. The closures hold
+ * the ReactionLikeEvents themselves, so a closure is only reused for the very
+ * Pathway object it was built from; a pathway loaded again, or loaded through the
+ * session of another thread, is walked afresh and never given the objects of
+ * another load. The closures keep their pathways in memory, so the cache has its
+ * own small limit and is emptied when a pathway of another species is added.
+ *
+ * The work saved is counted for each species so that it can be reported at the
+ * end of a run. The cache is safe to share between threads.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SubpathwayCache {
+
+    /**
+     * The events visited and reused while building one document
+     */
+    static class Work {
+        long visited = 0;
+        long reused = 0;
+    }
+
+    private final RunCache<ReactionClosure> closures;
+
+    // dbId of the species of the closures held
+    private Long species = null;
+
+    // species name -> {events visited, events reused}
+    private final Map<String, long[]> traversal = new TreeMap<String, long[]>();
+
+    /**
+     * Construct a cache holding at most the given number of closures.
+     *
+     * @param maxEntries    int maximum number of pathways
+     */
+    public SubpathwayCache(int maxEntries) {
+        closures = new RunCache<ReactionClosure>("subpathway", maxEntries);
+    }
+
+    /**
+     * Get the closure built from the given Pathway object.
+     *
+     * @param pathway   Pathway from ReactomeDB
+     *
+     * @return ReactionClosure of the pathway or null if there is none for this object
+     */
+    ReactionClosure get(Pathway pathway) {
+        ReactionClosure closure = closures.get(pathway.getDbId());
+        return (closure != null && closure.isOf(pathway)) ? closure : null;
+    }
+
+    /**
+     * Add the closure of the pathway, first emptying the cache if the
+     * pathway is of a different species to those it holds.
+     *
+     * @param pathway   Pathway from ReactomeDB
+     * @param closure   ReactionClosure built from it
+     */
+    void put(Pathway pathway, ReactionClosure closure) {
+        Long speciesId = getSpeciesId(pathway);
+        synchronized (closures) {
+            if (speciesId != null && !speciesId.equals(species)) {
+                closures.clear();
+                species = speciesId;
+            }
+            closures.put(pathway.getDbId(), closure);
+        }
+    }
+
+    private static Long getSpeciesId(Pathway pathway) {
+        if (pathway.getSpecies() == null || pathway.getSpecies().isEmpty()) {
+            return null;
+        }
+        return pathway.getSpecies().get(0).getDbId();
+    }
+
+    /**
+     * Add the work done building the document of a pathway to the totals of its species.
+     *
+     * @param pathway   Pathway from ReactomeDB that was exported
+     * @param work      Work counted while building its document
+     */
+    void record(Pathway pathway, Work work) {
+        String species = "unknown species";
+        if (pathway != null && pathway.getSpecies() != null && !pathway.getSpecies().isEmpty()) {
+            Species s = pathway.getSpecies().get(0);
+            if (s.getDisplayName() != null) {
+                species = s.getDisplayName();
+            }
+        }
+        synchronized (traversal) {
+            long[] totals = traversal.get(species);
+            if (totals == null) {
+                traversal.put(species, totals = new long[2]);
+            }
+            totals[0] += work.visited;
+            totals[1] += work.reused;
+        }
+    }
+
+    /**
+     * Get the number of events visited while building documents.
+     *
+     * @param species   String name of the species
+     *
+     * @return long number of events or 0 if no pathway of the species was recorded
+     */
+    public long getEventsVisited(String species) {
+        synchronized (traversal) {
+            long[] totals = traversal.get(species);
+            return totals == null ? 0 : totals[0];
+        }
+    }
+
+    /**
+     * Get the number of events that were not visited because the closure
+     * of their pathway was taken from the cache.
+     *
+     * @param species   String name of the species
+     *
+     * @return long number of events or 0 if no pathway of the species was recorded
+     */
+    public long getEventsReused(String species) {
+        synchronized (traversal) {
+            long[] totals = traversal.get(species);
+            return totals == null ? 0 : totals[1];
+        }
+    }
+
+    RunCache<ReactionClosure> getClosures() {
+        return closures;
+    }
+
+    @Override
+    public String toString() {
+        String separator = System.getProperty("line.separator");
+        StringBuilder sb = new StringBuilder(closures.toString());
+        synchronized (traversal) {
+            for (Map.Entry<String, long[]> entry : traversal.entrySet()) {
+                long visited = entry.getValue()[0];
+                long reused = entry.getValue()[1];
+                long total = visited + reused;
+                sb.append(separator).append(String.format("  %s: %d events visited, %d reused from cached subpathways (%.1f%% of traversal saved)",
+                        entry.getKey(), visited, reused, total == 0 ? 0.0 : 100.0 * reused / total));
+            }
+        }
+        return sb.toString();
+    }
+}
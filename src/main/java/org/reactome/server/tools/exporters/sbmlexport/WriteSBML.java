@@ -3,16 +3,41 @@ package org.reactome.server.tools.exporters.sbmlexport;
 
 import org.reactome.server.graph.domain.model.*;
 import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.tools.datasource.PathwayContainmentIndex;
+import org.reactome.server.tools.metrics.ExportStage;
+import org.reactome.server.tools.metrics.PathwayMetrics;
 import org.sbml.jsbml.*;
 import org.sbml.jsbml.Compartment;
 import org.sbml.jsbml.Reaction;
 import org.sbml.jsbml.Species;
-
-
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.CompSBasePlugin;
+import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
+import org.sbml.jsbml.ext.comp.ReplacedElement;
+import org.sbml.jsbml.ext.comp.SBaseRef;
+import org.sbml.jsbml.ext.comp.Submodel;
+
+
+import javax.xml.stream.XMLStreamException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
+ * Creates an SBML document from a Reactome Pathway or List of Events.
+ *
+ * Each instance owns its document, metaid counter and database version so
+ * separate instances share no state. An instance is not itself thread-safe;
+ * use one instance per thread when exporting concurrently.
+ *
  * @author Sarah Keating <skeating@ebi.ac.uk>
  */
 public class WriteSBML {
@@ -23,28 +48,34 @@ public class WriteSBML {
      */
     private final short sbmlLevel = 3;
     private final short sbmlVersion = 1;
-    private static long metaid_count = 0;
+    private long metaid_count = 0;
 
     private final Pathway thisPathway;
     private final List<Event> thisListEvents;
     private Pathway parentPathway;
 
+    private PathwayContainmentIndex containmentIndex = null;
+
     private final SBMLDocument sbmlDocument;
 
-    private final List <String> loggedSpecies;
-    private final List <String> loggedCompartments;
-    private final List <String> loggedReactions;
-    private final List <String> loggedSpeciesReferences;
+    private final ElementRegistry registry;
 
     private SBOTermLookup sbo;
 
-    private static Integer dbVersion = 0;
+    private ExportCaches caches = null;
+
+    private PathwayMetrics metrics = null;
+
+    private Integer dbVersion = 0;
 
     private boolean addAnnotations = true;
     private boolean inTestMode = false;
 
     private boolean useEventOf = true;
 
+    // whether child pathways are referenced as comp submodels rather than flattened
+    private boolean hierarchical = false;
+
     /**
      * Construct an instance of the SBMLWriter
      */
@@ -53,13 +84,8 @@ public class WriteSBML {
         thisListEvents = null;
         parentPathway = null;
         sbmlDocument = new SBMLDocument(sbmlLevel, sbmlVersion);
-        loggedSpecies = new ArrayList<String>();
-        loggedCompartments = new ArrayList<String>();
-        loggedReactions = new ArrayList<String>();
-        loggedSpeciesReferences = new ArrayList<String>();
+        registry = new ElementRegistry();
         sbo = new SBOTermLookup();
-        // reset metaid count
-        metaid_count= 0;
     }
 
     /**
@@ -73,13 +99,8 @@ public class WriteSBML {
         thisListEvents = null;
         parentPathway = null;
         sbmlDocument = new SBMLDocument(sbmlLevel, sbmlVersion);
-        loggedSpecies = new ArrayList<String>();
-        loggedCompartments = new ArrayList<String>();
-        loggedReactions = new ArrayList<String>();
-        loggedSpeciesReferences = new ArrayList<String>();
+        registry = new ElementRegistry();
         sbo = new SBOTermLookup();
-        // reset metaid count
-        metaid_count= 0;
     }
 
     /**
@@ -95,13 +116,8 @@ public class WriteSBML {
         parentPathway = null;
         dbVersion = version;
         sbmlDocument = new SBMLDocument(sbmlLevel, sbmlVersion);
-        loggedSpecies = new ArrayList<String>();
-        loggedCompartments = new ArrayList<String>();
-        loggedReactions = new ArrayList<String>();
-        loggedSpeciesReferences = new ArrayList<String>();
+        registry = new ElementRegistry();
         sbo = new SBOTermLookup();
-        // reset metaid count
-        metaid_count= 0;
     }
 
     /**
@@ -115,13 +131,8 @@ public class WriteSBML {
         thisListEvents = loe;
         determineParentPathway();
         sbmlDocument = new SBMLDocument(sbmlLevel, sbmlVersion);
-        loggedSpecies = new ArrayList<String>();
-        loggedCompartments = new ArrayList<String>();
-        loggedReactions = new ArrayList<String>();
-        loggedSpeciesReferences = new ArrayList<String>();
+        registry = new ElementRegistry();
         sbo = new SBOTermLookup();
-        // reset metaid count
-        metaid_count= 0;
     }
 
     /**
@@ -137,19 +148,36 @@ public class WriteSBML {
         determineParentPathway();
         dbVersion = version;
         sbmlDocument = new SBMLDocument(sbmlLevel, sbmlVersion);
-        loggedSpecies = new ArrayList<String>();
-        loggedCompartments = new ArrayList<String>();
-        loggedReactions = new ArrayList<String>();
-        loggedSpeciesReferences = new ArrayList<String>();
+        registry = new ElementRegistry();
+        sbo = new SBOTermLookup();
+    }
+
+    /**
+     * Construct an instance of the SBMLWriter for the specified
+     * List of Events, using an index of the pathway hierarchy to find
+     * the pathway they all belong to.
+     *
+     * @param loe list<Event> from ReactomeDB
+     * @param version Integer - version number of the database
+     * @param index PathwayContainmentIndex of the hierarchy or null
+     */
+    public WriteSBML(List<Event> loe, Integer version, PathwayContainmentIndex index){
+        thisPathway = null;
+        thisListEvents = loe;
+        containmentIndex = index;
+        determineParentPathway();
+        dbVersion = version;
+        sbmlDocument = new SBMLDocument(sbmlLevel, sbmlVersion);
+        registry = new ElementRegistry();
         sbo = new SBOTermLookup();
-        // reset metaid count
-        metaid_count= 0;
     }
 
     /**
      * Create the SBML model using the Reactome Pathway specified in the constructor.
      */
     public void createModel(){
+        long start = startTimer();
+        long builderStart = metrics == null ? 0 : metrics.getBuilderNanos();
         if (inTestMode && thisListEvents != null){
             parentPathway = null;
         }
@@ -177,12 +205,22 @@ public class WriteSBML {
             model.setName(pathName);
             setMetaid(model);
 
-            addAllReactions();
+            if (hierarchical && thisPathway != null) {
+                addHierarchy(model);
+            }
+            else {
+                addAllReactions();
+            }
 
             if (addAnnotations) {
                 addModelAnnotations(model);
             }
         }
+        if (metrics != null) {
+            // the builders record their own time
+            long builders = metrics.getBuilderNanos() - builderStart;
+            metrics.addTime(ExportStage.MODEL, System.nanoTime() - start - builders);
+        }
     }
 
     /**
@@ -194,6 +232,83 @@ public class WriteSBML {
         dbVersion = version;
     }
 
+    /**
+     * Set the caches shared by all the documents written in this run.
+     * Annotations already resolved for a species, compartment or reaction
+     * in an earlier pathway are then reused.
+     *
+     * @param caches  ExportCaches for the run or null for no caching
+     */
+    public void setExportCaches(ExportCaches caches) {
+        this.caches = caches;
+    }
+
+    /**
+     * Set where the time spent building and writing the document is recorded.
+     *
+     * @param metrics  PathwayMetrics for this pathway or null for no timing
+     */
+    public void setMetrics(PathwayMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Get the registry of elements added to the model. This reports how many
+     * duplicate references were skipped while building the model.
+     *
+     * @return ElementRegistry for this document
+     */
+    public ElementRegistry getElementRegistry() {
+        return registry;
+    }
+
+    /**
+     * Get the single pathway that every event in the list is a direct child of.
+     *
+     * @return Pathway or null if there is none or this writer is not for a list of events
+     */
+    public Pathway getParentPathway() {
+        return parentPathway;
+    }
+
+    /**
+     * Find the nearest pathway that contains every event in the list, at any
+     * depth. Where the events have no single parent pathway this is the pathway
+     * they would have to be exported within. The containment index is used if
+     * it holds every pathway of the species of the events; otherwise the eventOf
+     * of each event is walked.
+     *
+     * @return Pathway or null if the events share no pathway or this writer
+     *         is not for a list of events
+     */
+    public Pathway getNearestCommonAncestor() {
+        if (thisListEvents == null || thisListEvents.size() == 0) {
+            return null;
+        }
+        Set<Long> targets;
+        List<Long> lowest = isCoveredByIndex() ? containmentIndex.getLowestCommonAncestors(getEventIds()) : null;
+        if (lowest != null) {
+            if (lowest.isEmpty()) {
+                return null;
+            }
+            targets = Collections.singleton(lowest.get(0));
+        }
+        else {
+            Map<Long, Set<Long>> known = new HashMap<Long, Set<Long>>();
+            targets = getCommonAncestorIds(known);
+            // a pathway with several parents can put a common ancestor fewer steps
+            // up than one below it, so drop every common ancestor above another
+            for (Long dbId : new ArrayList<Long>(targets)) {
+                Set<Long> above = known.get(dbId);
+                if (above != null) {
+                    targets.removeAll(above);
+                }
+            }
+        }
+        // the nearest of the lowest common ancestors to the first event
+        return findAncestor(thisListEvents.get(0), targets);
+    }
+
     public String getModelId() {
         Model m = sbmlDocument.getModel();
         if (m != null) {
@@ -228,15 +343,40 @@ public class WriteSBML {
      * Write the SBMLDocument to a file.
      *
      * @param filename  String representing the filename to use.
+     *
+     * @return true if the file was written, false otherwise
      */
-    public void toFile(@SuppressWarnings("SameParameterValue") String filename)    {
+    public boolean toFile(@SuppressWarnings("SameParameterValue") String filename)    {
+        long start = startTimer();
         SBMLWriter sbmlWriter = new TidySBMLWriter();
+        boolean written = true;
         try {
             sbmlWriter.writeSBMLToFile(sbmlDocument, filename);
         }
         catch (Exception e)
         {
             System.out.println("failed to write " + filename);
+            written = false;
+        }
+        stopTimer(ExportStage.SERIALIZATION, start);
+        return written;
+    }
+
+    /**
+     * Write the SBMLDocument to the given stream.
+     *
+     * @param os    OutputStream to write to
+     *
+     * @throws XMLStreamException if the document cannot be written
+     * @throws SBMLException if the document is not valid
+     */
+    public void toOutputStream(OutputStream os) throws XMLStreamException, SBMLException {
+        long start = startTimer();
+        try {
+            new TidySBMLWriter().write(sbmlDocument, os);
+        }
+        finally {
+            stopTimer(ExportStage.SERIALIZATION, start);
         }
     }
 
@@ -281,6 +421,37 @@ public class WriteSBML {
         addAnnotations = flag;
     }
 
+    /**
+     * Set the hierarchical flag.
+     * When set the model of a Pathway only contains the reactions of the pathway
+     * itself and each child Pathway is included as a submodel that refers to the
+     * model in the file of the child using the SBML Hierarchical Model Composition
+     * (comp) package. Otherwise the reactions of all child Pathways are copied in.
+     * Reactions, species and compartments that are in more than one of them are
+     * defined once in the model and replace the copies in the submodels, so
+     * flattening the model gives the same elements as the copied in export.
+     *
+     * The files of the child pathways are expected to be written by the same run;
+     * see getModelSource.
+     *
+     * @param flag  Boolean indicating whether to write child pathways as submodels
+     */
+    public void setHierarchicalFlag(Boolean flag){
+        hierarchical = flag;
+    }
+
+    /**
+     * Get the name of the file the model of a Pathway is written to. This is
+     * the source a submodel refers to in hierarchical output.
+     *
+     * @param dbId  Long dbId of the ReactomeDB Pathway
+     *
+     * @return String name of the file relative to the file that refers to it
+     */
+    public static String getModelSource(Long dbId) {
+        return dbId + ".xml";
+    }
+
     /**
      * Set the inTestMode flag.
      * This allows testing with/without certain things
@@ -305,58 +476,181 @@ public class WriteSBML {
             parentPathway = null;
             return;
         }
-        List<Long> listDBid = new ArrayList<Long>();
-        List<Long> firstDBid = new ArrayList<Long>();
-
-        Event e1 = thisListEvents.get(0);
-        List<Event> child_list = e1.getEventOf();
-        if (child_list == null) {
-            parentPathway = null;
+        if (containmentIndex != null && determineParentFromIndex()) {
             return;
         }
-        // list of possible parent pathways
-        for (Event e : child_list) {
-            if (e instanceof Pathway) {
-                listDBid.add(e.getDbId());
-                firstDBid.add(e.getDbId());
-            }
-        }
-
-        // // TODO: 09/11/2016 must be a better way to do this
-        int x = 0;
-        while (x < thisListEvents.size()-1){
-            x++;
-            Event e_loop = thisListEvents.get(x);
-            List<Event> loe_loop = e_loop.getEventOf();
-            if (loe_loop == null) {
+        // intersect the pathways each event is a direct child of; stop as soon as none is left
+        Set<Long> candidates = null;
+        for (Event e : thisListEvents) {
+            List<Event> eventOf = e.getEventOf();
+            if (eventOf == null) {
                 parentPathway = null;
                 return;
             }
-            else {
-                List<Long> thisDbId = new ArrayList<Long>();
-                for (Event ee : loe_loop) {
-                    if (ee instanceof Pathway) {
-                        thisDbId.add(ee.getDbId());
-                    }
+            Set<Long> ids = new HashSet<Long>();
+            for (Event parent : eventOf) {
+                if (parent instanceof Pathway) {
+                    ids.add(parent.getDbId());
                 }
-                for (Long p: firstDBid) {
-                    if (!thisDbId.contains(p)) {
-                        listDBid.remove(p);
-                    }
+            }
+            if (candidates == null) {
+                candidates = new LinkedHashSet<Long>(ids);
+            }
+            else {
+                candidates.retainAll(ids);
+            }
+            if (candidates.isEmpty()) {
+                break;
+            }
+        }
+
+        parentPathway = null;
+        if (candidates.size() == 1) {
+            Long parentId = candidates.iterator().next();
+            for (Event e : thisListEvents.get(0).getEventOf()) {
+                if (e instanceof Pathway && e.getDbId().equals(parentId)) {
+                    parentPathway = (Pathway)(e);
                 }
             }
         }
+    }
 
-        if (listDBid.size() != 1) {
-            parentPathway = null;
+    /**
+     * Find the single pathway that every event in the list is a direct child of
+     * using the containment index rather than the eventOf of each event.
+     *
+     * @return true if the index answered, false if it does not know every
+     *         parent of the events
+     */
+    private boolean determineParentFromIndex() {
+        if (!isCoveredByIndex()) {
+            return false;
         }
-        else {
-            for (Event e : child_list) {
-                if (e.getDbId().equals(listDBid.get(0))) {
+        List<Long> candidates = containmentIndex.getParentCandidates(getEventIds());
+        if (candidates == null) {
+            return false;
+        }
+        parentPathway = null;
+        if (candidates.size() == 1 && thisListEvents.get(0).getEventOf() != null) {
+            for (Event e : thisListEvents.get(0).getEventOf()) {
+                if (e instanceof Pathway && e.getDbId().equals(candidates.get(0))) {
                     parentPathway = (Pathway)(e);
                 }
             }
         }
+        return true;
+    }
+
+    /**
+     * Determine whether the containment index holds every pathway of the
+     * species of the events. An index built from only some pathways knows
+     * only some of the parents of an event and could find a single common
+     * parent where there is none.
+     *
+     * @return true if the index can be trusted for the list of events
+     */
+    private boolean isCoveredByIndex() {
+        if (containmentIndex == null) {
+            return false;
+        }
+        for (Event e : thisListEvents) {
+            if (e.getSpecies() == null || e.getSpecies().isEmpty()) {
+                return false;
+            }
+            for (org.reactome.server.graph.domain.model.Species s : e.getSpecies()) {
+                if (!containmentIndex.isSpeciesComplete(s.getDbId())) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private List<Long> getEventIds() {
+        List<Long> ids = new ArrayList<Long>(thisListEvents.size());
+        for (Event e : thisListEvents) {
+            ids.add(e.getDbId());
+        }
+        return ids;
+    }
+
+    /**
+     * Find the pathways that contain every event in the list at any depth
+     * by walking up the eventOf of each event. The ancestors of a pathway
+     * are only walked once however many events it is above.
+     *
+     * @param known Map of the dbId of each pathway walked to the dbIds of its
+     *              ancestors, filled in as they are found
+     *
+     * @return Set of Long dbIds of the pathways
+     */
+    private Set<Long> getCommonAncestorIds(Map<Long, Set<Long>> known) {
+        Set<Long> common = null;
+        for (Event e : thisListEvents) {
+            Set<Long> above = getAncestorIds(e, known);
+            if (common == null) {
+                common = new HashSet<Long>(above);
+            }
+            else {
+                common.retainAll(above);
+            }
+            if (common.isEmpty()) {
+                break;
+            }
+        }
+        return common;
+    }
+
+    private static Set<Long> getAncestorIds(Event event, Map<Long, Set<Long>> known) {
+        Set<Long> above = new HashSet<Long>();
+        if (event.getEventOf() == null) {
+            return above;
+        }
+        for (Event parent : event.getEventOf()) {
+            if (!(parent instanceof Pathway)) {
+                continue;
+            }
+            above.add(parent.getDbId());
+            Set<Long> further = known.get(parent.getDbId());
+            if (further == null) {
+                // stored before walking up so a cycle in the data cannot recurse for ever
+                known.put(parent.getDbId(), new HashSet<Long>());
+                further = getAncestorIds(parent, known);
+                known.put(parent.getDbId(), further);
+            }
+            above.addAll(further);
+        }
+        return above;
+    }
+
+    /**
+     * Walk up from the event breadth first, so nearer pathways are met first,
+     * until one of the target pathways is found.
+     *
+     * @param event Event to start from
+     * @param targets Set of Long dbIds of the pathways looked for
+     *
+     * @return the nearest of the target Pathways or null if none is above the event
+     */
+    private static Pathway findAncestor(Event event, Set<Long> targets) {
+        List<Event> queue = new ArrayList<Event>();
+        Set<Long> visited = new HashSet<Long>();
+        queue.add(event);
+        for (int i = 0; i < queue.size(); i++) {
+            List<Event> eventOf = queue.get(i).getEventOf();
+            if (eventOf == null) {
+                continue;
+            }
+            for (Event parent : eventOf) {
+                if (parent instanceof Pathway && visited.add(parent.getDbId())) {
+                    if (targets.contains(parent.getDbId())) {
+                        return (Pathway)(parent);
+                    }
+                    queue.add(parent);
+                }
+            }
+        }
+        return null;
     }
 
     /**
@@ -365,29 +659,30 @@ public class WriteSBML {
      * @param model SBML model to add to
      */
     private void addModelAnnotations(Model model) {
+        long start = startTimer();
         if (!inTestMode) {
             AnnotationBuilder annot = new AnnotationBuilder(sbmlDocument);
             annot.addProvenanceAnnotation(dbVersion);
         }
         CVTermBuilder cvterms = new CVTermBuilder(model);
-        ModelHistoryBuilder history = new ModelHistoryBuilder(model);
-        NotesBuilder notes = new NotesBuilder(model);
-        if (thisPathway != null) {
-            cvterms.createModelAnnotations(thisPathway);
-            history.createHistory(thisPathway);
-            notes.addPathwayNotes(thisPathway);
+        ModelHistoryBuilder history = new ModelHistoryBuilder(model, caches);
+        NotesBuilder notes = new NotesBuilder(model, caches);
+        Pathway annotated = thisPathway != null ? thisPathway : parentPathway;
+        if (annotated != null) {
+            cvterms.createModelAnnotations(annotated);
+            start = stopTimer(ExportStage.ANNOTATIONS, start);
+            history.createHistory(annotated);
+            start = stopTimer(ExportStage.HISTORY, start);
+            notes.addPathwayNotes(annotated);
+            stopTimer(ExportStage.NOTES, start);
         }
         else if (thisListEvents != null) {
-            if (parentPathway != null) {
-                cvterms.createModelAnnotations(parentPathway);
-                history.createHistory(parentPathway);
-                notes.addPathwayNotes(parentPathway);
-            }
-            else {
-                cvterms.createModelAnnotations(thisListEvents);
-                history.createHistory(thisListEvents);
-                notes.addPathwayNotes(thisListEvents);
-            }
+            cvterms.createModelAnnotations(thisListEvents);
+            start = stopTimer(ExportStage.ANNOTATIONS, start);
+            history.createHistory(thisListEvents);
+            start = stopTimer(ExportStage.HISTORY, start);
+            notes.addPathwayNotes(thisListEvents);
+            stopTimer(ExportStage.NOTES, start);
         }
     }
 
@@ -399,32 +694,32 @@ public class WriteSBML {
      * on whether we are working from a Pathway of a List<Event>
      */
     private void addAllReactions() {
+        SubpathwayCache.Work work = new SubpathwayCache.Work();
         if (thisPathway != null) {
-            addAllReactions(thisPathway);
+            addAllReactions(thisPathway, work);
         }
         else if (thisListEvents != null) {
-            addAllReactions(thisListEvents);
+            addAllReactions(thisListEvents, work);
+        }
+        if (caches != null) {
+            caches.getSubpathways().record(thisPathway != null ? thisPathway : parentPathway, work);
         }
     }
 
 
     /**
-     * Add SBML Reactions from the given Pathway. This will rescurse
-     * through child Events that represent Pathways.
+     * Add SBML Reactions from the given Pathway. The reactions of child Events
+     * that represent Pathways are taken from the closure of the pathway, which is
+     * reused from the run caches where a subpathway has already been visited.
      *
      * @param pathway  Pathway from ReactomeDB
+     * @param work     SubpathwayCache.Work counting the events visited
      */
-    private void addAllReactions(Pathway pathway){
-        if (pathway.getHasEvent() != null) {
-            for (Event event : pathway.getHasEvent()) {
-                addReaction(event);
-                if (event instanceof Pathway){
-                    Pathway path = ((Pathway)(event));
-                    addAllReactions(path);
-                }
-            }
+    private void addAllReactions(Pathway pathway, SubpathwayCache.Work work){
+        SubpathwayCache cache = (caches == null) ? null : caches.getSubpathways();
+        for (ReactionLikeEvent rle : ReactionClosure.of(pathway, cache, work).getReactions()) {
+            addReaction(rle);
         }
-
     }
 
     /**
@@ -432,17 +727,124 @@ public class WriteSBML {
      * through child Events that represent Pathways.
      *
      * @param eventList  List<Event></Event> from ReactomeDB
+     * @param work       SubpathwayCache.Work counting the events visited
      */
-    private void addAllReactions(List<Event> eventList){
+    private void addAllReactions(List<Event> eventList, SubpathwayCache.Work work){
         for (Event event : eventList) {
+            work.visited++;
             addReaction(event);
             if (event instanceof Pathway){
                 Pathway path = ((Pathway)(event));
-                addAllReactions(path);
+                addAllReactions(path, work);
             }
         }
     }
 
+    /**
+     * Add the reactions of this Pathway itself to the model and
+     * a submodel for each child Pathway. Every reaction, species and
+     * compartment the model shares with a submodel, or that two submodels
+     * share, is defined in the model and replaces the copies in the submodels
+     * so that each is only there once when the model is flattened.
+     *
+     * @param model     SBML Model being created
+     */
+    private void addHierarchy(Model model) {
+        if (thisPathway.getHasEvent() == null) {
+            return;
+        }
+        for (Event event : thisPathway.getHasEvent()) {
+            addReaction(event);
+        }
+        Map<Long, SubmodelElements> done = new HashMap<Long, SubmodelElements>();
+        SubmodelElements elements = SubmodelElements.of(thisPathway, done);
+        if (elements.getChildren().isEmpty()) {
+            return;
+        }
+        // a model built from other models cannot be understood without comp
+        sbmlDocument.enablePackage(CompConstants.namespaceURI);
+        sbmlDocument.setPackageRequired(CompConstants.shortLabel, true);
+        for (Pathway child : elements.getChildren()) {
+            addSubmodel(model, child);
+        }
+        for (Map.Entry<String, DatabaseObject> entry : elements.getDefined().entrySet()) {
+            SBase element = addDefined(model, entry.getKey(), entry.getValue());
+            for (Pathway child : elements.getChildren()) {
+                List<String> path = SubmodelElements.of(child, done).getPath(entry.getKey());
+                if (path != null) {
+                    addReplacedElement(element, SubmodelElements.getSubmodelId(child), path, entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * Make sure an element the model defines itself is in the model.
+     *
+     * @param model     SBML Model being created
+     * @param id        String SBML id of the element
+     * @param obj       Object from ReactomeDB the element is made from
+     *
+     * @return SBase the element in the model
+     */
+    private SBase addDefined(Model model, String id, DatabaseObject obj) {
+        if (obj instanceof org.reactome.server.graph.domain.model.ReactionLikeEvent) {
+            addReaction((org.reactome.server.graph.domain.model.ReactionLikeEvent) (obj));
+            return model.getReaction(id);
+        }
+        else if (obj instanceof PhysicalEntity) {
+            addSpecies((PhysicalEntity) (obj));
+            return model.getSpecies(id);
+        }
+        addCompartment((org.reactome.server.graph.domain.model.Compartment) (obj));
+        return model.getCompartment(id);
+    }
+
+    /**
+     * Replace the copy of an element in a submodel with the element in the model.
+     *
+     * @param element   SBase in the model that replaces the copy
+     * @param submodel  String id of the submodel the copy is in
+     * @param path      List of the ids of the submodels below that the copy is in, outermost first
+     * @param id        String SBML id of the copy
+     */
+    private void addReplacedElement(SBase element, String submodel, List<String> path, String id) {
+        CompSBasePlugin plugin = (CompSBasePlugin) element.getPlugin(CompConstants.shortLabel);
+        ReplacedElement replaced = plugin.createReplacedElement();
+        replaced.setSubmodelRef(submodel);
+        if (path.isEmpty()) {
+            replaced.setIdRef(id);
+            return;
+        }
+        // the copy is further down so each submodel it is in is named in turn
+        replaced.setIdRef(path.get(0));
+        SBaseRef ref = replaced.createSBaseRef();
+        for (int i = 1; i < path.size(); i++) {
+            ref.setIdRef(path.get(i));
+            ref = ref.createSBaseRef();
+        }
+        ref.setIdRef(id);
+    }
+
+    /**
+     * Add a submodel that refers to the model of the child Pathway in its own file.
+     *
+     * @param model     SBML Model being created
+     * @param child     Pathway from ReactomeDB that is a child of this pathway
+     */
+    private void addSubmodel(Model model, Pathway child) {
+        CompSBMLDocumentPlugin docPlugin = (CompSBMLDocumentPlugin) sbmlDocument.getPlugin(CompConstants.shortLabel);
+        ExternalModelDefinition def = docPlugin.createExternalModelDefinition("extmod_" + child.getDbId());
+        def.setName(child.getDisplayName());
+        def.setSource(getModelSource(child.getDbId()));
+        def.setModelRef("pathway_" + child.getDbId());
+
+        CompModelPlugin modelPlugin = (CompModelPlugin) model.getPlugin(CompConstants.shortLabel);
+        Submodel submodel = modelPlugin.createSubmodel(SubmodelElements.getSubmodelId(child));
+        submodel.setName(child.getDisplayName());
+        submodel.setModelRef(def.getId());
+    }
+
     /**
      * Overloaded addReaction function to cast an Event to a Reaction.
      *
@@ -463,27 +865,26 @@ public class WriteSBML {
     private void addReaction(org.reactome.server.graph.domain.model.ReactionLikeEvent event){
         Model model = sbmlDocument.getModel();
 
-        String id = "reaction_" + event.getDbId();
-        if (!loggedReactions.contains(id)) {
-            Reaction rn = model.createReaction(id);
+        if (registry.addReaction(event.getDbId())) {
+            Reaction rn = model.createReaction("reaction_" + event.getDbId());
             setMetaid(rn);
             rn.setFast(false);
             rn.setReversible(false);
             rn.setName(event.getDisplayName());
             if (event.getInput() != null) {
                 for (PhysicalEntity pe : event.getInput()) {
-                    addParticipant("reactant", rn, pe, event.getDbId(), null);
+                    addParticipant(ParticipantRole.REACTANT, rn, pe, event.getDbId(), null);
                 }
             }
             if (event.getOutput() != null) {
                 for (PhysicalEntity pe : event.getOutput()) {
-                    addParticipant("product", rn, pe, event.getDbId(), null);
+                    addParticipant(ParticipantRole.PRODUCT, rn, pe, event.getDbId(), null);
                 }
             }
             if (event.getCatalystActivity() != null) {
                 for (CatalystActivity cat : event.getCatalystActivity()) {
                     if (cat.getPhysicalEntity() != null) {
-                        addParticipant("catalyst", rn, cat.getPhysicalEntity(), event.getDbId(), null);
+                        addParticipant(ParticipantRole.CATALYST, rn, cat.getPhysicalEntity(), event.getDbId(), null);
                     }
                 }
             }
@@ -491,7 +892,7 @@ public class WriteSBML {
                 for (PositiveRegulation reg : event.getPositivelyRegulatedBy()) {
                     DatabaseObject pe = reg.getRegulator();
                     if (pe instanceof PhysicalEntity) {
-                        addParticipant("pos_regulator", rn, (PhysicalEntity) (pe), event.getDbId(), reg);
+                        addParticipant(ParticipantRole.POSITIVE_REGULATOR, rn, (PhysicalEntity) (pe), event.getDbId(), reg);
                     }
                 }
             }
@@ -499,18 +900,19 @@ public class WriteSBML {
                 for (NegativeRegulation reg : event.getNegativelyRegulatedBy()) {
                     DatabaseObject pe = reg.getRegulator();
                     if (pe instanceof PhysicalEntity) {
-                        addParticipant("neg_regulator", rn, (PhysicalEntity) (pe), event.getDbId(), reg);
+                        addParticipant(ParticipantRole.NEGATIVE_REGULATOR, rn, (PhysicalEntity) (pe), event.getDbId(), reg);
                     }
                 }
             }
             if (addAnnotations) {
-                CVTermBuilder cvterms = new CVTermBuilder(rn);
+                long start = startTimer();
+                CVTermBuilder cvterms = new CVTermBuilder(rn, caches);
                 cvterms.createReactionAnnotations(event);
-                NotesBuilder notes = new NotesBuilder(rn);
+                start = stopTimer(ExportStage.ANNOTATIONS, start);
+                NotesBuilder notes = new NotesBuilder(rn, caches);
                 notes.addPathwayNotes(event);
+                stopTimer(ExportStage.NOTES, start);
             }
-
-            loggedReactions.add(id);
         }
     }
 
@@ -518,67 +920,44 @@ public class WriteSBML {
      * Adds the participants in a Reaction to the SBML Reaction as speciesReferences
      * and adds the associated SBML Species where necessary.
      *
-     * @param type      String representing "reactant" or "product"
+     * @param role      ParticipantRole of the participant
      * @param rn        SBML Reaction to add to
      * @param pe        PhysicalEntity from ReactomeDB - the participant being added
      * @param event_no  Long number respresenting the ReactomeDB id of the Reactome Event being processed.
      *                  (This is used in the speciesreference id.)
+     * @param reg       Regulation from ReactomeDB or null
      */
-    private void addParticipant(String type, Reaction rn, PhysicalEntity pe, Long event_no, Regulation reg) {
+    private void addParticipant(ParticipantRole role, Reaction rn, PhysicalEntity pe, Long event_no, Regulation reg) {
 
-        String speciesId = "species_" + pe.getDbId();
-        addSpecies(pe, speciesId);
-        if (type.equals("reactant")) {
-            String sr_id = "speciesreference_" + event_no + "_input_" + pe.getDbId();
-            if (!loggedSpeciesReferences.contains(sr_id)) {
-                SpeciesReference sr = rn.createReactant(sr_id, speciesId);
-                sr.setConstant(true);
-                sbo.setTerm(type, sr);
-                loggedSpeciesReferences.add(sr_id);
-            }
-        }
-        else if (type.equals("product")){
-            String sr_id = "speciesreference_" + event_no + "_output_" + pe.getDbId();
-            if (!loggedSpeciesReferences.contains(sr_id)) {
-                SpeciesReference sr = rn.createProduct(sr_id, speciesId);
-                sr.setConstant(true);
-                sbo.setTerm(type, sr);
-                loggedSpeciesReferences.add(sr_id);
-            }
-        }
-        else if (type.equals("catalyst")){
-            String sr_id = "modifierspeciesreference_" + event_no + "_catalyst_" + pe.getDbId();
-            if (!loggedSpeciesReferences.contains(sr_id)) {
-                ModifierSpeciesReference sr = rn.createModifier(sr_id, speciesId);
-                sbo.setTerm(type, sr);
-                loggedSpeciesReferences.add(sr_id);
-            }
+        addSpecies(pe);
+        if (!registry.addSpeciesReference(role, event_no, pe.getDbId())) {
+            return;
         }
-        else if (type.equals("pos_regulator")){
-            String sr_id = "modifierspeciesreference_" + event_no + "_positiveregulator_" + pe.getDbId();
-            if (!loggedSpeciesReferences.contains(sr_id)) {
-                ModifierSpeciesReference sr = rn.createModifier(sr_id, speciesId);
-                sbo.setTerm(type, sr);
-                if (addAnnotations && reg != null) {
-                    NotesBuilder notes = new NotesBuilder(sr);
-                    notes.createSpeciesReferenceNotes(reg);
-                    notes.addNotes();
-                }
-                loggedSpeciesReferences.add(sr_id);
-            }
+        String speciesId = "species_" + pe.getDbId();
+        String sr_id = role.getSpeciesReferenceId(event_no, pe.getDbId());
+        SimpleSpeciesReference sr;
+        switch (role) {
+            case REACTANT:
+                SpeciesReference reactant = rn.createReactant(sr_id, speciesId);
+                reactant.setConstant(true);
+                sr = reactant;
+                break;
+            case PRODUCT:
+                SpeciesReference product = rn.createProduct(sr_id, speciesId);
+                product.setConstant(true);
+                sr = product;
+                break;
+            default:
+                sr = rn.createModifier(sr_id, speciesId);
+                break;
         }
-        else if (type.equals("neg_regulator")){
-            String sr_id = "modifierspeciesreference_" + event_no + "_negativeregulator_" + pe.getDbId();
-            if (!loggedSpeciesReferences.contains(sr_id)) {
-                ModifierSpeciesReference sr = rn.createModifier(sr_id, speciesId);
-                sbo.setTerm(type, sr);
-                if (addAnnotations && reg != null) {
-                    NotesBuilder notes = new NotesBuilder(sr);
-                    notes.createSpeciesReferenceNotes(reg);
-                    notes.addNotes();
-                }
-                loggedSpeciesReferences.add(sr_id);
-            }
+        sbo.setTerm(role, sr);
+        if (addAnnotations && reg != null) {
+            long start = startTimer();
+            NotesBuilder notes = new NotesBuilder(sr, caches);
+            notes.createSpeciesReferenceNotes(reg);
+            notes.addNotes();
+            stopTimer(ExportStage.NOTES, start);
         }
     }
 
@@ -587,21 +966,18 @@ public class WriteSBML {
      * Adds an SBML species to the model.
      *
      * @param pe    PhysicalEntity from ReactomeDB
-     * @param id    String representing the id to use for the SBML species.
-     *              (This was already created so may as well just pass as argument.)
      */
-    private void addSpecies(PhysicalEntity pe, String id){
+    private void addSpecies(PhysicalEntity pe){
         Model model = sbmlDocument.getModel();
 
         // TODO: what if there is more than one compartment listed
         org.reactome.server.graph.domain.model.Compartment comp = pe.getCompartment().get(0);
-        String comp_id = "compartment_" + comp.getDbId();
 
-        if (!loggedSpecies.contains(id)) {
-            Species s = model.createSpecies(id);
+        if (registry.addSpecies(pe.getDbId())) {
+            Species s = model.createSpecies("species_" + pe.getDbId());
             setMetaid(s);
             s.setName(pe.getDisplayName());
-            s.setCompartment(comp_id);
+            s.setCompartment("compartment_" + comp.getDbId());
             // set other required fields for SBML L3
             s.setBoundaryCondition(false);
             s.setHasOnlySubstanceUnits(false);
@@ -609,42 +985,41 @@ public class WriteSBML {
             sbo.setTerm(s, pe);
 
             if (addAnnotations){
-                CVTermBuilder cvterms = new CVTermBuilder(s);
+                long start = startTimer();
+                CVTermBuilder cvterms = new CVTermBuilder(s, caches);
                 cvterms.createSpeciesAnnotations(pe);
-                NotesBuilder notes = new NotesBuilder(s);
+                start = stopTimer(ExportStage.ANNOTATIONS, start);
+                NotesBuilder notes = new NotesBuilder(s, caches);
                 notes.createSpeciesNotes(pe);
                 notes.addNotes();
+                stopTimer(ExportStage.NOTES, start);
             }
-
-            loggedSpecies.add(id);
         }
 
-        addCompartment(comp, comp_id);
+        addCompartment(comp);
     }
 
     /**
      * Add an SBML compartment to the model.
      *
      * @param comp  Compartment from ReactomeDB
-     * @param id    String representing the id to use for the SBML compartment.
-     *              (This was already created so may as well just pass as argument.)
      */
-    private void addCompartment(org.reactome.server.graph.domain.model.Compartment comp, String id){
+    private void addCompartment(org.reactome.server.graph.domain.model.Compartment comp){
          Model model = sbmlDocument.getModel();
 
-         if (!loggedCompartments.contains(id)){
-             Compartment c = model.createCompartment(id);
+         if (registry.addCompartment(comp.getDbId())){
+             Compartment c = model.createCompartment("compartment_" + comp.getDbId());
              setMetaid(c);
              c.setName(comp.getDisplayName());
              c.setConstant(true);
              sbo.setTerm(c, comp);
 
              if (addAnnotations){
-                 CVTermBuilder cvterms = new CVTermBuilder(c);
+                 long start = startTimer();
+                 CVTermBuilder cvterms = new CVTermBuilder(c, caches);
                  cvterms.createCompartmentAnnotations(comp);
+                 stopTimer(ExportStage.ANNOTATIONS, start);
              }
-
-            loggedCompartments.add(id);
         }
     }
 
@@ -657,4 +1032,31 @@ public class WriteSBML {
         object.setMetaId("metaid_" + metaid_count);
         metaid_count++;
     }
+
+    /**
+     * Get the time at which a timed stage starts. The clock is only
+     * read when metrics are being recorded.
+     *
+     * @return long nanoTime or 0 if there are no metrics
+     */
+    private long startTimer() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record the time since start against the given stage.
+     *
+     * @param stage  ExportStage being timed
+     * @param start  long value returned by startTimer
+     *
+     * @return long the current time so that a following stage can be timed from it
+     */
+    private long stopTimer(ExportStage stage, long start) {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        metrics.addTime(stage, now - start);
+        return now;
+    }
 }
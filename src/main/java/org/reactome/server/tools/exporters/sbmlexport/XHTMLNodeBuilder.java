@@ -0,0 +1,123 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.sbml.jsbml.xml.XMLAttributes;
+import org.sbml.jsbml.xml.XMLNamespaces;
+import org.sbml.jsbml.xml.XMLNode;
+import org.sbml.jsbml.xml.XMLTriple;
+
+/**
+ * Creates the XMLNode for a notes or annotation element holding a single
+ * XHTML paragraph of text i.e.
+ *
+ * <notes><p xmlns="http://www.w3.org/1999/xhtml">text</p></notes>
+ *
+ * The node is constructed directly rather than by writing the XML as a String
+ * and parsing it with XMLNode.convertStringToXMLNode, which sets up a new XML
+ * parser each time. Text that could not be parsed (it contains markup characters
+ * or characters XML does not allow) still goes through the parser so that the
+ * result is the same as it always was.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class XHTMLNodeBuilder {
+
+    static final String XHTML_NS = "http://www.w3.org/1999/xhtml";
+
+    private XHTMLNodeBuilder() {
+    }
+
+    /**
+     * Create the node for the given element containing a paragraph of text.
+     *
+     * @param element   String name of the outer element e.g. "notes"
+     * @param text      String contents of the paragraph
+     *
+     * @return XMLNode for the outer element or null if the text cannot be
+     *         represented in XML
+     */
+    static XMLNode createParagraph(String element, String text) {
+        if (!isPlainText(text)) {
+            return parseParagraph(element, text);
+        }
+        XMLNamespaces ns = new XMLNamespaces();
+        ns.add(XHTML_NS, "");
+        XMLNode p = new XMLNode(new XMLTriple("p", XHTML_NS, ""), new XMLAttributes(), ns);
+        if (text.length() > 0) {
+            p.addChild(new XMLNode(normaliseLineEnds(text)));
+        }
+        XMLNode node = new XMLNode(new XMLTriple(element, "", ""), new XMLAttributes());
+        node.addChild(p);
+        return node;
+    }
+
+    /**
+     * Create the node by writing the XML as a String and parsing it.
+     * This is how all notes were created originally.
+     *
+     * @param element   String name of the outer element e.g. "notes"
+     * @param text      String contents of the paragraph
+     *
+     * @return XMLNode for the outer element or null if the String cannot be parsed
+     */
+    static XMLNode parseParagraph(String element, String text) {
+        String xml = "<" + element + "><p xmlns=\"" + XHTML_NS + "\">" + text + "</p></" + element + ">";
+        XMLNode node;
+        try {
+            node = XMLNode.convertStringToXMLNode(xml);
+        }
+        catch(Exception e) {
+            System.out.println(e.getMessage());
+            System.out.println(xml);
+            node = null;
+        }
+        return node;
+    }
+
+    /**
+     * Check the text can be used as character data exactly as it is: it has no
+     * markup and only contains characters allowed by XML 1.0.
+     *
+     * @param text  String to check
+     *
+     * @return true if the text needs no parsing, false otherwise
+     */
+    static boolean isPlainText(String text) {
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (c == '<' || c == '&') {
+                return false;
+            }
+            else if (c == '>' && i >= 2 && text.charAt(i - 1) == ']' && text.charAt(i - 2) == ']') {
+                // ]]> is not allowed in character data
+                return false;
+            }
+            else if (c < 0x20) {
+                if (c != '\t' && c != '\n' && c != '\r') {
+                    return false;
+                }
+            }
+            else if (Character.isHighSurrogate(c)) {
+                if (i + 1 >= len || !Character.isLowSurrogate(text.charAt(i + 1))) {
+                    return false;
+                }
+                i++;
+            }
+            else if (Character.isLowSurrogate(c) || c == 0xFFFE || c == 0xFFFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An XML parser reports every line end as a single newline so the same
+     * is done here.
+     */
+    private static String normaliseLineEnds(String text) {
+        if (text.indexOf('\r') < 0) {
+            return text;
+        }
+        return text.replace("\r\n", "\n").replace('\r', '\n');
+    }
+}
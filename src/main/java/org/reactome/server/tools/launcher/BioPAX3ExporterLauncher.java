@@ -8,8 +8,11 @@ import org.reactome.server.graph.service.SpeciesService;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 import org.reactome.server.tools.exporters.biopaxexport.WriteBioPAX3;
 import org.reactome.server.tools.launcher.ExporterLauncher;
+import org.reactome.server.tools.metrics.ExportStage;
+import org.reactome.server.tools.metrics.PathwayMetrics;
 
 import java.io.File;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -19,9 +22,9 @@ import java.util.List;
  */
 public class BioPAX3ExporterLauncher {
 
-    private static int dbVersion;
+    private final int dbVersion;
 
-    private static String outputdir;
+    private final String outputdir;
 
     BioPAX3ExporterLauncher(int db, String output){
         dbVersion = db;
@@ -33,20 +36,70 @@ public class BioPAX3ExporterLauncher {
      *
      * @param path ReactomeDB Pathway to output
      */
-    public static void outputPath(Pathway path) {
+    public void outputPath(Pathway path) {
+        outputPath(path, null);
+    }
+
+    /**
+     * Create the output file and write the BioPAX file for this path,
+     * which is written under a temporary name and moved into place when complete,
+     * recording the time taken.
+     *
+     * @param path      ReactomeDB Pathway to output
+     * @param metrics   PathwayMetrics to record into or null
+     *
+     * @return true if the file was written, false otherwise
+     */
+    public boolean outputPath(Pathway path, PathwayMetrics metrics) {
         String filename = path.getDbId() + ".owl";
         File out = new File(outputdir, filename);
+        long start = System.nanoTime();
         WriteBioPAX3 bp = new WriteBioPAX3(path, dbVersion);
         bp.createModel();
-        bp.toStdOut();
+        long built = System.nanoTime();
 //        WriteSBML sbml = new WriteSBML(path, dbVersion);
 //        sbml.setAnnotationFlag(true);
 //        sbml.createModel();
 //        sbml.toStdOut();
-        bp.toFile(out);
+        // write once, echoing to std output as before
+        File tmp = OutputFiles.temporaryFile(out);
+        boolean written = OutputFiles.commit(tmp, out, bp.toFile(tmp, true));
+        if (metrics != null) {
+            metrics.addTime(ExportStage.MODEL, built - start);
+            metrics.addTime(ExportStage.SERIALIZATION, System.nanoTime() - built);
+        }
+        return written;
+    }
+
+    /**
+     * Build the BioPAX model of this path without writing it.
+     *
+     * @param path      ReactomeDB Pathway to output
+     * @param metrics   PathwayMetrics to record into or null
+     *
+     * @return ExportModel to write
+     */
+    ExportModel buildModel(Pathway path, final PathwayMetrics metrics) {
+        long start = System.nanoTime();
+        final WriteBioPAX3 bp = new WriteBioPAX3(path, dbVersion);
+        bp.createModel();
+        if (metrics != null) {
+            metrics.addTime(ExportStage.MODEL, System.nanoTime() - start);
+        }
+        return new ExportModel() {
+            @Override
+            public void write(OutputStream out) throws Exception {
+                long start = System.nanoTime();
+                // the BioPAX writer closes the stream, which is harmless for the pipeline's buffer
+                bp.toOutputStream(out);
+                if (metrics != null) {
+                    metrics.addTime(ExportStage.SERIALIZATION, System.nanoTime() - start);
+                }
+            }
+        };
     }
 
-    public static void outputEvents(List<Event> loe){
+    public void outputEvents(List<Event> loe){
 //        WriteSBML sbml = new WriteSBML(loe, dbVersion);
 //        sbml.setAnnotationFlag(true);
 //        sbml.createModel();
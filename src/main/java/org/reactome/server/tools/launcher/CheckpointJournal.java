@@ -0,0 +1,298 @@
+package org.reactome.server.tools.launcher;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * An append only journal of the pathways a run has finished, so that a run that
+ * dies part way through can be resumed without exporting them again.
+ *
+ * The journal is a tab separated file in the output directory with one line per
+ * finished file: dbId, format, version of the Reactome data, CRC32 of the file,
+ * fingerprint of the pathway ("-" if the run was not incremental) and file name.
+ * The fingerprint lets a resumed incremental run keep the pathways it skips in
+ * its manifest. The format names the mode too, so a file written with child
+ * pathways as comp submodels is not taken for one written flat. A line is only
+ * written once the file has been moved into place and each line is flushed as it
+ * is written. On resume a pathway is skipped if its file is still there, has the
+ * recorded checksum and was written from the same version of the data; a line
+ * cut short by a crash is ignored.
+ *
+ * Entries can be added from several threads at once.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class CheckpointJournal {
+
+    static final String FILENAME = "export-checkpoint.tsv";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String HEADER = "# dbId\tformat\tdbVersion\tcrc32\tfingerprint\tfile";
+    private static final String NO_FINGERPRINT = "-";
+
+    /**
+     * A file recorded as finished
+     */
+    private static class Finished {
+        final String crc;
+        final String fingerprint;
+        final String file;
+
+        Finished(String crc, String fingerprint, String file) {
+            this.crc = crc;
+            this.fingerprint = fingerprint;
+            this.file = file;
+        }
+    }
+
+    private final File dir;
+    private final int dbVersion;
+    private final Map<String, Finished> finished;
+    private final Writer writer;
+
+    private final AtomicInteger skipped = new AtomicInteger(0);
+    private final AtomicInteger recorded = new AtomicInteger(0);
+
+    /**
+     * Open the journal in the output directory.
+     *
+     * @param dir       File output directory
+     * @param resume    boolean whether to keep the pathways recorded by an earlier
+     *                  run; otherwise the journal is started again
+     * @param dbVersion int version of the Reactome data being exported; entries
+     *                  recorded from other versions are ignored
+     *
+     * @throws IOException if the journal cannot be opened
+     */
+    CheckpointJournal(File dir, boolean resume, int dbVersion) throws IOException {
+        this.dir = dir;
+        this.dbVersion = dbVersion;
+        File journal = new File(dir, FILENAME);
+        this.finished = resume ? read(journal, dbVersion) : new ConcurrentHashMap<String, Finished>();
+        boolean append = resume && journal.isFile();
+        boolean torn = append && !endsWithNewline(journal);
+        writer = new OutputStreamWriter(new FileOutputStream(journal, append), UTF8);
+        if (!append) {
+            writer.write(HEADER + "\n");
+            writer.flush();
+        }
+        else if (torn) {
+            // finish the line cut short so the next entry starts on its own line
+            writer.write("\n");
+            writer.flush();
+        }
+        if (resume) {
+            int removed = OutputFiles.deleteTemporaryFiles(dir);
+            System.out.println("Resuming with " + finished.size() + " finished pathways in the journal" +
+                    (removed > 0 ? "; removed " + removed + " unfinished files" : ""));
+        }
+    }
+
+    /**
+     * Determine whether the pathway was finished by an earlier run and its file
+     * is unchanged.
+     *
+     * @param dbId      Long dbId of the pathway
+     * @param format    String name of the output format and mode
+     *
+     * @return true if the pathway need not be exported again
+     */
+    boolean isFinished(Long dbId, String format) {
+        Finished entry = finished.get(key(dbId, format));
+        if (entry == null) {
+            return false;
+        }
+        File file = new File(dir, entry.file);
+        try {
+            if (file.isFile() && checksum(file).equals(entry.crc)) {
+                skipped.incrementAndGet();
+                return true;
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not check " + file.getName() + ": " + e.getMessage());
+        }
+        System.out.println(file.getName() + " has changed since it was recorded and will be exported again");
+        finished.remove(key(dbId, format));
+        return false;
+    }
+
+    /**
+     * Get the fingerprint recorded for a finished pathway.
+     *
+     * @param dbId      Long dbId of the pathway
+     * @param format    String name of the output format and mode
+     *
+     * @return String fingerprint or null if none was recorded
+     */
+    String getFingerprint(Long dbId, String format) {
+        Finished entry = finished.get(key(dbId, format));
+        return (entry == null || entry.fingerprint.equals(NO_FINGERPRINT)) ? null : entry.fingerprint;
+    }
+
+    /**
+     * Get the name of the file recorded for a finished pathway.
+     *
+     * @param dbId      Long dbId of the pathway
+     * @param format    String name of the output format and mode
+     *
+     * @return String name of the file within the output directory or null if none was recorded
+     */
+    String getFile(Long dbId, String format) {
+        Finished entry = finished.get(key(dbId, format));
+        return entry == null ? null : entry.file;
+    }
+
+    /**
+     * Record that the file for a pathway is finished.
+     *
+     * @param dbId          Long dbId of the pathway
+     * @param format        String name of the output format and mode
+     * @param fingerprint   String fingerprint of the pathway or null if not known
+     * @param file          File that was written
+     */
+    void record(Long dbId, String format, String fingerprint, File file) {
+        String crc;
+        try {
+            crc = checksum(file);
+        }
+        catch (IOException e) {
+            System.err.println("Could not checksum " + file.getName() + "; it will be exported again on resume");
+            return;
+        }
+        synchronized (writer) {
+            try {
+                writer.write(dbId + "\t" + format + "\t" + dbVersion + "\t" + crc + "\t" +
+                        (fingerprint == null ? NO_FINGERPRINT : fingerprint) + "\t" + file.getName() + "\n");
+                writer.flush();
+            }
+            catch (IOException e) {
+                System.err.println("Failed to write the checkpoint journal: " + e.getMessage());
+                return;
+            }
+        }
+        recorded.incrementAndGet();
+    }
+
+    void close() {
+        synchronized (writer) {
+            try {
+                writer.close();
+            }
+            catch (IOException e) {
+                System.err.println("Failed to close the checkpoint journal: " + e.getMessage());
+            }
+        }
+    }
+
+    int getNumSkipped() {
+        return skipped.get();
+    }
+
+    int getNumRecorded() {
+        return recorded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Skipped " + skipped.get() + " pathways finished by an earlier run, recorded " + recorded.get();
+    }
+
+    /**
+     * Compute the CRC32 of a file.
+     *
+     * @param file  File to read
+     *
+     * @return String checksum in hex
+     *
+     * @throws IOException if the file cannot be read
+     */
+    static String checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        InputStream in = Files.newInputStream(file.toPath());
+        try {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return Long.toHexString(crc.getValue());
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        if (file.length() == 0) {
+            return true;
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek(file.length() - 1);
+            return raf.read() == '\n';
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static String key(Long dbId, String format) {
+        return dbId + "\t" + format;
+    }
+
+    private static Map<String, Finished> read(File journal, int dbVersion) throws IOException {
+        Map<String, Finished> entries = new ConcurrentHashMap<String, Finished>();
+        int otherVersion = 0;
+        if (!journal.isFile()) {
+            return entries;
+        }
+        BufferedReader reader = Files.newBufferedReader(journal.toPath(), UTF8);
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split("\t");
+                if (fields.length != 6) {
+                    System.err.println("Ignoring bad line in " + journal + ": " + line);
+                    continue;
+                }
+                try {
+                    long dbId = Long.parseLong(fields[0]);
+                    if (Integer.parseInt(fields[2]) != dbVersion) {
+                        // the file came from other data and is exported again
+                        entries.remove(key(dbId, fields[1]));
+                        otherVersion++;
+                        continue;
+                    }
+                    // a later line for the same pathway replaces an earlier one
+                    entries.put(key(dbId, fields[1]), new Finished(fields[3], fields[4], fields[5]));
+                }
+                catch (NumberFormatException e) {
+                    System.err.println("Ignoring bad line in " + journal + ": " + line);
+                }
+            }
+        }
+        finally {
+            reader.close();
+        }
+        if (otherVersion > 0) {
+            System.out.println("Ignoring " + otherVersion + " pathways in the journal written from another version of the data");
+        }
+        return entries;
+    }
+}
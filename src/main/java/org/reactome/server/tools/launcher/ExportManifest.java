@@ -0,0 +1,263 @@
+package org.reactome.server.tools.launcher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Records the fingerprint of every pathway written to an output directory
+ * so that the next run can skip pathways that have not changed.
+ *
+ * The manifest is a tab separated file in the output directory with one line
+ * per exported file: dbId, format, fingerprint and file name. It is read at the
+ * start of a run and rewritten at the end. A pathway this run did not export,
+ * e.g. one outside the pathways asked for, keeps its entry as long as its file
+ * is in the output directory. When the previous output is in a
+ * different directory unchanged files are hard linked (or copied if a link
+ * cannot be made) into the new directory.
+ *
+ * Files that are reused keep the provenance annotation written when they
+ * were first created.
+ *
+ * Entries can be added from several threads at once.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class ExportManifest {
+
+    /**
+     * Version of the exporter output. Increase this whenever the content
+     * written for a pathway changes so that the next run rebuilds every file.
+     */
+    static final String EXPORTER_VERSION = "1";
+
+    static final String FILENAME = "export-manifest.tsv";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String HEADER = "# dbId\tformat\tfingerprint\tfile";
+
+    private final File previousDir;
+    private final Map<String, Entry> previous;
+    private final Map<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+    // pathways whose previous entry no longer describes their file
+    private final Set<String> dropped = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final AtomicInteger reused = new AtomicInteger(0);
+    private final AtomicInteger rebuilt = new AtomicInteger(0);
+
+    private static class Entry {
+        final long dbId;
+        final String format;
+        final String fingerprint;
+        final String file;
+
+        Entry(long dbId, String format, String fingerprint, String file) {
+            this.dbId = dbId;
+            this.format = format;
+            this.fingerprint = fingerprint;
+            this.file = file;
+        }
+    }
+
+    /**
+     * Read the manifest left by the previous run.
+     *
+     * @param previousDir   File directory holding the output of the previous run
+     */
+    ExportManifest(File previousDir) {
+        this.previousDir = previousDir;
+        this.previous = read(new File(previousDir, FILENAME));
+    }
+
+    /**
+     * Reuse the file written for this pathway by the previous run if its
+     * fingerprint has not changed.
+     *
+     * @param dbId          Long dbId of the pathway
+     * @param format        String name of the output format
+     * @param fingerprint   String fingerprint of the pathway now
+     * @param outputDir     File directory the file should be in
+     *
+     * @return true if the previous file is in place and the pathway need not be exported
+     */
+    boolean reuse(Long dbId, String format, String fingerprint, File outputDir) {
+        Entry entry = previous.get(key(dbId, format));
+        if (entry == null || !entry.fingerprint.equals(fingerprint)) {
+            return false;
+        }
+        File source = new File(previousDir, entry.file);
+        if (!source.isFile()) {
+            return false;
+        }
+        File target = new File(outputDir, entry.file);
+        try {
+            if (!source.getCanonicalFile().equals(target.getCanonicalFile())) {
+                link(source.toPath(), target.toPath());
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not reuse " + source + ": " + e.getMessage());
+            return false;
+        }
+        current.put(key(dbId, format), entry);
+        reused.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Record the file written for a pathway in this run.
+     *
+     * @param dbId          Long dbId of the pathway
+     * @param format        String name of the output format
+     * @param fingerprint   String fingerprint of the pathway
+     * @param file          String name of the file within the output directory
+     */
+    void record(Long dbId, String format, String fingerprint, String file) {
+        current.put(key(dbId, format), new Entry(dbId, format, fingerprint, file));
+        rebuilt.incrementAndGet();
+    }
+
+    /**
+     * Keep the file written for a pathway by an earlier run that was not
+     * exported again, e.g. because the checkpoint journal shows it finished.
+     *
+     * @param dbId          Long dbId of the pathway
+     * @param format        String name of the output format
+     * @param fingerprint   String fingerprint of the pathway when the file was
+     *                      written or null if it is not known
+     * @param file          String name of the file within the output directory
+     */
+    void keep(Long dbId, String format, String fingerprint, String file) {
+        if (fingerprint == null) {
+            // the file is not known to match any fingerprint so it is rebuilt next time
+            dropped.add(key(dbId, format));
+        }
+        else {
+            current.put(key(dbId, format), new Entry(dbId, format, fingerprint, file));
+        }
+    }
+
+    /**
+     * Write the manifest for this run. The entries of the previous manifest for
+     * pathways this run did not write are carried forward if their file is in the
+     * output directory. The manifest is written through OutputFiles so that an
+     * interrupted run never leaves a partial manifest.
+     *
+     * @param outputDir     File directory to write the manifest to
+     *
+     * @throws IOException if the manifest cannot be written
+     */
+    void write(File outputDir) throws IOException {
+        // entries are sorted so that manifests can be compared between runs
+        Map<String, Entry> sorted = new TreeMap<String, Entry>(current);
+        for (Map.Entry<String, Entry> e : previous.entrySet()) {
+            if (!sorted.containsKey(e.getKey()) && !dropped.contains(e.getKey()) &&
+                    new File(outputDir, e.getValue().file).isFile()) {
+                sorted.put(e.getKey(), e.getValue());
+            }
+        }
+        File file = new File(outputDir, FILENAME);
+        File tmp = OutputFiles.temporaryFile(file);
+        boolean written = false;
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), UTF8);
+            try {
+                writer.write(HEADER);
+                writer.newLine();
+                for (Entry e : sorted.values()) {
+                    writer.write(e.dbId + "\t" + e.format + "\t" + e.fingerprint + "\t" + e.file);
+                    writer.newLine();
+                }
+            }
+            finally {
+                writer.close();
+            }
+            written = true;
+        }
+        finally {
+            if (!written) {
+                OutputFiles.discard(tmp);
+            }
+        }
+        OutputFiles.move(tmp, file);
+    }
+
+    int getNumReused() {
+        return reused.get();
+    }
+
+    int getNumRebuilt() {
+        return rebuilt.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Reused " + reused.get() + " unchanged pathways, rebuilt " + rebuilt.get();
+    }
+
+    private static String key(Long dbId, String format) {
+        return dbId + "\t" + format;
+    }
+
+    private static void link(Path source, Path target) throws IOException {
+        Files.deleteIfExists(target);
+        try {
+            Files.createLink(target, source);
+        }
+        catch (IOException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (UnsupportedOperationException e) {
+            Files.copy(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static Map<String, Entry> read(File manifest) {
+        Map<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+        if (!manifest.isFile()) {
+            return entries;
+        }
+        try {
+            BufferedReader reader = Files.newBufferedReader(manifest.toPath(), UTF8);
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.length() == 0 || line.startsWith("#")) {
+                        continue;
+                    }
+                    String[] fields = line.split("\t");
+                    if (fields.length != 4) {
+                        System.err.println("Ignoring bad line in " + manifest + ": " + line);
+                        continue;
+                    }
+                    try {
+                        long dbId = Long.parseLong(fields[0]);
+                        entries.put(key(dbId, fields[1]), new Entry(dbId, fields[1], fields[2], fields[3]));
+                    }
+                    catch (NumberFormatException e) {
+                        System.err.println("Ignoring bad line in " + manifest + ": " + line);
+                    }
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not read " + manifest + "; all pathways will be exported");
+            entries.clear();
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,22 @@
+package org.reactome.server.tools.launcher;
+
+import java.io.OutputStream;
+
+/**
+ * A pathway that has been built into the model of an output format and is
+ * waiting to be serialized. This lets the PathwayPipeline build and serialize
+ * on different threads without knowing which format is being written.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+interface ExportModel {
+
+    /**
+     * Serialize the model to the given stream.
+     *
+     * @param out   OutputStream to write to
+     *
+     * @throws Exception if the model cannot be written
+     */
+    void write(OutputStream out) throws Exception;
+}
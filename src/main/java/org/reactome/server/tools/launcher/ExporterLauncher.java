@@ -4,16 +4,27 @@ package org.reactome.server.tools.launcher;
 import com.martiansoftware.jsap.*;
 import com.sun.org.apache.xpath.internal.operations.Neg;
 import org.reactome.server.graph.domain.model.*;
-import org.reactome.server.graph.service.DatabaseObjectService;
-import org.reactome.server.graph.service.GeneralService;
-import org.reactome.server.graph.service.SchemaService;
-import org.reactome.server.graph.service.SpeciesService;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 import org.reactome.server.tools.config.GraphQANeo4jConfig;
+import org.reactome.server.tools.datasource.ExportDataSource;
+import org.reactome.server.tools.datasource.GraphCoreDataSource;
+import org.reactome.server.tools.datasource.PathwayContainmentIndex;
+import org.reactome.server.tools.datasource.SnapshotDataSource;
+import org.reactome.server.tools.datasource.SyntheticDataSource;
+import org.reactome.server.tools.exporters.sbmlexport.ExportCaches;
+import org.reactome.server.tools.exporters.sbmlexport.WriteSBML;
+import org.reactome.server.tools.metrics.ExportCounter;
+import org.reactome.server.tools.metrics.ExportMetrics;
+import org.reactome.server.tools.metrics.ExportStage;
+import org.reactome.server.tools.metrics.MetricsReporter;
+import org.reactome.server.tools.metrics.PathwayMetrics;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -42,19 +53,76 @@ public class ExporterLauncher {
 
     private static int dbVersion = 0;
 
+    // number of worker threads used when exporting all pathways of a species
+    private static int numThreads = 1;
+
+    // number of threads of each stage when exporting all pathways through a pipeline (null to not use one)
+    private static int[] pipelineThreads = null;
+    private static int queueSize = 4;
+
+    // whether to load the subgraph for each pathway up front
+    private static boolean prefetch = false;
+
+    // whether all the pathways of a species are loaded into memory at once
+    private static boolean speciesWide = false;
+
+    // whether SBML is written directly to the file rather than built in memory first
+    private static boolean streaming = false;
+
+    // whether SBML child pathways are referenced as comp submodels rather than copied into their parents
+    private static boolean hierarchical = false;
+
+    // record of the files written so that unchanged pathways can be skipped next time
+    private static ExportManifest manifest;
+
+    // record of the pathways finished by this run so that an interrupted run can be resumed
+    private static CheckpointJournal journal;
+    private static boolean resume = false;
+
+    // which events each pathway contains, kept next to the output for later runs if asked for
+    private static PathwayContainmentIndex containmentIndex;
+    private static boolean keepIndex = false;
+
+    // annotations resolved once per run and shared by every pathway
+    private static ExportCaches exportCaches;
+
+    // number of reactions to generate instead of reading the database (0 to read the database)
+    private static int syntheticReactions = 0;
+    private static long syntheticSeed = 1;
+
+    // snapshot file to export from instead of reading the database
+    private static String snapshot = null;
+
+    private static ExportDataSource dataSource;
+
+    // the same data source when reading the graph database, which can report what it loaded species wide
+    private static GraphCoreDataSource graphDataSource = null;
+
+    // timings and counts of the run, written to the metrics directory as it progresses if one is given
+    private static ExportMetrics metrics;
+    private static String metricsdir = null;
+    private static int metricsInterval = 60;
+
 
     public static void main(String[] args) throws JSAPException {
 
         SimpleJSAP jsap = new SimpleJSAP(ExporterLauncher.class.getName(), "A tool for generating SBML files",
                 new Parameter[]{
                         new FlaggedOption("host", JSAP.STRING_PARSER, "localhost", JSAP.REQUIRED, 'h', "host", "The neo4j host"),
-                        new FlaggedOption("port", JSAP.STRING_PARSER, "7474", JSAP.NOT_REQUIRED, 'b', "port", "The neo4j port"),
+                        new FlaggedOption("port", JSAP.STRING_PARSER, "7474", JSAP.NOT_REQUIRED, 'b', "port", "The neo4j port (defaults to 7687 for the bolt driver)"),
+                        new FlaggedOption("driver", JSAP.STRING_PARSER, GraphQANeo4jConfig.HTTP, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "driver", "The neo4j driver: http or bolt"),
+                        new FlaggedOption("poolsize", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "poolsize", "The number of bolt connections (defaults to one more than the number of threads)"),
                         new FlaggedOption("user", JSAP.STRING_PARSER, "neo4j", JSAP.REQUIRED, 'u', "user", "The neo4j user"),
                         new FlaggedOption("password", JSAP.STRING_PARSER, "reactome", JSAP.REQUIRED, 'p', "password", "The neo4j password"),
                         new FlaggedOption("outdir", JSAP.STRING_PARSER, ".", JSAP.REQUIRED, 'o', "outdir", "The output directory"),
                         new FlaggedOption("toplevelpath", JSAP.LONG_PARSER, "0", JSAP.NOT_REQUIRED, 't', "toplevelpath", "A single id of a pathway"),
                         new FlaggedOption("species", JSAP.LONG_PARSER, "0", JSAP.NOT_REQUIRED, 's', "species", "The id of a species"),
                         new FlaggedOption("format", JSAP.STRING_PARSER, "0", JSAP.NOT_REQUIRED, 'f', "format", "The output format"),
+                        new FlaggedOption("threads", JSAP.INTEGER_PARSER, "1", JSAP.NOT_REQUIRED, 'n', "threads", "The number of worker threads used when exporting all pathways"),
+                        new FlaggedOption("cachesize", JSAP.INTEGER_PARSER, Integer.toString(ExportCaches.DEFAULT_MAX_ENTRIES), JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "cachesize", "The maximum number of entries in each run cache"),
+                        new FlaggedOption("synthetic", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "synthetic", "Export generated pathways with this number of reactions instead of reading the database"),
+                        new FlaggedOption("seed", JSAP.LONG_PARSER, "1", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "seed", "The seed used to generate synthetic pathways"),
+                        new FlaggedOption("metricsinterval", JSAP.INTEGER_PARSER, "60", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "metricsinterval", "The number of seconds between metrics reports (0 to report only at the end)"),
                 }
         );
         FlaggedOption m =  new FlaggedOption("multiple", JSAP.LONG_PARSER, null, JSAP.NOT_REQUIRED, 'm', "multiple", "A list of ids of Pathways");
@@ -67,88 +135,209 @@ public class ExporterLauncher {
         loe.setListSeparator(',');
         jsap.registerParameter(loe);
 
+        jsap.registerParameter(new Switch("prefetch", JSAP.NO_SHORTFLAG, "prefetch",
+                "Load the whole subgraph of each pathway in a few queries before exporting it"));
+        jsap.registerParameter(new Switch("specieswide", JSAP.NO_SHORTFLAG, "specieswide",
+                "Load all the pathways of a species from the database at once when exporting all its pathways; they are exported by a single thread"));
+        jsap.registerParameter(new Switch("streaming", JSAP.NO_SHORTFLAG, "streaming",
+                "Write SBML directly to the output file without building the whole document in memory; the model is the same but the XML layout differs from the default writer"));
+        jsap.registerParameter(new Switch("hierarchical", JSAP.NO_SHORTFLAG, "hierarchical",
+                "Write each SBML pathway with its child pathways as comp submodels rather than copying in their reactions; with -t or -m the pathways below are exported too"));
+        jsap.registerParameter(new Switch("incremental", JSAP.NO_SHORTFLAG, "incremental",
+                "Only export pathways that have changed since the run recorded in the manifest"));
+        jsap.registerParameter(new Switch("pathwayindex", JSAP.NO_SHORTFLAG, "pathwayindex",
+                "Keep an index of the events each pathway contains in the output directory for finding the parent of a list of events"));
+        jsap.registerParameter(new Switch("resume", JSAP.NO_SHORTFLAG, "resume",
+                "Skip pathways that an interrupted run in the output directory has already written"));
+        jsap.registerParameter(new FlaggedOption("previous", JSAP.STRING_PARSER, null, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG,
+                "previous", "The output directory of the previous run (defaults to the output directory)"));
+        jsap.registerParameter(new FlaggedOption("snapshot", JSAP.STRING_PARSER, null, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG,
+                "snapshot", "Export from a snapshot file written by SnapshotLauncher instead of reading the database"));
+        jsap.registerParameter(new FlaggedOption("pipeline", JSAP.STRING_PARSER, null, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG,
+                "pipeline", "Export all pathways through a pipeline with these numbers of fetch,build,serialize,write threads e.g. 2,4,2,1"));
+        jsap.registerParameter(new FlaggedOption("queuesize", JSAP.INTEGER_PARSER, "4", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG,
+                "queuesize", "The number of pathways that may wait for each stage of the pipeline"));
+        jsap.registerParameter(new FlaggedOption("metricsdir", JSAP.STRING_PARSER, null, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG,
+                "metricsdir", "The directory the metrics reports are written to (no reports are written if not given)"));
+
         JSAPResult config = jsap.parse(args);
         if (jsap.messagePrinted()) System.exit(1);
 
-        //Initialising ReactomeCore Neo4j configuration
-        ReactomeGraphCore.initialise(config.getString("host"), config.getString("port"), config.getString("user"), config.getString("password"), GraphQANeo4jConfig.class);
-
-        GeneralService genericService = ReactomeGraphCore.getService(GeneralService.class);
-        DatabaseObjectService databaseObjectService = ReactomeGraphCore.getService(DatabaseObjectService.class);
-        SpeciesService speciesService = ReactomeGraphCore.getService(SpeciesService.class);
-        SchemaService schemaService = ReactomeGraphCore.getService(SchemaService.class);
-
         outputStatus = Status.SINGLE_PATH;
         outputFormat = Format.SBML;
         parseAdditionalArguments(config);
 
+        if (syntheticReactions > 0) {
+            dataSource = new SyntheticDataSource(syntheticSeed, syntheticReactions);
+        }
+        else if (snapshot != null) {
+            try {
+                dataSource = new SnapshotDataSource(new File(snapshot));
+            }
+            catch (IOException e) {
+                System.err.println("Failed to open the snapshot: " + e.getMessage());
+                System.exit(1);
+            }
+        }
+        else {
+            //Initialising ReactomeCore Neo4j configuration
+            String port = config.getString("port");
+            if (!setDriverProperties(config)) {
+                System.exit(1);
+            }
+            if (config.getString("driver").equals(GraphQANeo4jConfig.BOLT) && !config.userSpecified("port")) {
+                port = GraphQANeo4jConfig.DEFAULT_BOLT_PORT;
+            }
+            ReactomeGraphCore.initialise(config.getString("host"), port, config.getString("user"), config.getString("password"), GraphQANeo4jConfig.class);
+            graphDataSource = new GraphCoreDataSource(prefetch, speciesWide);
+            dataSource = graphDataSource;
+        }
+
         if (!singleArgumentSupplied()) {
             System.err.println("Too many arguments detected. Expected either no pathway arguments or one of -t, -s, -m, -l.");
         }
         else {
-            dbVersion = genericService.getDBVersion();
+            dbVersion = dataSource.getDBVersion();
+
+            // only a run of many pathways, or one asked to resume, keeps a journal in the output directory
+            if (resume || outputStatus == Status.ALL_PATWAYS || outputStatus == Status.ALL_PATHWAYS_SPECIES) {
+                try {
+                    journal = new CheckpointJournal(new File(outputdir), resume, dbVersion);
+                }
+                catch (IOException e) {
+                    System.err.println("Failed to open the checkpoint journal: " + e.getMessage());
+                    System.exit(1);
+                }
+            }
+            if (keepIndex) {
+                containmentIndex = openContainmentIndex();
+            }
+
+            metrics = new ExportMetrics(outputFormat.name());
+            metrics.setDbVersion(dbVersion);
+            // the reports are kept out of the output directory unless asked for
+            MetricsReporter reporter = null;
+            if (metricsdir != null) {
+                File dir = new File(metricsdir);
+                if (!dir.isDirectory() && !dir.mkdirs()) {
+                    System.err.println("Could not create the metrics directory " + metricsdir);
+                }
+                reporter = new MetricsReporter(metrics, dir);
+                reporter.start(metricsInterval);
+            }
 
             switch (outputStatus) {
                 case SINGLE_PATH:
-                    Pathway pathway = null;
-                    try {
-                        pathway = (Pathway) databaseObjectService.findByIdNoRelations(singleId);
-                    } catch (Exception e) {
-                        System.err.println(singleId + " is not the identifier of a valid Pathway object");
-                    }
-                    if (pathway != null) {
-                        outputPath(pathway);
-                    }
+                    exportPathways(new long[]{singleId});
                     break;
                 case ALL_PATWAYS:
-                    for (Species s : speciesService.getSpecies()) {
-                        outputPathsForSpecies(s, schemaService);
+                    if (pipelineThreads != null) {
+                        PathwayPipeline pipeline = new PathwayPipeline(pipelineThreads, queueSize, metrics);
+                        for (Species s : dataSource.getSpecies()) {
+                            outputPathsForSpecies(s, pipeline);
+                        }
+                        pipeline.shutdown();
+                    }
+                    else if (numThreads > 1) {
+                        ParallelPathwayExporter exporter = new ParallelPathwayExporter(numThreads);
+                        for (Species s : dataSource.getSpecies()) {
+                            outputPathsForSpecies(s, exporter);
+                        }
+                        exporter.shutdown();
+                    }
+                    else {
+                        for (Species s : dataSource.getSpecies()) {
+                            outputPathsForSpecies(s);
+                            recordIndexedSpecies(s);
+                        }
+                    }
+                    if (pipelineThreads != null || numThreads > 1) {
+                        for (Species s : dataSource.getSpecies()) {
+                            recordIndexedSpecies(s);
+                        }
                     }
                     break;
                 case ALL_PATHWAYS_SPECIES:
                     Species species = null;
                     try {
-                        species = (Species) databaseObjectService.findByIdNoRelations(speciesId);
+                        species = dataSource.findSpecies(speciesId);
                     } catch (Exception e) {
                         System.err.println(speciesId + " is not the identifier of a valid Species object");
                     }
                     if (species != null) {
-                        outputPathsForSpecies(species, schemaService);
-                    }
-                    break;
-                case MULTIPLE_PATHS:
-                    for (long id : multipleIds) {
-                        pathway = null;
-                        try {
-                            pathway = (Pathway) databaseObjectService.findByIdNoRelations(id);
-                        } catch (Exception e) {
-                            System.err.println(id + " is not the identifier of a valid Pathway object");
+                        if (pipelineThreads != null) {
+                            PathwayPipeline pipeline = new PathwayPipeline(pipelineThreads, queueSize, metrics);
+                            outputPathsForSpecies(species, pipeline);
+                            pipeline.shutdown();
+                        }
+                        else if (numThreads > 1) {
+                            ParallelPathwayExporter exporter = new ParallelPathwayExporter(numThreads);
+                            outputPathsForSpecies(species, exporter);
+                            exporter.shutdown();
                         }
-                        if (pathway != null) {
-                            outputPath(pathway);
+                        else {
+                            outputPathsForSpecies(species);
                         }
+                        recordIndexedSpecies(species);
                     }
+                    break;
+                case MULTIPLE_PATHS:
+                    exportPathways(multipleIds);
+                    break;
                 case MULTIPLE_EVENTS:
                     List<Event> eventList = new ArrayList<Event>();
                     boolean valid = true;
                     for (long id: multipleEvents) {
                         Event event;
                         try {
-                            event = (Event) databaseObjectService.findByIdNoRelations(id);
-                            eventList.add(event);
+                            event = dataSource.findEvent(id);
                         } catch (Exception e) {
+                            event = null;
+                        }
+                        if (event == null) {
                             valid = false;
                             System.err.println(id + " is not the identifier of a valid Event object");
                         }
+                        else {
+                            eventList.add(event);
+                        }
                     }
                     if (valid && eventList.size() > 0){
                         outputEvents(eventList);
                     }
-
-
+                    break;
                 default:
                     break;
             }
+            if (outputFormat == Format.SBML) {
+                System.out.println(exportCaches);
+            }
+            if (manifest != null) {
+                System.out.println(manifest);
+                try {
+                    manifest.write(new File(outputdir));
+                }
+                catch (IOException e) {
+                    System.err.println("Failed to write the export manifest: " + e.getMessage());
+                }
+            }
+            if (containmentIndex != null && containmentIndex.getNumPathways() > 0) {
+                try {
+                    containmentIndex.write(new File(outputdir, PathwayContainmentIndex.FILENAME));
+                    System.out.println(containmentIndex);
+                }
+                catch (IOException e) {
+                    System.err.println("Failed to write the pathway index: " + e.getMessage());
+                }
+            }
+            if (journal != null) {
+                journal.close();
+                System.out.println(journal);
+            }
+            if (reporter != null) {
+                reporter.finish();
+            }
+            System.out.println(metrics);
         }
 
     }
@@ -183,6 +372,43 @@ public class ExporterLauncher {
             }
         }
 
+        numThreads = Math.max(1, config.getInt("threads"));
+        queueSize = Math.max(1, config.getInt("queuesize"));
+        String pipeline = config.getString("pipeline");
+        pipelineThreads = null;
+        if (pipeline != null) {
+            pipelineThreads = PathwayPipeline.parseThreads(pipeline);
+            if (pipelineThreads == null) {
+                System.err.println(pipeline + " is not a number of threads for each of the fetch,build,serialize,write stages");
+                System.exit(1);
+            }
+        }
+        prefetch = config.getBoolean("prefetch");
+        speciesWide = config.getBoolean("specieswide");
+        if (speciesWide && (numThreads > 1 || pipelineThreads != null)) {
+            System.out.println("The pathways of a species loaded species wide share one graph session; they are exported by a single thread");
+            numThreads = 1;
+            pipelineThreads = null;
+        }
+        streaming = config.getBoolean("streaming");
+        hierarchical = config.getBoolean("hierarchical");
+        if (hierarchical && streaming) {
+            System.out.println("The streaming writer does not write comp submodels; hierarchical models are built in memory");
+            streaming = false;
+        }
+        exportCaches = new ExportCaches(Math.max(1, config.getInt("cachesize")));
+        syntheticReactions = config.getInt("synthetic");
+        syntheticSeed = config.getLong("seed");
+        snapshot = config.getString("snapshot");
+        metricsdir = config.getString("metricsdir");
+        metricsInterval = config.getInt("metricsinterval");
+        resume = config.getBoolean("resume");
+        keepIndex = config.getBoolean("pathwayindex");
+        if (config.getBoolean("incremental")) {
+            String previous = config.getString("previous");
+            manifest = new ExportManifest(new File(previous == null ? outputdir : previous));
+        }
+
         String format = config.getString("format");
 
         if (format.equals("biopax3")) {
@@ -197,6 +423,28 @@ public class ExporterLauncher {
 
     }
 
+    /**
+     * Set the system properties read by GraphQANeo4jConfig to choose the driver
+     *
+     * @param config JSAPResult result of first parse
+     *
+     * @return true if the driver is supported, false otherwise
+     */
+    private static boolean setDriverProperties(JSAPResult config) {
+        String driver = config.getString("driver");
+        if (!driver.equals(GraphQANeo4jConfig.HTTP) && !driver.equals(GraphQANeo4jConfig.BOLT)) {
+            System.err.println(driver + " is not a supported neo4j driver. Expected http or bolt.");
+            return false;
+        }
+        System.setProperty(GraphQANeo4jConfig.DRIVER_PROPERTY, driver);
+        // every worker holds a session open, plus the main thread listing the pathways;
+        // in a pipeline the fetch threads load the pathways and the build threads may load more
+        int workers = pipelineThreads == null ? numThreads : pipelineThreads[0] + pipelineThreads[1];
+        int poolSize = config.getInt("poolsize");
+        System.setProperty(GraphQANeo4jConfig.POOL_SIZE_PROPERTY, Integer.toString(poolSize > 0 ? poolSize : workers + 1));
+        return true;
+    }
+
     /**
      *  function to check that only one argument relating to teh pathway has been given
      *
@@ -238,11 +486,243 @@ public class ExporterLauncher {
      * Output all Pathways for the given Species
      *
      * @param species ReactomeDB Species
-     * @param schemaService database service to use
      */
-    private static void outputPathsForSpecies(Species species, SchemaService schemaService) {
-        for (Pathway path : schemaService.getByClass(Pathway.class, species)){
-            outputPath(path);
+    private static void outputPathsForSpecies(Species species) {
+        List<Long> pathwayIds = dataSource.getPathwayIds(species);
+        if (graphDataSource != null && graphDataSource.getSpeciesStore() != null) {
+            System.out.println(graphDataSource.getSpeciesStore());
+        }
+        for (Long dbId : pathwayIds){
+            exportPathway(dbId);
+        }
+    }
+
+    /**
+     * Export each of the given Pathways. A hierarchical SBML file refers to the
+     * files of its child pathways, so when writing those the pathways below the
+     * given ones are exported as well.
+     *
+     * @param ids long[] dbIds of the ReactomeDB Pathways
+     */
+    private static void exportPathways(long[] ids) {
+        boolean withChildren = hierarchical && outputFormat == Format.SBML;
+        Set<Long> exported = new HashSet<Long>();
+        List<Long> pending = new ArrayList<Long>();
+        for (long id : ids) {
+            pending.add(id);
+        }
+        while (!pending.isEmpty()) {
+            Long dbId = pending.remove(0);
+            if (!exported.add(dbId) || !exportPathway(dbId) || !withChildren) {
+                continue;
+            }
+            Pathway pathway = null;
+            try {
+                pathway = loadPathway(dbId);
+            } catch (Exception e) {
+                System.err.println("Could not find the child pathways of " + dbId);
+            }
+            if (pathway != null && pathway.getHasEvent() != null) {
+                for (Event event : pathway.getHasEvent()) {
+                    if (event instanceof Pathway) {
+                        pending.add(event.getDbId());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Load the Pathway with the given dbId and write it, recording the
+     * time taken in the run metrics.
+     *
+     * @param dbId Long dbId of the ReactomeDB Pathway
+     *
+     * @return true if the file for the pathway is in place, false if the pathway
+     *         was not found or its file could not be written
+     */
+    static boolean exportPathway(Long dbId) {
+        if (isFinished(dbId)) {
+            return true;
+        }
+        PathwayMetrics pm = startMetrics(dbId);
+        Pathway pathway = fetchPathway(dbId, pm);
+        if (pathway == null) {
+            return false;
+        }
+        String fingerprint = getFingerprint(pathway);
+        // a reused file is counted by the manifest rather than as an export
+        if (reuseOutput(pathway, fingerprint)) {
+            return true;
+        }
+        boolean written = false;
+        try {
+            written = writePath(pathway, fingerprint, pm);
+        }
+        finally {
+            finishMetrics(pm, written);
+        }
+        if (!written) {
+            System.err.println("Failed to write the file for pathway " + dbId);
+        }
+        return written;
+    }
+
+    /**
+     * Determine whether the pathway was written by an earlier run being resumed.
+     * The file of a finished pathway is kept in the manifest of an incremental run
+     * with the fingerprint the journal recorded for it.
+     *
+     * @param dbId Long dbId of the ReactomeDB Pathway
+     *
+     * @return true if the pathway need not be exported
+     */
+    static boolean isFinished(Long dbId) {
+        if (journal == null || !journal.isFinished(dbId, getOutputMode())) {
+            return false;
+        }
+        if (manifest != null) {
+            manifest.keep(dbId, outputFormat.name(), journal.getFingerprint(dbId, getOutputMode()),
+                    journal.getFile(dbId, getOutputMode()));
+        }
+        return true;
+    }
+
+    /**
+     * Start recording the export of a pathway in the run metrics.
+     *
+     * @param dbId Long dbId of the ReactomeDB Pathway
+     *
+     * @return PathwayMetrics to record into or null if there are no run metrics
+     */
+    static PathwayMetrics startMetrics(Long dbId) {
+        return metrics == null ? null : metrics.startPathway(dbId);
+    }
+
+    /**
+     * Add the metrics of a finished pathway to the run metrics.
+     *
+     * @param pm PathwayMetrics recorded or null
+     * @param succeeded boolean whether the pathway was written
+     */
+    static void finishMetrics(PathwayMetrics pm, boolean succeeded) {
+        if (pm != null) {
+            metrics.finishPathway(pm, succeeded);
+        }
+    }
+
+    /**
+     * Load the Pathway with the given dbId, recording the time taken.
+     * A dbId that is not a pathway is reported and recorded as a failure.
+     *
+     * @param dbId Long dbId of the ReactomeDB Pathway
+     * @param pm PathwayMetrics to record into or null
+     *
+     * @return the Pathway or null if there is none
+     */
+    static Pathway fetchPathway(Long dbId, PathwayMetrics pm) {
+        long start = System.nanoTime();
+        Pathway pathway = null;
+        try {
+            pathway = loadPathway(dbId);
+        } catch (Exception e) {
+            // reported below as not a valid pathway
+        }
+        if (pm != null) {
+            pm.addTime(ExportStage.FETCH, System.nanoTime() - start);
+        }
+        if (pathway == null) {
+            System.err.println(dbId + " is not the identifier of a valid Pathway object");
+            finishMetrics(pm, false);
+        }
+        else if (containmentIndex != null) {
+            containmentIndex.add(pathway);
+        }
+        return pathway;
+    }
+
+    /**
+     * Read the pathway index left in the output directory by an earlier run of
+     * the same data so that it is added to rather than started again.
+     *
+     * @return PathwayContainmentIndex to add the pathways of this run to
+     */
+    private static PathwayContainmentIndex openContainmentIndex() {
+        File file = new File(outputdir, PathwayContainmentIndex.FILENAME);
+        if (file.isFile()) {
+            try {
+                PathwayContainmentIndex index = PathwayContainmentIndex.read(file);
+                if (index.getDbVersion() == dbVersion) {
+                    return index;
+                }
+                System.out.println("The pathway index in " + outputdir + " is for version " + index.getDbVersion() + " and will be replaced");
+            }
+            catch (IOException e) {
+                System.err.println("Could not read the pathway index: " + e.getMessage());
+            }
+        }
+        return new PathwayContainmentIndex(dbVersion);
+    }
+
+    /**
+     * Mark the species complete in the pathway index if every one of its
+     * pathways is in it. Pathways skipped because an interrupted run had
+     * finished them were not loaded, so the species may not be.
+     *
+     * @param species ReactomeDB Species that has been exported
+     */
+    private static void recordIndexedSpecies(Species species) {
+        if (containmentIndex == null) {
+            return;
+        }
+        for (Long dbId : dataSource.getPathwayIds(species)) {
+            if (!containmentIndex.isIndexed(dbId)) {
+                return;
+            }
+        }
+        containmentIndex.setSpeciesComplete(species.getDbId());
+    }
+
+    /**
+     * Drop everything the current thread has loaded from the data source.
+     */
+    static void releaseSession() {
+        dataSource.releaseSession();
+    }
+
+    /**
+     * Load the Pathway with the given dbId from the data source.
+     *
+     * @param dbId Long dbId of the ReactomeDB Pathway
+     *
+     * @return the Pathway
+     */
+    static Pathway loadPathway(Long dbId) {
+        return dataSource.loadPathway(dbId);
+    }
+
+    /**
+     * Queue all Pathways for the given Species to be output by the worker pool
+     *
+     * @param species ReactomeDB Species
+     * @param exporter pool of workers that will output each pathway
+     */
+    private static void outputPathsForSpecies(Species species, ParallelPathwayExporter exporter) {
+        exporter.nextSpecies();
+        for (Long dbId : dataSource.getPathwayIds(species)){
+            exporter.submit(dbId);
+        }
+    }
+
+    /**
+     * Queue all Pathways for the given Species to be output by the pipeline
+     *
+     * @param species ReactomeDB Species
+     * @param pipeline pipeline that will output each pathway
+     */
+    private static void outputPathsForSpecies(Species species, PathwayPipeline pipeline) {
+        for (Long dbId : dataSource.getPathwayIds(species)){
+            pipeline.submit(dbId);
         }
     }
 
@@ -252,20 +732,180 @@ public class ExporterLauncher {
      * @param path ReactomeDB Pathway to output
      */
     public static void outputPath(Pathway path) {
+        String fingerprint = getFingerprint(path);
+        if (!reuseOutput(path, fingerprint)) {
+            writePath(path, fingerprint, null);
+        }
+    }
+
+    /**
+     * Write the file for this path, recording the time taken and the size
+     * of the file. A file that is in place when this returns is recorded in
+     * the manifest and the checkpoint journal.
+     *
+     * @param path ReactomeDB Pathway to output
+     * @param fingerprint String fingerprint of the pathway or null
+     * @param pm PathwayMetrics to record into or null
+     *
+     * @return true if the file was written, false otherwise
+     */
+    private static boolean writePath(Pathway path, String fingerprint, PathwayMetrics pm) {
+        boolean written = false;
         switch (outputFormat) {
             case SBML:
-                SBMLExporterLauncher sbml = new SBMLExporterLauncher(dbVersion, outputdir);
-                sbml.outputPath(path);
+                SBMLExporterLauncher sbml = new SBMLExporterLauncher(dbVersion, outputdir, streaming, hierarchical, exportCaches);
+                written = sbml.outputPath(path, pm);
                 break;
             case BIOPAXL3:
                 BioPAX3ExporterLauncher bp3 = new BioPAX3ExporterLauncher(dbVersion, outputdir);
-                bp3.outputPath(path);
+                written = bp3.outputPath(path, pm);
                 break;
 
         }
+        recordOutput(path, fingerprint, written, pm);
+        return written;
     }
 
+    /**
+     * Get the fingerprint of the pathway if the run is incremental.
+     *
+     * @param path ReactomeDB Pathway
+     *
+     * @return String fingerprint or null
+     */
+    static String getFingerprint(Pathway path) {
+        if (manifest == null) {
+            return null;
+        }
+        // a file written flat is not reused when writing hierarchically or the other way round
+        return PathwayFingerprint.compute(path, getOutputMode());
+    }
+
+    /**
+     * Get the name of the kind of file written: the format, and for SBML
+     * whether child pathways are written as comp submodels.
+     *
+     * @return String name of the format and mode
+     */
+    private static String getOutputMode() {
+        return (hierarchical && outputFormat == Format.SBML) ? outputFormat.name() + "-comp" : outputFormat.name();
+    }
+
+    /**
+     * Reuse the file of the previous run if the pathway has not changed since.
+     *
+     * @param path ReactomeDB Pathway
+     * @param fingerprint String fingerprint of the pathway or null
+     *
+     * @return true if the file was reused and the pathway need not be written
+     */
+    static boolean reuseOutput(Pathway path, String fingerprint) {
+        if (manifest == null ||
+                !manifest.reuse(path.getDbId(), outputFormat.name(), fingerprint, new File(outputdir))) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.pathwayReused();
+        }
+        if (journal != null) {
+            journal.record(path.getDbId(), getOutputMode(), fingerprint, getOutputFile(path));
+        }
+        return true;
+    }
+
+    /**
+     * Record the file written for the pathway in the metrics, the manifest and the journal.
+     *
+     * @param path ReactomeDB Pathway
+     * @param fingerprint String fingerprint of the pathway or null
+     * @param written boolean whether the file was written
+     * @param pm PathwayMetrics to record into or null
+     */
+    static void recordOutput(Pathway path, String fingerprint, boolean written, PathwayMetrics pm) {
+        // a file left by an earlier run is not recorded if this one failed to replace it
+        if (written) {
+            File out = getOutputFile(path);
+            if (pm != null) {
+                pm.setCount(ExportCounter.OUTPUT_BYTES, out.length());
+            }
+            if (manifest != null) {
+                manifest.record(path.getDbId(), outputFormat.name(), fingerprint, out.getName());
+            }
+            if (journal != null) {
+                journal.record(path.getDbId(), getOutputMode(), fingerprint, out);
+            }
+        }
+    }
+
+    /**
+     * Build the model of the pathway in the current format without writing it.
+     *
+     * @param path ReactomeDB Pathway
+     * @param pm PathwayMetrics to record into or null
+     *
+     * @return ExportModel to write
+     */
+    static ExportModel buildModel(Pathway path, PathwayMetrics pm) {
+        if (outputFormat == Format.BIOPAXL3) {
+            return new BioPAX3ExporterLauncher(dbVersion, outputdir).buildModel(path, pm);
+        }
+        return new SBMLExporterLauncher(dbVersion, outputdir, streaming, hierarchical, exportCaches).buildModel(path, pm);
+    }
+
+    /**
+     * Get the file written for the pathway in the current format
+     *
+     * @param path ReactomeDB Pathway
+     *
+     * @return File in the output directory
+     */
+    static File getOutputFile(Pathway path) {
+        return new File(outputdir, getFilename(path));
+    }
+
+    /**
+     * Get the name of the file written for the pathway in the current format
+     *
+     * @param path ReactomeDB Pathway
+     *
+     * @return String name of the file within the output directory
+     */
+    private static String getFilename(Pathway path) {
+        if (outputFormat == Format.BIOPAXL3) {
+            return path.getDbId() + ".owl";
+        }
+        return WriteSBML.getModelSource(path.getDbId());
+    }
+
+    /**
+     * Write the list of events as a single model in the current format
+     *
+     * @param loe List of ReactomeDB Events to output
+     */
     public static void outputEvents(List<Event> loe){
+        switch (outputFormat) {
+            case SBML:
+                SBMLExporterLauncher sbml = new SBMLExporterLauncher(dbVersion, outputdir, streaming, hierarchical, exportCaches);
+                sbml.outputEvents(loe);
+                break;
+            default:
+                System.err.println("A list of events can only be exported as SBML");
+                break;
+        }
+    }
+
+    /**
+     * Export from the given data source into the given directory as if they
+     * had been given on the command line.
+     *
+     * @param source ExportDataSource to read the pathways from
+     * @param dir String output directory
+     */
+    static void setDataSource(ExportDataSource source, String dir) {
+        dataSource = source;
+        graphDataSource = null;
+        outputdir = dir;
+        dbVersion = source.getDBVersion();
     }
 
     public static int getDbVersion() {
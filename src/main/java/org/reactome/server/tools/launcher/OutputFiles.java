@@ -0,0 +1,119 @@
+package org.reactome.server.tools.launcher;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Functions to write an output file under a temporary name and move it into place
+ * once it is complete, so that an interrupted run never leaves a truncated file
+ * with the name of a finished one. Every file written to the output directory,
+ * including the manifest, the metrics, the pathway index and the snapshot, is
+ * written this way, so the temporary files left by any of them are removed when
+ * a run is resumed.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public final class OutputFiles {
+
+    static final String TEMP_SUFFIX = ".part";
+
+    private OutputFiles() {
+    }
+
+    /**
+     * Get the temporary file to write in place of the given file.
+     *
+     * @param target    File to be written
+     *
+     * @return File in the same directory
+     */
+    public static File temporaryFile(File target) {
+        return new File(target.getParentFile(), target.getName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Move the temporary file into place if it was written completely,
+     * or remove it if it was not.
+     *
+     * @param tmp       File that was written
+     * @param target    File to replace
+     * @param written   boolean whether the writer finished
+     *
+     * @return true if the target now holds the new file, false otherwise
+     */
+    static boolean commit(File tmp, File target, boolean written) {
+        if (!written) {
+            discard(tmp);
+            return false;
+        }
+        try {
+            move(tmp, target);
+            return true;
+        }
+        catch (IOException e) {
+            System.err.println("failed to move " + tmp.getName() + " to " + target.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Move a completely written temporary file into place in one step.
+     * The temporary file is removed if it cannot be moved.
+     *
+     * @param tmp       File that was written
+     * @param target    File to replace
+     *
+     * @throws IOException if the file cannot be moved
+     */
+    public static void move(File tmp, File target) throws IOException {
+        try {
+            Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException e) {
+            discard(tmp);
+            throw e;
+        }
+    }
+
+    /**
+     * Remove a temporary file that was not written completely.
+     *
+     * @param tmp   File to remove
+     */
+    public static void discard(File tmp) {
+        try {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        catch (IOException e) {
+            System.err.println("failed to remove " + tmp.getName() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Remove the temporary files left in a directory by a run that did not finish.
+     *
+     * @param dir   File directory to clean
+     *
+     * @return int number of files removed
+     */
+    static int deleteTemporaryFiles(File dir) {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File d, String name) {
+                return name.endsWith(TEMP_SUFFIX);
+            }
+        });
+        int deleted = 0;
+        if (files != null) {
+            for (File f : files) {
+                if (f.delete()) {
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+}
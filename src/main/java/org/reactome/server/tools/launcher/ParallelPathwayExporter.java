@@ -0,0 +1,149 @@
+package org.reactome.server.tools.launcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports pathways on a fixed pool of worker threads.
+ *
+ * Only the dbId of each pathway is handed to a worker; the worker fetches the
+ * pathway itself so that everything it loads comes through its own graph session.
+ * A worker drops its session when it moves on to the pathways of the next species
+ * and when the pool shuts down, so the objects it loaded do not outlive the species.
+ * The number of pathways waiting for a worker is bounded so that submitting a whole
+ * species does not hold every pathway in memory at once. A failure exporting one
+ * pathway is reported and does not stop the others.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class ParallelPathwayExporter {
+
+    private final ExecutorService executor;
+    private final List<Thread> workers = new ArrayList<Thread>();
+    private final Semaphore slots;
+
+    private final AtomicInteger submitted = new AtomicInteger(0);
+    private final AtomicInteger exported = new AtomicInteger(0);
+    private final AtomicInteger failed = new AtomicInteger(0);
+
+    // the species whose pathways are being submitted and the one each worker last exported
+    private final AtomicInteger species = new AtomicInteger(0);
+    private final ThreadLocal<Integer> workerSpecies = new ThreadLocal<Integer>();
+
+    /**
+     * Construct a pool with the given number of workers
+     *
+     * @param numThreads  int number of worker threads
+     */
+    ParallelPathwayExporter(int numThreads) {
+        this.executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread worker = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            r.run();
+                        }
+                        finally {
+                            ExporterLauncher.releaseSession();
+                        }
+                    }
+                });
+                synchronized (workers) {
+                    workers.add(worker);
+                    worker.setName("export-worker-" + workers.size());
+                }
+                return worker;
+            }
+        });
+        // allow a small queue per worker so workers never wait for the submitting thread
+        this.slots = new Semaphore(numThreads * 2);
+    }
+
+    /**
+     * Mark the start of the pathways of another species. Each worker drops the
+     * objects it loaded for the species before when it takes the first pathway
+     * submitted after this.
+     */
+    void nextSpecies() {
+        species.incrementAndGet();
+    }
+
+    /**
+     * Queue the pathway for export. This blocks while all workers are busy
+     * and the queue is full.
+     *
+     * @param dbId  Long dbId of the ReactomeDB Pathway to output
+     */
+    void submit(final Long dbId) {
+        try {
+            slots.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        submitted.incrementAndGet();
+        final int ofSpecies = species.get();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Integer last = workerSpecies.get();
+                    if (last != null && last.intValue() != ofSpecies) {
+                        ExporterLauncher.releaseSession();
+                    }
+                    workerSpecies.set(ofSpecies);
+                    if (ExporterLauncher.exportPathway(dbId)) {
+                        exported.incrementAndGet();
+                    }
+                    else {
+                        failed.incrementAndGet();
+                    }
+                }
+                catch (Exception e) {
+                    failed.incrementAndGet();
+                    System.err.println("Failed to export pathway " + dbId + ": " + e);
+                }
+                finally {
+                    slots.release();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait for all queued pathways to be exported and stop the workers.
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                System.out.println("Exported " + exported.get() + " of " + submitted.get() + " pathways");
+            }
+            // the pool terminates before each worker has released its session
+            synchronized (workers) {
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Exported " + exported.get() + " of " + submitted.get() + " pathways (" +
+                failed.get() + " failed)");
+    }
+
+    int getNumFailed() {
+        return failed.get();
+    }
+}
@@ -0,0 +1,198 @@
+package org.reactome.server.tools.launcher;
+
+import org.reactome.server.graph.domain.model.*;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Computes a fingerprint of the content of a Pathway as it affects an export.
+ *
+ * The fingerprint covers the dbId of every Event in the pathway and its
+ * sub-pathways, the dates of their created, modified, authored and revised
+ * InstanceEdits, the output format and the exporter version. It also covers
+ * everything else written to the file that a curator can change without editing
+ * the event: the participants of each reaction with the components, members,
+ * candidates and repeated units below them, their reference entities, the
+ * summations, literature references and compartments. Each of these adds its
+ * dbId and the date it was last modified. If none of this has changed since
+ * the last run the previous output file can be reused.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class PathwayFingerprint {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final MessageDigest digest;
+    private final Set<Long> visited = new HashSet<Long>();
+    private final Set<Long> visitedEntities = new HashSet<Long>();
+
+    private PathwayFingerprint() {
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Compute the fingerprint of the pathway.
+     *
+     * @param pathway   Pathway from ReactomeDB
+     * @param format    String name of the output format
+     *
+     * @return String hex encoded fingerprint
+     */
+    static String compute(Pathway pathway, String format) {
+        PathwayFingerprint fp = new PathwayFingerprint();
+        fp.update("exporter:" + ExportManifest.EXPORTER_VERSION);
+        fp.update("format:" + format);
+        fp.addEvent(pathway);
+        return fp.toHex();
+    }
+
+    private void addEvent(Event event) {
+        if (!visited.add(event.getDbId())) {
+            // the same event can appear more than once in the hierarchy
+            update("repeat:" + event.getDbId());
+            return;
+        }
+        update("event:" + event.getDbId());
+        addEdit("created", event.getCreated());
+        addEdit("modified", event.getModified());
+        addEdits("authored", event.getAuthored());
+        addEdits("revised", event.getRevised());
+        addObjects("summation", event.getSummation());
+        addObjects("literature", event.getLiteratureReference());
+        addObjects("compartment", event.getCompartment());
+        if (event instanceof ReactionLikeEvent) {
+            addParticipants((ReactionLikeEvent) event);
+        }
+        else if (event instanceof Pathway) {
+            List<Event> children = ((Pathway) event).getHasEvent();
+            if (children != null) {
+                for (Event child : children) {
+                    addEvent(child);
+                }
+            }
+            update("end:" + event.getDbId());
+        }
+    }
+
+    private void addParticipants(ReactionLikeEvent rle) {
+        addEntities("input", rle.getInput());
+        addEntities("output", rle.getOutput());
+        if (rle.getCatalystActivity() != null) {
+            for (CatalystActivity ca : rle.getCatalystActivity()) {
+                addObject("catalyst", ca);
+                addEntity("catalyst", ca.getPhysicalEntity());
+            }
+        }
+        addRegulations("positive", rle.getPositivelyRegulatedBy());
+        addRegulations("negative", rle.getNegativelyRegulatedBy());
+    }
+
+    private void addRegulations(String type, List<? extends Regulation> regulations) {
+        if (regulations != null) {
+            for (Regulation regulation : regulations) {
+                addObject(type, regulation);
+                addObjects("summation", regulation.getSummation());
+                if (regulation.getRegulator() instanceof PhysicalEntity) {
+                    addEntity("regulator", (PhysicalEntity) regulation.getRegulator());
+                }
+            }
+        }
+    }
+
+    private void addEntities(String role, List<PhysicalEntity> entities) {
+        if (entities != null) {
+            for (PhysicalEntity pe : entities) {
+                addEntity(role, pe);
+            }
+        }
+    }
+
+    private void addEntity(String role, PhysicalEntity pe) {
+        if (pe == null) {
+            return;
+        }
+        addObject(role, pe);
+        if (!visitedEntities.add(pe.getDbId())) {
+            // what is below the entity has already been added
+            return;
+        }
+        addObjects("summation", pe.getSummation());
+        addObjects("literature", pe.getLiteratureReference());
+        addObjects("compartment", pe.getCompartment());
+        if (pe instanceof EntityWithAccessionedSequence) {
+            addObject("reference", ((EntityWithAccessionedSequence) pe).getReferenceEntity());
+        }
+        else if (pe instanceof SimpleEntity) {
+            addObject("reference", ((SimpleEntity) pe).getReferenceEntity());
+        }
+        else if (pe instanceof Complex) {
+            addEntities("component", ((Complex) pe).getHasComponent());
+        }
+        else if (pe instanceof EntitySet) {
+            addEntities("member", ((EntitySet) pe).getHasMember());
+            if (pe instanceof CandidateSet) {
+                addEntities("candidate", ((CandidateSet) pe).getHasCandidate());
+            }
+        }
+        else if (pe instanceof Polymer) {
+            addEntities("unit", ((Polymer) pe).getRepeatedUnit());
+        }
+        update("end:" + pe.getDbId());
+    }
+
+    private void addObjects(String type, List<? extends DatabaseObject> objects) {
+        if (objects != null) {
+            for (DatabaseObject obj : objects) {
+                addObject(type, obj);
+            }
+        }
+    }
+
+    private void addObject(String type, DatabaseObject obj) {
+        if (obj != null) {
+            update(type + ":" + obj.getDbId());
+            addEdit("modified", obj.getModified());
+        }
+    }
+
+    private void addEdits(String type, List<InstanceEdit> edits) {
+        if (edits != null) {
+            for (InstanceEdit edit : edits) {
+                addEdit(type, edit);
+            }
+        }
+    }
+
+    private void addEdit(String type, InstanceEdit edit) {
+        if (edit != null) {
+            update(type + ":" + edit.getDbId() + ":" + edit.getDateTime());
+        }
+    }
+
+    private void update(String value) {
+        digest.update(value.getBytes(UTF8));
+        digest.update((byte) '\n');
+    }
+
+    private String toHex() {
+        byte[] bytes = digest.digest();
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,399 @@
+package org.reactome.server.tools.launcher;
+
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.tools.metrics.ExportMetrics;
+import org.reactome.server.tools.metrics.ExportStage;
+import org.reactome.server.tools.metrics.PathwayMetrics;
+import org.reactome.server.tools.metrics.StageUtilization;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports pathways through a pipeline of four stages, each with its own threads:
+ * fetching the pathway from the data source, building the model, serializing
+ * the model in memory and writing the bytes to disk. This keeps the database,
+ * the CPU and the disk busy at the same time rather than in turn.
+ *
+ * The stages hand pathways on through bounded queues. A stage that gets ahead
+ * blocks until the next has room, so the number of pathways held in memory is
+ * at most the number of threads plus the size of the queues however large the
+ * run. Each stage records how its threads spend their time so that the stage
+ * limiting throughput can be seen; see StageUtilization.
+ *
+ * The pathway is loaded through the graph session of a fetch thread and the
+ * relationships that were not loaded with it are loaded lazily through the
+ * session of a build thread, so one pathway holds objects of two sessions.
+ * This is safe because both threads drop their session as soon as they have
+ * finished with a pathway: no object is reachable from two pathways, and the
+ * queues hand each pathway to one thread at a time. Nothing is written back
+ * through either session and the exporters key what they have written on
+ * dbIds, so a second copy of an object from another session does no harm.
+ * The price is that objects are loaded again for each pathway; --prefetch
+ * loads each pathway in a few queries and leaves the build threads little to load.
+ *
+ * A failure exporting one pathway is reported and does not stop the others.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class PathwayPipeline {
+
+    static final String[] STAGE_NAMES = {"fetch", "build", "serialize", "write"};
+
+    /**
+     * A pathway as it passes through the stages
+     */
+    private static class Item {
+        private final Long dbId;
+        private PathwayMetrics metrics;
+        private Pathway pathway;
+        private String fingerprint;
+        private ExportModel model;
+        private byte[] bytes;
+
+        private Item(Long dbId) {
+            this.dbId = dbId;
+        }
+    }
+
+    // put on a queue once for each thread of the stage to stop it
+    private static final Item END = new Item(null);
+
+    /**
+     * The work done by a stage
+     */
+    private interface Step {
+
+        /**
+         * @param item  Item to work on
+         *
+         * @return true if the item goes on to the next stage, false if it is finished
+         *
+         * @throws Exception if the pathway cannot be exported
+         */
+        boolean process(Item item) throws Exception;
+    }
+
+    private final List<Stage> stages = new ArrayList<Stage>();
+
+    private final AtomicInteger submitted = new AtomicInteger(0);
+    private final AtomicInteger exported = new AtomicInteger(0);
+    private final AtomicInteger failed = new AtomicInteger(0);
+
+    /**
+     * Construct the pipeline and start its threads.
+     *
+     * @param threads   int[] number of threads for each of the STAGE_NAMES
+     * @param queueSize int number of pathways that may wait for each stage
+     * @param metrics   ExportMetrics to report the utilization of the stages to or null
+     */
+    PathwayPipeline(int[] threads, int queueSize, ExportMetrics metrics) {
+        if (threads.length != STAGE_NAMES.length) {
+            throw new IllegalArgumentException("Expected the number of threads for each of " + STAGE_NAMES.length + " stages");
+        }
+        Step[] steps = {new FetchStep(), new BuildStep(), new SerializeStep(), new WriteStep()};
+        for (int i = 0; i < steps.length; i++) {
+            stages.add(new Stage(STAGE_NAMES[i], Math.max(1, threads[i]), Math.max(1, queueSize), steps[i]));
+        }
+        for (int i = 0; i < stages.size() - 1; i++) {
+            stages.get(i).next = stages.get(i + 1);
+        }
+        for (Stage stage : stages) {
+            if (metrics != null) {
+                metrics.addPipelineStage(stage.utilization);
+            }
+            stage.start();
+        }
+    }
+
+    /**
+     * Parse the number of threads for each stage.
+     *
+     * @param value String of comma separated numbers, one for each of the STAGE_NAMES
+     *
+     * @return int[] number of threads or null if the value is not valid
+     */
+    static int[] parseThreads(String value) {
+        String[] fields = value.split(",");
+        if (fields.length != STAGE_NAMES.length) {
+            return null;
+        }
+        int[] threads = new int[fields.length];
+        try {
+            for (int i = 0; i < fields.length; i++) {
+                threads[i] = Integer.parseInt(fields[i].trim());
+                if (threads[i] < 1) {
+                    return null;
+                }
+            }
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+        return threads;
+    }
+
+    /**
+     * Queue the pathway for export. This blocks while the first stage is full.
+     *
+     * @param dbId  Long dbId of the ReactomeDB Pathway to output
+     */
+    void submit(Long dbId) {
+        try {
+            stages.get(0).queue.put(new Item(dbId));
+            submitted.incrementAndGet();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Wait for all queued pathways to be exported and stop the threads.
+     */
+    void shutdown() {
+        Stage first = stages.get(0);
+        try {
+            for (int i = 0; i < first.threads.length; i++) {
+                first.queue.put(END);
+            }
+            for (Stage stage : stages) {
+                for (Thread t : stage.threads) {
+                    while (t.isAlive()) {
+                        t.join(TimeUnit.MINUTES.toMillis(1));
+                        if (t.isAlive()) {
+                            printStatus();
+                        }
+                    }
+                }
+            }
+        }
+        catch (InterruptedException e) {
+            for (Stage stage : stages) {
+                for (Thread t : stage.threads) {
+                    t.interrupt();
+                }
+            }
+            Thread.currentThread().interrupt();
+        }
+        System.out.println("Exported " + exported.get() + " of " + submitted.get() + " pathways (" +
+                failed.get() + " failed)");
+        for (Stage stage : stages) {
+            System.out.println("  " + stage.utilization);
+        }
+    }
+
+    int getNumFailed() {
+        return failed.get();
+    }
+
+    int getNumExported() {
+        return exported.get();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private void printStatus() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Exported ").append(exported.get()).append(" of ").append(submitted.get()).append(" pathways; ");
+        String sep = "";
+        for (Stage stage : stages) {
+            sb.append(sep).append(stage.name).append(' ').append(String.format("%.0f%%", stage.utilization.getUtilization() * 100))
+                    .append(" busy, ").append(stage.queue.size()).append(" waiting");
+            sep = "; ";
+        }
+        System.out.println(sb.toString());
+    }
+
+    private void fail(Item item, Exception e) {
+        failed.incrementAndGet();
+        System.err.println("Failed to export pathway " + item.dbId + ": " + e);
+        ExporterLauncher.finishMetrics(item.metrics, false);
+    }
+
+    /**
+     * A stage of the pipeline: the queue of items waiting for it and the threads
+     * that take them from the queue, process them and put them on the queue of
+     * the next stage.
+     */
+    private class Stage {
+        private final String name;
+        private final BlockingQueue<Item> queue;
+        private final Thread[] threads;
+        private final Step step;
+        private final StageUtilization utilization;
+        private final AtomicInteger running;
+        private Stage next = null;
+
+        private Stage(String name, int numThreads, int queueSize, Step step) {
+            this.name = name;
+            this.queue = new ArrayBlockingQueue<Item>(queueSize);
+            this.threads = new Thread[numThreads];
+            this.step = step;
+            this.utilization = new StageUtilization(name, numThreads);
+            this.running = new AtomicInteger(numThreads);
+            for (int i = 0; i < numThreads; i++) {
+                threads[i] = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        work();
+                    }
+                }, "pipeline-" + name + "-" + i);
+            }
+        }
+
+        private void start() {
+            for (Thread t : threads) {
+                t.start();
+            }
+        }
+
+        private void work() {
+            try {
+                while (true) {
+                    long start = System.nanoTime();
+                    Item item = queue.take();
+                    long taken = System.nanoTime();
+                    utilization.addStarved(taken - start);
+                    if (item == END) {
+                        break;
+                    }
+                    boolean passOn = false;
+                    try {
+                        passOn = step.process(item);
+                    }
+                    catch (Exception e) {
+                        fail(item, e);
+                    }
+                    long processed = System.nanoTime();
+                    utilization.addBusy(processed - taken);
+                    if (passOn && next != null) {
+                        next.queue.put(item);
+                        utilization.addBlocked(System.nanoTime() - processed);
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                // the last thread of the stage to finish stops the next stage
+                if (running.decrementAndGet() == 0) {
+                    utilization.stop();
+                    if (next != null) {
+                        for (int i = 0; i < next.threads.length; i++) {
+                            try {
+                                next.queue.put(END);
+                            }
+                            catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // The work done by each stage
+
+    private class FetchStep implements Step {
+        @Override
+        public boolean process(Item item) {
+            try {
+                return fetch(item);
+            }
+            finally {
+                ExporterLauncher.releaseSession();
+            }
+        }
+
+        private boolean fetch(Item item) {
+            // a pathway finished by an earlier run or reused from the previous one
+            // is counted as exported, as it is by the ParallelPathwayExporter
+            if (ExporterLauncher.isFinished(item.dbId)) {
+                exported.incrementAndGet();
+                return false;
+            }
+            item.metrics = ExporterLauncher.startMetrics(item.dbId);
+            item.pathway = ExporterLauncher.fetchPathway(item.dbId, item.metrics);
+            if (item.pathway == null) {
+                failed.incrementAndGet();
+                return false;
+            }
+            item.fingerprint = ExporterLauncher.getFingerprint(item.pathway);
+            if (ExporterLauncher.reuseOutput(item.pathway, item.fingerprint)) {
+                exported.incrementAndGet();
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private class BuildStep implements Step {
+        @Override
+        public boolean process(Item item) {
+            try {
+                item.model = ExporterLauncher.buildModel(item.pathway, item.metrics);
+            }
+            finally {
+                ExporterLauncher.releaseSession();
+            }
+            return true;
+        }
+    }
+
+    private class SerializeStep implements Step {
+        @Override
+        public boolean process(Item item) throws Exception {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(1 << 16);
+            item.model.write(out);
+            item.model = null;
+            item.bytes = out.toByteArray();
+            return true;
+        }
+    }
+
+    private class WriteStep implements Step {
+        @Override
+        public boolean process(Item item) throws Exception {
+            long start = System.nanoTime();
+            File target = ExporterLauncher.getOutputFile(item.pathway);
+            File tmp = OutputFiles.temporaryFile(target);
+            try {
+                Files.write(tmp.toPath(), item.bytes);
+            }
+            catch (IOException e) {
+                OutputFiles.commit(tmp, target, false);
+                throw e;
+            }
+            item.bytes = null;
+            boolean written = OutputFiles.commit(tmp, target, true);
+            if (item.metrics != null) {
+                item.metrics.addTime(ExportStage.WRITE, System.nanoTime() - start);
+            }
+            ExporterLauncher.recordOutput(item.pathway, item.fingerprint, written, item.metrics);
+            ExporterLauncher.finishMetrics(item.metrics, written);
+            if (written) {
+                exported.incrementAndGet();
+            }
+            else {
+                failed.incrementAndGet();
+            }
+            return false;
+        }
+    }
+}
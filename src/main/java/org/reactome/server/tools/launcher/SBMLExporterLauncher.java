@@ -9,10 +9,18 @@ import org.reactome.server.graph.service.SchemaService;
 import org.reactome.server.graph.service.SpeciesService;
 import org.reactome.server.graph.utils.ReactomeGraphCore;
 
+import org.reactome.server.tools.datasource.PathwayContainmentIndex;
+import org.reactome.server.tools.exporters.sbmlexport.ElementRegistry;
+import org.reactome.server.tools.exporters.sbmlexport.ExportCaches;
+import org.reactome.server.tools.exporters.sbmlexport.StreamingSBMLWriter;
 import org.reactome.server.tools.exporters.sbmlexport.WriteSBML;
 import org.reactome.server.tools.launcher.*;
+import org.reactome.server.tools.metrics.ExportCounter;
+import org.reactome.server.tools.metrics.PathwayMetrics;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -23,13 +31,34 @@ import java.util.List;
  */
 public class SBMLExporterLauncher{
 
-    private static int dbVersion;
+    private final int dbVersion;
 
-    private static String outputdir;
+    private final String outputdir;
+
+    private final boolean streaming;
+
+    private final boolean hierarchical;
+
+    private final ExportCaches caches;
 
     SBMLExporterLauncher(int db, String output){
+        this(db, output, false, false, null);
+    }
+
+    /**
+     * @param db        int version of the database
+     * @param output    String output directory
+     * @param stream    boolean whether pathways are written by the StreamingSBMLWriter
+     * @param hierarchy boolean whether child pathways are written as comp submodels;
+     *                  the StreamingSBMLWriter is not used if they are
+     * @param caches    ExportCaches shared by the run or null
+     */
+    SBMLExporterLauncher(int db, String output, boolean stream, boolean hierarchy, ExportCaches caches){
         dbVersion = db;
         outputdir = output;
+        hierarchical = hierarchy;
+        streaming = stream && !hierarchy;
+        this.caches = caches;
     }
 
     /**
@@ -37,25 +66,146 @@ public class SBMLExporterLauncher{
      *
      * @param path ReactomeDB Pathway to output
      */
-    public static void outputPath(Pathway path) {
-        String filename = path.getDbId() + ".xml";
+    public void outputPath(Pathway path) {
+        outputPath(path, null);
+    }
+
+    /**
+     * Create the output file and write the SBML file for this path,
+     * which is written under a temporary name and moved into place when complete,
+     * recording the time taken and the number of elements written.
+     *
+     * @param path      ReactomeDB Pathway to output
+     * @param metrics   PathwayMetrics to record into or null
+     *
+     * @return true if the file was written, false otherwise
+     */
+    public boolean outputPath(Pathway path, PathwayMetrics metrics) {
+        String filename = WriteSBML.getModelSource(path.getDbId());
         File out = new File(outputdir, filename);
+        if (streaming) {
+            StreamingSBMLWriter writer = new StreamingSBMLWriter(path, dbVersion);
+            writer.setAnnotationFlag(true);
+            writer.setExportCaches(caches);
+            writer.setMetrics(metrics);
+            File tmp = OutputFiles.temporaryFile(out);
+            boolean written = OutputFiles.commit(tmp, out, writer.toFile(tmp.getPath()));
+            recordCounts(writer.getElementRegistry(), metrics);
+            return written;
+        }
         WriteSBML sbml = new WriteSBML(path, dbVersion);
         sbml.setAnnotationFlag(true);
+        sbml.setHierarchicalFlag(hierarchical);
+        sbml.setExportCaches(caches);
+        sbml.setMetrics(metrics);
         sbml.createModel();
 //        sbml.toStdOut();
-        sbml.toFile(out.getPath());
+        File tmp = OutputFiles.temporaryFile(out);
+        boolean written = OutputFiles.commit(tmp, out, sbml.toFile(tmp.getPath()));
+        recordCounts(sbml.getElementRegistry(), metrics);
+        return written;
+    }
+
+    /**
+     * Build the SBML model of this path without writing it. The streaming writer
+     * builds each element as it writes it so in that case all the work is done
+     * when the model is written.
+     *
+     * @param path      ReactomeDB Pathway to output
+     * @param metrics   PathwayMetrics to record into or null
+     *
+     * @return ExportModel to write
+     */
+    ExportModel buildModel(Pathway path, final PathwayMetrics metrics) {
+        if (streaming) {
+            final StreamingSBMLWriter writer = new StreamingSBMLWriter(path, dbVersion);
+            writer.setAnnotationFlag(true);
+            writer.setExportCaches(caches);
+            writer.setMetrics(metrics);
+            return new ExportModel() {
+                @Override
+                public void write(OutputStream out) throws Exception {
+                    writer.write(out);
+                    recordCounts(writer.getElementRegistry(), metrics);
+                }
+            };
+        }
+        final WriteSBML sbml = new WriteSBML(path, dbVersion);
+        sbml.setAnnotationFlag(true);
+        sbml.setHierarchicalFlag(hierarchical);
+        sbml.setExportCaches(caches);
+        sbml.setMetrics(metrics);
+        sbml.createModel();
+        recordCounts(sbml.getElementRegistry(), metrics);
+        return new ExportModel() {
+            @Override
+            public void write(OutputStream out) throws Exception {
+                sbml.toOutputStream(out);
+            }
+        };
     }
 
-    public static void outputEvents(List<Event> loe){
-        WriteSBML sbml = new WriteSBML(loe, dbVersion);
+    /**
+     * Write the SBML file for a list of events. The pathway they belong to
+     * is found from the pathway index in the output directory if there is one.
+     *
+     * @param loe   List of ReactomeDB Events to output
+     */
+    public void outputEvents(List<Event> loe){
+        WriteSBML sbml = new WriteSBML(loe, dbVersion, readContainmentIndex());
         sbml.setAnnotationFlag(true);
+        sbml.setExportCaches(caches);
         sbml.createModel();
 //        sbml.toStdOut();
+        if (sbml.getParentPathway() == null) {
+            Pathway nearest = sbml.getNearestCommonAncestor();
+            if (nearest != null) {
+                System.out.println("The events have no single parent pathway; the nearest pathway containing them all is " +
+                        nearest.getDbId() + " " + nearest.getDisplayName());
+            }
+        }
         String filename = sbml.getModelId() + ".xml";
         File out = new File(outputdir, filename);
-        sbml.toFile(out.getPath());
+        File tmp = OutputFiles.temporaryFile(out);
+        OutputFiles.commit(tmp, out, sbml.toFile(tmp.getPath()));
+
+    }
 
+    /**
+     * Read the pathway index written next to the output by an earlier run.
+     *
+     * @return PathwayContainmentIndex or null if there is none for this version of the data
+     */
+    private PathwayContainmentIndex readContainmentIndex() {
+        File file = new File(outputdir, PathwayContainmentIndex.FILENAME);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            PathwayContainmentIndex index = PathwayContainmentIndex.read(file);
+            return (index.getDbVersion() == dbVersion) ? index : null;
+        }
+        catch (IOException e) {
+            System.err.println("Could not read the pathway index: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Record the number of elements written and duplicates skipped.
+     *
+     * @param registry  ElementRegistry of the document written
+     * @param metrics   PathwayMetrics to record into or null
+     */
+    private static void recordCounts(ElementRegistry registry, PathwayMetrics metrics) {
+        if (metrics == null || registry == null) {
+            return;
+        }
+        metrics.setCount(ExportCounter.SPECIES, registry.getMisses(ElementRegistry.Kind.SPECIES));
+        metrics.setCount(ExportCounter.REACTIONS, registry.getMisses(ElementRegistry.Kind.REACTION));
+        metrics.setCount(ExportCounter.SPECIES_REFERENCES, registry.getMisses(ElementRegistry.Kind.SPECIES_REFERENCE));
+        metrics.setCount(ExportCounter.COMPARTMENTS, registry.getMisses(ElementRegistry.Kind.COMPARTMENT));
+        metrics.setCount(ExportCounter.DEDUPE_HITS, registry.getTotalHits());
     }
 }
 
@@ -0,0 +1,71 @@
+package org.reactome.server.tools.launcher;
+
+import com.martiansoftware.jsap.*;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.reactome.server.tools.config.GraphQANeo4jConfig;
+import org.reactome.server.tools.datasource.ExportDataSource;
+import org.reactome.server.tools.datasource.GraphCoreDataSource;
+import org.reactome.server.tools.datasource.SnapshotWriter;
+import org.reactome.server.tools.datasource.SyntheticDataSource;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a snapshot of everything the exporters need from the graph database so
+ * that ExporterLauncher --snapshot can export without a database. A snapshot of
+ * generated pathways can be written with --synthetic to give a fixed input for
+ * benchmarks.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SnapshotLauncher {
+
+    public static void main(String[] args) throws JSAPException {
+
+        SimpleJSAP jsap = new SimpleJSAP(SnapshotLauncher.class.getName(), "A tool for writing a snapshot of the Reactome data used by the exporters",
+                new Parameter[]{
+                        new FlaggedOption("host", JSAP.STRING_PARSER, "localhost", JSAP.REQUIRED, 'h', "host", "The neo4j host"),
+                        new FlaggedOption("port", JSAP.STRING_PARSER, "7474", JSAP.NOT_REQUIRED, 'b', "port", "The neo4j port (defaults to 7687 for the bolt driver)"),
+                        new FlaggedOption("user", JSAP.STRING_PARSER, "neo4j", JSAP.REQUIRED, 'u', "user", "The neo4j user"),
+                        new FlaggedOption("password", JSAP.STRING_PARSER, "reactome", JSAP.REQUIRED, 'p', "password", "The neo4j password"),
+                        new FlaggedOption("driver", JSAP.STRING_PARSER, GraphQANeo4jConfig.HTTP, JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "driver", "The neo4j driver: http or bolt"),
+                        new FlaggedOption("output", JSAP.STRING_PARSER, null, JSAP.REQUIRED, 'o', "output", "The snapshot file to write"),
+                        new FlaggedOption("synthetic", JSAP.INTEGER_PARSER, "0", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "synthetic", "Write generated pathways with this number of reactions instead of reading the database"),
+                        new FlaggedOption("seed", JSAP.LONG_PARSER, "1", JSAP.NOT_REQUIRED, JSAP.NO_SHORTFLAG, "seed", "The seed used to generate synthetic pathways"),
+                }
+        );
+
+        JSAPResult config = jsap.parse(args);
+        if (jsap.messagePrinted()) System.exit(1);
+
+        ExportDataSource dataSource;
+        if (config.getInt("synthetic") > 0) {
+            dataSource = new SyntheticDataSource(config.getLong("seed"), config.getInt("synthetic"));
+        }
+        else {
+            String driver = config.getString("driver");
+            if (!driver.equals(GraphQANeo4jConfig.HTTP) && !driver.equals(GraphQANeo4jConfig.BOLT)) {
+                System.err.println(driver + " is not a supported neo4j driver. Expected http or bolt.");
+                System.exit(1);
+            }
+            System.setProperty(GraphQANeo4jConfig.DRIVER_PROPERTY, driver);
+            String port = config.getString("port");
+            if (driver.equals(GraphQANeo4jConfig.BOLT) && !config.userSpecified("port")) {
+                port = GraphQANeo4jConfig.DEFAULT_BOLT_PORT;
+            }
+            //Initialising ReactomeCore Neo4j configuration
+            ReactomeGraphCore.initialise(config.getString("host"), port, config.getString("user"), config.getString("password"), GraphQANeo4jConfig.class);
+            // every pathway is read in full so load each subgraph in a few queries
+            dataSource = new GraphCoreDataSource(true);
+        }
+
+        try {
+            new SnapshotWriter(new File(config.getString("output"))).write(dataSource);
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write the snapshot: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
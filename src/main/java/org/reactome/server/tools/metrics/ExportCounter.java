@@ -0,0 +1,31 @@
+package org.reactome.server.tools.metrics;
+
+/**
+ * The quantities counted for each exported pathway.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public enum ExportCounter {
+
+    SPECIES("species"),
+    REACTIONS("reactions"),
+    SPECIES_REFERENCES("species_references"),
+    COMPARTMENTS("compartments"),
+    DEDUPE_HITS("dedupe_hits"),
+    OUTPUT_BYTES("output_bytes");
+
+    private final String label;
+
+    ExportCounter(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Get the name used for the counter in the reports.
+     *
+     * @return String label
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,165 @@
+package org.reactome.server.tools.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the metrics of every pathway exported in a run and keeps the run totals.
+ *
+ * Pathways may be exported on several threads; each records into its own
+ * PathwayMetrics and hands it back here when it is finished.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class ExportMetrics {
+
+    private final String format;
+    private final long startMillis;
+    private final long startNanos;
+
+    private int dbVersion = 0;
+
+    private final long[] totalNanos = new long[ExportStage.values().length];
+    private final long[] totalCounts = new long[ExportCounter.values().length];
+    private final List<PathwayMetrics> pathways = new ArrayList<PathwayMetrics>();
+    private final List<StageUtilization> pipelineStages = new ArrayList<StageUtilization>();
+    private long exported = 0;
+    private long failed = 0;
+    private long reused = 0;
+
+    /**
+     * @param format    String name of the output format of the run
+     */
+    public ExportMetrics(String format) {
+        this.format = format;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Start recording the export of a pathway.
+     *
+     * @param dbId  Long dbId of the pathway
+     *
+     * @return PathwayMetrics to record into
+     */
+    public PathwayMetrics startPathway(Long dbId) {
+        return new PathwayMetrics(dbId, format);
+    }
+
+    /**
+     * Add the metrics of a finished pathway to the run.
+     *
+     * @param pathway       PathwayMetrics recorded
+     * @param succeeded     boolean whether the pathway was written
+     */
+    public synchronized void finishPathway(PathwayMetrics pathway, boolean succeeded) {
+        pathway.setFailed(!succeeded);
+        for (ExportStage stage : ExportStage.values()) {
+            totalNanos[stage.ordinal()] += pathway.getNanos(stage);
+        }
+        for (ExportCounter counter : ExportCounter.values()) {
+            totalCounts[counter.ordinal()] += pathway.getCount(counter);
+        }
+        if (succeeded) {
+            exported++;
+        }
+        else {
+            failed++;
+        }
+        pathways.add(pathway);
+    }
+
+    /**
+     * Record a pathway whose file was copied from a previous run rather than exported.
+     */
+    public synchronized void pathwayReused() {
+        reused++;
+    }
+
+    /**
+     * Add a stage of the pipeline exporting the pathways so that its utilization
+     * is included in the reports.
+     *
+     * @param stage     StageUtilization recorded by the stage
+     */
+    public synchronized void addPipelineStage(StageUtilization stage) {
+        pipelineStages.add(stage);
+    }
+
+    public synchronized void setDbVersion(int dbVersion) {
+        this.dbVersion = dbVersion;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public synchronized int getDbVersion() {
+        return dbVersion;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Get the time since the run started.
+     *
+     * @return long nanoseconds
+     */
+    public long getElapsedNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    public synchronized long getTotalNanos(ExportStage stage) {
+        return totalNanos[stage.ordinal()];
+    }
+
+    public synchronized long getTotalCount(ExportCounter counter) {
+        return totalCounts[counter.ordinal()];
+    }
+
+    public synchronized long getNumExported() {
+        return exported;
+    }
+
+    public synchronized long getNumFailed() {
+        return failed;
+    }
+
+    public synchronized long getNumReused() {
+        return reused;
+    }
+
+    /**
+     * Get the metrics of the pathways finished so far.
+     *
+     * @return List of PathwayMetrics in the order they finished
+     */
+    public synchronized List<PathwayMetrics> getPathways() {
+        return new ArrayList<PathwayMetrics>(pathways);
+    }
+
+    /**
+     * Get the stages of the pipeline, if the pathways were exported by one.
+     *
+     * @return List of StageUtilization in pipeline order
+     */
+    public synchronized List<StageUtilization> getPipelineStages() {
+        return new ArrayList<StageUtilization>(pipelineStages);
+    }
+
+    @Override
+    public synchronized String toString() {
+        double seconds = getElapsedNanos() / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Exported ").append(exported).append(" pathways (").append(failed).append(" failed, ")
+                .append(reused).append(" reused) in ").append(String.format("%.1f", seconds)).append("s");
+        for (ExportStage stage : ExportStage.values()) {
+            sb.append(", ").append(stage.getLabel()).append(": ")
+                    .append(String.format("%.1f", totalNanos[stage.ordinal()] / 1e9)).append("s");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,39 @@
+package org.reactome.server.tools.metrics;
+
+/**
+ * The stages of exporting a pathway that are timed.
+ *
+ * The builder stages (annotations, notes and history) are timed wherever the
+ * builders are used; MODEL is the time spent building the model excluding them.
+ * A writer that builds and writes each element in turn (the StreamingSBMLWriter)
+ * records all its time apart from the builders as SERIALIZATION.
+ * WRITE is only used by the PathwayPipeline, which serializes each pathway in
+ * memory and writes the bytes to disk as a separate stage.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public enum ExportStage {
+
+    FETCH("fetch"),
+    MODEL("model_build"),
+    ANNOTATIONS("annotations"),
+    NOTES("notes"),
+    HISTORY("history"),
+    SERIALIZATION("serialization"),
+    WRITE("write");
+
+    private final String label;
+
+    ExportStage(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Get the name used for the stage in the reports.
+     *
+     * @return String label
+     */
+    public String getLabel() {
+        return label;
+    }
+}
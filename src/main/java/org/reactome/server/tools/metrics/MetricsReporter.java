@@ -0,0 +1,340 @@
+package org.reactome.server.tools.metrics;
+
+import org.reactome.server.tools.launcher.OutputFiles;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes the metrics of a run as a JSON report and as a file for the Prometheus
+ * node exporter textfile collector. The files are written periodically while the
+ * run is in progress and once more when it has finished.
+ *
+ * The JSON report lists every pathway finished so far, slowest first. The
+ * Prometheus file holds the run totals and only the slowest pathways so that
+ * the number of series does not grow with the size of the run. When the pathways
+ * are exported by a pipeline both also give the utilization of each stage.
+ *
+ * Each file is written to a temporary file and moved into place so that a
+ * reader never sees a partly written file.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class MetricsReporter {
+
+    public static final String JSON_FILENAME = "export-report.json";
+    public static final String PROMETHEUS_FILENAME = "export-metrics.prom";
+
+    // the number of pathways given their own series in the Prometheus file
+    static final int NUM_SLOWEST = 10;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final String PREFIX = "reactome_export_";
+
+    private final ExportMetrics metrics;
+    private final File dir;
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param metrics   ExportMetrics of the run
+     * @param dir       File directory the reports are written to
+     */
+    public MetricsReporter(ExportMetrics metrics, File dir) {
+        this.metrics = metrics;
+        this.dir = dir;
+    }
+
+    /**
+     * Start writing the reports at the given interval.
+     *
+     * @param seconds   int number of seconds between reports; 0 or less
+     *                  means the reports are only written by finish()
+     */
+    public void start(int seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "metrics-reporter");
+                // never keep the exporter running just to write metrics
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                writeReports(false);
+            }
+        }, seconds, seconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop the periodic reports and write the final ones.
+     */
+    public void finish() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+        writeReports(true);
+    }
+
+    /**
+     * Write both reports. Failures are reported and do not stop the run.
+     *
+     * @param finished  boolean whether the run has finished
+     */
+    void writeReports(boolean finished) {
+        try {
+            writeAtomically(JSON_FILENAME, toJson(finished));
+            writeAtomically(PROMETHEUS_FILENAME, toPrometheus(finished));
+        }
+        catch (IOException e) {
+            System.err.println("Failed to write the export metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Create the JSON run report.
+     *
+     * @param finished  boolean whether the run has finished
+     *
+     * @return String JSON document
+     */
+    String toJson(boolean finished) {
+        List<PathwayMetrics> pathways = getSlowestFirst();
+        double elapsed = metrics.getElapsedNanos() / 1e9;
+        DateFormat iso = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.ENGLISH);
+        iso.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"format\": ").append(quote(metrics.getFormat())).append(",\n");
+        sb.append("  \"dbVersion\": ").append(metrics.getDbVersion()).append(",\n");
+        sb.append("  \"started\": ").append(quote(iso.format(new Date(metrics.getStartMillis())))).append(",\n");
+        sb.append("  \"finished\": ").append(finished).append(",\n");
+        sb.append("  \"elapsedSeconds\": ").append(elapsed).append(",\n");
+        sb.append("  \"pathwaysExported\": ").append(metrics.getNumExported()).append(",\n");
+        sb.append("  \"pathwaysFailed\": ").append(metrics.getNumFailed()).append(",\n");
+        sb.append("  \"pathwaysReused\": ").append(metrics.getNumReused()).append(",\n");
+        sb.append("  \"pathwaysPerSecond\": ").append(elapsed > 0 ? metrics.getNumExported() / elapsed : 0.0).append(",\n");
+        sb.append("  \"stageSeconds\": {");
+        String sep = "";
+        for (ExportStage stage : ExportStage.values()) {
+            sb.append(sep).append(quote(stage.getLabel())).append(": ").append(metrics.getTotalNanos(stage) / 1e9);
+            sep = ", ";
+        }
+        sb.append("},\n");
+        sb.append("  \"counts\": {");
+        sep = "";
+        for (ExportCounter counter : ExportCounter.values()) {
+            sb.append(sep).append(quote(counter.getLabel())).append(": ").append(metrics.getTotalCount(counter));
+            sep = ", ";
+        }
+        sb.append("},\n");
+        List<StageUtilization> stages = metrics.getPipelineStages();
+        if (!stages.isEmpty()) {
+            sb.append("  \"pipeline\": [");
+            sep = "\n";
+            for (StageUtilization stage : stages) {
+                sb.append(sep).append("    {\"stage\": ").append(quote(stage.getName()))
+                        .append(", \"threads\": ").append(stage.getThreads())
+                        .append(", \"items\": ").append(stage.getNumItems())
+                        .append(", \"utilization\": ").append(stage.getUtilization())
+                        .append(", \"busySeconds\": ").append(stage.getBusyNanos() / 1e9)
+                        .append(", \"starvedSeconds\": ").append(stage.getStarvedNanos() / 1e9)
+                        .append(", \"blockedSeconds\": ").append(stage.getBlockedNanos() / 1e9)
+                        .append("}");
+                sep = ",\n";
+            }
+            sb.append("\n  ],\n");
+        }
+        sb.append("  \"pathways\": [");
+        sep = "\n";
+        for (PathwayMetrics p : pathways) {
+            sb.append(sep).append("    {\"dbId\": ").append(p.getDbId())
+                    .append(", \"failed\": ").append(p.isFailed())
+                    .append(", \"totalSeconds\": ").append(p.getTotalNanos() / 1e9);
+            for (ExportStage stage : ExportStage.values()) {
+                sb.append(", ").append(quote(stage.getLabel())).append(": ").append(p.getNanos(stage) / 1e9);
+            }
+            for (ExportCounter counter : ExportCounter.values()) {
+                sb.append(", ").append(quote(counter.getLabel())).append(": ").append(p.getCount(counter));
+            }
+            sb.append("}");
+            sep = ",\n";
+        }
+        sb.append(pathways.isEmpty() ? "]\n" : "\n  ]\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Create the Prometheus textfile collector file.
+     *
+     * @param finished  boolean whether the run has finished
+     *
+     * @return String in the Prometheus text exposition format
+     */
+    String toPrometheus(boolean finished) {
+        String format = "format=" + quote(metrics.getFormat());
+        StringBuilder sb = new StringBuilder();
+
+        header(sb, "stage_seconds_total", "counter", "Time spent in each stage of exporting pathways.");
+        for (ExportStage stage : ExportStage.values()) {
+            sb.append(PREFIX).append("stage_seconds_total{").append(format).append(",stage=")
+                    .append(quote(stage.getLabel())).append("} ").append(metrics.getTotalNanos(stage) / 1e9).append('\n');
+        }
+
+        header(sb, "elements_total", "counter", "Number of elements written and duplicate references skipped.");
+        for (ExportCounter counter : ExportCounter.values()) {
+            if (counter != ExportCounter.OUTPUT_BYTES) {
+                sb.append(PREFIX).append("elements_total{").append(format).append(",kind=")
+                        .append(quote(counter.getLabel())).append("} ").append(metrics.getTotalCount(counter)).append('\n');
+            }
+        }
+
+        header(sb, "output_bytes_total", "counter", "Number of bytes written to the exported files.");
+        sb.append(PREFIX).append("output_bytes_total{").append(format).append("} ")
+                .append(metrics.getTotalCount(ExportCounter.OUTPUT_BYTES)).append('\n');
+
+        header(sb, "pathways_total", "counter", "Number of pathways by outcome.");
+        sb.append(PREFIX).append("pathways_total{").append(format).append(",status=\"exported\"} ")
+                .append(metrics.getNumExported()).append('\n');
+        sb.append(PREFIX).append("pathways_total{").append(format).append(",status=\"failed\"} ")
+                .append(metrics.getNumFailed()).append('\n');
+        sb.append(PREFIX).append("pathways_total{").append(format).append(",status=\"reused\"} ")
+                .append(metrics.getNumReused()).append('\n');
+
+        double elapsed = metrics.getElapsedNanos() / 1e9;
+        header(sb, "run_seconds", "gauge", "Time since the run started.");
+        sb.append(PREFIX).append("run_seconds{").append(format).append("} ").append(elapsed).append('\n');
+
+        header(sb, "pathways_per_second", "gauge", "Pathways exported per second over the run.");
+        sb.append(PREFIX).append("pathways_per_second{").append(format).append("} ")
+                .append(elapsed > 0 ? metrics.getNumExported() / elapsed : 0.0).append('\n');
+
+        header(sb, "run_finished", "gauge", "1 once the run has finished, 0 while it is in progress.");
+        sb.append(PREFIX).append("run_finished{").append(format).append("} ").append(finished ? 1 : 0).append('\n');
+
+        header(sb, "db_version", "gauge", "Version of the Reactome database exported.");
+        sb.append(PREFIX).append("db_version{").append(format).append("} ").append(metrics.getDbVersion()).append('\n');
+
+        List<StageUtilization> stages = metrics.getPipelineStages();
+        if (!stages.isEmpty()) {
+            header(sb, "pipeline_stage_seconds_total", "counter",
+                    "Thread time of each pipeline stage spent busy, waiting for input (starved) or waiting for output (blocked).");
+            for (StageUtilization stage : stages) {
+                String labels = format + ",stage=" + quote(stage.getName());
+                sb.append(PREFIX).append("pipeline_stage_seconds_total{").append(labels).append(",state=\"busy\"} ")
+                        .append(stage.getBusyNanos() / 1e9).append('\n');
+                sb.append(PREFIX).append("pipeline_stage_seconds_total{").append(labels).append(",state=\"starved\"} ")
+                        .append(stage.getStarvedNanos() / 1e9).append('\n');
+                sb.append(PREFIX).append("pipeline_stage_seconds_total{").append(labels).append(",state=\"blocked\"} ")
+                        .append(stage.getBlockedNanos() / 1e9).append('\n');
+            }
+            header(sb, "pipeline_stage_utilization", "gauge", "Fraction of the thread time of each pipeline stage spent busy.");
+            for (StageUtilization stage : stages) {
+                sb.append(PREFIX).append("pipeline_stage_utilization{").append(format).append(",stage=")
+                        .append(quote(stage.getName())).append("} ").append(stage.getUtilization()).append('\n');
+            }
+        }
+
+        header(sb, "slowest_pathway_seconds", "gauge", "Total time of the slowest pathways in the run.");
+        List<PathwayMetrics> pathways = getSlowestFirst();
+        for (int i = 0; i < pathways.size() && i < NUM_SLOWEST; i++) {
+            PathwayMetrics p = pathways.get(i);
+            sb.append(PREFIX).append("slowest_pathway_seconds{").append(format).append(",dbId=")
+                    .append(quote(String.valueOf(p.getDbId()))).append("} ").append(p.getTotalNanos() / 1e9).append('\n');
+        }
+        return sb.toString();
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////
+
+    // Private functions
+
+    private List<PathwayMetrics> getSlowestFirst() {
+        List<PathwayMetrics> pathways = metrics.getPathways();
+        Collections.sort(pathways, new Comparator<PathwayMetrics>() {
+            @Override
+            public int compare(PathwayMetrics a, PathwayMetrics b) {
+                return Long.compare(b.getTotalNanos(), a.getTotalNanos());
+            }
+        });
+        return pathways;
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Quote a String for JSON or a Prometheus label value; both escape
+     * backslash, double quote and newline the same way.
+     */
+    private static String quote(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            }
+            else if (c == '\n') {
+                sb.append("\\n");
+            }
+            else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private void writeAtomically(String filename, String contents) throws IOException {
+        File file = new File(dir, filename);
+        File tmp = OutputFiles.temporaryFile(file);
+        boolean written = false;
+        try {
+            BufferedWriter writer = Files.newBufferedWriter(tmp.toPath(), UTF8);
+            try {
+                writer.write(contents);
+            }
+            finally {
+                writer.close();
+            }
+            written = true;
+        }
+        finally {
+            if (!written) {
+                OutputFiles.discard(tmp);
+            }
+        }
+        OutputFiles.move(tmp, file);
+    }
+}
@@ -0,0 +1,97 @@
+package org.reactome.server.tools.metrics;
+
+/**
+ * The timings and counts recorded while exporting one pathway.
+ *
+ * A pathway is exported by a single thread so this class is not synchronized;
+ * it is handed to ExportMetrics once the pathway is finished.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PathwayMetrics {
+
+    private final Long dbId;
+    private final String format;
+
+    private final long[] nanos = new long[ExportStage.values().length];
+    private final long[] counts = new long[ExportCounter.values().length];
+
+    private boolean failed = false;
+
+    /**
+     * @param dbId      Long dbId of the pathway
+     * @param format    String name of the output format
+     */
+    public PathwayMetrics(Long dbId, String format) {
+        this.dbId = dbId;
+        this.format = format;
+    }
+
+    /**
+     * Add time spent in a stage.
+     *
+     * @param stage     ExportStage
+     * @param elapsed   long nanoseconds spent
+     */
+    public void addTime(ExportStage stage, long elapsed) {
+        nanos[stage.ordinal()] += elapsed;
+    }
+
+    /**
+     * Set the value of a counter.
+     *
+     * @param counter   ExportCounter
+     * @param value     long value
+     */
+    public void setCount(ExportCounter counter, long value) {
+        counts[counter.ordinal()] = value;
+    }
+
+    public Long getDbId() {
+        return dbId;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public long getNanos(ExportStage stage) {
+        return nanos[stage.ordinal()];
+    }
+
+    public long getCount(ExportCounter counter) {
+        return counts[counter.ordinal()];
+    }
+
+    /**
+     * Get the time spent in the builders i.e. the annotations, notes and history
+     * stages. A writer subtracts this from its own elapsed time so that no time
+     * is counted twice.
+     *
+     * @return long nanoseconds
+     */
+    public long getBuilderNanos() {
+        return getNanos(ExportStage.ANNOTATIONS) + getNanos(ExportStage.NOTES) + getNanos(ExportStage.HISTORY);
+    }
+
+    /**
+     * Get the time spent in all stages.
+     *
+     * @return long nanoseconds
+     */
+    public long getTotalNanos() {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        return total;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    void setFailed(boolean failed) {
+        this.failed = failed;
+    }
+}
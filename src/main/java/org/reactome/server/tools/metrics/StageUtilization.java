@@ -0,0 +1,106 @@
+package org.reactome.server.tools.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records how the threads of one stage of a pipeline spend their time: working
+ * on an item (busy), waiting for an item from the stage before (starved) or
+ * waiting for room in the queue of the stage after (blocked).
+ *
+ * The stage that limits the throughput of the pipeline is the one whose threads
+ * are busy nearly all the time; the stages before it are blocked and the stages
+ * after it are starved. The threads of the stage record into it concurrently.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class StageUtilization {
+
+    private final String name;
+    private final int threads;
+    private final long startNanos;
+    private volatile long stopNanos = 0;
+
+    private final AtomicLong busy = new AtomicLong(0);
+    private final AtomicLong starved = new AtomicLong(0);
+    private final AtomicLong blocked = new AtomicLong(0);
+    private final AtomicLong items = new AtomicLong(0);
+
+    /**
+     * @param name      String name of the stage
+     * @param threads   int number of threads running the stage
+     */
+    public StageUtilization(String name, int threads) {
+        this.name = name;
+        this.threads = threads;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Record the time taken to process one item.
+     *
+     * @param elapsed   long nanoseconds spent
+     */
+    public void addBusy(long elapsed) {
+        busy.addAndGet(elapsed);
+        items.incrementAndGet();
+    }
+
+    public void addStarved(long elapsed) {
+        starved.addAndGet(elapsed);
+    }
+
+    public void addBlocked(long elapsed) {
+        blocked.addAndGet(elapsed);
+    }
+
+    /**
+     * Record that all the threads of the stage have finished so that the
+     * utilization is no longer diluted by the time since.
+     */
+    public void stop() {
+        if (stopNanos == 0) {
+            stopNanos = System.nanoTime();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public long getBusyNanos() {
+        return busy.get();
+    }
+
+    public long getStarvedNanos() {
+        return starved.get();
+    }
+
+    public long getBlockedNanos() {
+        return blocked.get();
+    }
+
+    public long getNumItems() {
+        return items.get();
+    }
+
+    /**
+     * Get the fraction of the available thread time that was spent working on items.
+     *
+     * @return double between 0 and 1
+     */
+    public double getUtilization() {
+        long end = stopNanos == 0 ? System.nanoTime() : stopNanos;
+        long available = (end - startNanos) * threads;
+        return available > 0 ? Math.min(1.0, (double) busy.get() / available) : 0.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (%d threads): %.0f%% busy, %.1fs starved, %.1fs blocked, %d items", name, threads,
+                getUtilization() * 100, starved.get() / 1e9, blocked.get() / 1e9, items.get());
+    }
+}
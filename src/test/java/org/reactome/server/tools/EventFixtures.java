@@ -0,0 +1,84 @@
+package org.reactome.server.tools;
+
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Reaction;
+import org.reactome.server.graph.domain.model.Species;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds small event hierarchies for the tests that do not need the database.
+ *
+ * Every event is given a species and each event added to a pathway lists that
+ * pathway in its eventOf, as they are when loaded from ReactomeDB.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public final class EventFixtures {
+
+    public static final Long HUMAN = 48887L;
+    public static final Long MOUSE = 48892L;
+
+    private EventFixtures() {
+    }
+
+    public static Species createSpecies(Long dbId, String name) {
+        Species species = new Species();
+        species.setDbId(dbId);
+        species.setDisplayName(name);
+        return species;
+    }
+
+    /**
+     * Create a human Reaction that is not yet in any pathway.
+     *
+     * @param dbId  Long dbId of the reaction
+     *
+     * @return Reaction
+     */
+    public static Reaction createReaction(Long dbId) {
+        Reaction reaction = new Reaction();
+        reaction.setDbId(dbId);
+        reaction.setEventOf(new ArrayList<Event>());
+        reaction.setSpecies(Collections.singletonList(createSpecies(HUMAN, "Homo sapiens")));
+        return reaction;
+    }
+
+    /**
+     * Create a human Pathway containing the given events.
+     *
+     * @param dbId      Long dbId of the pathway
+     * @param events    Events the pathway has
+     *
+     * @return Pathway
+     */
+    public static Pathway createPathway(Long dbId, Event... events) {
+        return createPathway(dbId, createSpecies(HUMAN, "Homo sapiens"), events);
+    }
+
+    /**
+     * Create a Pathway of the given species containing the given events.
+     *
+     * @param dbId      Long dbId of the pathway
+     * @param species   Species of the pathway
+     * @param events    Events the pathway has
+     *
+     * @return Pathway
+     */
+    public static Pathway createPathway(Long dbId, Species species, Event... events) {
+        Pathway pathway = new Pathway();
+        pathway.setDbId(dbId);
+        pathway.setEventOf(new ArrayList<Event>());
+        pathway.setSpecies(Collections.singletonList(species));
+        List<Event> hasEvent = new ArrayList<Event>(Arrays.asList(events));
+        pathway.setHasEvent(hasEvent);
+        for (Event e : hasEvent) {
+            e.getEventOf().add(pathway);
+        }
+        return pathway;
+    }
+}
@@ -0,0 +1,193 @@
+package org.reactome.server.tools.datasource;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.reactome.server.tools.EventFixtures.*;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PathwayContainmentIndexTest {
+
+    private final Reaction r1 = createReaction(1L);
+    private final Reaction r2 = createReaction(2L);
+    private final Reaction r3 = createReaction(3L);
+    private final Reaction r4 = createReaction(4L);
+
+    // top(r1, child(r2, grandchild(r3)), other(r3, r4))
+    private final Pathway grandchild = createPathway(30L, r3);
+    private final Pathway child = createPathway(20L, r2, grandchild);
+    private final Pathway other = createPathway(21L, r3, r4);
+    private final Pathway top = createPathway(10L, r1, child, other);
+
+    @Test
+    public void testContents() {
+        PathwayContainmentIndex index = createIndex();
+        assertEquals(4, index.getNumPathways());
+        assertEquals(8, index.getNumEvents());
+        assertTrue(index.contains(10L, 3L));
+        assertTrue(index.contains(20L, 3L));
+        assertTrue("child pathway not contained", index.contains(10L, 30L));
+        assertFalse(index.contains(20L, 4L));
+        assertFalse(index.contains(30L, 2L));
+        assertFalse(index.contains(99L, 1L));
+        assertFalse(index.isIndexed(99L));
+    }
+
+    @Test
+    public void testParentCandidates() {
+        PathwayContainmentIndex index = createIndex();
+        assertEquals(Arrays.asList(21L, 30L), sorted(index.getParentCandidates(Collections.singletonList(3L))));
+        assertEquals(Collections.singletonList(21L), index.getParentCandidates(Arrays.asList(3L, 4L)));
+        assertEquals(Collections.<Long>emptyList(), index.getParentCandidates(Arrays.asList(1L, 4L)));
+        assertEquals(Collections.singletonList(10L), index.getParentCandidates(Arrays.asList(20L, 21L)));
+        assertNull("unknown event answered", index.getParentCandidates(Arrays.asList(1L, 99L)));
+    }
+
+    @Test
+    public void testCommonAncestors() {
+        PathwayContainmentIndex index = createIndex();
+        assertEquals(Arrays.asList(10L, 20L, 21L, 30L), sorted(index.getCommonAncestors(Collections.singletonList(3L))));
+        assertEquals(Arrays.asList(10L, 20L), sorted(index.getCommonAncestors(Arrays.asList(2L, 3L))));
+        assertEquals(Collections.singletonList(10L), index.getCommonAncestors(Arrays.asList(1L, 4L)));
+        assertEquals(Collections.<Long>emptyList(), index.getCommonAncestors(Collections.singletonList(10L)));
+        assertNull("unknown event answered", index.getCommonAncestors(Arrays.asList(1L, 99L)));
+    }
+
+    @Test
+    public void testLowestCommonAncestors() {
+        PathwayContainmentIndex index = createIndex();
+        // r3 is in both grandchild and other; grandchild has fewer events below it
+        assertEquals(Arrays.asList(30L, 21L), index.getLowestCommonAncestors(Collections.singletonList(3L)));
+        assertEquals(Collections.singletonList(20L), index.getLowestCommonAncestors(Arrays.asList(2L, 3L)));
+        assertEquals(Collections.singletonList(10L), index.getLowestCommonAncestors(Arrays.asList(2L, 4L)));
+        assertEquals(Collections.<Long>emptyList(), index.getLowestCommonAncestors(Arrays.asList(10L, 1L)));
+        assertNull(index.getLowestCommonAncestors(Collections.singletonList(99L)));
+
+        // a pathway added above child and other is a second lowest ancestor
+        index.add(createPathway(50L, child, other));
+        assertEquals(Arrays.asList(50L, 10L), index.getLowestCommonAncestors(Arrays.asList(2L, 4L)));
+        assertEquals(Arrays.asList(30L, 21L), index.getLowestCommonAncestors(Collections.singletonList(3L)));
+    }
+
+    @Test
+    public void testLongEventList() {
+        // big(sub0(...), ..., sub49(...)) with 400 reactions in each subpathway
+        List<Event> subpathways = new ArrayList<Event>();
+        List<Long> all = new ArrayList<Long>();
+        List<Long> last = new ArrayList<Long>();
+        long dbId = 1000L;
+        for (int i = 0; i < 50; i++) {
+            List<Event> reactions = new ArrayList<Event>();
+            last = new ArrayList<Long>();
+            for (int j = 0; j < 400; j++) {
+                reactions.add(createReaction(dbId));
+                all.add(dbId);
+                last.add(dbId);
+                dbId++;
+            }
+            subpathways.add(createPathway(100L + i, reactions.toArray(new Event[reactions.size()])));
+        }
+        PathwayContainmentIndex index = createIndex();
+        index.add(createPathway(99L, subpathways.toArray(new Event[subpathways.size()])));
+        assertEquals(20000, all.size());
+
+        assertEquals(Collections.singletonList(99L), index.getLowestCommonAncestors(all));
+        assertEquals(Collections.<Long>emptyList(), index.getParentCandidates(all));
+        assertEquals(Collections.singletonList(149L), index.getLowestCommonAncestors(last));
+        assertEquals(Arrays.asList(99L, 149L), sorted(index.getCommonAncestors(last)));
+        all.add(1L);
+        assertEquals(Collections.<Long>emptyList(), index.getLowestCommonAncestors(all));
+    }
+
+    @Test
+    public void testAddedOnce() {
+        PathwayContainmentIndex index = new PathwayContainmentIndex(59);
+        index.add(child);
+        index.add(top);
+        index.add(grandchild);
+        assertEquals(4, index.getNumPathways());
+        assertEquals(8, index.getNumEvents());
+        assertTrue(index.contains(10L, 3L));
+        assertEquals(Arrays.asList(30L, 21L), index.getLowestCommonAncestors(Collections.singletonList(3L)));
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        PathwayContainmentIndex index = createIndex();
+        File file = new File(Files.createTempDirectory("index").toFile(), PathwayContainmentIndex.FILENAME);
+        index.write(file);
+        assertEquals(1, file.getParentFile().list().length);
+
+        PathwayContainmentIndex read = PathwayContainmentIndex.read(file);
+        assertEquals(59, read.getDbVersion());
+        assertEquals(index.getNumPathways(), read.getNumPathways());
+        assertEquals(index.getNumEvents(), read.getNumEvents());
+        assertTrue(read.contains(10L, 3L));
+        assertFalse(read.contains(20L, 4L));
+        assertEquals(sorted(index.getParentCandidates(Collections.singletonList(3L))),
+                sorted(read.getParentCandidates(Collections.singletonList(3L))));
+        assertEquals(index.getLowestCommonAncestors(Collections.singletonList(3L)),
+                read.getLowestCommonAncestors(Collections.singletonList(3L)));
+
+        // a pathway added after reading is given the next ordinals
+        read.add(createPathway(40L, r4, createReaction(5L)));
+        assertEquals(index.getNumEvents() + 2, read.getNumEvents());
+        assertTrue(read.contains(40L, 5L));
+        assertEquals(Arrays.asList(21L, 40L), sorted(read.getParentCandidates(Collections.singletonList(4L))));
+    }
+
+    @Test
+    public void testSpeciesComplete() throws IOException {
+        PathwayContainmentIndex index = createIndex();
+        assertFalse(index.isSpeciesComplete(48887L));
+        index.setSpeciesComplete(48887L);
+        assertTrue(index.isSpeciesComplete(48887L));
+        assertFalse(index.isSpeciesComplete(48892L));
+
+        File file = new File(Files.createTempDirectory("index").toFile(), PathwayContainmentIndex.FILENAME);
+        index.write(file);
+        PathwayContainmentIndex read = PathwayContainmentIndex.read(file);
+        assertTrue(read.isSpeciesComplete(48887L));
+        assertFalse(read.isSpeciesComplete(48892L));
+    }
+
+    @Test
+    public void testNotAnIndex() throws IOException {
+        File file = Files.createTempFile("index", ".bin").toFile();
+        Files.write(file.toPath(), "not an index".getBytes("UTF-8"));
+        try {
+            PathwayContainmentIndex.read(file);
+            fail("file that is not an index read");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+
+    private PathwayContainmentIndex createIndex() {
+        PathwayContainmentIndex index = new PathwayContainmentIndex(59);
+        index.add(top);
+        return index;
+    }
+
+    private static List<Long> sorted(List<Long> ids) {
+        List<Long> copy = new ArrayList<Long>(ids);
+        Collections.sort(copy);
+        return copy;
+    }
+}
@@ -0,0 +1,118 @@
+package org.reactome.server.tools.datasource;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.exporters.sbmlexport.WriteSBML;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SnapshotDataSourceTest {
+
+    private static SyntheticDataSource synthetic;
+    private static SnapshotDataSource snapshot;
+    private static File file;
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        synthetic = new SyntheticDataSource(21L, 400);
+        file = File.createTempFile("snapshot", ".bin");
+        file.deleteOnExit();
+        new SnapshotWriter(file).write(synthetic);
+        snapshot = new SnapshotDataSource(file);
+    }
+
+    @Test
+    public void testSpecies() {
+        assertEquals(synthetic.getDBVersion(), snapshot.getDBVersion());
+        List<Species> species = snapshot.getSpecies();
+        assertEquals(1, species.size());
+        Species expected = synthetic.getSpecies().get(0);
+        assertEquals(expected.getDbId(), species.get(0).getDbId());
+        assertEquals(expected.getDisplayName(), species.get(0).getDisplayName());
+        assertEquals(expected.getTaxId(), species.get(0).getTaxId());
+        assertNotNull(snapshot.findSpecies(expected.getDbId()));
+        assertNull(snapshot.findSpecies(48887L));
+        assertEquals(synthetic.getPathwayIds(expected), snapshot.getPathwayIds(species.get(0)));
+    }
+
+    @Test
+    public void testSameSBML() {
+        for (Long dbId : synthetic.getPathwayIds(synthetic.getSpecies().get(0))) {
+            WriteSBML expected = new WriteSBML(synthetic.loadPathway(dbId), 0);
+            expected.createModel();
+            WriteSBML actual = new WriteSBML(snapshot.loadPathway(dbId), 0);
+            actual.createModel();
+            assertEquals(expected.toString(), actual.toString());
+        }
+    }
+
+    @Test
+    public void testParentIsShell() {
+        for (Long dbId : synthetic.getPathwayIds(synthetic.getSpecies().get(0))) {
+            Pathway pathway = snapshot.loadPathway(dbId);
+            if (pathway.getEventOf() != null) {
+                Event parent = pathway.getEventOf().get(0);
+                assertEquals(synthetic.loadPathway(dbId).getEventOf().get(0).getDbId(), parent.getDbId());
+                assertNotNull(parent.getDisplayName());
+                return;
+            }
+        }
+        fail("no sub-pathway found");
+    }
+
+    @Test
+    public void testSharedInstances() {
+        for (Long dbId : synthetic.getPathwayIds(synthetic.getSpecies().get(0))) {
+            Pathway pathway = snapshot.loadPathway(dbId);
+            for (Event e : pathway.getHasEvent()) {
+                if (e instanceof Pathway) {
+                    // the child refers back to the same instance of its parent
+                    assertSame(pathway, e.getEventOf().get(0));
+                    return;
+                }
+            }
+        }
+        fail("no sub-pathway found");
+    }
+
+    @Test
+    public void testFindEvent() {
+        Long dbId = synthetic.getPathwayIds(synthetic.getSpecies().get(0)).get(0);
+        Event event = snapshot.findEvent(dbId);
+        assertTrue(event instanceof Pathway);
+        assertNull(snapshot.findEvent(1L));
+        assertNull(snapshot.loadPathway(1L));
+        // the species is in the snapshot but is not a pathway
+        assertNull(snapshot.loadPathway(synthetic.getSpecies().get(0).getDbId()));
+    }
+
+    @Test
+    public void testNotASnapshot() throws IOException {
+        File other = File.createTempFile("snapshot", ".bin");
+        other.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(other);
+        out.write(new byte[128]);
+        out.close();
+        try {
+            new SnapshotDataSource(other);
+            fail("expected an IOException");
+        }
+        catch (IOException e) {
+            assertTrue(e.getMessage().contains("not a snapshot"));
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.reactome.server.tools.datasource;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SpeciesStoreTest {
+
+    @Test
+    public void testPathwaysIndexed() {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3L, 200);
+        SpeciesStore store = new SpeciesStore(48887L);
+        for (Long dbId : generator.getPathwayIds()) {
+            Pathway pathway = generator.loadPathway(dbId);
+            store.add(pathway);
+            for (Event event : pathway.getHasEvent()) {
+                store.add(event);
+                if (event instanceof ReactionLikeEvent) {
+                    for (PhysicalEntity pe : ((ReactionLikeEvent) event).getInput()) {
+                        store.add(pe);
+                        for (Compartment comp : pe.getCompartment()) {
+                            store.add(comp);
+                        }
+                    }
+                }
+            }
+        }
+
+        assertEquals(generator.getPathwayIds(), store.getPathwayIds());
+        assertEquals(generator.getNumPathways(), store.getNumPathways());
+        Long first = generator.getPathwayIds().get(0);
+        assertEquals(first, store.getPathway(first).getDbId());
+    }
+
+    @Test
+    public void testOtherObjectsIgnored() {
+        SpeciesStore store = new SpeciesStore(48887L);
+        Person person = new Person();
+        person.setDbId(1L);
+        store.add(person);
+        store.add(null);
+        store.add(new Pathway());
+        Reaction reaction = new Reaction();
+        reaction.setDbId(2L);
+        store.add(reaction);
+
+        assertEquals(0, store.getNumPathways());
+        assertNull(store.getPathway(1L));
+        assertNull(store.getPathway(2L));
+    }
+}
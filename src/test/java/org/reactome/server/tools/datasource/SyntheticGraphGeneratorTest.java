@@ -0,0 +1,179 @@
+package org.reactome.server.tools.datasource;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.exporters.sbmlexport.WriteSBML;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SyntheticGraphGeneratorTest {
+
+    @Test
+    public void testSameSeedSamePathways() {
+        SyntheticGraphGenerator first = new SyntheticGraphGenerator(42L, 500);
+        SyntheticGraphGenerator second = new SyntheticGraphGenerator(42L, 500);
+        assertEquals(first.getPathwayIds(), second.getPathwayIds());
+        for (Long dbId : first.getPathwayIds()) {
+            assertEquals(describe(first.loadPathway(dbId)), describe(second.loadPathway(dbId)));
+        }
+    }
+
+    @Test
+    public void testDifferentSeedDifferentPathways() {
+        SyntheticGraphGenerator first = new SyntheticGraphGenerator(42L, 500);
+        SyntheticGraphGenerator second = new SyntheticGraphGenerator(43L, 500);
+        Long dbId = first.getTopLevelPathwayIds().get(0);
+        assertFalse(describe(first.loadPathway(dbId)).equals(describe(second.loadPathway(dbId))));
+    }
+
+    @Test
+    public void testNumberOfReactions() {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(7L, 2000);
+        Set<Long> reactions = new HashSet<Long>();
+        for (Long dbId : generator.getTopLevelPathwayIds()) {
+            Pathway pathway = generator.loadPathway(dbId);
+            assertTrue(pathway instanceof TopLevelPathway);
+            collectReactions(pathway, reactions);
+        }
+        assertEquals(2000, reactions.size());
+        assertEquals(2000, generator.getNumReactions());
+    }
+
+    @Test
+    public void testSinglePathway() {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(1L, 1);
+        assertEquals(1, generator.getNumPathways());
+        Pathway pathway = generator.loadPathway(generator.getPathwayIds().get(0));
+        assertEquals(1, pathway.getHasEvent().size());
+        assertTrue(pathway.getHasEvent().get(0) instanceof ReactionLikeEvent);
+    }
+
+    @Test
+    public void testEveryPathwayLoads() {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3L, 1000);
+        Set<Long> topLevel = new HashSet<Long>(generator.getTopLevelPathwayIds());
+        for (Long dbId : generator.getPathwayIds()) {
+            Pathway pathway = generator.loadPathway(dbId);
+            assertNotNull(pathway);
+            assertEquals(dbId, pathway.getDbId());
+            assertTrue(pathway.getHasEvent().size() > 0);
+            if (topLevel.contains(dbId)) {
+                assertNull(pathway.getEventOf());
+            }
+            else {
+                assertEquals(1, pathway.getEventOf().size());
+            }
+        }
+        assertNull(generator.loadPathway(1L));
+    }
+
+    @Test
+    public void testFindEvent() {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(3L, 100);
+        Pathway pathway = generator.loadPathway(generator.getTopLevelPathwayIds().get(0));
+        Event reaction = findReaction(pathway);
+        assertNotNull(reaction);
+
+        Event found = generator.findEvent(reaction.getDbId());
+        assertTrue(found instanceof ReactionLikeEvent);
+        assertEquals(reaction.getDisplayName(), found.getDisplayName());
+        assertEquals(1, found.getEventOf().size());
+        assertEquals(reaction.getEventOf().get(0).getDbId(), found.getEventOf().get(0).getDbId());
+        assertNull(generator.findEvent(1L));
+    }
+
+    @Test
+    public void testDataSource() {
+        SyntheticDataSource source = new SyntheticDataSource(5L, 300);
+        List<Species> species = source.getSpecies();
+        assertEquals(1, species.size());
+        assertEquals(species.get(0), source.findSpecies(species.get(0).getDbId()));
+        assertNull(source.findSpecies(48887L));
+        List<Long> ids = source.getPathwayIds(species.get(0));
+        assertTrue(ids.size() > 0);
+        assertNotNull(source.loadPathway(ids.get(0)));
+    }
+
+    @Test
+    public void testExportPathways() {
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(11L, 300);
+        for (Long dbId : generator.getTopLevelPathwayIds()) {
+            WriteSBML sbml = new WriteSBML(generator.loadPathway(dbId), 0);
+            sbml.createModel();
+            assertEquals("pathway_" + dbId, sbml.getModelId());
+            assertTrue(sbml.toString().contains("<listOfSpecies>"));
+        }
+    }
+
+    private static void collectReactions(Pathway pathway, Set<Long> reactions) {
+        for (Event e : pathway.getHasEvent()) {
+            if (e instanceof Pathway) {
+                collectReactions((Pathway) e, reactions);
+            }
+            else {
+                assertTrue("reaction in more than one pathway", reactions.add(e.getDbId()));
+            }
+        }
+    }
+
+    private static Event findReaction(Pathway pathway) {
+        for (Event e : pathway.getHasEvent()) {
+            Event reaction = e instanceof Pathway ? findReaction((Pathway) e) : e;
+            if (reaction != null) {
+                return reaction;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write out the parts of the pathway the exporters use so that two
+     * pathways can be compared.
+     */
+    private static String describe(Pathway pathway) {
+        StringBuilder sb = new StringBuilder();
+        describeEvent(sb, pathway);
+        return sb.toString();
+    }
+
+    private static void describeEvent(StringBuilder sb, Event event) {
+        sb.append(event.getDbId()).append(' ').append(event.getDisplayName()).append('\n');
+        sb.append(event.getCreated().getDateTime()).append(' ').append(event.getSummation().get(0).getText()).append('\n');
+        for (Publication pub : event.getLiteratureReference()) {
+            sb.append(((LiteratureReference) pub).getPubMedIdentifier()).append('\n');
+        }
+        if (event instanceof Pathway) {
+            for (Event e : ((Pathway) event).getHasEvent()) {
+                describeEvent(sb, e);
+            }
+        }
+        else {
+            ReactionLikeEvent rle = (ReactionLikeEvent) event;
+            describeEntities(sb, rle.getInput());
+            describeEntities(sb, rle.getOutput());
+        }
+    }
+
+    private static void describeEntities(StringBuilder sb, List<PhysicalEntity> entities) {
+        for (PhysicalEntity pe : entities) {
+            sb.append(pe.getDbId()).append(' ').append(pe.getDisplayName()).append('\n');
+            if (pe instanceof Complex) {
+                describeEntities(sb, ((Complex) pe).getHasComponent());
+            }
+            else if (pe instanceof EntitySet) {
+                describeEntities(sb, ((EntitySet) pe).getHasMember());
+            }
+        }
+    }
+}
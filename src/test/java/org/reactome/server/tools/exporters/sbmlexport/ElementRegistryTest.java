@@ -0,0 +1,78 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class ElementRegistryTest {
+
+    @Test
+    public void testReactions() {
+        ElementRegistry registry = new ElementRegistry();
+        assertTrue("first reaction not added", registry.addReaction(168285L));
+        assertFalse("duplicate reaction added", registry.addReaction(168285L));
+        assertTrue("second reaction not added", registry.addReaction(168286L));
+
+        assertEquals("wrong number of reactions", 2, registry.getMisses(ElementRegistry.Kind.REACTION));
+        assertEquals("wrong number of duplicates", 1, registry.getHits(ElementRegistry.Kind.REACTION));
+    }
+
+    @Test
+    public void testKindsAreIndependent() {
+        ElementRegistry registry = new ElementRegistry();
+        assertTrue(registry.addSpecies(876L));
+        assertTrue("compartment with species id not added", registry.addCompartment(876L));
+        assertTrue("reaction with species id not added", registry.addReaction(876L));
+        assertFalse(registry.addCompartment(876L));
+
+        assertEquals(3, registry.getTotalMisses());
+        assertEquals(1, registry.getTotalHits());
+    }
+
+    @Test
+    public void testSpeciesReferences() {
+        ElementRegistry registry = new ElementRegistry();
+        assertTrue(registry.addSpeciesReference(ParticipantRole.REACTANT, 168285L, 188954L));
+        assertFalse(registry.addSpeciesReference(ParticipantRole.REACTANT, 168285L, 188954L));
+        assertTrue("role not used in key", registry.addSpeciesReference(ParticipantRole.PRODUCT, 168285L, 188954L));
+        assertTrue("event not used in key", registry.addSpeciesReference(ParticipantRole.REACTANT, 168286L, 188954L));
+        assertTrue("participant not used in key", registry.addSpeciesReference(ParticipantRole.REACTANT, 188954L, 168285L));
+        assertTrue("role not used in key", registry.addSpeciesReference(ParticipantRole.POSITIVE_REGULATOR, 168285L, 188954L));
+        assertTrue("role not used in key", registry.addSpeciesReference(ParticipantRole.NEGATIVE_REGULATOR, 168285L, 188954L));
+
+        assertEquals(6, registry.getMisses(ElementRegistry.Kind.SPECIES_REFERENCE));
+        assertEquals(1, registry.getHits(ElementRegistry.Kind.SPECIES_REFERENCE));
+    }
+
+    @Test
+    public void testLargeDbIds() {
+        ElementRegistry registry = new ElementRegistry();
+        long event = 900000000001L;
+        long pe = 1L << 40;
+        assertTrue(registry.addSpeciesReference(ParticipantRole.REACTANT, event, pe));
+        assertFalse(registry.addSpeciesReference(ParticipantRole.REACTANT, event, pe));
+        // would share a key if the ids were truncated to 32 bits
+        assertTrue("event not used in key", registry.addSpeciesReference(ParticipantRole.REACTANT, event + (1L << 32), pe));
+        assertTrue("participant not used in key", registry.addSpeciesReference(ParticipantRole.REACTANT, event, pe + (1L << 32)));
+        assertTrue(registry.addSpeciesReference(ParticipantRole.REACTANT, Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testLongHashSetGrows() {
+        LongHashSet set = new LongHashSet(4);
+        for (long i = 0; i < 10000; i++) {
+            assertTrue(set.add(i * 31));
+        }
+        assertEquals(10000, set.size());
+        for (long i = 0; i < 10000; i++) {
+            assertTrue("value lost on resize", set.contains(i * 31));
+            assertFalse(set.add(i * 31));
+        }
+        assertFalse(set.contains(7));
+    }
+}
@@ -0,0 +1,71 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class IdentifierResolverTest {
+
+    private final IdentifierResolver registry = IdentifierResolver.getRegistry();
+
+    @Test
+    public void testShortForms() {
+        assertEquals("http://identifiers.org/uniprot/P04637", registry.resolve("UniProt", "P04637"));
+        assertEquals("http://identifiers.org/pubmed/9463505", registry.resolve("pubmed", "9463505"));
+        assertEquals("http://identifiers.org/ec-code/2.7.11.1", registry.resolve("ec-code", "2.7.11.1"));
+        assertEquals("http://identifiers.org/ena.embl/AAH23145", registry.resolve("EMBL", "AAH23145"));
+        assertEquals("http://identifiers.org/kegg.compound/C00002", registry.resolve("kegg", "C00002"));
+    }
+
+    @Test
+    public void testLongForms() {
+        assertEquals("http://identifiers.org/psimod/MOD:00046", registry.resolve("MOD", "00046"));
+        assertEquals("http://identifiers.org/chebi/CHEBI:15422", registry.resolve("chebi", "15422"));
+        assertEquals("http://identifiers.org/go/GO:0005829", registry.resolve("go", "0005829"));
+        assertEquals("http://identifiers.org/reactome/REACTOME:R-HSA-168275",
+                registry.resolve("reactome", "R-HSA-168275"));
+        // a name that is not in the table
+        assertEquals("http://identifiers.org/ensembl/ENSEMBL:ENSG00000141510",
+                registry.resolve("Ensembl", "ENSG00000141510"));
+    }
+
+    @Test
+    public void testPrefixComputedOnce() {
+        assertSame(registry.getPrefix("UniProt"), registry.getPrefix("UniProt"));
+    }
+
+    @Test
+    public void testTable() throws IOException {
+        IdentifierResolver resolver = new IdentifierResolver(new StringReader(
+                "# comment\n\nUniProt\tuniprot.isoform\tshort\nChEBI\tchebi\tlong\n"));
+        assertEquals("http://identifiers.org/uniprot.isoform/P04637-2", resolver.resolve("uniprot", "P04637-2"));
+        assertEquals("http://identifiers.org/chebi/CHEBI:15422", resolver.resolve("ChEBI", "15422"));
+        assertEquals("http://identifiers.org/pubmed/PUBMED:9463505", resolver.resolve("PubMed", "9463505"));
+    }
+
+    @Test
+    public void testBadTable() {
+        try {
+            new IdentifierResolver(new StringReader("UniProt\tuniprot\n"));
+            fail("line without a form accepted");
+        }
+        catch (IOException e) {
+            // expected
+        }
+        try {
+            new IdentifierResolver(new StringReader("UniProt\tuniprot\tshortest\n"));
+            fail("unknown form accepted");
+        }
+        catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks the NotesSanitizer gives the same result as the regular
+ * expressions NotesBuilder used previously.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class NotesSanitizerTest {
+
+    private static String removeTagsWithRegex(String notes) {
+        notes = notes.replaceAll("\\p{Cntrl}+", " ");
+        notes = notes.replaceAll("</*[a-zA-Z][^>]*>", " ");
+        notes = notes.replaceAll("<>", " interconverts to ");
+        notes = notes.replaceAll("<", " ");
+        notes = notes.replaceAll("\n+", "  ");
+        notes = notes.replaceAll("&+", "  ");
+        return notes;
+    }
+
+    @Test
+    public void testExamples() {
+        String[] examples = {
+                "",
+                "No markup at all.",
+                "Virus particles <i>bound</i> to the <b>cell</b> surface.",
+                "ATP <> ADP",
+                "a < b and b > c",
+                "R&D && more &&& text",
+                "line one\nline two\r\n\tindented",
+                "</ br> <//p> </> <1> << >>",
+                "<a href=\"x\">link</a><br/>",
+                "unterminated <tag",
+                "mixed <\n> <a\n> <>\u007f<>",
+        };
+        for (String example : examples) {
+            assertEquals("differs for: " + example, removeTagsWithRegex(example), NotesSanitizer.sanitize(example));
+        }
+    }
+
+    @Test
+    public void testRandomText() {
+        String alphabet = "<>/&aZ1 \n\t\r\u007f\u0001\u00e9";
+        Random random = new Random(8);
+        for (int n = 0; n < 200000; n++) {
+            int len = random.nextInt(16);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < len; i++) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String text = sb.toString();
+            assertEquals("differs for: " + text, removeTagsWithRegex(text), NotesSanitizer.sanitize(text));
+        }
+    }
+}
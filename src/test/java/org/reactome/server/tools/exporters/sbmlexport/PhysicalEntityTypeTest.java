@@ -0,0 +1,137 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PhysicalEntityTypeTest {
+
+    /**
+     * A class of entity the builders have not been told about
+     */
+    private static class UnlistedEntity extends PhysicalEntity {
+    }
+
+    /**
+     * A subclass of a listed class e.g. as created by a mapping library
+     */
+    private static class ComplexSubclass extends Complex {
+    }
+
+    @Test
+    public void testListedTypes() {
+        assertEquals(PhysicalEntityType.SIMPLE_ENTITY, PhysicalEntityType.of(new SimpleEntity()));
+        assertEquals(PhysicalEntityType.ENTITY_WITH_ACCESSIONED_SEQUENCE, PhysicalEntityType.of(new EntityWithAccessionedSequence()));
+        assertEquals(PhysicalEntityType.GENOME_ENCODED_ENTITY, PhysicalEntityType.of(new GenomeEncodedEntity()));
+        assertEquals(PhysicalEntityType.COMPLEX, PhysicalEntityType.of(new Complex()));
+        assertEquals(PhysicalEntityType.CANDIDATE_SET, PhysicalEntityType.of(new CandidateSet()));
+        assertEquals(PhysicalEntityType.DEFINED_SET, PhysicalEntityType.of(new DefinedSet()));
+        assertEquals(PhysicalEntityType.OPEN_SET, PhysicalEntityType.of(new OpenSet()));
+        assertEquals(PhysicalEntityType.POLYMER, PhysicalEntityType.of(new Polymer()));
+        assertEquals(PhysicalEntityType.OTHER_ENTITY, PhysicalEntityType.of(new OtherEntity()));
+    }
+
+    @Test
+    public void testEveryModelClassHasType() throws Exception {
+        int numEntityClasses = 0;
+        for (Class<?> c : getModelClasses()) {
+            if (PhysicalEntity.class.isAssignableFrom(c) && c != PhysicalEntity.class) {
+                numEntityClasses++;
+                assertTrue(c.getName() + " has no PhysicalEntityType",
+                        PhysicalEntityType.of(c.asSubclass(PhysicalEntity.class)) != PhysicalEntityType.UNKNOWN);
+            }
+        }
+        assertTrue("PhysicalEntity classes not found", numEntityClasses >= PhysicalEntityType.values().length - 1);
+    }
+
+    @Test
+    public void testSubclassTakesNearestType() {
+        assertEquals(PhysicalEntityType.COMPLEX, PhysicalEntityType.of(new ComplexSubclass()));
+    }
+
+    @Test
+    public void testClassOutsideModelIsUnknown() {
+        assertEquals(PhysicalEntityType.UNKNOWN, PhysicalEntityType.of(new UnlistedEntity()));
+    }
+
+    @Test
+    public void testNamesAndTerms() {
+        assertEquals("EntityWithAccessionedSequence", PhysicalEntityType.ENTITY_WITH_ACCESSIONED_SEQUENCE.getReactomeName());
+        assertEquals("CandidateSet", PhysicalEntityType.CANDIDATE_SET.getReactomeName());
+        assertNull(PhysicalEntityType.UNKNOWN.getReactomeName());
+        assertEquals(247, PhysicalEntityType.SIMPLE_ENTITY.getSBOTerm());
+        assertEquals(297, PhysicalEntityType.GENOME_ENCODED_ENTITY.getSBOTerm());
+        assertEquals(253, PhysicalEntityType.COMPLEX.getSBOTerm());
+        assertEquals(-1, PhysicalEntityType.OPEN_SET.getSBOTerm());
+        assertEquals(240, PhysicalEntityType.OTHER_ENTITY.getSBOTerm());
+        assertEquals(-1, PhysicalEntityType.UNKNOWN.getSBOTerm());
+    }
+
+    @Test
+    public void testParticipantRoles() {
+        assertEquals("speciesreference_168285_input_188954", ParticipantRole.REACTANT.getSpeciesReferenceId(168285L, 188954L));
+        assertEquals("speciesreference_168285_output_188954", ParticipantRole.PRODUCT.getSpeciesReferenceId(168285L, 188954L));
+        assertEquals("modifierspeciesreference_168285_catalyst_188954", ParticipantRole.CATALYST.getSpeciesReferenceId(168285L, 188954L));
+        assertEquals("modifierspeciesreference_168285_positiveregulator_188954",
+                ParticipantRole.POSITIVE_REGULATOR.getSpeciesReferenceId(168285L, 188954L));
+        assertEquals("modifierspeciesreference_168285_negativeregulator_188954",
+                ParticipantRole.NEGATIVE_REGULATOR.getSpeciesReferenceId(168285L, 188954L));
+        assertEquals(10, ParticipantRole.REACTANT.getSBOTerm());
+        assertEquals(461, ParticipantRole.POSITIVE_REGULATOR.getSBOTerm());
+        assertEquals(20, ParticipantRole.NEGATIVE_REGULATOR.getSBOTerm());
+    }
+
+    /**
+     * Find every class in the package of the Reactome data model, from the
+     * directory or the jar it is loaded from.
+     */
+    private static List<Class<?>> getModelClasses() throws Exception {
+        String pkg = PhysicalEntity.class.getPackage().getName();
+        String path = pkg.replace('.', '/') + "/";
+        File source = new File(PhysicalEntity.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        List<String> names = new ArrayList<String>();
+        if (source.isDirectory()) {
+            String[] files = new File(source, path).list();
+            if (files != null) {
+                names.addAll(Arrays.asList(files));
+            }
+        }
+        else {
+            JarFile jar = new JarFile(source);
+            try {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    String name = entries.nextElement().getName();
+                    if (name.startsWith(path) && name.indexOf('/', path.length()) < 0) {
+                        names.add(name.substring(path.length()));
+                    }
+                }
+            }
+            finally {
+                jar.close();
+            }
+        }
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        ClassLoader loader = PhysicalEntity.class.getClassLoader();
+        for (String name : names) {
+            if (name.endsWith(".class") && !name.contains("$")) {
+                classes.add(Class.forName(pkg + "." + name.substring(0, name.length() - ".class".length()), false, loader));
+            }
+        }
+        return classes;
+    }
+}
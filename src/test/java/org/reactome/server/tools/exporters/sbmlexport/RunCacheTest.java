@@ -0,0 +1,52 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class RunCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        RunCache<String> cache = new RunCache<String>("test", 10);
+        assertNull(cache.get(1L));
+        cache.put(1L, "one");
+        assertEquals("one", cache.get(1L));
+        assertEquals("one", cache.get(1L));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(2.0 / 3.0, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        RunCache<String> cache = new RunCache<String>("test", 2);
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        // use 1 so that 2 becomes the least recently used
+        cache.get(1L);
+        cache.put(3L, "three");
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals("one", cache.get(1L));
+        assertNull("least recently used entry kept", cache.get(2L));
+        assertEquals("three", cache.get(3L));
+    }
+
+    @Test
+    public void testNoLookups() {
+        RunCache<String> cache = new RunCache<String>("test", 1);
+        assertEquals(0.0, cache.getHitRate(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadSize() {
+        new RunCache<String>("test", 0);
+    }
+}
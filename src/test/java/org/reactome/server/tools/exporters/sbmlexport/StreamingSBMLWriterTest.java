@@ -0,0 +1,107 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.BeforeClass;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.TidySBMLWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the StreamingSBMLWriter produces the same document as WriteSBML
+ * for the pathways used by the other tests.
+ *
+ * The streamed output is read back with JSBML and written with the
+ * TidySBMLWriter so that the two documents can be compared as Strings.
+ * It is compared with the output of WriteSBML, not with the strings the
+ * WriteSBML tests expect, and the streamed text itself is not compared.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class StreamingSBMLWriterTest {
+
+    private static final long[] dbids = {167168L, 168275L, 73843L, 192869L, 168276L, 2978092L, 168255L,
+            5467340L, 5602410L, 1799339L, 9719495L, 162585L, 844615L, 69205L, 5619071L, 5619084L,
+            1280218L, 164843L, 380994L, 156582L, 111447L};
+
+    private static List<Pathway> pathways = new ArrayList<Pathway>();
+
+    @BeforeClass
+    public static void setup() {
+        DatabaseObjectService databaseObjectService = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        for (long dbid : dbids) {
+            pathways.add((Pathway) databaseObjectService.findById(dbid));
+        }
+    }
+
+    @org.junit.Test
+    public void testSameAsWriteSBML() throws Exception {
+        for (Pathway pathway : pathways) {
+            assertEquals("streamed output differs for pathway " + pathway.getDbId(),
+                    writeInMemory(pathway, true), writeStreamed(pathway, true));
+        }
+    }
+
+    @org.junit.Test
+    public void testSameAsWriteSBMLNoAnnotations() throws Exception {
+        for (Pathway pathway : pathways) {
+            assertEquals("streamed output differs for pathway " + pathway.getDbId(),
+                    writeInMemory(pathway, false), writeStreamed(pathway, false));
+        }
+    }
+
+    @org.junit.Test
+    public void testRegistryMatchesWriteSBML() throws Exception {
+        for (Pathway pathway : pathways) {
+            WriteSBML sbml = new WriteSBML(pathway, 59);
+            sbml.setAnnotationFlag(false);
+            sbml.createModel();
+
+            StreamingSBMLWriter stream = new StreamingSBMLWriter(pathway, 59);
+            stream.setAnnotationFlag(false);
+            stream.write(new ByteArrayOutputStream());
+
+            assertEquals("different elements for pathway " + pathway.getDbId(),
+                    sbml.getElementRegistry().toString(), stream.getElementRegistry().toString());
+        }
+    }
+
+    @org.junit.Test
+    public void testProvenanceAnnotation() throws Exception {
+        StreamingSBMLWriter stream = new StreamingSBMLWriter(pathways.get(1), 59);
+        stream.setAnnotationFlag(true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stream.write(out);
+        String output = out.toString("UTF-8");
+        assertTrue("provenance annotation missing", output.contains("SBML generated from Reactome version 59"));
+    }
+
+    private static String writeInMemory(Pathway pathway, boolean annotations) {
+        WriteSBML sbml = new WriteSBML(pathway, 59);
+        // test mode omits the provenance annotation which contains the current date
+        sbml.setInTestModeFlag(true);
+        sbml.setAnnotationFlag(annotations);
+        sbml.createModel();
+        return sbml.toString();
+    }
+
+    private static String writeStreamed(Pathway pathway, boolean annotations) throws Exception {
+        StreamingSBMLWriter stream = new StreamingSBMLWriter(pathway, 59);
+        stream.setInTestModeFlag(true);
+        stream.setAnnotationFlag(annotations);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        stream.write(out);
+
+        SBMLDocument doc = new SBMLReader().readSBMLFromStream(new ByteArrayInputStream(out.toByteArray()));
+        return new TidySBMLWriter().writeSBMLToString(doc);
+    }
+}
@@ -0,0 +1,116 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.reactome.server.tools.EventFixtures.*;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class SubpathwayCacheTest {
+
+    private final Reaction r1 = createReaction(1L);
+    private final Reaction r2 = createReaction(2L);
+    private final Reaction r3 = createReaction(3L);
+
+    @Test
+    public void testClosureOrder() {
+        // top: r2, child(r1, grandchild(r3, r2)), r1
+        Pathway grandchild = createPathway(30L, r3, r2);
+        Pathway child = createPathway(20L, r1, grandchild);
+        Pathway top = createPathway(10L, r2, child, r1);
+
+        SubpathwayCache.Work work = new SubpathwayCache.Work();
+        ReactionClosure closure = ReactionClosure.of(top, null, work);
+        assertEquals(Arrays.asList(r2, r1, r3), new ArrayList<ReactionLikeEvent>(closure.getReactions()));
+        assertEquals(7, closure.getNumEvents());
+        assertEquals(7, work.visited);
+        assertEquals(0, work.reused);
+    }
+
+    @Test
+    public void testAncestorsReuseChildren() {
+        Pathway grandchild = createPathway(30L, r3);
+        Pathway child = createPathway(20L, r2, grandchild);
+        Pathway top = createPathway(10L, r1, child);
+        Pathway other = createPathway(11L, child);
+        SubpathwayCache cache = new SubpathwayCache(100);
+
+        SubpathwayCache.Work work = new SubpathwayCache.Work();
+        ReactionClosure closure = ReactionClosure.of(top, cache, work);
+        assertEquals(5, work.visited);
+        assertEquals(3, cache.getClosures().size());
+
+        // the child's own document and the other ancestor's are assembled from the cache
+        work = new SubpathwayCache.Work();
+        assertEquals(Arrays.asList(r2, r3), new ArrayList<ReactionLikeEvent>(ReactionClosure.of(child, cache, work).getReactions()));
+        assertEquals(0, work.visited);
+        assertEquals(3, work.reused);
+
+        work = new SubpathwayCache.Work();
+        assertEquals(Arrays.asList(r2, r3), new ArrayList<ReactionLikeEvent>(ReactionClosure.of(other, cache, work).getReactions()));
+        assertEquals(1, work.visited);
+        assertEquals(3, work.reused);
+        assertSame(closure, ReactionClosure.of(top, cache, new SubpathwayCache.Work()));
+    }
+
+    @Test
+    public void testOtherLoadNotReused() {
+        SubpathwayCache cache = new SubpathwayCache(100);
+        Pathway child = createPathway(20L, r1);
+        ReactionClosure.of(createPathway(10L, child), cache, new SubpathwayCache.Work());
+
+        // the same pathway loaded again holds its own objects
+        Reaction reloaded = createReaction(1L);
+        Pathway again = createPathway(20L, reloaded);
+        SubpathwayCache.Work work = new SubpathwayCache.Work();
+        ReactionClosure closure = ReactionClosure.of(again, cache, work);
+        assertSame(reloaded, closure.getReactions().get(0));
+        assertEquals(1, work.visited);
+        assertEquals(0, work.reused);
+        assertSame(closure, cache.get(again));
+        assertNull(cache.get(child));
+    }
+
+    @Test
+    public void testClearedForNextSpecies() {
+        SubpathwayCache cache = new SubpathwayCache(100);
+        Pathway human = createPathway(10L);
+        ReactionClosure.of(human, cache, new SubpathwayCache.Work());
+        ReactionClosure.of(createPathway(11L, r1), cache, new SubpathwayCache.Work());
+        assertEquals(2, cache.getClosures().size());
+
+        Pathway mouse = createPathway(12L, createSpecies(MOUSE, "Mus musculus"));
+        ReactionClosure.of(mouse, cache, new SubpathwayCache.Work());
+        assertEquals(1, cache.getClosures().size());
+        assertNull(cache.get(human));
+        assertNotNull(cache.get(mouse));
+    }
+
+    @Test
+    public void testReportedPerSpecies() {
+        SubpathwayCache cache = new SubpathwayCache(100);
+        SubpathwayCache.Work work = new SubpathwayCache.Work();
+        work.visited = 10;
+        work.reused = 30;
+        cache.record(createPathway(10L), work);
+        cache.record(createPathway(11L), work);
+        cache.record(createPathway(12L, createSpecies(MOUSE, "Mus musculus")), new SubpathwayCache.Work());
+
+        assertEquals(20, cache.getEventsVisited("Homo sapiens"));
+        assertEquals(60, cache.getEventsReused("Homo sapiens"));
+        assertEquals(0, cache.getEventsReused("Mus musculus"));
+        assertEquals(0, cache.getEventsVisited("Gallus gallus"));
+        String report = cache.toString();
+        assertEquals(true, report.contains("Homo sapiens: 20 events visited, 60 reused from cached subpathways (75.0% of traversal saved)"));
+        assertEquals(true, report.contains("Mus musculus: 0 events visited, 0 reused"));
+    }
+}
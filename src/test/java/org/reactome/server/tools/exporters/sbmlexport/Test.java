@@ -33,7 +33,10 @@ import org.reactome.server.tools.launcher.ExporterLauncher;
                             WriteSBMLConstructorTest.class, WriteSBMLListEventsTest.class,
                             WriteSBMLMissingPubTest.class, WriteSBMLNotTranslationalModTest.class,
                             WriteSBMLCatalystNoPETest.class, WriteSBMLListEventsNoParentTest.class,
-                            WriteSBMLBadNotesTest.class})
+                            WriteSBMLBadNotesTest.class, WriteSBMLConcurrencyTest.class,
+                            StreamingSBMLWriterTest.class, WriteSBMLCachedAnnotationTest.class,
+                            WriteSBMLListEventsIndexTest.class, WriteSBMLNearestAncestorTest.class,
+                            WriteSBMLHierarchicalTest.class, WriteSBMLFlattenTest.class})
 // exclude from db v59 WriteSBMLPolymerEntityTest.class,
 
 public class Test {
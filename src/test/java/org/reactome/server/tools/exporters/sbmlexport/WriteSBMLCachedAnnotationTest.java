@@ -0,0 +1,68 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.BeforeClass;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reusing annotations across pathways does not change
+ * the documents written.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class WriteSBMLCachedAnnotationTest {
+
+    // 168275 is a child of 168255 so they share entities
+    private static final long[] dbids = {168255L, 168275L, 168276L, 192869L, 5467340L, 1799339L};
+
+    private static List<Pathway> pathways = new ArrayList<Pathway>();
+
+    @BeforeClass
+    public static void setup() {
+        DatabaseObjectService databaseObjectService = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        for (long dbid : dbids) {
+            pathways.add((Pathway) databaseObjectService.findById(dbid));
+        }
+    }
+
+    @org.junit.Test
+    public void testSameOutputWithCache() {
+        ExportCaches caches = new ExportCaches();
+        // go through twice so the second pass is served from the cache
+        for (int i = 0; i < 2; i++) {
+            for (Pathway pathway : pathways) {
+                assertEquals("cached output differs for pathway " + pathway.getDbId(),
+                        export(pathway, null), export(pathway, caches));
+            }
+        }
+        assertTrue("annotation cache not used", caches.getAnnotations().getHits() > 0);
+        assertTrue("summation cache not used", caches.getSummations().getHits() > 0);
+        assertTrue("instance edit cache not used", caches.getInstanceEdits().getHits() > 0);
+    }
+
+    @org.junit.Test
+    public void testSmallCache() {
+        ExportCaches caches = new ExportCaches(5);
+        for (Pathway pathway : pathways) {
+            assertEquals("cached output differs for pathway " + pathway.getDbId(),
+                    export(pathway, null), export(pathway, caches));
+        }
+        assertTrue(caches.getAnnotations().size() <= 5);
+    }
+
+    private static String export(Pathway pathway, ExportCaches caches) {
+        WriteSBML sbml = new WriteSBML(pathway, 59);
+        sbml.setInTestModeFlag(true);
+        sbml.setAnnotationFlag(true);
+        sbml.setExportCaches(caches);
+        sbml.createModel();
+        return sbml.toString();
+    }
+}
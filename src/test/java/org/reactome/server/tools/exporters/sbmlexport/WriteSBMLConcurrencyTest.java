@@ -0,0 +1,90 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import com.martiansoftware.jsap.JSAPException;
+import org.junit.BeforeClass;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs many WriteSBML instances at the same time and checks each document
+ * matches the one produced by a single-threaded run.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class WriteSBMLConcurrencyTest {
+
+    private static final long[] dbids = {168275L, 192869L, 73843L, 168255L, 2978092L, 156582L, 5467340L, 1799339L};
+    private static final int numThreads = 8;
+    private static final int repeats = 5;
+
+    private static List<Pathway> pathways = new ArrayList<Pathway>();
+    private static List<String> expected = new ArrayList<String>();
+
+    @BeforeClass
+    public static void setup()  throws JSAPException {
+        DatabaseObjectService databaseObjectService = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        for (long dbid : dbids) {
+            Pathway pathway = (Pathway) databaseObjectService.findById(dbid);
+            pathways.add(pathway);
+            // the single threaded run also loads everything we need from the database
+            expected.add(export(pathway));
+        }
+    }
+
+    private static String export(Pathway pathway) {
+        WriteSBML sbml = new WriteSBML(pathway, 59);
+        // test mode omits the provenance annotation which contains the current date
+        sbml.setInTestModeFlag(true);
+        sbml.setAnnotationFlag(true);
+        sbml.createModel();
+        return sbml.toString();
+    }
+
+    @org.junit.Test
+    public void testConcurrentExport() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        List<Future<String>> results = new ArrayList<Future<String>>();
+        List<Integer> index = new ArrayList<Integer>();
+        try {
+            for (int r = 0; r < repeats; r++) {
+                for (int i = 0; i < pathways.size(); i++) {
+                    final Pathway pathway = pathways.get(i);
+                    results.add(executor.submit(new Callable<String>() {
+                        @Override
+                        public String call() {
+                            return export(pathway);
+                        }
+                    }));
+                    index.add(i);
+                }
+            }
+            for (int n = 0; n < results.size(); n++) {
+                int i = index.get(n);
+                assertEquals("concurrent output differs for pathway " + dbids[i], expected.get(i), results.get(n).get());
+            }
+        }
+        finally {
+            executor.shutdown();
+            assertTrue("exports did not finish", executor.awaitTermination(5, TimeUnit.MINUTES));
+        }
+    }
+
+    @org.junit.Test
+    public void testMetaidsStartAtZero() {
+        for (String output : expected) {
+            assertTrue("metaids not allocated per document", output.contains("metaid=\"metaid_0\""));
+        }
+    }
+}
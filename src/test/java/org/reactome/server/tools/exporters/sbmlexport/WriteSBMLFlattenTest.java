@@ -0,0 +1,312 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.datasource.SyntheticGraphGenerator;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.ModifierSpeciesReference;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.SBMLReader;
+import org.sbml.jsbml.SBase;
+import org.sbml.jsbml.SpeciesReference;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.CompSBasePlugin;
+import org.sbml.jsbml.ext.comp.ReplacedElement;
+import org.sbml.jsbml.ext.comp.SBaseRef;
+import org.sbml.jsbml.ext.comp.Submodel;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.reactome.server.tools.EventFixtures.*;
+
+/**
+ * Checks that flattening a pathway written hierarchically gives the same
+ * compartments, species and reactions as writing it flat.
+ *
+ * JSBML 1.1 has no comp flattening converter so the files are flattened here
+ * following the comp rules: the elements of a submodel get the id of the
+ * submodel and "__" in front of their own and those replaced by an element
+ * of the model are dropped, with every reference to them going to the
+ * element that replaces them.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class WriteSBMLFlattenTest {
+
+    private static final String SEPARATOR = "__";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSharedFurtherDown() throws Exception {
+        org.reactome.server.graph.domain.model.Compartment cytosol = createCompartment(1L, "cytosol");
+        org.reactome.server.graph.domain.model.Compartment nucleus = createCompartment(2L, "nucleoplasm");
+        SimpleEntity atp = createEntity(11L, "ATP", cytosol);
+        SimpleEntity adp = createEntity(12L, "ADP", cytosol);
+        SimpleEntity x = createEntity(13L, "X", nucleus);
+        SimpleEntity y = createEntity(14L, "Y", nucleus);
+        SimpleEntity z = createEntity(15L, "Z", cytosol);
+
+        // top(r1, a(r2, r3), b(r3, c(r4))): r3 is in two pathways and
+        // y is in a and only in c below b
+        Reaction r1 = createConversion(21L, atp, adp);
+        Reaction r2 = createConversion(22L, x, y);
+        Reaction r3 = createConversion(23L, atp, x, z);
+        Reaction r4 = createConversion(24L, y, z);
+        Pathway c = createPathway(34L, r4);
+        Pathway b = createPathway(33L, r3, c);
+        Pathway a = createPathway(32L, r2, r3);
+        Pathway top = createPathway(31L, r1, a, b);
+
+        assertFlattened(top);
+    }
+
+    @Test
+    public void testSyntheticPathways() throws Exception {
+        // the small molecules and compartments are shared by many reactions
+        SyntheticGraphGenerator generator = new SyntheticGraphGenerator(7L, 300);
+        for (Long dbId : generator.getTopLevelPathwayIds()) {
+            assertFlattened(generator.loadPathway(dbId));
+        }
+    }
+
+    private void assertFlattened(Pathway pathway) throws Exception {
+        File dir = folder.newFolder();
+        writeHierarchical(pathway, dir);
+
+        FlatModel flattened = flatten(dir, WriteSBML.getModelSource(pathway.getDbId()));
+        FlatModel expected = new FlatModel();
+        expected.addModel(create(pathway, false).getSBMLDocument().getModel());
+
+        String name = "pathway " + pathway.getDbId();
+        FlatModel stripped = flattened.strip();
+        assertEquals(name + " compartments", expected.compartments, stripped.compartments);
+        assertEquals(name + " species", expected.species, stripped.species);
+        assertEquals(name + " reactions", expected.reactions, stripped.reactions);
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // writing and flattening
+
+    private static void writeHierarchical(Pathway pathway, File dir) {
+        assertTrue(create(pathway, true).toFile(new File(dir, WriteSBML.getModelSource(pathway.getDbId())).getPath()));
+        for (Event event : pathway.getHasEvent()) {
+            if (event instanceof Pathway) {
+                writeHierarchical((Pathway) event, dir);
+            }
+        }
+    }
+
+    private static WriteSBML create(Pathway pathway, boolean hierarchical) {
+        WriteSBML sbml = new WriteSBML(pathway, 59);
+        sbml.setInTestModeFlag(true);
+        sbml.setAnnotationFlag(false);
+        sbml.setHierarchicalFlag(hierarchical);
+        sbml.createModel();
+        return sbml;
+    }
+
+    private static FlatModel flatten(File dir, String source) throws Exception {
+        SBMLDocument doc = SBMLReader.read(new File(dir, source));
+        Model model = doc.getModel();
+        FlatModel flat = new FlatModel();
+        flat.addModel(model);
+
+        // prefixed id of each element of a submodel -> id of the element that replaces it
+        Map<String, String> replaced = new HashMap<String, String>();
+        List<SBase> elements = new ArrayList<SBase>();
+        elements.addAll(model.getListOfCompartments());
+        elements.addAll(model.getListOfSpecies());
+        elements.addAll(model.getListOfReactions());
+        for (SBase element : elements) {
+            CompSBasePlugin plugin = (CompSBasePlugin) element.getExtension(CompConstants.shortLabel);
+            if (plugin != null && plugin.isSetListOfReplacedElements()) {
+                for (ReplacedElement re : plugin.getListOfReplacedElements()) {
+                    String target = re.getSubmodelRef() + SEPARATOR + re.getIdRef();
+                    for (SBaseRef ref = re.getSBaseRef(); ref != null; ref = ref.isSetSBaseRef() ? ref.getSBaseRef() : null) {
+                        target += SEPARATOR + ref.getIdRef();
+                    }
+                    assertNull(target + " replaced twice", replaced.put(target, ((org.sbml.jsbml.NamedSBase) element).getId()));
+                }
+            }
+        }
+
+        CompModelPlugin modelPlugin = (CompModelPlugin) model.getExtension(CompConstants.shortLabel);
+        if (modelPlugin != null) {
+            CompSBMLDocumentPlugin docPlugin = (CompSBMLDocumentPlugin) doc.getExtension(CompConstants.shortLabel);
+            for (Submodel submodel : modelPlugin.getListOfSubmodels()) {
+                String childSource = docPlugin.getExternalModelDefinition(submodel.getModelRef()).getSource();
+                flat.addSubmodel(submodel.getId(), flatten(dir, childSource), replaced);
+            }
+        }
+        assertTrue("replaced elements not in any submodel: " + replaced.keySet(), replaced.isEmpty());
+        return flat;
+    }
+
+    /**
+     * The compartments, species with their compartment and reactions with their
+     * species references of a model without submodels.
+     */
+    private static class FlatModel {
+
+        private final List<String> compartments = new ArrayList<String>();
+        private final Map<String, String> species = new TreeMap<String, String>();
+        private final Map<String, List<String>> reactions = new TreeMap<String, List<String>>();
+
+        private void addModel(Model model) {
+            for (org.sbml.jsbml.Compartment c : model.getListOfCompartments()) {
+                addCompartment(c.getId());
+            }
+            for (org.sbml.jsbml.Species s : model.getListOfSpecies()) {
+                addSpecies(s.getId(), s.getCompartment());
+            }
+            for (org.sbml.jsbml.Reaction r : model.getListOfReactions()) {
+                List<String> refs = new ArrayList<String>();
+                for (SpeciesReference ref : r.getListOfReactants()) {
+                    refs.add("reactant " + ref.getSpecies());
+                }
+                for (SpeciesReference ref : r.getListOfProducts()) {
+                    refs.add("product " + ref.getSpecies());
+                }
+                for (ModifierSpeciesReference ref : r.getListOfModifiers()) {
+                    refs.add("modifier " + ref.getSpecies());
+                }
+                addReaction(r.getId(), refs);
+            }
+        }
+
+        /**
+         * Add the elements of a flattened submodel that are not replaced,
+         * with their ids and references renamed as flattening does.
+         */
+        private void addSubmodel(String submodel, FlatModel child, Map<String, String> replaced) {
+            Map<String, String> renamed = new HashMap<String, String>();
+            for (String id : child.getIds()) {
+                String prefixed = submodel + SEPARATOR + id;
+                String replacement = replaced.remove(prefixed);
+                renamed.put(id, replacement == null ? prefixed : replacement);
+            }
+            for (String id : child.compartments) {
+                if (isKept(submodel, id, renamed)) {
+                    addCompartment(renamed.get(id));
+                }
+            }
+            for (Map.Entry<String, String> s : child.species.entrySet()) {
+                if (isKept(submodel, s.getKey(), renamed)) {
+                    addSpecies(renamed.get(s.getKey()), renamed.get(s.getValue()));
+                }
+            }
+            for (Map.Entry<String, List<String>> r : child.reactions.entrySet()) {
+                if (isKept(submodel, r.getKey(), renamed)) {
+                    List<String> refs = new ArrayList<String>();
+                    for (String ref : r.getValue()) {
+                        String[] parts = ref.split(" ");
+                        refs.add(parts[0] + " " + renamed.get(parts[1]));
+                    }
+                    addReaction(renamed.get(r.getKey()), refs);
+                }
+            }
+        }
+
+        /**
+         * Get the model with the submodel ids taken off each id. Two elements
+         * with the same id once stripped were duplicated by flattening.
+         */
+        private FlatModel strip() {
+            FlatModel stripped = new FlatModel();
+            for (String id : compartments) {
+                stripped.addCompartment(strip(id));
+            }
+            for (Map.Entry<String, String> s : species.entrySet()) {
+                stripped.addSpecies(strip(s.getKey()), strip(s.getValue()));
+            }
+            for (Map.Entry<String, List<String>> r : reactions.entrySet()) {
+                List<String> refs = new ArrayList<String>();
+                for (String ref : r.getValue()) {
+                    refs.add(strip(ref));
+                }
+                stripped.addReaction(strip(r.getKey()), refs);
+            }
+            Collections.sort(stripped.compartments);
+            return stripped;
+        }
+
+        private List<String> getIds() {
+            List<String> ids = new ArrayList<String>(compartments);
+            ids.addAll(species.keySet());
+            ids.addAll(reactions.keySet());
+            return ids;
+        }
+
+        private void addCompartment(String id) {
+            assertTrue(id + " duplicated", !compartments.contains(id));
+            compartments.add(id);
+            Collections.sort(compartments);
+        }
+
+        private void addSpecies(String id, String compartment) {
+            assertNotNull(id + " has no compartment", compartment);
+            assertNull(id + " duplicated", species.put(id, compartment));
+        }
+
+        private void addReaction(String id, List<String> refs) {
+            Collections.sort(refs);
+            assertNull(id + " duplicated", reactions.put(id, refs));
+        }
+
+        private static boolean isKept(String submodel, String id, Map<String, String> renamed) {
+            return renamed.get(id).equals(submodel + SEPARATOR + id);
+        }
+
+        private static String strip(String id) {
+            return id.replaceAll("(submodel_\\d+" + SEPARATOR + ")+", "");
+        }
+    }
+
+    //////////////////////////////////////////////////////////////////////////////////
+
+    // fixtures
+
+    private static org.reactome.server.graph.domain.model.Compartment createCompartment(Long dbId, String name) {
+        org.reactome.server.graph.domain.model.Compartment comp = new org.reactome.server.graph.domain.model.Compartment();
+        comp.setDbId(dbId);
+        comp.setDisplayName(name);
+        return comp;
+    }
+
+    private static SimpleEntity createEntity(Long dbId, String name, org.reactome.server.graph.domain.model.Compartment comp) {
+        SimpleEntity pe = new SimpleEntity();
+        pe.setDbId(dbId);
+        pe.setDisplayName(name);
+        pe.setCompartment(Collections.singletonList(comp));
+        return pe;
+    }
+
+    /**
+     * Create a Reaction from all but the last entity to the last one.
+     */
+    private static Reaction createConversion(Long dbId, PhysicalEntity... entities) {
+        Reaction reaction = createReaction(dbId);
+        reaction.setDisplayName("reaction " + dbId);
+        reaction.setInput(new ArrayList<PhysicalEntity>(Arrays.asList(entities).subList(0, entities.length - 1)));
+        reaction.setOutput(Collections.singletonList(entities[entities.length - 1]));
+        return reaction;
+    }
+}
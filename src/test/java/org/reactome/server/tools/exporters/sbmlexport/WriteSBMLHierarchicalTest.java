@@ -0,0 +1,80 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.BeforeClass;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.service.DatabaseObjectService;
+import org.reactome.server.graph.utils.ReactomeGraphCore;
+import org.sbml.jsbml.Model;
+import org.sbml.jsbml.SBMLDocument;
+import org.sbml.jsbml.ext.comp.CompConstants;
+import org.sbml.jsbml.ext.comp.CompModelPlugin;
+import org.sbml.jsbml.ext.comp.CompSBMLDocumentPlugin;
+import org.sbml.jsbml.ext.comp.ExternalModelDefinition;
+import org.sbml.jsbml.ext.comp.Submodel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a pathway written hierarchically refers to its child pathways
+ * rather than copying in their reactions.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class WriteSBMLHierarchicalTest {
+
+    // 168275 is a child of 168255
+    private static final long parent = 168255L;
+    private static final long child = 168275L;
+
+    private static Pathway pathway;
+
+    @BeforeClass
+    public static void setup() {
+        DatabaseObjectService databaseObjectService = ReactomeGraphCore.getService(DatabaseObjectService.class);
+        pathway = (Pathway) databaseObjectService.findById(parent);
+    }
+
+    @org.junit.Test
+    public void testSubmodels() {
+        SBMLDocument doc = create(true).getSBMLDocument();
+        assertTrue("comp package not enabled", doc.isPackageEnabled(CompConstants.shortLabel));
+
+        CompSBMLDocumentPlugin docPlugin = (CompSBMLDocumentPlugin) doc.getPlugin(CompConstants.shortLabel);
+        ExternalModelDefinition def = docPlugin.getExternalModelDefinition("extmod_" + child);
+        assertNotNull("no external model for the child pathway", def);
+        assertEquals(child + ".xml", def.getSource());
+        assertEquals("pathway_" + child, def.getModelRef());
+
+        CompModelPlugin modelPlugin = (CompModelPlugin) doc.getModel().getPlugin(CompConstants.shortLabel);
+        Submodel submodel = modelPlugin.getSubmodel("submodel_" + child);
+        assertNotNull("no submodel for the child pathway", submodel);
+        assertEquals("extmod_" + child, submodel.getModelRef());
+        assertEquals(docPlugin.getExternalModelDefinitionCount(), modelPlugin.getSubmodelCount());
+    }
+
+    @org.junit.Test
+    public void testChildReactionsNotCopied() {
+        Model hierarchical = create(true).getSBMLDocument().getModel();
+        Model flat = create(false).getSBMLDocument().getModel();
+        assertTrue("reactions of child pathways copied in",
+                hierarchical.getNumReactions() < flat.getNumReactions());
+    }
+
+    @org.junit.Test
+    public void testFlatHasNoComp() {
+        SBMLDocument doc = create(false).getSBMLDocument();
+        assertFalse("comp package enabled when flattening", doc.isPackageEnabled(CompConstants.shortLabel));
+    }
+
+    private static WriteSBML create(boolean hierarchical) {
+        WriteSBML sbml = new WriteSBML(pathway, 59);
+        sbml.setInTestModeFlag(true);
+        sbml.setAnnotationFlag(false);
+        sbml.setHierarchicalFlag(hierarchical);
+        sbml.createModel();
+        return sbml;
+    }
+}
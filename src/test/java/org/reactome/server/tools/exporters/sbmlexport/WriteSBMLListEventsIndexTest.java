@@ -0,0 +1,49 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.datasource.PathwayContainmentIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.reactome.server.tools.EventFixtures.*;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class WriteSBMLListEventsIndexTest {
+
+    // r1 is in both p1 and p2, r2 only in p1
+    private final Reaction r1 = createReaction(1L);
+    private final Reaction r2 = createReaction(2L);
+    private final Pathway p1 = createPathway(100L, r1, r2);
+    private final Pathway p2 = createPathway(200L, r1);
+
+    @Test
+    public void testWithoutIndex() {
+        assertNull(new WriteSBML(Collections.<Event>singletonList(r1), 59).getParentPathway());
+        assertEquals(p1, new WriteSBML(Arrays.<Event>asList(r1, r2), 59).getParentPathway());
+    }
+
+    @Test
+    public void testPartialIndexNotTrusted() {
+        // an earlier run exported only p1, so the index does not know r1 is in p2
+        PathwayContainmentIndex index = new PathwayContainmentIndex(59);
+        index.add(p1);
+        WriteSBML sbml = new WriteSBML(Collections.<Event>singletonList(r1), 59, index);
+        assertNull("parent found from a partial index", sbml.getParentPathway());
+    }
+
+    @Test
+    public void testCompleteIndexUsed() {
+        PathwayContainmentIndex index = new PathwayContainmentIndex(59);
+        index.add(p1);
+        index.add(p2);
+        index.setSpeciesComplete(HUMAN);
+        assertNull(new WriteSBML(Collections.<Event>singletonList(r1), 59, index).getParentPathway());
+        assertEquals(p1, new WriteSBML(Arrays.<Event>asList(r1, r2), 59, index).getParentPathway());
+    }
+}
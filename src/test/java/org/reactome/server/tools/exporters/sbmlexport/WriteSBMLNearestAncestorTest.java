@@ -0,0 +1,52 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+import org.reactome.server.tools.datasource.PathwayContainmentIndex;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.reactome.server.tools.EventFixtures.*;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class WriteSBMLNearestAncestorTest {
+
+    // top(e0, middle(e0, sub(e1))) with e0 listing top as its first parent
+    private final Reaction e0 = createReaction(1L);
+    private final Reaction e1 = createReaction(2L);
+    private final Pathway sub = createPathway(30L, e1);
+    private final Pathway middle = createPathway(20L, e0, sub);
+    private final Pathway top = createPathway(10L, e0, middle);
+
+    @Test
+    public void testLowestAncestorNotFewestSteps() {
+        e0.setEventOf(Arrays.<Event>asList(top, middle));
+        WriteSBML sbml = new WriteSBML(Arrays.<Event>asList(e0, e1), 59);
+        assertNull(sbml.getParentPathway());
+        // top is one step up from e0 but middle is below it and contains both
+        assertEquals(middle, sbml.getNearestCommonAncestor());
+    }
+
+    @Test
+    public void testFromIndex() {
+        PathwayContainmentIndex index = new PathwayContainmentIndex(59);
+        index.add(top);
+        index.setSpeciesComplete(HUMAN);
+        WriteSBML sbml = new WriteSBML(Arrays.<Event>asList(e0, e1), 59, index);
+        assertNull(sbml.getParentPathway());
+        assertEquals(middle, sbml.getNearestCommonAncestor());
+    }
+
+    @Test
+    public void testNoCommonAncestor() {
+        Reaction other = createReaction(3L);
+        createPathway(40L, other);
+        assertNull(new WriteSBML(Arrays.<Event>asList(e1, other), 59).getNearestCommonAncestor());
+        assertEquals(sub, new WriteSBML(Collections.<Event>singletonList(e1), 59).getNearestCommonAncestor());
+    }
+}
@@ -0,0 +1,69 @@
+package org.reactome.server.tools.exporters.sbmlexport;
+
+import org.junit.Test;
+import org.sbml.jsbml.Species;
+import org.sbml.jsbml.xml.XMLNode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the notes built directly are the same as those parsed from a String.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class XHTMLNodeBuilderTest {
+
+    private static final String[] texts = {
+            "Derived from a Reactome SimpleEntity. This is a small compound.",
+            "Derived from a Reactome Complex.\nHere is Reactomes nested structure for this complex: (P09496, Q00610)",
+            "A > B and C interconverts to  D",
+            "windows\r\nline\rends",
+            ""
+    };
+
+    @Test
+    public void testSameAsParsed() throws Exception {
+        for (String text : texts) {
+            assertEquals("notes differ for: " + text,
+                    notesString(XHTMLNodeBuilder.parseParagraph("notes", text)),
+                    notesString(XHTMLNodeBuilder.createParagraph("notes", text)));
+        }
+    }
+
+    /**
+     * Not compared with the parsed notes: JSBML parses the String with the
+     * default charset and replaces what it cannot encode with '?'.
+     */
+    @Test
+    public void testUnicodeKept() throws Exception {
+        String text = "unicode \u00e9\u4e2d\ud83d\ude00";
+        assertTrue(notesString(XHTMLNodeBuilder.createParagraph("notes", text)).contains(text));
+    }
+
+    @Test
+    public void testAnnotationSameAsParsed() throws Exception {
+        String text = "SBML generated from Reactome version 59 on 01/01/17 12:00 using JSBML version 1.1. ";
+        assertEquals(XMLNode.convertXMLNodeToString(XHTMLNodeBuilder.parseParagraph("annotation", text)),
+                XMLNode.convertXMLNodeToString(XHTMLNodeBuilder.createParagraph("annotation", text)));
+    }
+
+    @Test
+    public void testPlainText() {
+        assertTrue(XHTMLNodeBuilder.isPlainText("a > b"));
+        assertTrue(XHTMLNodeBuilder.isPlainText("tab\tand\nnewline"));
+        assertTrue(XHTMLNodeBuilder.isPlainText("\ud83d\ude00"));
+        assertFalse(XHTMLNodeBuilder.isPlainText("a < b"));
+        assertFalse(XHTMLNodeBuilder.isPlainText("a & b"));
+        assertFalse(XHTMLNodeBuilder.isPlainText("a ]]> b"));
+        assertFalse(XHTMLNodeBuilder.isPlainText("bell\u0007"));
+        assertFalse(XHTMLNodeBuilder.isPlainText("half \ud83d surrogate"));
+    }
+
+    private static String notesString(XMLNode node) throws Exception {
+        Species s = new Species("s", 3, 1);
+        s.appendNotes(node);
+        return s.getNotesString();
+    }
+}
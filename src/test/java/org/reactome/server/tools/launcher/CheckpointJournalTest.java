@@ -0,0 +1,198 @@
+package org.reactome.server.tools.launcher;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class CheckpointJournalTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testResumeSkipsFinishedPathway() throws Exception {
+        File dir = Files.createTempDirectory("resume").toFile();
+        File out = new File(dir, "168275.xml");
+        writeFile(out, "<sbml/>");
+
+        CheckpointJournal first = new CheckpointJournal(dir, false, 59);
+        first.record(168275L, "SBML", null, out);
+        first.close();
+        assertEquals(1, first.getNumRecorded());
+
+        CheckpointJournal second = new CheckpointJournal(dir, true, 59);
+        assertTrue("finished pathway not skipped", second.isFinished(168275L, "SBML"));
+        assertFalse("other format skipped", second.isFinished(168275L, "BIOPAXL3"));
+        assertFalse("unknown pathway skipped", second.isFinished(73843L, "SBML"));
+        second.close();
+        assertEquals(1, second.getNumSkipped());
+    }
+
+    @Test
+    public void testFingerprintRecorded() throws Exception {
+        File dir = Files.createTempDirectory("fingerprint").toFile();
+        File out = new File(dir, "168275.xml");
+        File other = new File(dir, "73843.xml");
+        writeFile(out, "<sbml/>");
+        writeFile(other, "<sbml/>");
+
+        CheckpointJournal first = new CheckpointJournal(dir, false, 59);
+        first.record(168275L, "SBML", "abc", out);
+        first.record(73843L, "SBML", null, other);
+        first.close();
+
+        CheckpointJournal second = new CheckpointJournal(dir, true, 59);
+        assertEquals("abc", second.getFingerprint(168275L, "SBML"));
+        assertEquals("168275.xml", second.getFile(168275L, "SBML"));
+        assertEquals(null, second.getFingerprint(73843L, "SBML"));
+        assertEquals(null, second.getFile(1430728L, "SBML"));
+        second.close();
+    }
+
+    @Test
+    public void testChangedFileIsRedone() throws Exception {
+        File dir = Files.createTempDirectory("changed").toFile();
+        File out = new File(dir, "168275.xml");
+        File missing = new File(dir, "73843.xml");
+        writeFile(out, "<sbml/>");
+        writeFile(missing, "<sbml/>");
+
+        CheckpointJournal first = new CheckpointJournal(dir, false, 59);
+        first.record(168275L, "SBML", null, out);
+        first.record(73843L, "SBML", null, missing);
+        first.close();
+
+        writeFile(out, "<sbml level=\"3\"/>");
+        assertTrue(missing.delete());
+        CheckpointJournal second = new CheckpointJournal(dir, true, 59);
+        assertFalse("changed file skipped", second.isFinished(168275L, "SBML"));
+        assertFalse("missing file skipped", second.isFinished(73843L, "SBML"));
+
+        // recording it again makes the new file the finished one
+        second.record(168275L, "SBML", null, out);
+        second.close();
+        CheckpointJournal third = new CheckpointJournal(dir, true, 59);
+        assertTrue(third.isFinished(168275L, "SBML"));
+        third.close();
+    }
+
+    @Test
+    public void testOtherVersionOrModeIsRedone() throws Exception {
+        File dir = Files.createTempDirectory("version").toFile();
+        File out = new File(dir, "168275.xml");
+        writeFile(out, "<sbml/>");
+
+        CheckpointJournal first = new CheckpointJournal(dir, false, 59);
+        first.record(168275L, "SBML", null, out);
+        first.close();
+
+        CheckpointJournal newer = new CheckpointJournal(dir, true, 60);
+        assertFalse("file from another version skipped", newer.isFinished(168275L, "SBML"));
+        newer.close();
+
+        CheckpointJournal comp = new CheckpointJournal(dir, true, 59);
+        assertFalse("file written flat skipped for comp", comp.isFinished(168275L, "SBML-comp"));
+        assertTrue(comp.isFinished(168275L, "SBML"));
+        comp.close();
+    }
+
+    @Test
+    public void testNewRunStartsAgain() throws Exception {
+        File dir = Files.createTempDirectory("restart").toFile();
+        File out = new File(dir, "168275.xml");
+        writeFile(out, "<sbml/>");
+
+        CheckpointJournal first = new CheckpointJournal(dir, false, 59);
+        first.record(168275L, "SBML", null, out);
+        first.close();
+
+        new CheckpointJournal(dir, false, 59).close();
+        CheckpointJournal resumed = new CheckpointJournal(dir, true, 59);
+        assertFalse("pathway from an earlier run skipped", resumed.isFinished(168275L, "SBML"));
+        resumed.close();
+    }
+
+    @Test
+    public void testTornLineIsIgnored() throws Exception {
+        File dir = Files.createTempDirectory("torn").toFile();
+        File out = new File(dir, "168275.xml");
+        writeFile(out, "<sbml/>");
+
+        CheckpointJournal first = new CheckpointJournal(dir, false, 59);
+        first.record(168275L, "SBML", null, out);
+        first.close();
+        // a run killed part way through writing a line
+        Files.write(new File(dir, CheckpointJournal.FILENAME).toPath(), "73843\tSB".getBytes(UTF8),
+                StandardOpenOption.APPEND);
+
+        CheckpointJournal second = new CheckpointJournal(dir, true, 59);
+        assertTrue(second.isFinished(168275L, "SBML"));
+        assertFalse(second.isFinished(73843L, "SBML"));
+        File other = new File(dir, "73843.xml");
+        writeFile(other, "<sbml/>");
+        second.record(73843L, "SBML", null, other);
+        second.close();
+
+        // the entry written after the torn line is read back
+        CheckpointJournal third = new CheckpointJournal(dir, true, 59);
+        assertTrue(third.isFinished(73843L, "SBML"));
+        third.close();
+    }
+
+    @Test
+    public void testTemporaryFiles() throws Exception {
+        File dir = Files.createTempDirectory("partial").toFile();
+        File out = new File(dir, "168275.xml");
+        writeFile(out, "<sbml/>");
+
+        File tmp = OutputFiles.temporaryFile(out);
+        writeFile(tmp, "<sbml");
+        assertFalse("unfinished file moved into place", OutputFiles.commit(tmp, out, false));
+        assertFalse(tmp.exists());
+        assertEquals("<sbml/>", readFile(out));
+
+        writeFile(tmp, "<sbml level=\"3\"/>");
+        assertTrue(OutputFiles.commit(tmp, out, true));
+        assertFalse(tmp.exists());
+        assertEquals("<sbml level=\"3\"/>", readFile(out));
+
+        // a file that cannot be moved into place is removed
+        File occupied = new File(dir, "73843.xml");
+        assertTrue(occupied.mkdir());
+        writeFile(new File(occupied, "other"), "");
+        File other = OutputFiles.temporaryFile(occupied);
+        writeFile(other, "<sbml/>");
+        try {
+            OutputFiles.move(other, occupied);
+            fail("file moved over a directory");
+        }
+        catch (IOException e) {
+            assertFalse(other.exists());
+        }
+
+        writeFile(tmp, "<sbml");
+        new CheckpointJournal(dir, true, 59).close();
+        assertFalse("unfinished file left on resume", tmp.exists());
+        assertTrue(out.exists());
+    }
+
+    private static void writeFile(File file, String content) throws Exception {
+        Files.write(file.toPath(), Collections.singletonList(content), UTF8);
+    }
+
+    private static String readFile(File file) throws Exception {
+        return Files.readAllLines(file.toPath(), UTF8).get(0);
+    }
+}
@@ -0,0 +1,58 @@
+package org.reactome.server.tools.launcher;
+
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.graph.domain.model.Species;
+import org.reactome.server.tools.datasource.ExportDataSource;
+
+import java.util.List;
+
+/**
+ * Passes every call on to another data source, so that a test can
+ * override the calls it wants to watch or make fail.
+ *
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+class DelegatingDataSource implements ExportDataSource {
+
+    private final ExportDataSource source;
+
+    DelegatingDataSource(ExportDataSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public int getDBVersion() {
+        return source.getDBVersion();
+    }
+
+    @Override
+    public List<Species> getSpecies() {
+        return source.getSpecies();
+    }
+
+    @Override
+    public Species findSpecies(Long dbId) {
+        return source.findSpecies(dbId);
+    }
+
+    @Override
+    public List<Long> getPathwayIds(Species species) {
+        return source.getPathwayIds(species);
+    }
+
+    @Override
+    public Pathway loadPathway(Long dbId) {
+        return source.loadPathway(dbId);
+    }
+
+    @Override
+    public Event findEvent(Long dbId) {
+        return source.findEvent(dbId);
+    }
+
+    @Override
+    public void releaseSession() {
+        source.releaseSession();
+    }
+}
@@ -0,0 +1,100 @@
+package org.reactome.server.tools.launcher;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class ExportManifestTest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testUnchangedPathwayIsLinked() throws Exception {
+        File previous = Files.createTempDirectory("previous").toFile();
+        File next = Files.createTempDirectory("next").toFile();
+        writeFile(new File(previous, "168275.xml"), "<sbml/>");
+
+        ExportManifest first = new ExportManifest(previous);
+        first.record(168275L, "SBML", "abc", "168275.xml");
+        first.write(previous);
+
+        ExportManifest second = new ExportManifest(previous);
+        assertTrue("unchanged pathway not reused", second.reuse(168275L, "SBML", "abc", next));
+        assertEquals("<sbml/>", readFile(new File(next, "168275.xml")));
+        assertFalse("changed pathway reused", second.reuse(168275L, "SBML", "abd", next));
+        assertFalse("other format reused", second.reuse(168275L, "BIOPAXL3", "abc", next));
+        assertFalse("unknown pathway reused", second.reuse(73843L, "SBML", "abc", next));
+
+        // the reused entry is carried into the new manifest
+        second.write(next);
+        ExportManifest third = new ExportManifest(next);
+        assertTrue(third.reuse(168275L, "SBML", "abc", next));
+        assertEquals(1, third.getNumReused());
+    }
+
+    @Test
+    public void testEntriesNotReplacedAreKept() throws Exception {
+        File dir = Files.createTempDirectory("incremental").toFile();
+        writeFile(new File(dir, "168275.xml"), "<sbml/>");
+        writeFile(new File(dir, "73843.xml"), "<sbml/>");
+        writeFile(new File(dir, "1430728.xml"), "<sbml/>");
+        ExportManifest first = new ExportManifest(dir);
+        first.record(168275L, "SBML", "abc", "168275.xml");
+        first.record(73843L, "SBML", "def", "73843.xml");
+        first.record(1430728L, "SBML", "ghi", "1430728.xml");
+        first.record(109582L, "SBML", "jkl", "109582.xml");
+        first.write(dir);
+
+        // a run exporting one pathway and skipping two that the journal shows finished
+        ExportManifest second = new ExportManifest(dir);
+        second.record(168275L, "SBML", "abd", "168275.xml");
+        second.keep(73843L, "SBML", "deg", "73843.xml");
+        second.keep(1430728L, "SBML", null, "1430728.xml");
+        second.write(dir);
+        assertEquals(1, second.getNumRebuilt());
+
+        ExportManifest third = new ExportManifest(dir);
+        assertTrue("entry of this run lost", third.reuse(168275L, "SBML", "abd", dir));
+        assertTrue("entry of journal skipped pathway lost", third.reuse(73843L, "SBML", "deg", dir));
+        assertFalse("entry without fingerprint kept", third.reuse(1430728L, "SBML", "ghi", dir));
+        assertFalse("entry without file kept", third.reuse(109582L, "SBML", "jkl", dir));
+
+        // a run exporting nothing keeps every entry whose file is there
+        new ExportManifest(dir).write(dir);
+        assertTrue(new ExportManifest(dir).reuse(73843L, "SBML", "deg", dir));
+    }
+
+    @Test
+    public void testMissingFileIsRebuilt() throws Exception {
+        File dir = Files.createTempDirectory("dir").toFile();
+        ExportManifest first = new ExportManifest(dir);
+        first.record(168275L, "SBML", "abc", "168275.xml");
+        first.write(dir);
+
+        assertFalse("missing file reused", new ExportManifest(dir).reuse(168275L, "SBML", "abc", dir));
+    }
+
+    @Test
+    public void testNoManifest() throws Exception {
+        File dir = Files.createTempDirectory("empty").toFile();
+        assertFalse(new ExportManifest(dir).reuse(168275L, "SBML", "abc", dir));
+    }
+
+    private static void writeFile(File file, String content) throws Exception {
+        Files.write(file.toPath(), Collections.singletonList(content), UTF8);
+    }
+
+    private static String readFile(File file) throws Exception {
+        return Files.readAllLines(file.toPath(), UTF8).get(0);
+    }
+}
@@ -0,0 +1,108 @@
+package org.reactome.server.tools.launcher;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.tools.datasource.ExportDataSource;
+import org.reactome.server.tools.datasource.SyntheticDataSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class ParallelPathwayExporterTest {
+
+    private static final String RELEASE = "release";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSessionReleasedPerSpecies() throws Exception {
+        SyntheticDataSource synthetic = new SyntheticDataSource(1, 200);
+        List<Long> ids = synthetic.getPathwayIds(synthetic.getSpecies().get(0));
+        Set<Long> second = new HashSet<Long>(ids.subList(ids.size() / 2, ids.size()));
+        RecordingDataSource source = new RecordingDataSource(synthetic, second);
+        ExporterLauncher.setDataSource(source, folder.getRoot().getPath());
+
+        // the two halves of the pathways stand for two species
+        ParallelPathwayExporter exporter = new ParallelPathwayExporter(2);
+        exporter.nextSpecies();
+        for (Long dbId : ids.subList(0, ids.size() / 2)) {
+            exporter.submit(dbId);
+        }
+        exporter.nextSpecies();
+        for (Long dbId : second) {
+            exporter.submit(dbId);
+        }
+        exporter.shutdown();
+
+        assertEquals(0, exporter.getNumFailed());
+        assertEquals(ids.size(), folder.getRoot().list().length);
+        assertFalse(source.getEvents().isEmpty());
+        for (Map.Entry<String, List<String>> entry : source.getEvents().entrySet()) {
+            // the species loaded since the session was last released
+            String loaded = null;
+            for (String event : entry.getValue()) {
+                if (event.equals(RELEASE)) {
+                    loaded = null;
+                }
+                else {
+                    assertTrue(entry.getKey() + " kept its session into the next species", loaded == null || loaded.equals(event));
+                    loaded = event;
+                }
+            }
+            assertEquals(entry.getKey() + " did not release its session", null, loaded);
+        }
+    }
+
+    /**
+     * Records, for each thread, the species of each pathway it loads
+     * and each time it releases its session.
+     */
+    private static class RecordingDataSource extends DelegatingDataSource {
+
+        private final Set<Long> second;
+        private final Map<String, List<String>> events = new HashMap<String, List<String>>();
+
+        private RecordingDataSource(ExportDataSource source, Set<Long> second) {
+            super(source);
+            this.second = second;
+        }
+
+        private synchronized void record(String event) {
+            String thread = Thread.currentThread().getName();
+            List<String> list = events.get(thread);
+            if (list == null) {
+                events.put(thread, list = new ArrayList<String>());
+            }
+            list.add(event);
+        }
+
+        synchronized Map<String, List<String>> getEvents() {
+            return events;
+        }
+
+        @Override
+        public Pathway loadPathway(Long dbId) {
+            record(second.contains(dbId) ? "2" : "1");
+            return super.loadPathway(dbId);
+        }
+
+        @Override
+        public void releaseSession() {
+            record(RELEASE);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.reactome.server.tools.launcher;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.reactome.server.graph.domain.model.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PathwayFingerprintTest {
+
+    private Pathway pathway;
+    private Complex complex;
+    private EntityWithAccessionedSequence component;
+    private DefinedSet set;
+    private SimpleEntity member;
+    private ReferenceGeneProduct reference;
+    private Summation summation;
+    private LiteratureReference literature;
+    private String original;
+
+    @Before
+    public void setUp() {
+        reference = createObject(new ReferenceGeneProduct(), 10L);
+        component = createObject(new EntityWithAccessionedSequence(), 11L);
+        component.setReferenceEntity(reference);
+        complex = createObject(new Complex(), 12L);
+        complex.setHasComponent(Collections.<PhysicalEntity>singletonList(component));
+
+        member = createObject(new SimpleEntity(), 13L);
+        set = createObject(new DefinedSet(), 14L);
+        set.setHasMember(Collections.<PhysicalEntity>singletonList(member));
+
+        summation = createObject(new Summation(), 15L);
+        literature = createObject(new LiteratureReference(), 16L);
+
+        Reaction reaction = createObject(new Reaction(), 17L);
+        List<PhysicalEntity> inputs = new ArrayList<PhysicalEntity>();
+        inputs.add(complex);
+        inputs.add(set);
+        reaction.setInput(inputs);
+        reaction.setSummation(Collections.singletonList(summation));
+        reaction.setLiteratureReference(Collections.<Publication>singletonList(literature));
+
+        pathway = createObject(new Pathway(), 18L);
+        pathway.setHasEvent(Collections.<Event>singletonList(reaction));
+        original = PathwayFingerprint.compute(pathway, "SBML");
+    }
+
+    @Test
+    public void testUnchanged() {
+        assertEquals(original, PathwayFingerprint.compute(pathway, "SBML"));
+        assertTrue("format not in fingerprint", !original.equals(PathwayFingerprint.compute(pathway, "BIOPAXL3")));
+    }
+
+    @Test
+    public void testParticipantChanged() {
+        complex.setModified(createEdit(2L, "2017-02-01"));
+        assertChanged("participant");
+    }
+
+    @Test
+    public void testComponentChanged() {
+        component.setModified(createEdit(2L, "2017-02-01"));
+        assertChanged("component of a complex");
+    }
+
+    @Test
+    public void testReferenceChanged() {
+        reference.setModified(createEdit(2L, "2017-02-01"));
+        assertChanged("reference entity");
+    }
+
+    @Test
+    public void testMemberChanged() {
+        member.setModified(createEdit(2L, "2017-02-01"));
+        assertChanged("member of a set");
+    }
+
+    @Test
+    public void testMemberReplaced() {
+        set.setHasMember(Collections.<PhysicalEntity>singletonList(createObject(new SimpleEntity(), 19L)));
+        assertChanged("replaced member");
+    }
+
+    @Test
+    public void testSummationChanged() {
+        summation.setModified(createEdit(2L, "2017-02-01"));
+        assertChanged("summation");
+    }
+
+    @Test
+    public void testLiteratureChanged() {
+        literature.setModified(createEdit(2L, "2017-02-01"));
+        assertChanged("literature reference");
+    }
+
+    private void assertChanged(String what) {
+        assertTrue(what + " not in fingerprint", !original.equals(PathwayFingerprint.compute(pathway, "SBML")));
+    }
+
+    private static <T extends DatabaseObject> T createObject(T obj, Long dbId) {
+        obj.setDbId(dbId);
+        obj.setModified(createEdit(1L, "2017-01-01"));
+        return obj;
+    }
+
+    private static InstanceEdit createEdit(Long dbId, String dateTime) {
+        InstanceEdit edit = new InstanceEdit();
+        edit.setDbId(dbId);
+        edit.setDateTime(dateTime);
+        return edit;
+    }
+}
@@ -0,0 +1,112 @@
+package org.reactome.server.tools.launcher;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.graph.domain.model.Event;
+import org.reactome.server.graph.domain.model.Pathway;
+import org.reactome.server.tools.datasource.SyntheticDataSource;
+import org.reactome.server.tools.exporters.sbmlexport.WriteSBML;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class PathwayPipelineTest {
+
+    // a pathway that cannot be built and one that is not in the data source
+    private static final Long BROKEN = 1L;
+    private static final Long MISSING = 2L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private List<Long> ids;
+
+    @Before
+    public void setUp() {
+        SyntheticDataSource synthetic = new SyntheticDataSource(1, 200);
+        ids = synthetic.getPathwayIds(synthetic.getSpecies().get(0));
+        ExporterLauncher.setDataSource(new DelegatingDataSource(synthetic) {
+            @Override
+            public Pathway loadPathway(Long dbId) {
+                if (dbId.equals(BROKEN)) {
+                    return createBrokenPathway();
+                }
+                return dbId.equals(MISSING) ? null : super.loadPathway(dbId);
+            }
+        }, folder.getRoot().getPath());
+    }
+
+    @Test
+    public void testEveryPathwayWritten() throws Exception {
+        PathwayPipeline pipeline = new PathwayPipeline(new int[]{2, 3, 2, 1}, 1, null);
+        for (Long dbId : ids) {
+            pipeline.submit(dbId);
+        }
+        assertShutdown(pipeline);
+
+        assertEquals(ids.size(), pipeline.getNumExported());
+        assertEquals(0, pipeline.getNumFailed());
+        for (Long dbId : ids) {
+            assertTrue(dbId + " not written", new File(folder.getRoot(), WriteSBML.getModelSource(dbId)).length() > 0);
+        }
+    }
+
+    @Test
+    public void testFailureIsolated() throws Exception {
+        PathwayPipeline pipeline = new PathwayPipeline(new int[]{1, 2, 1, 1}, 2, null);
+        pipeline.submit(BROKEN);
+        for (Long dbId : ids) {
+            pipeline.submit(dbId);
+            if (dbId.equals(ids.get(ids.size() / 2))) {
+                pipeline.submit(MISSING);
+            }
+        }
+        assertShutdown(pipeline);
+
+        assertEquals(ids.size(), pipeline.getNumExported());
+        assertEquals(2, pipeline.getNumFailed());
+        assertEquals(ids.size(), folder.getRoot().list().length);
+        assertFalse(new File(folder.getRoot(), WriteSBML.getModelSource(BROKEN)).exists());
+    }
+
+    @Test
+    public void testShutdownWithNothingSubmitted() throws Exception {
+        PathwayPipeline pipeline = new PathwayPipeline(new int[]{3, 1, 2, 4}, 1, null);
+        assertShutdown(pipeline);
+        assertEquals(0, pipeline.getNumExported());
+        assertEquals(0, pipeline.getNumFailed());
+    }
+
+    private static void assertShutdown(final PathwayPipeline pipeline) throws InterruptedException {
+        Thread shutdown = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.shutdown();
+            }
+        });
+        shutdown.start();
+        shutdown.join(60000);
+        assertFalse("shutdown did not return", shutdown.isAlive());
+    }
+
+    private static Pathway createBrokenPathway() {
+        Pathway pathway = new Pathway() {
+            @Override
+            public List<Event> getHasEvent() {
+                throw new IllegalStateException("hasEvent could not be loaded");
+            }
+        };
+        pathway.setDbId(BROKEN);
+        pathway.setDisplayName("Broken pathway");
+        return pathway;
+    }
+}
@@ -0,0 +1,166 @@
+package org.reactome.server.tools.metrics;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.reactome.server.tools.launcher.OutputFiles;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sarah Keating <skeating@ebi.ac.uk>
+ */
+public class MetricsReporterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testTotals() {
+        ExportMetrics metrics = createMetrics();
+        assertEquals(2, metrics.getNumExported());
+        assertEquals(1, metrics.getNumFailed());
+        assertEquals(1, metrics.getNumReused());
+        assertEquals(3000000000L, metrics.getTotalNanos(ExportStage.SERIALIZATION));
+        assertEquals(15, metrics.getTotalCount(ExportCounter.SPECIES));
+        assertEquals(3, metrics.getPathways().size());
+        assertTrue(metrics.getPathways().get(2).isFailed());
+    }
+
+    @Test
+    public void testBuilderNanos() {
+        PathwayMetrics pm = new PathwayMetrics(1L, "SBML");
+        pm.addTime(ExportStage.ANNOTATIONS, 10);
+        pm.addTime(ExportStage.NOTES, 20);
+        pm.addTime(ExportStage.HISTORY, 30);
+        pm.addTime(ExportStage.SERIALIZATION, 40);
+        pm.addTime(ExportStage.ANNOTATIONS, 5);
+        assertEquals(65, pm.getBuilderNanos());
+        assertEquals(105, pm.getTotalNanos());
+    }
+
+    @Test
+    public void testJson() {
+        MetricsReporter reporter = new MetricsReporter(createMetrics(), folder.getRoot());
+        String json = reporter.toJson(true);
+        assertTrue(json.contains("\"format\": \"SBML\""));
+        assertTrue(json.contains("\"dbVersion\": 59"));
+        assertTrue(json.contains("\"finished\": true"));
+        assertTrue(json.contains("\"pathwaysExported\": 2"));
+        assertTrue(json.contains("\"pathwaysFailed\": 1"));
+        assertTrue(json.contains("\"pathwaysReused\": 1"));
+        assertTrue(json.contains("\"serialization\": 3.0"));
+        // slowest first
+        int slow = json.indexOf("{\"dbId\": 200");
+        int fast = json.indexOf("{\"dbId\": 100");
+        int failed = json.indexOf("{\"dbId\": 300");
+        assertTrue(slow > 0);
+        assertTrue(slow < fast);
+        assertTrue(fast < failed);
+        assertTrue(json.contains("{\"dbId\": 300, \"failed\": true"));
+    }
+
+    @Test
+    public void testPrometheus() {
+        MetricsReporter reporter = new MetricsReporter(createMetrics(), folder.getRoot());
+        String prom = reporter.toPrometheus(false);
+        assertTrue(prom.contains("# TYPE reactome_export_stage_seconds_total counter\n"));
+        assertTrue(prom.contains("reactome_export_stage_seconds_total{format=\"SBML\",stage=\"serialization\"} 3.0\n"));
+        assertTrue(prom.contains("reactome_export_elements_total{format=\"SBML\",kind=\"species\"} 15\n"));
+        assertTrue(prom.contains("reactome_export_output_bytes_total{format=\"SBML\"} 3072\n"));
+        assertTrue(prom.contains("reactome_export_pathways_total{format=\"SBML\",status=\"failed\"} 1\n"));
+        assertTrue(prom.contains("reactome_export_run_finished{format=\"SBML\"} 0\n"));
+        assertTrue(prom.contains("reactome_export_db_version{format=\"SBML\"} 59\n"));
+        assertTrue(prom.indexOf("dbId=\"200\"") < prom.indexOf("dbId=\"100\""));
+    }
+
+    @Test
+    public void testSlowestLimited() {
+        ExportMetrics metrics = new ExportMetrics("BIOPAXL3");
+        for (long i = 1; i <= MetricsReporter.NUM_SLOWEST + 5; i++) {
+            PathwayMetrics pm = metrics.startPathway(i);
+            pm.addTime(ExportStage.MODEL, i);
+            metrics.finishPathway(pm, true);
+        }
+        String prom = new MetricsReporter(metrics, folder.getRoot()).toPrometheus(true);
+        int series = prom.split("reactome_export_slowest_pathway_seconds\\{").length - 1;
+        assertEquals(MetricsReporter.NUM_SLOWEST, series);
+        assertFalse(prom.contains("dbId=\"1\""));
+    }
+
+    @Test
+    public void testPipelineStages() {
+        ExportMetrics metrics = createMetrics();
+        MetricsReporter reporter = new MetricsReporter(metrics, folder.getRoot());
+        assertFalse("pipeline reported without one", reporter.toJson(true).contains("\"pipeline\""));
+
+        StageUtilization fetch = new StageUtilization("fetch", 2);
+        fetch.addBusy(1500000000L);
+        fetch.addBusy(500000000L);
+        fetch.addBlocked(250000000L);
+        fetch.stop();
+        StageUtilization write = new StageUtilization("write", 1);
+        write.addStarved(3000000000L);
+        write.stop();
+        metrics.addPipelineStage(fetch);
+        metrics.addPipelineStage(write);
+        assertEquals(2, fetch.getNumItems());
+        assertEquals(0.0, write.getUtilization(), 0.0);
+
+        String json = reporter.toJson(true);
+        assertTrue(json.contains("{\"stage\": \"fetch\", \"threads\": 2, \"items\": 2"));
+        assertTrue(json.contains("\"busySeconds\": 2.0, \"starvedSeconds\": 0.0, \"blockedSeconds\": 0.25}"));
+        assertTrue(json.indexOf("\"stage\": \"fetch\"") < json.indexOf("\"stage\": \"write\""));
+        String prom = reporter.toPrometheus(true);
+        assertTrue(prom.contains("reactome_export_pipeline_stage_seconds_total{format=\"SBML\",stage=\"fetch\",state=\"busy\"} 2.0\n"));
+        assertTrue(prom.contains("reactome_export_pipeline_stage_seconds_total{format=\"SBML\",stage=\"write\",state=\"starved\"} 3.0\n"));
+        assertTrue(prom.contains("reactome_export_pipeline_stage_utilization{format=\"SBML\",stage=\"write\"} 0.0\n"));
+    }
+
+    @Test
+    public void testFinishWritesFiles() throws Exception {
+        File dir = folder.getRoot();
+        MetricsReporter reporter = new MetricsReporter(createMetrics(), dir);
+        reporter.start(0);
+        reporter.finish();
+        File json = new File(dir, MetricsReporter.JSON_FILENAME);
+        File prom = new File(dir, MetricsReporter.PROMETHEUS_FILENAME);
+        assertTrue(json.isFile());
+        assertTrue(prom.isFile());
+        assertFalse(OutputFiles.temporaryFile(new File(dir, MetricsReporter.JSON_FILENAME)).exists());
+        String contents = new String(Files.readAllBytes(prom.toPath()), Charset.forName("UTF-8"));
+        assertTrue(contents.contains("reactome_export_run_finished{format=\"SBML\"} 1\n"));
+    }
+
+    private static ExportMetrics createMetrics() {
+        ExportMetrics metrics = new ExportMetrics("SBML");
+        metrics.setDbVersion(59);
+
+        PathwayMetrics fast = metrics.startPathway(100L);
+        fast.addTime(ExportStage.FETCH, 500000000L);
+        fast.addTime(ExportStage.SERIALIZATION, 1000000000L);
+        fast.setCount(ExportCounter.SPECIES, 5);
+        fast.setCount(ExportCounter.OUTPUT_BYTES, 1024);
+        metrics.finishPathway(fast, true);
+
+        PathwayMetrics slow = metrics.startPathway(200L);
+        slow.addTime(ExportStage.MODEL, 4000000000L);
+        slow.addTime(ExportStage.SERIALIZATION, 2000000000L);
+        slow.setCount(ExportCounter.SPECIES, 10);
+        slow.setCount(ExportCounter.OUTPUT_BYTES, 2048);
+        metrics.finishPathway(slow, true);
+
+        PathwayMetrics failed = metrics.startPathway(300L);
+        failed.addTime(ExportStage.FETCH, 1000L);
+        metrics.finishPathway(failed, false);
+
+        metrics.pathwayReused();
+        return metrics;
+    }
+}